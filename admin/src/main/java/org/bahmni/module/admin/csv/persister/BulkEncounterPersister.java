@@ -0,0 +1,310 @@
+package org.bahmni.module.admin.csv.persister;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.bahmni.csv.EntityPersister;
+import org.bahmni.csv.KeyValue;
+import org.bahmni.csv.Messages;
+import org.bahmni.module.admin.csv.models.MultipleEncounterRow;
+import org.bahmni.module.admin.observation.ObservationMapper;
+import org.openmrs.Patient;
+import org.openmrs.api.context.Context;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk mode for encounter imports. Rows are routed to a fixed number of partitions by patient identifier, so all
+ * rows of a patient are saved by the same thread, in the order they are handed over, without locking.
+ * <p/>
+ * A partition saves the rows waiting for it in one database transaction, up to the batch size, and keeps its
+ * hibernate session open across a batch of rows instead of opening one per row. A row is reported as saved only
+ * once its transaction has committed. When a row fails, the transaction is rolled back and the rows of the batch
+ * are saved again one transaction each, so that only the failing row is reported as failed. Each partition
+ * remembers the ids of the patients it has matched for the rest of the run.
+ */
+@Component
+public class BulkEncounterPersister implements EntityPersister<MultipleEncounterRow> {
+    private static final Logger log = Logger.getLogger(BulkEncounterPersister.class);
+    private static final int PROGRESS_LOG_INTERVAL = 1000;
+    private static final long IDLE_SECONDS_BEFORE_SESSION_CLOSE = 2;
+    private static final long IDLE_SECONDS_BEFORE_EXIT = 60;
+
+    @Autowired
+    private EncounterPersister encounterPersister;
+
+    @Autowired
+    private ObservationMapper observationMapper;
+
+    @Autowired
+    @Qualifier("transactionManager")
+    private PlatformTransactionManager transactionManager;
+
+    private Partition[] partitions = new Partition[0];
+    private int batchSize;
+    private volatile BulkImportMetrics metrics = new BulkImportMetrics();
+
+    /**
+     * Expects {@link EncounterPersister#init} to have been called for the same import.
+     */
+    public synchronized void init(int numberOfPartitions, int batchSize) {
+        for (Partition partition : partitions) {
+            if (partition != null) {
+                partition.stop();
+            }
+        }
+        this.partitions = new Partition[numberOfPartitions];
+        this.batchSize = batchSize;
+        this.metrics = new BulkImportMetrics();
+        observationMapper.clearConceptCache();
+    }
+
+    public BulkImportMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getNumberOfPartitions() {
+        return partitions.length;
+    }
+
+    @Override
+    public Messages validate(MultipleEncounterRow multipleEncounterRow) {
+        return encounterPersister.validate(multipleEncounterRow);
+    }
+
+    @Override
+    public Messages persist(MultipleEncounterRow multipleEncounterRow) {
+        if (StringUtils.isEmpty(multipleEncounterRow.patientIdentifier)) {
+            return record(encounterPersister.noMatchingPatients(multipleEncounterRow));
+        }
+        PendingRow pendingRow = new PendingRow(multipleEncounterRow);
+        submit(multipleEncounterRow.patientIdentifier, pendingRow);
+        try {
+            return record(pendingRow.awaitMessages());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return record(new Messages(e));
+        }
+    }
+
+    /**
+     * The identifier followed by the patient attributes of the row as key=value pairs, in key order, so that rows
+     * listing the same attributes in another order match the same patient.
+     */
+    static String matchKey(MultipleEncounterRow multipleEncounterRow) {
+        List<String> attributes = new ArrayList<>();
+        if (multipleEncounterRow.patientAttributes != null) {
+            for (KeyValue attribute : multipleEncounterRow.patientAttributes) {
+                attributes.add(attribute.getKey() + "=" + attribute.getValue());
+            }
+        }
+        Collections.sort(attributes);
+        StringBuilder matchKey = new StringBuilder(multipleEncounterRow.patientIdentifier);
+        for (String attribute : attributes) {
+            matchKey.append('\n').append(attribute);
+        }
+        return matchKey.toString();
+    }
+
+    private Messages record(Messages messages) {
+        long processedRows = messages.isEmpty() ? metrics.recordSuccess() : metrics.recordFailure();
+        if (processedRows % PROGRESS_LOG_INTERVAL == 0) {
+            log.info("Bulk encounter import progress: " + metrics);
+        }
+        return messages;
+    }
+
+    private synchronized void submit(String patientIdentifier, PendingRow pendingRow) {
+        int index = (patientIdentifier.hashCode() & Integer.MAX_VALUE) % partitions.length;
+        if (partitions[index] == null || partitions[index].exited) {
+            partitions[index] = new Partition(index);
+            partitions[index].start();
+        }
+        partitions[index].rows.add(pendingRow);
+    }
+
+    private static class PendingRow {
+        private final MultipleEncounterRow multipleEncounterRow;
+        private final CountDownLatch saved = new CountDownLatch(1);
+        private volatile Messages messages;
+
+        private PendingRow(MultipleEncounterRow multipleEncounterRow) {
+            this.multipleEncounterRow = multipleEncounterRow;
+        }
+
+        private void complete(Messages messages) {
+            this.messages = messages;
+            saved.countDown();
+        }
+
+        private Messages awaitMessages() throws InterruptedException {
+            saved.await();
+            return messages;
+        }
+    }
+
+    private class Partition extends Thread {
+        private final BlockingQueue<PendingRow> rows = new LinkedBlockingQueue<>();
+        private final Map<String, Integer> matchedPatientIds = new HashMap<>();
+        private boolean sessionOpen;
+        private int rowsInSession;
+        private volatile boolean stopped;
+        private boolean exited;
+
+        private Partition(int index) {
+            super("bulk-encounter-import-" + index);
+            setDaemon(true);
+        }
+
+        private void stop() {
+            stopped = true;
+        }
+
+        @Override
+        public void run() {
+            long idleSeconds = 0;
+            try {
+                while (!stopped && idleSeconds < IDLE_SECONDS_BEFORE_EXIT) {
+                    PendingRow pendingRow = rows.poll(IDLE_SECONDS_BEFORE_SESSION_CLOSE, TimeUnit.SECONDS);
+                    if (pendingRow == null) {
+                        closeSession();
+                        idleSeconds += IDLE_SECONDS_BEFORE_SESSION_CLOSE;
+                        continue;
+                    }
+                    idleSeconds = 0;
+                    List<PendingRow> batch = new ArrayList<>();
+                    batch.add(pendingRow);
+                    rows.drainTo(batch, Math.max(batchSize, 1) - 1);
+                    persist(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                synchronized (BulkEncounterPersister.this) {
+                    // rows handed over while this partition was exiting are still saved, by this thread
+                    List<PendingRow> batch = new ArrayList<>();
+                    rows.drainTo(batch);
+                    for (PendingRow pendingRow : batch) {
+                        persistAlone(pendingRow);
+                    }
+                    closeSession();
+                    exited = true;
+                }
+            }
+        }
+
+        private void persist(List<PendingRow> batch) {
+            if (batch.size() == 1) {
+                persistAlone(batch.get(0));
+                return;
+            }
+            openSession();
+            List<Messages> batchMessages = new ArrayList<>(batch.size());
+            boolean committed = false;
+            TransactionStatus transaction = transactionManager.getTransaction(new DefaultTransactionDefinition());
+            try {
+                for (PendingRow pendingRow : batch) {
+                    batchMessages.add(persistRow(pendingRow.multipleEncounterRow));
+                }
+                transactionManager.commit(transaction);
+                committed = true;
+            } catch (Exception e) {
+                log.warn("Saving the rows of a batch one by one, as a row of the batch could not be saved: " + e.getMessage());
+                if (!transaction.isCompleted()) {
+                    transactionManager.rollback(transaction);
+                }
+                Context.clearSession();
+            } finally {
+                rowsInSession += batch.size();
+            }
+            if (!committed) {
+                for (PendingRow pendingRow : batch) {
+                    persistAlone(pendingRow);
+                }
+                return;
+            }
+            for (int index = 0; index < batch.size(); index++) {
+                batch.get(index).complete(batchMessages.get(index));
+            }
+            closeSessionIfFull();
+        }
+
+        private void persistAlone(PendingRow pendingRow) {
+            openSession();
+            TransactionStatus transaction = transactionManager.getTransaction(new DefaultTransactionDefinition());
+            Messages messages;
+            try {
+                messages = persistRow(pendingRow.multipleEncounterRow);
+                transactionManager.commit(transaction);
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+                if (!transaction.isCompleted()) {
+                    transactionManager.rollback(transaction);
+                }
+                Context.clearSession();
+                messages = new Messages(e);
+            } finally {
+                rowsInSession++;
+            }
+            pendingRow.complete(messages);
+            closeSessionIfFull();
+        }
+
+        private Messages persistRow(MultipleEncounterRow multipleEncounterRow) throws Exception {
+            Patient patient = matchPatient(multipleEncounterRow);
+            if (patient == null) {
+                return encounterPersister.noMatchingPatients(multipleEncounterRow);
+            }
+            encounterPersister.saveEncounters(multipleEncounterRow, patient);
+            return new Messages();
+        }
+
+        private Patient matchPatient(MultipleEncounterRow multipleEncounterRow) throws Exception {
+            String matchKey = matchKey(multipleEncounterRow);
+            Integer patientId = matchedPatientIds.get(matchKey);
+            if (patientId != null) {
+                return Context.getPatientService().getPatient(patientId);
+            }
+            Patient patient = encounterPersister.matchPatient(multipleEncounterRow);
+            if (patient != null) {
+                matchedPatientIds.put(matchKey, patient.getPatientId());
+            }
+            return patient;
+        }
+
+        private void openSession() {
+            if (!sessionOpen) {
+                Context.openSession();
+                Context.setUserContext(encounterPersister.getUserContext());
+                sessionOpen = true;
+                rowsInSession = 0;
+            }
+        }
+
+        private void closeSessionIfFull() {
+            if (rowsInSession >= batchSize) {
+                closeSession();
+            }
+        }
+
+        private void closeSession() {
+            if (sessionOpen) {
+                Context.closeSession();
+                sessionOpen = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.bahmni.module.admin.csv.persister;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BulkImportMetrics {
+    private final long startedAt = System.currentTimeMillis();
+    private final AtomicLong processedRows = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+
+    public long recordSuccess() {
+        return processedRows.incrementAndGet();
+    }
+
+    public long recordFailure() {
+        failedRows.incrementAndGet();
+        return processedRows.incrementAndGet();
+    }
+
+    public long getProcessedRows() {
+        return processedRows.get();
+    }
+
+    public long getFailedRows() {
+        return failedRows.get();
+    }
+
+    public double getRowsPerSecond() {
+        long elapsedMillis = Math.max(1, System.currentTimeMillis() - startedAt);
+        return processedRows.get() * 1000.0 / elapsedMillis;
+    }
+
+    public double getErrorRate() {
+        long processed = processedRows.get();
+        return processed == 0 ? 0 : (double) failedRows.get() / processed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("processedRows=%d failedRows=%d rowsPerSecond=%.1f errorRate=%.4f",
+                getProcessedRows(), getFailedRows(), getRowsPerSecond(), getErrorRate());
+    }
+}
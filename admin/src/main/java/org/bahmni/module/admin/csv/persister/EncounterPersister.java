@@ -58,21 +58,12 @@ public class EncounterPersister implements EntityPersister<MultipleEncounterRow>
                 Context.openSession();
                 Context.setUserContext(userContext);
 
-                Patient patient = patientMatchService.getPatient(patientMatchingAlgorithmClassName, multipleEncounterRow.patientAttributes,
-                        multipleEncounterRow.patientIdentifier, shouldMatchExactPatientId);
+                Patient patient = matchPatient(multipleEncounterRow);
                 if (patient == null) {
                     return noMatchingPatients(multipleEncounterRow);
                 }
 
-                List<BahmniEncounterTransaction> bahmniEncounterTransactions = bahmniEncounterTransactionImportService.getBahmniEncounterTransaction(multipleEncounterRow, patient);
-
-                for (BahmniEncounterTransaction bahmniEncounterTransaction : bahmniEncounterTransactions) {
-                    duplicateObservationService.filter(bahmniEncounterTransaction, patient, multipleEncounterRow.getVisitStartDate(), multipleEncounterRow.getVisitEndDate());
-                }
-
-                for (BahmniEncounterTransaction bahmniEncounterTransaction : bahmniEncounterTransactions) {
-                    bahmniEncounterTransactionService.save(bahmniEncounterTransaction, patient, multipleEncounterRow.getVisitStartDate(), multipleEncounterRow.getVisitEndDate());
-                }
+                saveEncounters(multipleEncounterRow, patient);
 
                 return new Messages();
             } catch (Exception e) {
@@ -86,7 +77,28 @@ public class EncounterPersister implements EntityPersister<MultipleEncounterRow>
         }
     }
 
-    private Messages noMatchingPatients(MultipleEncounterRow multipleEncounterRow) {
+    Patient matchPatient(MultipleEncounterRow multipleEncounterRow) throws Exception {
+        return patientMatchService.getPatient(patientMatchingAlgorithmClassName, multipleEncounterRow.patientAttributes,
+                multipleEncounterRow.patientIdentifier, shouldMatchExactPatientId);
+    }
+
+    void saveEncounters(MultipleEncounterRow multipleEncounterRow, Patient patient) throws Exception {
+        List<BahmniEncounterTransaction> bahmniEncounterTransactions = bahmniEncounterTransactionImportService.getBahmniEncounterTransaction(multipleEncounterRow, patient);
+
+        for (BahmniEncounterTransaction bahmniEncounterTransaction : bahmniEncounterTransactions) {
+            duplicateObservationService.filter(bahmniEncounterTransaction, patient, multipleEncounterRow.getVisitStartDate(), multipleEncounterRow.getVisitEndDate());
+        }
+
+        for (BahmniEncounterTransaction bahmniEncounterTransaction : bahmniEncounterTransactions) {
+            bahmniEncounterTransactionService.save(bahmniEncounterTransaction, patient, multipleEncounterRow.getVisitStartDate(), multipleEncounterRow.getVisitEndDate());
+        }
+    }
+
+    UserContext getUserContext() {
+        return userContext;
+    }
+
+    Messages noMatchingPatients(MultipleEncounterRow multipleEncounterRow) {
         return new Messages("No matching patients found with ID:'" + multipleEncounterRow.patientIdentifier + "'");
     }
 }
\ No newline at end of file
@@ -4,11 +4,15 @@ import org.openmrs.Concept;
 import org.openmrs.api.ConceptService;
 import org.openmrs.module.emrapi.encounter.exception.ConceptNotFoundException;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Remembers the ids of the concepts looked up by name. The concepts themselves are loaded again in the session of
+ * the caller, as the cache is shared by imports running on several threads, each with its own session.
+ */
 public class ConceptCache {
-    private Map<String, Concept> cachedConcepts = new HashMap<>();
+    private Map<String, Integer> cachedConceptIds = new ConcurrentHashMap<>();
     private ConceptService conceptService;
 
     public ConceptCache(ConceptService conceptService) {
@@ -16,10 +20,20 @@ public class ConceptCache {
     }
 
     public Concept getConcept(String conceptName) {
-        if (!cachedConcepts.containsKey(conceptName)) {
-            cachedConcepts.put(conceptName, fetchConcept(conceptName));
+        Integer conceptId = cachedConceptIds.get(conceptName);
+        if (conceptId != null) {
+            Concept concept = conceptService.getConcept(conceptId);
+            if (concept != null) {
+                return concept;
+            }
         }
-        return cachedConcepts.get(conceptName);
+        Concept concept = fetchConcept(conceptName);
+        cachedConceptIds.put(conceptName, concept.getConceptId());
+        return concept;
+    }
+
+    public void clear() {
+        cachedConceptIds.clear();
     }
 
     private Concept fetchConcept(String conceptName) {
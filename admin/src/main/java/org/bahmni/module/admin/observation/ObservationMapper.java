@@ -41,7 +41,7 @@ public class ObservationMapper {
                     List<String> conceptNames = new ArrayList<>(Arrays.asList(obsRow.getKey().split("\\.")));
 
                     String lastConceptName = conceptNames.get(conceptNames.size() - 1);
-                    Concept lastConcept = Context.getConceptService().getConceptByName(lastConceptName);
+                    Concept lastConcept = getConcept(lastConceptName);
                     if(lastConcept.isNumeric()){
                         ConceptNumeric cn = (ConceptNumeric) lastConcept;
                         if(!cn.isAllowDecimal() && obsRow.getValue().contains(".")){
@@ -63,6 +63,10 @@ public class ObservationMapper {
 
     }
 
+    public void clearConceptCache() {
+        conceptCache.clear();
+    }
+
     protected Concept getConcept(String conceptName) {
         return conceptCache.getConcept(conceptName);
     }
@@ -0,0 +1,187 @@
+package org.bahmni.module.admin.csv.persister;
+
+import org.bahmni.csv.KeyValue;
+import org.bahmni.csv.Messages;
+import org.bahmni.module.admin.csv.models.MultipleEncounterRow;
+import org.bahmni.module.admin.observation.ObservationMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.Patient;
+import org.openmrs.api.PatientService;
+import org.openmrs.api.context.Context;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Context.class)
+public class BulkEncounterPersisterTest {
+    @Mock
+    private EncounterPersister encounterPersister;
+    @Mock
+    private ObservationMapper observationMapper;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private TransactionStatus transactionStatus;
+    @Mock
+    private PatientService patientService;
+
+    @InjectMocks
+    private BulkEncounterPersister bulkEncounterPersister;
+
+    private Patient patient = new Patient(1);
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        mockStatic(Context.class);
+        when(Context.getPatientService()).thenReturn(patientService);
+        when(patientService.getPatient(1)).thenReturn(patient);
+        when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenReturn(transactionStatus);
+        when(encounterPersister.matchPatient(any(MultipleEncounterRow.class))).thenReturn(patient);
+    }
+
+    @Test
+    public void shouldSaveAllRowsOfAPatientOnTheSamePartition() throws Exception {
+        final Map<String, Set<String>> partitionsByPatient = new ConcurrentHashMap<>();
+        doOnSave(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                String patientIdentifier = ((MultipleEncounterRow) invocation.getArguments()[0]).patientIdentifier;
+                partitionsByPatient.putIfAbsent(patientIdentifier, Collections.synchronizedSet(new HashSet<String>()));
+                partitionsByPatient.get(patientIdentifier).add(Thread.currentThread().getName());
+                return null;
+            }
+        });
+        bulkEncounterPersister.init(4, 10);
+
+        for (int index = 0; index < 12; index++) {
+            assertTrue(bulkEncounterPersister.persist(row("GAN20000" + (index % 3))).isEmpty());
+        }
+
+        assertEquals(3, partitionsByPatient.size());
+        for (Set<String> partitions : partitionsByPatient.values()) {
+            assertEquals(1, partitions.size());
+            assertTrue(partitions.iterator().next().startsWith("bulk-encounter-import-"));
+        }
+        assertEquals(12, bulkEncounterPersister.getMetrics().getProcessedRows());
+    }
+
+    @Test
+    public void shouldMatchThePatientOfAnIdentifierAndAttributesOnce() throws Exception {
+        bulkEncounterPersister.init(1, 10);
+
+        bulkEncounterPersister.persist(row("GAN200001", new KeyValue("Patient.Name", "Ram"), new KeyValue("Patient.Age", "40")));
+        bulkEncounterPersister.persist(row("GAN200001", new KeyValue("Patient.Age", "40"), new KeyValue("Patient.Name", "Ram")));
+        bulkEncounterPersister.persist(row("GAN200001", new KeyValue("Patient.Age", "41"), new KeyValue("Patient.Name", "Ram")));
+
+        verify(encounterPersister, times(2)).matchPatient(any(MultipleEncounterRow.class));
+        verify(patientService, times(1)).getPatient(1);
+        verify(encounterPersister, times(3)).saveEncounters(any(MultipleEncounterRow.class), eq(patient));
+    }
+
+    @Test
+    public void shouldKeyMatchesByIdentifierAndSortedAttributes() {
+        String matchKey = BulkEncounterPersister.matchKey(row("GAN200001", new KeyValue("b", "2"), new KeyValue("a", "1")));
+
+        assertEquals(matchKey, BulkEncounterPersister.matchKey(row("GAN200001", new KeyValue("a", "1"), new KeyValue("b", "2"))));
+        assertFalse(matchKey.equals(BulkEncounterPersister.matchKey(row("GAN200001", new KeyValue("a", "1"), new KeyValue("b", "3")))));
+        assertFalse(BulkEncounterPersister.matchKey(row("GAN2", new KeyValue("a", "1"))).equals(BulkEncounterPersister.matchKey(row("GAN2a", new KeyValue("", "1")))));
+    }
+
+    @Test
+    public void shouldReportOnlyTheFailingRowWhenARowOfABatchFails() throws Exception {
+        final MultipleEncounterRow firstRow = row("GAN200001");
+        final MultipleEncounterRow failingRow = row("GAN200001");
+        final MultipleEncounterRow lastRow = row("GAN200001");
+        final CountDownLatch firstRowSaving = new CountDownLatch(1);
+        final CountDownLatch releaseFirstRow = new CountDownLatch(1);
+        doOnSave(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Object row = invocation.getArguments()[0];
+                if (row == firstRow) {
+                    firstRowSaving.countDown();
+                    releaseFirstRow.await();
+                } else if (row == failingRow) {
+                    throw new RuntimeException("Concept 'Weight' not found");
+                }
+                return null;
+            }
+        });
+        bulkEncounterPersister.init(1, 10);
+
+        Messages[] results = new Messages[3];
+        Thread firstImporter = importer(firstRow, 0, results);
+        firstRowSaving.await();
+        // the other two rows queue up while the first one is saved, so the partition saves them in one transaction
+        Thread failingImporter = importer(failingRow, 1, results);
+        Thread lastImporter = importer(lastRow, 2, results);
+        while (failingImporter.getState() != Thread.State.WAITING || lastImporter.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+        releaseFirstRow.countDown();
+        firstImporter.join();
+        failingImporter.join();
+        lastImporter.join();
+
+        assertTrue(results[0].isEmpty());
+        assertFalse(results[1].isEmpty());
+        assertTrue(results[2].isEmpty());
+        verify(encounterPersister, times(2)).saveEncounters(eq(lastRow), eq(patient));
+        verify(transactionManager, times(2)).rollback(transactionStatus);
+        verify(transactionManager, times(2)).commit(transactionStatus);
+        assertEquals(3, bulkEncounterPersister.getMetrics().getProcessedRows());
+        assertEquals(1, bulkEncounterPersister.getMetrics().getFailedRows());
+    }
+
+    private void doOnSave(Answer<Void> answer) throws Exception {
+        doAnswer(answer).when(encounterPersister).saveEncounters(any(MultipleEncounterRow.class), any(Patient.class));
+    }
+
+    private Thread importer(final MultipleEncounterRow row, final int index, final Messages[] results) {
+        Thread importer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                results[index] = bulkEncounterPersister.persist(row);
+            }
+        });
+        importer.start();
+        return importer;
+    }
+
+    private MultipleEncounterRow row(String patientIdentifier, KeyValue... patientAttributes) {
+        MultipleEncounterRow multipleEncounterRow = new MultipleEncounterRow();
+        multipleEncounterRow.patientIdentifier = patientIdentifier;
+        multipleEncounterRow.patientAttributes = Arrays.asList(patientAttributes);
+        return multipleEncounterRow;
+    }
+}
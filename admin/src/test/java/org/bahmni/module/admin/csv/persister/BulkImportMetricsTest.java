@@ -0,0 +1,30 @@
+package org.bahmni.module.admin.csv.persister;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BulkImportMetricsTest {
+
+    @Test
+    public void shouldCountFailedRowsAsProcessed() {
+        BulkImportMetrics metrics = new BulkImportMetrics();
+
+        assertEquals(1, metrics.recordSuccess());
+        assertEquals(2, metrics.recordFailure());
+        assertEquals(3, metrics.recordSuccess());
+        metrics.recordSuccess();
+
+        assertEquals(4, metrics.getProcessedRows());
+        assertEquals(1, metrics.getFailedRows());
+        assertEquals(0.25, metrics.getErrorRate(), 0.0001);
+    }
+
+    @Test
+    public void shouldReportNoErrorsBeforeAnyRowIsProcessed() {
+        BulkImportMetrics metrics = new BulkImportMetrics();
+
+        assertEquals(0, metrics.getErrorRate(), 0.0001);
+        assertEquals(0, metrics.getRowsPerSecond(), 0.0001);
+    }
+}
@@ -7,6 +7,7 @@ import org.openmrs.Concept;
 import org.openmrs.api.ConceptService;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -35,13 +36,39 @@ public class ConceptCacheTest {
 
     @Test
     public void shouldCacheConcepts() {
-        Concept expectedConcept = new Concept();
+        Concept expectedConcept = new Concept(1);
         String conceptName = "conceptName";
         when(conceptService.getConceptByName(conceptName)).thenReturn(expectedConcept);
+        when(conceptService.getConcept(1)).thenReturn(expectedConcept);
 
         ConceptCache conceptCache = new ConceptCache(conceptService);
         assertEquals(conceptCache.getConcept(conceptName), expectedConcept);
         assertEquals(conceptCache.getConcept(conceptName), expectedConcept);
         verify(conceptService, times(1)).getConceptByName(conceptName);
     }
+
+    @Test
+    public void shouldLoadCachedConceptsAgainByIdInsteadOfSharingThem() {
+        Concept conceptOfFirstSession = new Concept(1);
+        Concept conceptOfSecondSession = new Concept(1);
+        String conceptName = "conceptName";
+        when(conceptService.getConceptByName(conceptName)).thenReturn(conceptOfFirstSession);
+        when(conceptService.getConcept(1)).thenReturn(conceptOfSecondSession);
+
+        ConceptCache conceptCache = new ConceptCache(conceptService);
+        assertSame(conceptOfFirstSession, conceptCache.getConcept(conceptName));
+        assertSame(conceptOfSecondSession, conceptCache.getConcept(conceptName));
+    }
+
+    @Test
+    public void shouldLookUpAConceptByNameAgainWhenItsCachedIdIsGone() {
+        Concept expectedConcept = new Concept(1);
+        String conceptName = "conceptName";
+        when(conceptService.getConceptByName(conceptName)).thenReturn(expectedConcept);
+
+        ConceptCache conceptCache = new ConceptCache(conceptService);
+        conceptCache.getConcept(conceptName);
+        assertEquals(expectedConcept, conceptCache.getConcept(conceptName));
+        verify(conceptService, times(2)).getConceptByName(conceptName);
+    }
 }
\ No newline at end of file
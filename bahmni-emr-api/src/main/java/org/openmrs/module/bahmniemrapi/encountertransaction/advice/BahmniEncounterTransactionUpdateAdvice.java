@@ -1,8 +1,8 @@
 package org.openmrs.module.bahmniemrapi.encountertransaction.advice;
 
-import groovy.lang.GroovyClassLoader;
 import org.apache.log4j.Logger;
 import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BahmniEncounterTransaction;
+import org.openmrs.module.bahmniemrapi.groovy.GroovyScriptCache;
 import org.openmrs.module.bahmniemrapi.obscalculator.ObsValueCalculator;
 import org.openmrs.util.OpenmrsUtil;
 import org.springframework.aop.MethodBeforeAdvice;
@@ -18,17 +18,16 @@ public class BahmniEncounterTransactionUpdateAdvice implements MethodBeforeAdvic
     @Override
     public void before(Method method, Object[] args, Object target) throws Throwable {
         logger.info("BahmniEncounterTransactionUpdateAdvice : Start");
-        GroovyClassLoader gcl = new GroovyClassLoader();
         String fileName = OpenmrsUtil.getApplicationDataDirectory() + "obscalculator/BahmniObsValueCalculator.groovy";
-        Class clazz;
+        ObsValueCalculator obsValueCalculator;
         try {
-            clazz = gcl.parseClass(new File(fileName));
+            //The calculator may keep state, so each save gets its own instance of the cached class
+            obsValueCalculator = GroovyScriptCache.getInstance().newInstance(new File(fileName), ObsValueCalculator.class);
         } catch (FileNotFoundException fileNotFound) {
             logger.warn("Could not find ObsValueCalculator: " + fileName +". Possible system misconfiguration. ", fileNotFound);
             return;
         }
-        logger.info("BahmniEncounterTransactionUpdateAdvice : Using rules in " + clazz.getName());
-        ObsValueCalculator obsValueCalculator = (ObsValueCalculator) clazz.newInstance();
+        logger.info("BahmniEncounterTransactionUpdateAdvice : Using rules in " + obsValueCalculator.getClass().getName());
         obsValueCalculator.run((BahmniEncounterTransaction) args[0]);
         logger.info("BahmniEncounterTransactionUpdateAdvice : Done");
     }
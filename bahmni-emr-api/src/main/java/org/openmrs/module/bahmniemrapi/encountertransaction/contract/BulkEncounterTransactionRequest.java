@@ -0,0 +1,16 @@
+package org.openmrs.module.bahmniemrapi.encountertransaction.contract;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BulkEncounterTransactionRequest {
+    private List<BahmniEncounterTransaction> encounterTransactions = new ArrayList<>();
+
+    public List<BahmniEncounterTransaction> getEncounterTransactions() {
+        return encounterTransactions;
+    }
+
+    public void setEncounterTransactions(List<BahmniEncounterTransaction> encounterTransactions) {
+        this.encounterTransactions = encounterTransactions;
+    }
+}
@@ -0,0 +1,68 @@
+package org.openmrs.module.bahmniemrapi.encountertransaction.contract;
+
+/**
+ * Outcome of one encounter transaction of a bulk save. The index is the position of the transaction in the request.
+ */
+public class BulkEncounterTransactionResult {
+    public enum Status {
+        SAVED,
+        FAILED,
+        NOT_SAVED
+    }
+
+    private final int index;
+    private final String patientUuid;
+    private final String encounterUuid;
+    private final String visitUuid;
+    private final Status status;
+    private final String error;
+
+    private BulkEncounterTransactionResult(int index, String patientUuid, String encounterUuid, String visitUuid, Status status, String error) {
+        this.index = index;
+        this.patientUuid = patientUuid;
+        this.encounterUuid = encounterUuid;
+        this.visitUuid = visitUuid;
+        this.status = status;
+        this.error = error;
+    }
+
+    public static BulkEncounterTransactionResult saved(int index, BahmniEncounterTransaction savedEncounterTransaction) {
+        return new BulkEncounterTransactionResult(index, savedEncounterTransaction.getPatientUuid(), savedEncounterTransaction.getEncounterUuid(),
+                savedEncounterTransaction.getVisitUuid(), Status.SAVED, null);
+    }
+
+    public static BulkEncounterTransactionResult failed(int index, String patientUuid, String error) {
+        return new BulkEncounterTransactionResult(index, patientUuid, null, null, Status.FAILED, error);
+    }
+
+    /**
+     * The transaction was not saved, or its save was rolled back, because of another transaction; it can be sent again.
+     */
+    public static BulkEncounterTransactionResult notSaved(int index, String patientUuid, String reason) {
+        return new BulkEncounterTransactionResult(index, patientUuid, null, null, Status.NOT_SAVED, reason);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getPatientUuid() {
+        return patientUuid;
+    }
+
+    public String getEncounterUuid() {
+        return encounterUuid;
+    }
+
+    public String getVisitUuid() {
+        return visitUuid;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
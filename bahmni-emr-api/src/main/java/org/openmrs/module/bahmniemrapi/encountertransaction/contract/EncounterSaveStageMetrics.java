@@ -0,0 +1,43 @@
+package org.openmrs.module.bahmniemrapi.encountertransaction.contract;
+
+public class EncounterSaveStageMetrics {
+    private final String stage;
+    private final long callCount;
+    private final long errorCount;
+    private final long p50LatencyInMicros;
+    private final long p99LatencyInMicros;
+    private final long maxLatencyInMicros;
+
+    public EncounterSaveStageMetrics(String stage, long callCount, long errorCount, long p50LatencyInMicros, long p99LatencyInMicros, long maxLatencyInMicros) {
+        this.stage = stage;
+        this.callCount = callCount;
+        this.errorCount = errorCount;
+        this.p50LatencyInMicros = p50LatencyInMicros;
+        this.p99LatencyInMicros = p99LatencyInMicros;
+        this.maxLatencyInMicros = maxLatencyInMicros;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public long getCallCount() {
+        return callCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public long getP50LatencyInMicros() {
+        return p50LatencyInMicros;
+    }
+
+    public long getP99LatencyInMicros() {
+        return p99LatencyInMicros;
+    }
+
+    public long getMaxLatencyInMicros() {
+        return maxLatencyInMicros;
+    }
+}
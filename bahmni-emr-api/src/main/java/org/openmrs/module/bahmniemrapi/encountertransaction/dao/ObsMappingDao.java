@@ -0,0 +1,14 @@
+package org.openmrs.module.bahmniemrapi.encountertransaction.dao;
+
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ObsMappingDao {
+
+    List<Encounter> getEncountersWithVisitAndProviders(Collection<Integer> encounterIds);
+
+    List<Concept> getConceptsWithNames(Collection<Integer> conceptIds);
+}
@@ -0,0 +1,52 @@
+package org.openmrs.module.bahmniemrapi.encountertransaction.dao.impl;
+
+import org.hibernate.SessionFactory;
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+import org.openmrs.module.bahmniemrapi.encountertransaction.dao.ObsMappingDao;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Loads the encounters and concepts of a batch of observations into the session in a few queries, so that mapping
+ * the observations afterwards finds them already loaded.
+ */
+@Repository
+public class ObsMappingDaoImpl implements ObsMappingDao {
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    @Override
+    public List<Encounter> getEncountersWithVisitAndProviders(Collection<Integer> encounterIds) {
+        return list("select distinct e from Encounter e " +
+                "left join fetch e.visit " +
+                "left join fetch e.encounterProviders ep " +
+                "left join fetch ep.provider " +
+                "where e.encounterId in (:ids)", encounterIds);
+    }
+
+    @Override
+    public List<Concept> getConceptsWithNames(Collection<Integer> conceptIds) {
+        return list("select distinct c from Concept c " +
+                "left join fetch c.names " +
+                "left join fetch c.datatype " +
+                "left join fetch c.conceptClass " +
+                "where c.conceptId in (:ids)", conceptIds);
+    }
+
+    private <T> List<T> list(String query, Collection<Integer> ids) {
+        List<T> results = new ArrayList<>();
+        List<Integer> idList = new ArrayList<>(ids);
+        for (int from = 0; from < idList.size(); from += MAX_IDS_PER_QUERY) {
+            List<Integer> batch = idList.subList(from, Math.min(from + MAX_IDS_PER_QUERY, idList.size()));
+            results.addAll(sessionFactory.getCurrentSession().createQuery(query).setParameterList("ids", batch).list());
+        }
+        return results;
+    }
+}
@@ -5,10 +5,12 @@ import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.openmrs.Encounter;
 import org.openmrs.EncounterType;
+import org.openmrs.GlobalProperty;
 import org.openmrs.Patient;
 import org.openmrs.Visit;
 import org.openmrs.VisitType;
 import org.openmrs.api.EncounterService;
+import org.openmrs.api.GlobalPropertyListener;
 import org.openmrs.api.LocationService;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.ProviderService;
@@ -20,6 +22,7 @@ import org.openmrs.module.bahmniemrapi.encountertransaction.command.EncounterDat
 import org.openmrs.module.bahmniemrapi.encountertransaction.command.EncounterDataPreSaveCommand;
 import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BahmniEncounterSearchParameters;
 import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BahmniEncounterTransaction;
+import org.openmrs.module.bahmniemrapi.encountertransaction.contract.EncounterSaveStageMetrics;
 import org.openmrs.module.bahmniemrapi.encountertransaction.mapper.BahmniEncounterTransactionMapper;
 import org.openmrs.module.bahmniemrapi.encountertransaction.mapper.EncounterTypeIdentifier;
 import org.openmrs.module.bahmniemrapi.encountertransaction.service.BahmniEncounterTransactionService;
@@ -33,15 +36,39 @@ import org.openmrs.module.emrapi.encounter.EncounterTransactionMapper;
 import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
 import org.openmrs.module.emrapi.encounter.matcher.BaseEncounterMatcher;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.ClassUtils;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The pre-save commands and the visit matcher are resolved on the first save and kept. The visit matcher is resolved
+ * again when the bahmni.visitMatcher global property changes; the commands are resolved again on every startup, that
+ * is whenever the spring context is refreshed.
+ * <p/>
+ * Every save records the latency of each of its stages: each pre-save command, the visit matcher, the emr-api save,
+ * both mappings and each post-save command.
+ */
 @Transactional
-public class BahmniEncounterTransactionServiceImpl extends BaseOpenmrsService implements BahmniEncounterTransactionService {
+public class BahmniEncounterTransactionServiceImpl extends BaseOpenmrsService implements BahmniEncounterTransactionService, GlobalPropertyListener {
+    public static final String VISIT_MATCHER_GLOBAL_PROPERTY = "bahmni.visitMatcher";
+    public static final String SAVE_STAGE = "save";
+    public static final String PRE_SAVE_STAGE = "preSave:";
+    public static final String VISIT_MATCHER_STAGE = "visitMatcher:";
+    public static final String EMR_ENCOUNTER_SAVE_STAGE = "emrEncounterService.save";
+    public static final String ENCOUNTER_TRANSACTION_MAPPER_STAGE = "encounterTransactionMapper.map";
+    public static final String POST_SAVE_STAGE = "postSave:";
+    public static final String BAHMNI_ENCOUNTER_TRANSACTION_MAPPER_STAGE = "bahmniEncounterTransactionMapper.map";
+
     private EncounterService encounterService;
     private EmrEncounterService emrEncounterService;
     private EncounterTransactionMapper encounterTransactionMapper;
@@ -55,6 +82,9 @@ public class BahmniEncounterTransactionServiceImpl extends BaseOpenmrsService im
     private ProviderService providerService;
     private BaseEncounterMatcher encounterSessionMatcher;
     private Map<String, VisitMatcher> visitMatchersMap = new HashMap<>();
+    private volatile List<EncounterDataPreSaveCommand> encounterDataPreSaveCommands;
+    private volatile VisitMatcher visitMatcher;
+    private final ConcurrentMap<String, SaveStageMetrics> stageMetrics = new ConcurrentHashMap<>();
 
     public BahmniEncounterTransactionServiceImpl(EncounterService encounterService,
                                                  EmrEncounterService emrEncounterService,
@@ -90,11 +120,48 @@ public class BahmniEncounterTransactionServiceImpl extends BaseOpenmrsService im
         for (VisitMatcher visitMatcher : visitMatchers) {
             visitMatchersMap.put(visitMatcher.getClass().getCanonicalName(), visitMatcher);
         }
+        this.encounterDataPreSaveCommands = null;
+        this.visitMatcher = null;
+        Context.getAdministrationService().addGlobalPropertyListener(this);
+    }
+
+    @Override
+    public boolean supportsPropertyName(String propertyName) {
+        return VISIT_MATCHER_GLOBAL_PROPERTY.equals(propertyName);
+    }
+
+    @Override
+    public void globalPropertyChanged(GlobalProperty newValue) {
+        visitMatcher = null;
+    }
+
+    @Override
+    public void globalPropertyDeleted(String propertyName) {
+        visitMatcher = null;
     }
 
     @Override
     public BahmniEncounterTransaction save(BahmniEncounterTransaction bahmniEncounterTransaction, Patient patient, Date visitStartDate, Date visitEndDate) {
+        return save(bahmniEncounterTransaction, patient, visitStartDate, visitEndDate, false);
+    }
 
+    @Override
+    public BahmniEncounterTransaction save(BahmniEncounterTransaction bahmniEncounterTransaction, Patient patient, Date visitStartDate, Date visitEndDate, boolean minimalResponse) {
+        long startedAt = System.nanoTime();
+        SaveTimer timer = new SaveTimer();
+        try {
+            BahmniEncounterTransaction savedEncounterTransaction = save(bahmniEncounterTransaction, patient, visitStartDate, visitEndDate, minimalResponse, timer);
+            recordStage(SAVE_STAGE, startedAt, false);
+            return savedEncounterTransaction;
+        } catch (RuntimeException e) {
+            timer.fail();
+            recordStage(SAVE_STAGE, startedAt, true);
+            throw e;
+        }
+    }
+
+    private BahmniEncounterTransaction save(BahmniEncounterTransaction bahmniEncounterTransaction, Patient patient, Date visitStartDate,
+                                            Date visitEndDate, boolean minimalResponse, SaveTimer timer) {
         if(bahmniEncounterTransaction.getEncounterDateTime() == null){
             bahmniEncounterTransaction.setEncounterDateTime(new Date());
         }
@@ -114,40 +181,119 @@ public class BahmniEncounterTransactionServiceImpl extends BaseOpenmrsService im
             setEncounterType(bahmniEncounterTransaction);
         }
 
-        List<EncounterDataPreSaveCommand> encounterDataPreSaveCommands = Context.getRegisteredComponents(EncounterDataPreSaveCommand.class);
-        for (EncounterDataPreSaveCommand saveCommand : encounterDataPreSaveCommands) {
+        for (EncounterDataPreSaveCommand saveCommand : getEncounterDataPreSaveCommands()) {
+            timer.begin(PRE_SAVE_STAGE + stageNameOf(saveCommand));
             saveCommand.update(bahmniEncounterTransaction);
+            timer.end();
         }
         VisitMatcher visitMatcher = getVisitMatcher();
+        timer.begin(VISIT_MATCHER_STAGE + stageNameOf(visitMatcher));
         if (BahmniEncounterTransaction.isRetrospectiveEntry(bahmniEncounterTransaction.getEncounterDateTime())) {
             bahmniEncounterTransaction = new RetrospectiveEncounterTransactionService(visitMatcher).updatePastEncounters(bahmniEncounterTransaction, patient, visitStartDate, visitEndDate);
         } else {
             visitMatcher.createOrStretchVisit(bahmniEncounterTransaction, patient, visitStartDate, visitEndDate);
         }
+        timer.end();
 
         if (!StringUtils.isBlank(bahmniEncounterTransaction.getVisitType())) {
             setVisitTypeUuid(visitMatcher, bahmniEncounterTransaction);
         }
 
+        timer.begin(EMR_ENCOUNTER_SAVE_STAGE);
         EncounterTransaction encounterTransaction = emrEncounterService.save(bahmniEncounterTransaction.toEncounterTransaction());
+        timer.end();
         //Get the saved encounter transaction from emr-api
         String encounterUuid = encounterTransaction.getEncounterUuid();
         Encounter currentEncounter = encounterService.getEncounterByUuid(encounterUuid);
 
         boolean includeAll = false;
-        EncounterTransaction updatedEncounterTransaction = encounterTransactionMapper.map(currentEncounter, includeAll);
+        //The diagnosis command reads the saved diagnoses off the mapped transaction, so they are always mapped
+        boolean remap = !minimalResponse || !bahmniEncounterTransaction.getBahmniDiagnoses().isEmpty();
+        EncounterTransaction updatedEncounterTransaction;
+        if (remap) {
+            timer.begin(ENCOUNTER_TRANSACTION_MAPPER_STAGE);
+            updatedEncounterTransaction = encounterTransactionMapper.map(currentEncounter, includeAll);
+            timer.end();
+        } else {
+            updatedEncounterTransaction = minimalEncounterTransaction(currentEncounter);
+        }
         for (EncounterDataPostSaveCommand saveCommand : encounterDataPostSaveCommands) {
+            timer.begin(POST_SAVE_STAGE + stageNameOf(saveCommand));
             updatedEncounterTransaction = saveCommand.save(bahmniEncounterTransaction,currentEncounter, updatedEncounterTransaction);
+            timer.end();
+        }
+        if (minimalResponse) {
+            return new BahmniEncounterTransaction(minimalEncounterTransaction(currentEncounter));
+        }
+        timer.begin(BAHMNI_ENCOUNTER_TRANSACTION_MAPPER_STAGE);
+        BahmniEncounterTransaction savedEncounterTransaction = bahmniEncounterTransactionMapper.map(updatedEncounterTransaction, includeAll);
+        timer.end();
+        return savedEncounterTransaction;
+    }
+
+    /**
+     * Just the identity of the saved encounter, for callers that do not read back what they saved.
+     */
+    private EncounterTransaction minimalEncounterTransaction(Encounter encounter) {
+        Visit visit = encounter.getVisit();
+        EncounterTransaction encounterTransaction = new EncounterTransaction(visit != null ? visit.getUuid() : null, encounter.getUuid());
+        encounterTransaction.setPatientUuid(encounter.getPatient().getUuid());
+        encounterTransaction.setEncounterTypeUuid(encounter.getEncounterType().getUuid());
+        encounterTransaction.setEncounterDateTime(encounter.getEncounterDatetime());
+        if (encounter.getLocation() != null) {
+            encounterTransaction.setLocationUuid(encounter.getLocation().getUuid());
+        }
+        if (visit != null && visit.getVisitType() != null) {
+            encounterTransaction.setVisitTypeUuid(visit.getVisitType().getUuid());
+        }
+        return encounterTransaction;
+    }
+
+    private List<EncounterDataPreSaveCommand> getEncounterDataPreSaveCommands() {
+        List<EncounterDataPreSaveCommand> commands = encounterDataPreSaveCommands;
+        if (commands == null) {
+            commands = Collections.unmodifiableList(new ArrayList<>(Context.getRegisteredComponents(EncounterDataPreSaveCommand.class)));
+            encounterDataPreSaveCommands = commands;
         }
-        return bahmniEncounterTransactionMapper.map(updatedEncounterTransaction, includeAll);
+        return commands;
     }
 
     private VisitMatcher getVisitMatcher() {
-        String globalProperty = Context.getAdministrationService().getGlobalProperty("bahmni.visitMatcher");
-        if(visitMatchersMap.get(globalProperty)!=null) {
-            return visitMatchersMap.get(globalProperty);
+        VisitMatcher matcher = visitMatcher;
+        if (matcher == null) {
+            String globalProperty = Context.getAdministrationService().getGlobalProperty(VISIT_MATCHER_GLOBAL_PROPERTY);
+            matcher = visitMatchersMap.get(globalProperty);
+            if (matcher == null) {
+                matcher = new VisitIdentificationHelper(visitService);
+            }
+            visitMatcher = matcher;
+        }
+        return matcher;
+    }
+
+    private String stageNameOf(Object stage) {
+        return ClassUtils.getUserClass(stage).getSimpleName();
+    }
+
+    private void recordStage(String stage, long startedAt, boolean failed) {
+        SaveStageMetrics metrics = stageMetrics.get(stage);
+        if (metrics == null) {
+            metrics = new SaveStageMetrics();
+            SaveStageMetrics existing = stageMetrics.putIfAbsent(stage, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        metrics.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedAt), failed);
+    }
+
+    @Override
+    public List<EncounterSaveStageMetrics> getSaveMetrics() {
+        List<EncounterSaveStageMetrics> metrics = new ArrayList<>();
+        for (Map.Entry<String, SaveStageMetrics> entry : new TreeMap<>(stageMetrics).entrySet()) {
+            metrics.add(entry.getValue().toResponse(entry.getKey()));
         }
-        return new VisitIdentificationHelper(visitService);
+        return metrics;
     }
 
     private void handleDrugOrders(BahmniEncounterTransaction bahmniEncounterTransaction,Patient patient) {
@@ -184,8 +330,13 @@ public class BahmniEncounterTransactionServiceImpl extends BaseOpenmrsService im
 
     @Override
     public BahmniEncounterTransaction save(BahmniEncounterTransaction bahmniEncounterTransaction) {
+        return save(bahmniEncounterTransaction, false);
+    }
+
+    @Override
+    public BahmniEncounterTransaction save(BahmniEncounterTransaction bahmniEncounterTransaction, boolean minimalResponse) {
         Patient patientByUuid = patientService.getPatientByUuid(bahmniEncounterTransaction.getPatientUuid());
-        return save(bahmniEncounterTransaction, patientByUuid, null, null);
+        return save(bahmniEncounterTransaction, patientByUuid, null, null, minimalResponse);
     }
 
     @Override
@@ -239,4 +390,28 @@ public class BahmniEncounterTransactionServiceImpl extends BaseOpenmrsService im
         bahmniEncounterTransaction.setEncounterTypeUuid(encounterType.getUuid());
     }
 
+    /**
+     * Times the stages of one save, so that a stage that throws is recorded as failed.
+     */
+    private class SaveTimer {
+        private String stage;
+        private long startedAt;
+
+        private void begin(String stage) {
+            this.stage = stage;
+            this.startedAt = System.nanoTime();
+        }
+
+        private void end() {
+            recordStage(stage, startedAt, false);
+            stage = null;
+        }
+
+        private void fail() {
+            if (stage != null) {
+                recordStage(stage, startedAt, true);
+                stage = null;
+            }
+        }
+    }
 }
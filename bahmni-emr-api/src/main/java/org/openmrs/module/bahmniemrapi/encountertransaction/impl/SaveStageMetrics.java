@@ -0,0 +1,25 @@
+package org.openmrs.module.bahmniemrapi.encountertransaction.impl;
+
+import org.openmrs.module.bahmniemrapi.encountertransaction.contract.EncounterSaveStageMetrics;
+import org.openmrs.module.bahmniemrapi.metrics.LatencyReservoir;
+
+/**
+ * Call count, failures and latency percentiles of one stage of the encounter transaction save.
+ * Percentiles are computed over the most recent {@link LatencyReservoir#SAMPLE_SIZE} calls.
+ */
+class SaveStageMetrics {
+    private final LatencyReservoir latencies = new LatencyReservoir();
+    private long errorCount;
+
+    synchronized void record(long latencyInMicros, boolean failed) {
+        latencies.record(latencyInMicros);
+        if (failed) {
+            errorCount++;
+        }
+    }
+
+    synchronized EncounterSaveStageMetrics toResponse(String stage) {
+        long[] percentiles = latencies.percentiles(50, 99);
+        return new EncounterSaveStageMetrics(stage, latencies.getCount(), errorCount, percentiles[0], percentiles[1], latencies.getMax());
+    }
+}
@@ -1,25 +1,110 @@
 package org.openmrs.module.bahmniemrapi.encountertransaction.mapper;
 
 import org.openmrs.Concept;
+import org.openmrs.api.context.Context;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * Sort weight of a concept name within trees of concept sets: the position of the first concept carrying the name
+ * when the trees are walked depth first, where a set that does not hold the name only moves the position on by the
+ * number of its direct members.
+ * <p/>
+ * The trees are flattened once into an index of name to sort weight, so a lookup does not walk them again. Indexes
+ * of saved root concepts are kept, keyed by the ids of the roots and the locale of the names, and are all dropped by
+ * {@link #clearIndexes()} whenever a concept is saved, retired or purged.
+ */
 public class ConceptSortWeightUtil {
+    public static final int MAX_CACHED_INDEXES = 500;
+
+    private static final Map<List<Object>, Map<String, Integer>> indexes = new LinkedHashMap<List<Object>, Map<String, Integer>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, Map<String, Integer>> eldest) {
+            return size() > MAX_CACHED_INDEXES;
+        }
+    };
+
     public static int getSortWeightFor(String conceptName, Collection<Concept> concepts) {
-        return getSortWeightFor(conceptName, concepts, 0);
+        if (conceptName == null) {
+            return 0;
+        }
+        Integer sortWeight = getIndex(concepts).get(nameKey(conceptName));
+        return sortWeight == null ? 0 : sortWeight;
+    }
+
+    public static void clearIndexes() {
+        synchronized (indexes) {
+            indexes.clear();
+        }
     }
 
-    private static int getSortWeightFor(String conceptName, Collection<Concept> concepts, int startSortWeight) {
+    private static Map<String, Integer> getIndex(Collection<Concept> concepts) {
+        List<Object> key = indexKey(concepts);
+        if (key == null) {
+            return buildIndex(concepts);
+        }
+        synchronized (indexes) {
+            Map<String, Integer> index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+        }
+        Map<String, Integer> index = buildIndex(concepts);
+        synchronized (indexes) {
+            indexes.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * The locale followed by the ids of the root concepts, or null when a root has not been saved yet.
+     */
+    private static List<Object> indexKey(Collection<Concept> concepts) {
+        List<Object> key = new ArrayList<>(concepts.size() + 1);
+        for (Concept concept : concepts) {
+            if (concept.getId() == null) {
+                return null;
+            }
+            key.add(concept.getId());
+        }
+        key.add(0, Context.getLocale());
+        return key;
+    }
+
+    private static Map<String, Integer> buildIndex(Collection<Concept> concepts) {
+        Map<String, Integer> index = new HashMap<>();
+        addToIndex(concepts, 0, index);
+        return index;
+    }
+
+    private static void addToIndex(Collection<Concept> concepts, int startSortWeight, Map<String, Integer> index) {
         for (Concept aConcept : concepts) {
             startSortWeight++;
-            if (aConcept.getName().getName().equalsIgnoreCase(conceptName)) {
-                return startSortWeight;
-            } else if (aConcept.getSetMembers().size() > 0 && getSortWeightFor(conceptName, aConcept.getSetMembers(), startSortWeight) > 0) {
-                return getSortWeightFor(conceptName, aConcept.getSetMembers(), startSortWeight);
-            } else if (aConcept.getSetMembers().size() > 0) {
-                startSortWeight += aConcept.getSetMembers().size();
+            String key = nameKey(aConcept.getName().getName());
+            if (!index.containsKey(key)) {
+                index.put(key, startSortWeight);
+            }
+            List<Concept> setMembers = aConcept.getSetMembers();
+            if (setMembers.size() > 0) {
+                addToIndex(setMembers, startSortWeight, index);
+                startSortWeight += setMembers.size();
             }
         }
-        return 0;
     }
-}
\ No newline at end of file
+
+    /**
+     * Folds the case of every character the way {@link String#equalsIgnoreCase(String)} compares them.
+     */
+    private static String nameKey(String name) {
+        char[] chars = name.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+}
@@ -3,13 +3,11 @@ package org.openmrs.module.bahmniemrapi.encountertransaction.mapper;
 import org.openmrs.Concept;
 import org.openmrs.ConceptName;
 import org.openmrs.ConceptNumeric;
-import org.openmrs.User;
 import org.openmrs.api.ConceptService;
-import org.openmrs.api.context.Context;
 import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BahmniObservation;
 import org.openmrs.module.bahmniemrapi.encountertransaction.mapper.parameters.AdditionalBahmniObservationFields;
+import org.openmrs.module.bahmniemrapi.encountertransaction.mapper.parameters.ObsMappingContext;
 import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
-import org.openmrs.util.LocaleUtility;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -34,62 +32,68 @@ public class ETObsToBahmniObsMapper {
 
     public List<BahmniObservation> create(List<EncounterTransaction.Observation> allObservations, AdditionalBahmniObservationFields additionalBahmniObservationFields) {
         List<BahmniObservation> bahmniObservations = new ArrayList<>();
+        ObsMappingContext obsMappingContext = new ObsMappingContext();
         for (EncounterTransaction.Observation observation : allObservations) {
-            bahmniObservations.add(create(observation, additionalBahmniObservationFields));
+            bahmniObservations.add(create(observation, additionalBahmniObservationFields, obsMappingContext));
         }
         return bahmniObservations;
     }
 
     public BahmniObservation create(EncounterTransaction.Observation observation, AdditionalBahmniObservationFields additionalBahmniObservationFields) {
-        return map(observation, additionalBahmniObservationFields,
-                Collections.singletonList(conceptService.getConceptByUuid(observation.getConceptUuid())),
-                false);
+        return create(observation, additionalBahmniObservationFields, new ObsMappingContext());
     }
 
-    private String getUsersLocale() {
-        User authenticatedUser = Context.getAuthenticatedUser();
-        return (authenticatedUser != null) ? authenticatedUser.getUserProperty("defaultLocale") : null;
+    private BahmniObservation create(EncounterTransaction.Observation observation, AdditionalBahmniObservationFields additionalBahmniObservationFields, ObsMappingContext obsMappingContext) {
+        return map(observation, additionalBahmniObservationFields,
+                Collections.singletonList(conceptService.getConceptByUuid(observation.getConceptUuid())),
+                false, obsMappingContext);
     }
 
-    private void fixConceptName(EncounterTransaction.Observation observation) {
+    private void fixConceptName(EncounterTransaction.Observation observation, ObsMappingContext obsMappingContext) {
         if (!(observation.getValue() instanceof EncounterTransaction.Concept))
             return;
+        if (!obsMappingContext.hasUsersLocale())
+            return;
         EncounterTransaction.Concept etConcept = (EncounterTransaction.Concept) observation.getValue();
-        Concept omrsConcept = conceptService.getConceptByUuid(etConcept.getUuid());
-        String usersLocale = getUsersLocale();
-
-        if (usersLocale != null) {
-            Locale locale = LocaleUtility.fromSpecification(usersLocale);
-            ConceptName shortName = omrsConcept.getShortNameInLocale(locale);
-            ConceptName fullySpecifiedName = omrsConcept.getFullySpecifiedName(locale);
-            if (shortName == null) {
-                if (fullySpecifiedName != null) {
-                    etConcept.setShortName(fullySpecifiedName.toString());
-                } else {
-                    String defaultLocale = Context.getAdministrationService().getGlobalProperty("default_locale");
-                    if (defaultLocale != null) {
-                        Locale defLocale = LocaleUtility.fromSpecification(defaultLocale);
-                        etConcept.setShortName(omrsConcept.getFullySpecifiedName(defLocale).toString());
-                    }
+        Concept omrsConcept = obsMappingContext.getConcept(etConcept.getUuid());
+        if (omrsConcept == null) {
+            omrsConcept = conceptService.getConceptByUuid(etConcept.getUuid());
+            obsMappingContext.addConcept(omrsConcept);
+        }
+
+        Locale locale = obsMappingContext.getUsersLocale();
+        ConceptName shortName = omrsConcept.getShortNameInLocale(locale);
+        ConceptName fullySpecifiedName = omrsConcept.getFullySpecifiedName(locale);
+        if (shortName == null) {
+            if (fullySpecifiedName != null) {
+                etConcept.setShortName(fullySpecifiedName.toString());
+            } else {
+                Locale defLocale = obsMappingContext.getDefaultLocale();
+                if (defLocale != null) {
+                    etConcept.setShortName(omrsConcept.getFullySpecifiedName(defLocale).toString());
                 }
             }
         }
     }
 
     protected BahmniObservation map(EncounterTransaction.Observation observation, AdditionalBahmniObservationFields additionalBahmniObservationFields, List<Concept> rootConcepts, boolean flatten) {
+        return map(observation, additionalBahmniObservationFields, rootConcepts, flatten, new ObsMappingContext());
+    }
+
+    protected BahmniObservation map(EncounterTransaction.Observation observation, AdditionalBahmniObservationFields additionalBahmniObservationFields, List<Concept> rootConcepts, boolean flatten, ObsMappingContext obsMappingContext) {
 
         BahmniObservation bahmniObservation= createBahmniObservation(observation,additionalBahmniObservationFields,rootConcepts,flatten);
 
         if (CONCEPT_DETAILS_CONCEPT_CLASS.equals(observation.getConcept().getConceptClass()) && flatten) {
-            handleFlattenedConceptDetails(observation,bahmniObservation);
+            handleFlattenedConceptDetails(observation,bahmniObservation, obsMappingContext);
         } else if (observation.getGroupMembers().size() > 0) {
             for (EncounterTransaction.Observation groupMember : observation.getGroupMembers()) {
                 AdditionalBahmniObservationFields additionalFields = (AdditionalBahmniObservationFields) additionalBahmniObservationFields.clone();
                 additionalFields.setObsGroupUuid(observation.getUuid());
-                bahmniObservation.addGroupMember(map(groupMember, additionalFields, rootConcepts, flatten));
+                bahmniObservation.addGroupMember(map(groupMember, additionalFields, rootConcepts, flatten, obsMappingContext));
             }
         } else {
-            fixConceptName(observation);
+            fixConceptName(observation, obsMappingContext);
             bahmniObservation.setValue(observation.getValue());
             bahmniObservation.setType(observation.getConcept().getDataType());
             bahmniObservation.setHiNormal(observation.getConcept().getHiNormal());
@@ -137,7 +141,7 @@ public class ETObsToBahmniObsMapper {
         }
     }
 
-    private void handleFlattenedConceptDetails(EncounterTransaction.Observation observation, BahmniObservation bahmniObservation) {
+    private void handleFlattenedConceptDetails(EncounterTransaction.Observation observation, BahmniObservation bahmniObservation, ObsMappingContext obsMappingContext) {
         setHiNormalAndLowNormalForNumericUnknownObs(observation, bahmniObservation);
         for (EncounterTransaction.Observation member : observation.getGroupMembers()) {
             if (member.getVoided()) {
@@ -150,7 +154,7 @@ public class ETObsToBahmniObsMapper {
             } else if (member.getConcept().getConceptClass().equals(DURATION_CONCEPT_CLASS)) {
                 bahmniObservation.setDuration(new Double(member.getValue().toString()).longValue());
             } else {
-                fixConceptName(member);
+                fixConceptName(member, obsMappingContext);
                 setValueAndType(bahmniObservation, member);
                 bahmniObservation.getConcept().setUnits(member.getConcept().getUnits());
                 bahmniObservation.setHiNormal(member.getConcept().getHiNormal());
@@ -2,11 +2,14 @@ package org.openmrs.module.bahmniemrapi.encountertransaction.mapper;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.openmrs.Concept;
+import org.openmrs.Encounter;
 import org.openmrs.EncounterProvider;
 import org.openmrs.Obs;
 import org.openmrs.module.bahmniemrapi.drugorder.mapper.BahmniProviderMapper;
 import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BahmniObservation;
+import org.openmrs.module.bahmniemrapi.encountertransaction.dao.ObsMappingDao;
 import org.openmrs.module.bahmniemrapi.encountertransaction.mapper.parameters.AdditionalBahmniObservationFields;
+import org.openmrs.module.bahmniemrapi.encountertransaction.mapper.parameters.ObsMappingContext;
 import org.openmrs.module.emrapi.encounter.ObservationMapper;
 import org.openmrs.module.emrapi.encounter.matcher.ObservationTypeMatcher;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,7 +18,11 @@ import org.springframework.stereotype.Component;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Component(value = "omrsObsToBahmniObsMapper")
 public class OMRSObsToBahmniObsMapper {
@@ -23,19 +30,32 @@ public class OMRSObsToBahmniObsMapper {
     private ObservationTypeMatcher observationTypeMatcher;
     private BahmniProviderMapper bahmniProviderMapper = new BahmniProviderMapper();
     private ObservationMapper observationMapper;
+    private ObsMappingDao obsMappingDao;
 
-    @Autowired
     public OMRSObsToBahmniObsMapper(ETObsToBahmniObsMapper etObsToBahmniObsMapper, ObservationTypeMatcher observationTypeMatcher, ObservationMapper observationMapper) {
+        this(etObsToBahmniObsMapper, observationTypeMatcher, observationMapper, null);
+    }
+
+    @Autowired
+    public OMRSObsToBahmniObsMapper(ETObsToBahmniObsMapper etObsToBahmniObsMapper, ObservationTypeMatcher observationTypeMatcher, ObservationMapper observationMapper, ObsMappingDao obsMappingDao) {
         this.etObsToBahmniObsMapper = etObsToBahmniObsMapper;
         this.observationTypeMatcher = observationTypeMatcher;
         this.observationMapper = observationMapper;
+        this.obsMappingDao = obsMappingDao;
     }
 
+    /**
+     * Maps the observations as one batch: their encounters, visits, providers and concepts are loaded up front in a
+     * few queries, and the locale and each encounter's fields are worked out once for the whole list.
+     */
     public Collection<BahmniObservation> map(List<Obs> obsList, Collection<Concept> rootConcepts) {
         Collection<BahmniObservation> bahmniObservations = new ArrayList<>();
+        ObsMappingContext obsMappingContext = new ObsMappingContext();
+        Map<String, AdditionalBahmniObservationFields> encounterFields = new HashMap<>();
+        prefetch(obsList, obsMappingContext);
         for (Obs obs : obsList) {
             if(observationTypeMatcher.getObservationType(obs).equals(ObservationTypeMatcher.ObservationType.OBSERVATION)){
-                BahmniObservation bahmniObservation =map(obs);
+                BahmniObservation bahmniObservation = map(obs, obsMappingContext, encounterFields);
                 if(CollectionUtils.isNotEmpty(rootConcepts )){
                     bahmniObservation.setConceptSortWeight(ConceptSortWeightUtil.getSortWeightFor(bahmniObservation.getConcept().getName(), rootConcepts));
                 }
@@ -48,16 +68,61 @@ public class OMRSObsToBahmniObsMapper {
     public BahmniObservation map(Obs obs) {
         if(obs == null)
              return null;
-        String obsGroupUuid = obs.getObsGroup() == null? null : obs.getObsGroup().getUuid();
-        AdditionalBahmniObservationFields additionalBahmniObservationFields =
-                new AdditionalBahmniObservationFields(
-                        obs.getEncounter().getUuid(),
-                        obs.getEncounter().getEncounterDatetime(),
-                        obs.getEncounter().getVisit().getStartDatetime(),
-                        obsGroupUuid);
-        for (EncounterProvider encounterProvider : obs.getEncounter().getEncounterProviders()) {
-            additionalBahmniObservationFields.addProvider(bahmniProviderMapper.map(encounterProvider.getProvider()));
-        }
-        return etObsToBahmniObsMapper.map(observationMapper.map(obs), additionalBahmniObservationFields, Collections.singletonList(obs.getConcept()), true);
+        return map(obs, new ObsMappingContext(), new HashMap<String, AdditionalBahmniObservationFields>());
+    }
+
+    private BahmniObservation map(Obs obs, ObsMappingContext obsMappingContext, Map<String, AdditionalBahmniObservationFields> encounterFields) {
+        Encounter encounter = obs.getEncounter();
+        AdditionalBahmniObservationFields fieldsOfEncounter = encounterFields.get(encounter.getUuid());
+        if (fieldsOfEncounter == null) {
+            fieldsOfEncounter = new AdditionalBahmniObservationFields(
+                    encounter.getUuid(),
+                    encounter.getEncounterDatetime(),
+                    encounter.getVisit().getStartDatetime(),
+                    null);
+            for (EncounterProvider encounterProvider : encounter.getEncounterProviders()) {
+                fieldsOfEncounter.addProvider(bahmniProviderMapper.map(encounterProvider.getProvider()));
+            }
+            encounterFields.put(encounter.getUuid(), fieldsOfEncounter);
+        }
+        AdditionalBahmniObservationFields additionalBahmniObservationFields = (AdditionalBahmniObservationFields) fieldsOfEncounter.clone();
+        additionalBahmniObservationFields.setObsGroupUuid(obs.getObsGroup() == null ? null : obs.getObsGroup().getUuid());
+        return etObsToBahmniObsMapper.map(observationMapper.map(obs), additionalBahmniObservationFields, Collections.singletonList(obs.getConcept()), true, obsMappingContext);
+    }
+
+    private void prefetch(List<Obs> obsList, ObsMappingContext obsMappingContext) {
+        if (obsMappingDao == null || obsList.isEmpty()) {
+            return;
+        }
+        Set<Integer> encounterIds = new HashSet<>();
+        Set<Integer> conceptIds = new HashSet<>();
+        for (Obs obs : obsList) {
+            if (obs.getEncounter() != null && obs.getEncounter().getEncounterId() != null) {
+                encounterIds.add(obs.getEncounter().getEncounterId());
+            }
+            collectConceptIds(obs, conceptIds);
+        }
+        if (!encounterIds.isEmpty()) {
+            obsMappingDao.getEncountersWithVisitAndProviders(encounterIds);
+        }
+        if (!conceptIds.isEmpty()) {
+            for (Concept concept : obsMappingDao.getConceptsWithNames(conceptIds)) {
+                obsMappingContext.addConcept(concept);
+            }
+        }
+    }
+
+    private void collectConceptIds(Obs obs, Set<Integer> conceptIds) {
+        if (obs.getConcept() != null && obs.getConcept().getConceptId() != null) {
+            conceptIds.add(obs.getConcept().getConceptId());
+        }
+        if (obs.getValueCoded() != null && obs.getValueCoded().getConceptId() != null) {
+            conceptIds.add(obs.getValueCoded().getConceptId());
+        }
+        if (obs.hasGroupMembers()) {
+            for (Obs groupMember : obs.getGroupMembers()) {
+                collectConceptIds(groupMember, conceptIds);
+            }
+        }
     }
 }
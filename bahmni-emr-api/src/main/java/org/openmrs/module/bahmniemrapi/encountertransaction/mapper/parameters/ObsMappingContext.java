@@ -0,0 +1,57 @@
+package org.openmrs.module.bahmniemrapi.encountertransaction.mapper.parameters;
+
+import org.openmrs.Concept;
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.openmrs.util.LocaleUtility;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * What mapping a batch of observations would otherwise look up for every observation: the user's locale, the
+ * default locale and the coded answer concepts. Meant to live for one request.
+ */
+public class ObsMappingContext {
+    private final String usersLocaleSpecification;
+    private Locale usersLocale;
+    private Locale defaultLocale;
+    private boolean defaultLocaleResolved;
+    private final Map<String, Concept> conceptsByUuid = new HashMap<>();
+
+    public ObsMappingContext() {
+        User authenticatedUser = Context.getAuthenticatedUser();
+        usersLocaleSpecification = (authenticatedUser != null) ? authenticatedUser.getUserProperty("defaultLocale") : null;
+        if (usersLocaleSpecification != null) {
+            usersLocale = LocaleUtility.fromSpecification(usersLocaleSpecification);
+        }
+    }
+
+    public boolean hasUsersLocale() {
+        return usersLocaleSpecification != null;
+    }
+
+    public Locale getUsersLocale() {
+        return usersLocale;
+    }
+
+    public Locale getDefaultLocale() {
+        if (!defaultLocaleResolved) {
+            String defaultLocaleSpecification = Context.getAdministrationService().getGlobalProperty("default_locale");
+            defaultLocale = (defaultLocaleSpecification != null) ? LocaleUtility.fromSpecification(defaultLocaleSpecification) : null;
+            defaultLocaleResolved = true;
+        }
+        return defaultLocale;
+    }
+
+    public Concept getConcept(String uuid) {
+        return conceptsByUuid.get(uuid);
+    }
+
+    public void addConcept(Concept concept) {
+        if (concept != null) {
+            conceptsByUuid.put(concept.getUuid(), concept);
+        }
+    }
+}
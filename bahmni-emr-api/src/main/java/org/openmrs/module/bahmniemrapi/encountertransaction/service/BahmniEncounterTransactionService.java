@@ -1,15 +1,28 @@
 package org.openmrs.module.bahmniemrapi.encountertransaction.service;
 
 import org.openmrs.Patient;
+import org.openmrs.annotation.Authorized;
 import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BahmniEncounterSearchParameters;
 import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BahmniEncounterTransaction;
+import org.openmrs.module.bahmniemrapi.encountertransaction.contract.EncounterSaveStageMetrics;
 import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
 
 import java.util.Date;
+import java.util.List;
 
 public interface BahmniEncounterTransactionService {
     BahmniEncounterTransaction save(BahmniEncounterTransaction encounterTransaction);
+
+    /**
+     * With a minimal response only the identity of the saved encounter is returned, and the saved encounter is not
+     * mapped back unless the transaction carries diagnoses.
+     */
+    BahmniEncounterTransaction save(BahmniEncounterTransaction encounterTransaction, boolean minimalResponse);
     BahmniEncounterTransaction save(BahmniEncounterTransaction encounterTransaction, Patient patient, Date visitStartDate, Date visitEndDate);
+    BahmniEncounterTransaction save(BahmniEncounterTransaction encounterTransaction, Patient patient, Date visitStartDate, Date visitEndDate, boolean minimalResponse);
     EncounterTransaction find(BahmniEncounterSearchParameters encounterSearchParameters);
     void delete(BahmniEncounterTransaction bahmniEncounterTransaction);
+
+    @Authorized({"View Administration Functions"})
+    List<EncounterSaveStageMetrics> getSaveMetrics();
 }
@@ -0,0 +1,180 @@
+package org.openmrs.module.bahmniemrapi.encountertransaction.service;
+
+import org.apache.log4j.Logger;
+import org.openmrs.Patient;
+import org.openmrs.api.PatientService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BahmniEncounterTransaction;
+import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BulkEncounterTransactionResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Saves a batch of encounter transactions, such as the consultations an offline client has collected. Transactions
+ * are grouped by patient, keeping their order within a patient, and saved in chunks of
+ * {@link #CHUNK_SIZE_GLOBAL_PROPERTY} transactions, each chunk in one database transaction. Saves return just the
+ * identity of the encounter, and patient uuids are resolved to ids once for the whole batch. The session is flushed
+ * and cleared after every chunk, so a large batch does not keep every encounter it saved in memory.
+ * <p/>
+ * Concepts and visits are looked up by the encounter transaction mappers, not here, so their reuse is limited to one
+ * chunk: a concept or visit loaded by one save stays in the session for the rest of its chunk, and the next chunk looks
+ * it up again. Larger chunks trade memory for fewer of those lookups.
+ * <p/>
+ * When a transaction fails, the rest of its chunk is rolled back and reported as not saved. Later transactions of
+ * every patient with an unsaved transaction are not saved either, so that the encounters of a patient are never
+ * saved out of order. Other chunks go ahead.
+ */
+@Component
+public class BulkEncounterTransactionSaver {
+    public static final String CHUNK_SIZE_GLOBAL_PROPERTY = "bahmni.encounterTransaction.bulk.chunkSize";
+    public static final int DEFAULT_CHUNK_SIZE = 50;
+    private static final Logger log = Logger.getLogger(BulkEncounterTransactionSaver.class);
+
+    private BahmniEncounterTransactionService bahmniEncounterTransactionService;
+    private PatientService patientService;
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    public BulkEncounterTransactionSaver(BahmniEncounterTransactionService bahmniEncounterTransactionService, PatientService patientService,
+                                         @Qualifier("transactionManager") PlatformTransactionManager transactionManager) {
+        this.bahmniEncounterTransactionService = bahmniEncounterTransactionService;
+        this.patientService = patientService;
+        this.transactionManager = transactionManager;
+    }
+
+    public List<BulkEncounterTransactionResult> saveAll(List<BahmniEncounterTransaction> encounterTransactions) {
+        return saveAll(encounterTransactions, getChunkSize());
+    }
+
+    /**
+     * One result per transaction, in the order of the transactions.
+     */
+    public List<BulkEncounterTransactionResult> saveAll(List<BahmniEncounterTransaction> encounterTransactions, int chunkSize) {
+        BulkEncounterTransactionResult[] results = new BulkEncounterTransactionResult[encounterTransactions.size()];
+        List<Integer> saveOrder = groupByPatient(encounterTransactions);
+        Map<String, Integer> patientIds = new HashMap<>();
+        Set<String> haltedPatientUuids = new HashSet<>();
+        long startedAt = System.currentTimeMillis();
+        for (int start = 0; start < saveOrder.size(); start += chunkSize) {
+            List<Integer> chunk = saveOrder.subList(start, Math.min(start + chunkSize, saveOrder.size()));
+            saveChunk(encounterTransactions, chunk, patientIds, haltedPatientUuids, results);
+            Context.clearSession();
+        }
+        log.info("Saved a batch of " + encounterTransactions.size() + " encounter transactions in " + (System.currentTimeMillis() - startedAt) + " ms");
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Positions of the transactions, grouped by patient in the order the patients first appear.
+     */
+    private List<Integer> groupByPatient(List<BahmniEncounterTransaction> encounterTransactions) {
+        Map<String, List<Integer>> positionsByPatient = new LinkedHashMap<>();
+        for (int index = 0; index < encounterTransactions.size(); index++) {
+            String patientUuid = encounterTransactions.get(index).getPatientUuid();
+            List<Integer> positions = positionsByPatient.get(patientUuid);
+            if (positions == null) {
+                positions = new ArrayList<>();
+                positionsByPatient.put(patientUuid, positions);
+            }
+            positions.add(index);
+        }
+        List<Integer> saveOrder = new ArrayList<>(encounterTransactions.size());
+        for (List<Integer> positions : positionsByPatient.values()) {
+            saveOrder.addAll(positions);
+        }
+        return saveOrder;
+    }
+
+    private void saveChunk(List<BahmniEncounterTransaction> encounterTransactions, List<Integer> chunk, Map<String, Integer> patientIds,
+                              Set<String> haltedPatientUuids, BulkEncounterTransactionResult[] results) {
+        TransactionStatus transaction = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        Integer failedIndex = null;
+        for (Integer index : chunk) {
+            String patientUuid = encounterTransactions.get(index).getPatientUuid();
+            if (haltedPatientUuids.contains(patientUuid)) {
+                results[index] = BulkEncounterTransactionResult.notSaved(index, patientUuid, "An earlier encounter transaction of the patient was not saved");
+                continue;
+            }
+            Patient patient = getPatient(patientUuid, patientIds);
+            if (patient == null) {
+                results[index] = BulkEncounterTransactionResult.failed(index, patientUuid, "Patient " + patientUuid + " not found");
+                haltedPatientUuids.add(patientUuid);
+                continue;
+            }
+            try {
+                BahmniEncounterTransaction savedEncounterTransaction = bahmniEncounterTransactionService.save(encounterTransactions.get(index), patient, null, null, true);
+                results[index] = BulkEncounterTransactionResult.saved(index, savedEncounterTransaction);
+            } catch (RuntimeException e) {
+                log.error("Could not save encounter transaction " + index + " of patient " + patientUuid, e);
+                results[index] = BulkEncounterTransactionResult.failed(index, patientUuid, e.getMessage());
+                haltedPatientUuids.add(patientUuid);
+                failedIndex = index;
+                break;
+            }
+        }
+        if (failedIndex == null) {
+            try {
+                Context.flushSession();
+                transactionManager.commit(transaction);
+                return;
+            } catch (RuntimeException e) {
+                log.error("Could not commit a chunk of " + chunk.size() + " encounter transactions", e);
+                if (!transaction.isCompleted()) {
+                    transactionManager.rollback(transaction);
+                }
+                markNotSaved(encounterTransactions, chunk, haltedPatientUuids, results, "The chunk could not be committed: " + e.getMessage());
+                return;
+            }
+        }
+        transactionManager.rollback(transaction);
+        markNotSaved(encounterTransactions, chunk, haltedPatientUuids, results, "Rolled back with encounter transaction " + failedIndex + ", which failed");
+    }
+
+    private void markNotSaved(List<BahmniEncounterTransaction> encounterTransactions, List<Integer> chunk, Set<String> haltedPatientUuids,
+                              BulkEncounterTransactionResult[] results, String reason) {
+        for (Integer index : chunk) {
+            if (results[index] == null || results[index].getStatus() == BulkEncounterTransactionResult.Status.SAVED) {
+                String patientUuid = encounterTransactions.get(index).getPatientUuid();
+                results[index] = BulkEncounterTransactionResult.notSaved(index, patientUuid, reason);
+                haltedPatientUuids.add(patientUuid);
+            }
+        }
+    }
+
+    /**
+     * Only the ids are kept across chunks, as the session the patients were loaded in is cleared after every chunk.
+     */
+    private Patient getPatient(String patientUuid, Map<String, Integer> patientIds) {
+        if (!patientIds.containsKey(patientUuid)) {
+            Patient patient = patientUuid == null ? null : patientService.getPatientByUuid(patientUuid);
+            patientIds.put(patientUuid, patient == null ? null : patient.getPatientId());
+            return patient;
+        }
+        Integer patientId = patientIds.get(patientUuid);
+        return patientId == null ? null : patientService.getPatient(patientId);
+    }
+
+    private int getChunkSize() {
+        String chunkSize = Context.getAdministrationService().getGlobalProperty(CHUNK_SIZE_GLOBAL_PROPERTY);
+        try {
+            int size = chunkSize == null ? DEFAULT_CHUNK_SIZE : Integer.parseInt(chunkSize.trim());
+            return size > 0 ? size : DEFAULT_CHUNK_SIZE;
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring invalid value " + chunkSize + " of " + CHUNK_SIZE_GLOBAL_PROPERTY);
+            return DEFAULT_CHUNK_SIZE;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.openmrs.module.bahmniemrapi.groovy;
+
+import groovy.lang.GroovyClassLoader;
+import org.apache.log4j.Logger;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compiled groovy extension classes shared by all extension points, keyed by the canonical path of the script.
+ * A script is recompiled only when its modification time or size changes and its content hash differs too.
+ */
+public class GroovyScriptCache {
+    private static final Logger log = Logger.getLogger(GroovyScriptCache.class);
+    private static final GroovyScriptCache INSTANCE = new GroovyScriptCache();
+
+    private final ConcurrentMap<String, CompiledScript> compiledScripts = new ConcurrentHashMap<>();
+    private final AtomicLong compileCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public static GroovyScriptCache getInstance() {
+        return INSTANCE;
+    }
+
+    public Class getScriptClass(File file) throws IOException {
+        return getCompiledScript(file).scriptClass;
+    }
+
+    /**
+     * A new instance of the script class on every call, for extensions that keep state.
+     */
+    public <T> T newInstance(File file, Class<T> type) throws IOException, IllegalAccessException, InstantiationException {
+        return type.cast(getScriptClass(file).newInstance());
+    }
+
+    /**
+     * One instance per compiled version of the script, for stateless extensions.
+     */
+    public <T> T getSharedInstance(File file, Class<T> type) throws IOException, IllegalAccessException, InstantiationException {
+        CompiledScript compiledScript = getCompiledScript(file);
+        synchronized (compiledScript) {
+            if (compiledScript.sharedInstance == null) {
+                compiledScript.sharedInstance = compiledScript.scriptClass.newInstance();
+            }
+            return type.cast(compiledScript.sharedInstance);
+        }
+    }
+
+    public long getCompileCount() {
+        return compileCount.get();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public double getHitRate() {
+        long lookups = hitCount.get() + missCount.get();
+        return lookups == 0 ? 0 : (double) hitCount.get() / lookups;
+    }
+
+    public int size() {
+        return compiledScripts.size();
+    }
+
+    public void clear() {
+        compiledScripts.clear();
+    }
+
+    private CompiledScript getCompiledScript(File file) throws IOException {
+        if (!file.isFile()) {
+            throw new FileNotFoundException(file.getAbsolutePath());
+        }
+        String path = file.getCanonicalPath();
+        CompiledScript compiledScript = compiledScripts.get(path);
+        if (compiledScript != null && compiledScript.isCurrent(file)) {
+            hitCount.incrementAndGet();
+            return compiledScript;
+        }
+        synchronized (this) {
+            compiledScript = compiledScripts.get(path);
+            if (compiledScript != null && compiledScript.isCurrent(file)) {
+                hitCount.incrementAndGet();
+                return compiledScript;
+            }
+            missCount.incrementAndGet();
+            String contentHash = contentHash(file);
+            if (compiledScript != null && compiledScript.contentHash.equals(contentHash)) {
+                compiledScript = new CompiledScript(file, contentHash, compiledScript.scriptClass);
+            } else {
+                compiledScript = new CompiledScript(file, contentHash, compile(file));
+            }
+            compiledScripts.put(path, compiledScript);
+            return compiledScript;
+        }
+    }
+
+    private Class compile(File file) throws IOException {
+        log.info("Compiling groovy script " + file.getAbsolutePath());
+        compileCount.incrementAndGet();
+        return new GroovyClassLoader().parseClass(file);
+    }
+
+    private String contentHash(File file) throws IOException {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(Files.readAllBytes(file.toPath()));
+            return DatatypeConverter.printHexBinary(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class CompiledScript {
+        private final long lastModified;
+        private final long length;
+        private final String contentHash;
+        private final Class scriptClass;
+        private Object sharedInstance;
+
+        private CompiledScript(File file, String contentHash, Class scriptClass) {
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.contentHash = contentHash;
+            this.scriptClass = scriptClass;
+        }
+
+        private boolean isCurrent(File file) {
+            return lastModified == file.lastModified() && length == file.length();
+        }
+    }
+}
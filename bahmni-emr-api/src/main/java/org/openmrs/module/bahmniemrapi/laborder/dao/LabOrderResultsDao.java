@@ -0,0 +1,16 @@
+package org.openmrs.module.bahmniemrapi.laborder.dao;
+
+import org.openmrs.Obs;
+import org.openmrs.Order;
+import org.openmrs.Patient;
+import org.openmrs.Visit;
+
+import java.util.List;
+
+public interface LabOrderResultsDao {
+    List<Order> getOrders(Patient patient, List<Visit> visits, String orderTypeName);
+
+    List<Obs> getTopLevelObsForOrders(Patient patient, List<Visit> visits, String orderTypeName);
+
+    List<Obs> getObsForEncounterType(Patient patient, List<Visit> visits, String encounterTypeName);
+}
@@ -0,0 +1,72 @@
+package org.openmrs.module.bahmniemrapi.laborder.dao.impl;
+
+import org.apache.commons.collections.CollectionUtils;
+import org.hibernate.Criteria;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Restrictions;
+import org.openmrs.Obs;
+import org.openmrs.Order;
+import org.openmrs.Patient;
+import org.openmrs.Visit;
+import org.openmrs.module.bahmniemrapi.laborder.dao.LabOrderResultsDao;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public class LabOrderResultsDaoImpl implements LabOrderResultsDao {
+
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    @Override
+    public List<Order> getOrders(Patient patient, List<Visit> visits, String orderTypeName) {
+        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Order.class, "labOrder")
+                .createAlias("labOrder.orderType", "orderType")
+                .createAlias("labOrder.encounter", "encounter")
+                .add(Restrictions.eq("labOrder.patient", patient))
+                .add(Restrictions.eq("labOrder.voided", false))
+                .add(Restrictions.eq("orderType.name", orderTypeName));
+        restrictToEncounters(criteria, visits);
+        criteria.addOrder(org.hibernate.criterion.Order.asc("labOrder.orderId"));
+        return criteria.list();
+    }
+
+    @Override
+    public List<Obs> getTopLevelObsForOrders(Patient patient, List<Visit> visits, String orderTypeName) {
+        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Obs.class, "obs")
+                .createAlias("obs.order", "labOrder")
+                .createAlias("labOrder.orderType", "orderType")
+                .createAlias("obs.encounter", "encounter")
+                .add(Restrictions.eq("obs.person", patient))
+                .add(Restrictions.eq("obs.voided", false))
+                .add(Restrictions.isNull("obs.obsGroup"))
+                .add(Restrictions.eq("orderType.name", orderTypeName));
+        restrictToEncounters(criteria, visits);
+        criteria.addOrder(org.hibernate.criterion.Order.asc("obs.obsId"));
+        return criteria.list();
+    }
+
+    @Override
+    public List<Obs> getObsForEncounterType(Patient patient, List<Visit> visits, String encounterTypeName) {
+        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Obs.class, "obs")
+                .createAlias("obs.encounter", "encounter")
+                .createAlias("encounter.encounterType", "encounterType")
+                .add(Restrictions.eq("obs.person", patient))
+                .add(Restrictions.eq("obs.voided", false))
+                .add(Restrictions.eq("encounterType.name", encounterTypeName));
+        restrictToEncounters(criteria, visits);
+        criteria.addOrder(org.hibernate.criterion.Order.asc("obs.obsId"));
+        return criteria.list();
+    }
+
+    private void restrictToEncounters(Criteria criteria, List<Visit> visits) {
+        criteria.add(Restrictions.eq("encounter.voided", false));
+        if (CollectionUtils.isNotEmpty(visits)) {
+            criteria.add(Restrictions.in("encounter.visit", visits));
+        }
+        criteria.addOrder(org.hibernate.criterion.Order.asc("encounter.encounterDatetime"));
+        criteria.addOrder(org.hibernate.criterion.Order.asc("encounter.encounterId"));
+    }
+}
@@ -7,19 +7,23 @@ import org.openmrs.Order;
 import org.openmrs.Patient;
 import org.openmrs.Provider;
 import org.openmrs.Visit;
-import org.openmrs.api.EncounterService;
 import org.openmrs.module.bahmniemrapi.accessionnote.contract.AccessionNote;
 import org.openmrs.module.bahmniemrapi.laborder.contract.LabOrderResult;
 import org.openmrs.module.bahmniemrapi.laborder.contract.LabOrderResults;
-import org.openmrs.module.emrapi.encounter.EncounterTransactionMapper;
+import org.openmrs.module.bahmniemrapi.laborder.dao.LabOrderResultsDao;
+import org.openmrs.module.emrapi.encounter.ConceptMapper;
+import org.openmrs.module.emrapi.encounter.ObservationMapper;
 import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -37,44 +41,34 @@ public class LabOrderResultsServiceImpl implements LabOrderResultsService {
     public static final String LAB_ORDER_TYPE = "Lab Order";
 
     @Autowired
-    private EncounterTransactionMapper encounterTransactionMapper;
+    private LabOrderResultsDao labOrderResultsDao;
 
     @Autowired
-    private EncounterService encounterService;
+    private ObservationMapper observationMapper;
+
+    private ConceptMapper conceptMapper = new ConceptMapper();
 
     @Override
     public LabOrderResults getAll(Patient patient, List<Visit> visits, int numberOfAccessions) {
-        List<EncounterTransaction.Order> testOrders = new ArrayList<>();
-        List<EncounterTransaction.Observation> observations = new ArrayList<>();
-        Map<String, Encounter> encounterTestOrderUuidMap = new HashMap<>();
-        Map<String, Encounter> encounterObservationMap = new HashMap<>();
-        Map<String, List<AccessionNote>> encounterToAccessionNotesMap = new HashMap<>();
-
-        List<Encounter> encounters = encounterService.getEncounters(patient, null, null, null, null, null, null, null, visits, false);
-
-        int totalEncounters = encounters.size();
-        int currentAccession = 0;
-        for (int count = totalEncounters - 1; count >= 0; count--) {
-            Encounter encounter = encounters.get(count);
-            if (currentAccession >= numberOfAccessions) {
-                break;
-            }
+        List<Order> labOrders = latestAccessions(labOrderResultsDao.getOrders(patient, visits, LAB_ORDER_TYPE), numberOfAccessions);
+        List<LabOrderResult> labOrderResults = getLabOrderResults(patient, visits, labOrders, null, null, null);
+        return new LabOrderResults(filterLabOrderResults(labOrderResults));
+    }
 
-            EncounterTransaction encounterTransaction = encounterTransactionMapper.map(encounter, false);
-            List<EncounterTransaction.Order> existingTestOrders = filterTestOrders(encounterTransaction, encounter, encounterTestOrderUuidMap, null, null, null);
-            testOrders.addAll(existingTestOrders);
-            List<EncounterTransaction.Observation> nonVoidedObservations = filterObservations(encounterTransaction.getObservations(), null, null);
-            observations.addAll(nonVoidedObservations);
-            createAccessionNotesByEncounter(encounterToAccessionNotesMap, encounters, encounter);
-            mapObservationsWithEncounter(nonVoidedObservations, encounter, encounterObservationMap);
-            if (existingTestOrders.size() > 0) {
-                currentAccession++;
+    private List<Order> latestAccessions(List<Order> labOrders, int numberOfAccessions) {
+        List<Order> latestOrders = new ArrayList<>();
+        Set<Encounter> accessions = new HashSet<>();
+        for (int count = labOrders.size() - 1; count >= 0; count--) {
+            Order labOrder = labOrders.get(count);
+            if (!accessions.contains(labOrder.getEncounter())) {
+                if (accessions.size() >= numberOfAccessions) {
+                    break;
+                }
+                accessions.add(labOrder.getEncounter());
             }
+            latestOrders.add(labOrder);
         }
-
-        List<LabOrderResult> labOrderResults = mapOrdersWithObs(testOrders, observations, encounterTestOrderUuidMap, encounterObservationMap, encounterToAccessionNotesMap);
-
-        return new LabOrderResults(filterLabOrderResults(labOrderResults));
+        return latestOrders;
     }
 
     private List<LabOrderResult> filterLabOrderResults(List<LabOrderResult> labOrderResults) {
@@ -92,50 +86,86 @@ public class LabOrderResultsServiceImpl implements LabOrderResultsService {
     @Override
     public List<LabOrderResult> getAllForConcepts(Patient patient, Collection<String> concepts, List<Visit> visits, Date startDate, Date endDate) {
         if (concepts != null && !concepts.isEmpty()) {
+            List<Order> labOrders = labOrderResultsDao.getOrders(patient, visits, LAB_ORDER_TYPE);
+            return getLabOrderResults(patient, visits, labOrders, concepts, startDate, endDate);
+        }
+        return new ArrayList<>();
+    }
 
-            List<EncounterTransaction.Order> testOrders = new ArrayList<>();
-            List<EncounterTransaction.Observation> observations = new ArrayList<>();
-            Map<String, Encounter> encounterTestOrderUuidMap = new HashMap<>();
-            Map<String, Encounter> encounterObservationMap = new HashMap<>();
-            Map<String, List<AccessionNote>> encounterToAccessionNotesMap = new HashMap<>();
+    private List<LabOrderResult> getLabOrderResults(Patient patient, List<Visit> visits, List<Order> labOrders, Collection<String> concepts, Date startDate, Date endDate) {
+        Map<String, Encounter> encounterTestOrderUuidMap = new HashMap<>();
+        List<EncounterTransaction.Order> allTestOrders = new ArrayList<>();
+        for (Order labOrder : labOrders) {
+            allTestOrders.add(mapOrder(labOrder));
+            encounterTestOrderUuidMap.put(labOrder.getUuid(), labOrder.getEncounter());
+        }
+        List<EncounterTransaction.Order> testOrders = filterTestOrders(allTestOrders, concepts, startDate, endDate);
 
-            List<Encounter> encounters = encounterService.getEncounters(patient, null, null, null, null, null, null, null, visits, false);
-            for (Encounter encounter : encounters) {
-                EncounterTransaction encounterTransaction = encounterTransactionMapper.map(encounter, false);
-                testOrders.addAll(filterTestOrders(encounterTransaction, encounter, encounterTestOrderUuidMap, concepts, startDate, endDate));
-                List<EncounterTransaction.Observation> filteredObservations = filterObservations(encounterTransaction.getObservations(), startDate, endDate);
-                observations.addAll(filteredObservations);
-                createAccessionNotesByEncounter(encounterToAccessionNotesMap, encounters, encounter);
-                mapObservationsWithEncounter(filteredObservations, encounter, encounterObservationMap);
+        Set<String> testOrderUuids = new HashSet<>();
+        Set<String> accessionUuids = new HashSet<>();
+        for (EncounterTransaction.Order testOrder : testOrders) {
+            testOrderUuids.add(testOrder.getUuid());
+            accessionUuids.add(encounterTestOrderUuidMap.get(testOrder.getUuid()).getUuid());
+        }
+
+        List<EncounterTransaction.Observation> observations = new ArrayList<>();
+        Map<String, Encounter> encounterObservationMap = new HashMap<>();
+        for (Obs resultObs : labOrderResultsDao.getTopLevelObsForOrders(patient, visits, LAB_ORDER_TYPE)) {
+            if (testOrderUuids.contains(resultObs.getOrder().getUuid()) && isWithin(resultObs.getObsDatetime(), startDate, endDate)) {
+                EncounterTransaction.Observation observation = observationMapper.map(resultObs);
+                observations.add(observation);
+                mapObservationsWithEncounter(Arrays.asList(observation), resultObs.getEncounter(), encounterObservationMap);
             }
-            return mapOrdersWithObs(testOrders, observations, encounterTestOrderUuidMap, encounterObservationMap, encounterToAccessionNotesMap);
         }
-        return new ArrayList<>();
+
+        List<Obs> validationNotes = labOrderResultsDao.getObsForEncounterType(patient, visits, VALIDATION_NOTES_ENCOUNTER_TYPE);
+        Map<String, List<AccessionNote>> encounterToAccessionNotesMap = createAccessionNotesByEncounter(validationNotes, accessionUuids);
+        return mapOrdersWithObs(testOrders, observations, encounterTestOrderUuidMap, encounterObservationMap, encounterToAccessionNotesMap);
     }
 
-    private void createAccessionNotesByEncounter(Map<String, List<AccessionNote>> encounterToAccessionNotesMap, List<Encounter> encounters, Encounter encounter) {
-        List<AccessionNote> accessionNotes = getAccessionNotesFor(encounter, encounters);
-        if (accessionNotes.size() != 0) {
-            List<AccessionNote> existingAccessionNotes = encounterToAccessionNotesMap.get(encounter.getUuid());
-            if (existingAccessionNotes != null) {
-                accessionNotes.addAll(existingAccessionNotes);
+    private EncounterTransaction.Order mapOrder(Order labOrder) {
+        EncounterTransaction.Order testOrder = new EncounterTransaction.Order();
+        testOrder.setUuid(labOrder.getUuid());
+        testOrder.setConcept(conceptMapper.map(labOrder.getConcept()));
+        testOrder.setOrderType(labOrder.getOrderType().getName());
+        testOrder.setAction(labOrder.getAction().toString());
+        testOrder.setDateCreated(labOrder.getDateCreated());
+        testOrder.setDateStopped(labOrder.getDateStopped());
+        return testOrder;
+    }
+
+    /**
+     * Accession notes of an order encounter come from the first validation notes encounter that refers to it.
+     */
+    private Map<String, List<AccessionNote>> createAccessionNotesByEncounter(List<Obs> validationNotes, Set<String> accessionUuids) {
+        Map<Encounter, List<Obs>> validationNotesByEncounter = new LinkedHashMap<>();
+        for (Obs validationNote : validationNotes) {
+            List<Obs> encounterNotes = validationNotesByEncounter.get(validationNote.getEncounter());
+            if (encounterNotes == null) {
+                encounterNotes = new ArrayList<>();
+                validationNotesByEncounter.put(validationNote.getEncounter(), encounterNotes);
             }
-            encounterToAccessionNotesMap.put(encounter.getUuid(), accessionNotes);
+            encounterNotes.add(validationNote);
         }
-    }
 
-    private List<AccessionNote> getAccessionNotesFor(Encounter orderEncounter, List<Encounter> encounters) {
-        for (Encounter encounter : encounters) {
-            if (VALIDATION_NOTES_ENCOUNTER_TYPE.equals(encounter.getEncounterType().getName()) && hasValidationNotesFor(orderEncounter.getUuid(), encounter)) {
-                return createAccessionNotesFor(orderEncounter.getUuid(), encounter);
+        Map<String, List<AccessionNote>> encounterToAccessionNotesMap = new HashMap<>();
+        for (Map.Entry<Encounter, List<Obs>> encounterNotes : validationNotesByEncounter.entrySet()) {
+            for (Obs validationNote : encounterNotes.getValue()) {
+                String accessionUuid = validationNote.getValueText();
+                if (accessionUuids.contains(accessionUuid) && !encounterToAccessionNotesMap.containsKey(accessionUuid)) {
+                    List<AccessionNote> accessionNotes = createAccessionNotesFor(accessionUuid, encounterNotes.getKey(), encounterNotes.getValue());
+                    if (!accessionNotes.isEmpty()) {
+                        encounterToAccessionNotesMap.put(accessionUuid, accessionNotes);
+                    }
+                }
             }
         }
-        return new ArrayList<>();
+        return encounterToAccessionNotesMap;
     }
 
-    private List<AccessionNote> createAccessionNotesFor(String encounterUuid, Encounter accessionNotesEncounter) {
+    private List<AccessionNote> createAccessionNotesFor(String encounterUuid, Encounter accessionNotesEncounter, List<Obs> observations) {
         List<AccessionNote> accessionNotes = new ArrayList<>();
-        for (Obs observation : accessionNotesEncounter.getAllObs()) {
+        for (Obs observation : observations) {
             if (!encounterUuid.equals(observation.getValueText())) {
                 AccessionNote accessionNote = new AccessionNote();
                 accessionNote.setAccessionUuid(encounterUuid);
@@ -152,36 +182,19 @@ public class LabOrderResultsServiceImpl implements LabOrderResultsService {
         return accessionNotes;
     }
 
-    private boolean hasValidationNotesFor(String encounterUuid, Encounter encounter) {
-        Set<Obs> observations = encounter.getAllObs();
-        for (Obs observation : observations) {
-            if (encounterUuid.equals(observation.getValueText())) return true;
-        }
-        return false;
-    }
-
-    List<EncounterTransaction.Order> filterTestOrders(EncounterTransaction encounterTransaction, Encounter encounter, Map<String, Encounter> encounterTestOrderUuidMap, Collection<String> concepts, Date startDate, Date endDate) {
+    List<EncounterTransaction.Order> filterTestOrders(List<EncounterTransaction.Order> testOrders, Collection<String> concepts, Date startDate, Date endDate) {
         List<EncounterTransaction.Order> orders = new ArrayList<>();
-        for (EncounterTransaction.Order order : encounterTransaction.getOrders()) {
+        for (EncounterTransaction.Order order : testOrders) {
             boolean conceptFilter = (concepts == null) || concepts.contains(order.getConcept().getName());
-            if ((conceptFilter && LAB_ORDER_TYPE.equals(order.getOrderType())) && !((startDate != null && order.getDateCreated().before(startDate))
-                    || (endDate != null && order.getDateCreated().after(endDate)))) {
-                encounterTestOrderUuidMap.put(order.getUuid(), encounter);
+            if ((conceptFilter && LAB_ORDER_TYPE.equals(order.getOrderType())) && isWithin(order.getDateCreated(), startDate, endDate)) {
                 orders.add(order);
             }
         }
         return orders;
     }
 
-    private List<EncounterTransaction.Observation> filterObservations(List<EncounterTransaction.Observation> observations, Date startDate, Date endDate) {
-        List<EncounterTransaction.Observation> filteredObservations = new ArrayList<>();
-        for (EncounterTransaction.Observation observation : observations) {
-            if (!observation.getVoided() && !((startDate != null && observation.getObservationDateTime().before(startDate))
-                    || (endDate != null && observation.getObservationDateTime().after(endDate)))) {
-                filteredObservations.add(observation);
-            }
-        }
-        return filteredObservations;
+    private boolean isWithin(Date date, Date startDate, Date endDate) {
+        return !((startDate != null && date.before(startDate)) || (endDate != null && date.after(endDate)));
     }
 
     private void mapObservationsWithEncounter(List<EncounterTransaction.Observation> observations, Encounter encounter, Map<String, Encounter> encounterObservationMap) {
@@ -195,9 +208,10 @@ public class LabOrderResultsServiceImpl implements LabOrderResultsService {
 
     List<LabOrderResult> mapOrdersWithObs(List<EncounterTransaction.Order> testOrders, List<EncounterTransaction.Observation> observations, Map<String, Encounter> encounterTestOrderMap, Map<String, Encounter> encounterObservationMap, Map<String, List<AccessionNote>> encounterToAccessionNotesMap) {
         List<LabOrderResult> labOrderResults = new ArrayList<>();
+        Map<String, List<EncounterTransaction.Observation>> obsGroupsByOrder = groupByOrder(observations);
         for (EncounterTransaction.Order testOrder : testOrders) {
-            List<EncounterTransaction.Observation> obsGroups = findObsGroup(observations, testOrder);
-            if (!obsGroups.isEmpty()) {
+            List<EncounterTransaction.Observation> obsGroups = obsGroupsByOrder.get(testOrder.getUuid());
+            if (obsGroups != null) {
                 for (EncounterTransaction.Observation obsGroup : obsGroups) {
                     labOrderResults.addAll(mapObs(obsGroup, testOrder, encounterTestOrderMap, encounterObservationMap, encounterToAccessionNotesMap));
                 }
@@ -285,13 +299,18 @@ public class LabOrderResultsServiceImpl implements LabOrderResultsService {
         return null;
     }
 
-    private List<EncounterTransaction.Observation> findObsGroup(List<EncounterTransaction.Observation> observations, EncounterTransaction.Order testOrder) {
-        List<EncounterTransaction.Observation> obsGroups = new ArrayList<>();
+    private Map<String, List<EncounterTransaction.Observation>> groupByOrder(List<EncounterTransaction.Observation> observations) {
+        Map<String, List<EncounterTransaction.Observation>> obsGroupsByOrder = new HashMap<>();
         for (EncounterTransaction.Observation observation : observations) {
-            if (observation.getOrderUuid() != null && observation.getOrderUuid().equals(testOrder.getUuid())) {
+            if (observation.getOrderUuid() != null) {
+                List<EncounterTransaction.Observation> obsGroups = obsGroupsByOrder.get(observation.getOrderUuid());
+                if (obsGroups == null) {
+                    obsGroups = new ArrayList<>();
+                    obsGroupsByOrder.put(observation.getOrderUuid(), obsGroups);
+                }
                 obsGroups.add(observation);
             }
         }
-        return obsGroups;
+        return obsGroupsByOrder;
     }
 }
@@ -0,0 +1,48 @@
+package org.openmrs.module.bahmniemrapi.metrics;
+
+import java.util.Arrays;
+
+/**
+ * The latencies of the most recent {@link #SAMPLE_SIZE} calls, with the largest latency and the number of calls seen
+ * overall. Not thread safe, callers guard it with their own lock.
+ */
+public class LatencyReservoir {
+    public static final int SAMPLE_SIZE = 1024;
+
+    private final long[] latencies = new long[SAMPLE_SIZE];
+    private long count;
+    private long max;
+
+    public void record(long latency) {
+        latencies[(int) (count % SAMPLE_SIZE)] = latency;
+        count++;
+        max = Math.max(max, latency);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * The given percentiles of the sampled latencies, in the same order, 0 for each when nothing was recorded.
+     */
+    public long[] percentiles(int... percentiles) {
+        long[] samples = Arrays.copyOf(latencies, (int) Math.min(count, SAMPLE_SIZE));
+        Arrays.sort(samples);
+        long[] values = new long[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            values[i] = percentile(samples, percentiles[i]);
+        }
+        return values;
+    }
+
+    private long percentile(long[] sortedSamples, int percentile) {
+        if (sortedSamples.length == 0) return 0;
+        int index = (int) Math.ceil(percentile / 100.0 * sortedSamples.length) - 1;
+        return sortedSamples[Math.max(index, 0)];
+    }
+}
@@ -274,6 +274,32 @@ public class BahmniEncounterTransactionServiceImplIT extends BaseIntegrationTest
         assertEquals("OPD", bahmniEncounterTransaction.getVisitType());
     }
 
+    @Test
+    public void shouldReturnOnlyTheIdentityOfTheSavedEncounterForAMinimalResponse() {
+        String obsUuid = UUID.randomUUID().toString();
+        String visitUuid = "4e663d66-6b78-11e0-93c3-18a905e044dc";
+        String patientUuid = "da7f524f-27ce-4bb2-86d6-6d1d05312bd5";
+
+        BahmniObservation bahmniObservation = createBahmniObservation(obsUuid, "obs-value",
+                createConcept("96408258-000b-424e-af1a-403919332938", "FAVORITE FOOD, NON-CODED"), new Date(), null);
+        BahmniEncounterTransaction bahmniEncounterTransaction = new BahmniEncounterTransaction();
+        bahmniEncounterTransaction.addObservation(bahmniObservation);
+        bahmniEncounterTransaction.setVisitTypeUuid("c0c579b0-8e59-401d-8a4a-976a0b183593");
+        bahmniEncounterTransaction.setEncounterTypeUuid("07000be2-26b6-4cce-8b40-866d8435b613");
+        bahmniEncounterTransaction.setPatientUuid(patientUuid);
+        bahmniEncounterTransaction.setVisitUuid(visitUuid);
+
+        BahmniEncounterTransaction encounterTransaction = bahmniEncounterTransactionService.save(bahmniEncounterTransaction, true);
+
+        assertNotNull(encounterTransaction.getEncounterUuid());
+        assertEquals(visitUuid, encounterTransaction.getVisitUuid());
+        assertEquals(patientUuid, encounterTransaction.getPatientUuid());
+        assertEquals(0, encounterTransaction.getObservations().size());
+        Encounter encounter = encounterService.getEncounterByUuid(encounterTransaction.getEncounterUuid());
+        assertEquals(obsUuid, encounter.getObsAtTopLevel(false).iterator().next().getUuid());
+        assertTrue(bahmniEncounterTransactionService.getSaveMetrics().size() > 0);
+    }
+
     @Test
     public void shouldCreateANewVisitIfNoActiveVisit() {
         Date obsDate = new Date();
@@ -0,0 +1,35 @@
+package org.openmrs.module.bahmniemrapi.encountertransaction.impl;
+
+import org.junit.Test;
+import org.openmrs.module.bahmniemrapi.encountertransaction.contract.EncounterSaveStageMetrics;
+
+import static org.junit.Assert.assertEquals;
+
+public class SaveStageMetricsTest {
+
+    @Test
+    public void shouldSummariseCallsFailuresAndLatencies() throws Exception {
+        SaveStageMetrics saveStageMetrics = new SaveStageMetrics();
+        for (int latency = 1; latency <= 100; latency++) {
+            saveStageMetrics.record(latency, false);
+        }
+        saveStageMetrics.record(500, true);
+
+        EncounterSaveStageMetrics response = saveStageMetrics.toResponse("preSave:OrderSaveCommandImpl");
+
+        assertEquals("preSave:OrderSaveCommandImpl", response.getStage());
+        assertEquals(101, response.getCallCount());
+        assertEquals(1, response.getErrorCount());
+        assertEquals(51, response.getP50LatencyInMicros());
+        assertEquals(100, response.getP99LatencyInMicros());
+        assertEquals(500, response.getMaxLatencyInMicros());
+    }
+
+    @Test
+    public void shouldReportZeroLatencyWhenThereAreNoCalls() throws Exception {
+        EncounterSaveStageMetrics response = new SaveStageMetrics().toResponse("save");
+
+        assertEquals(0, response.getCallCount());
+        assertEquals(0, response.getP50LatencyInMicros());
+    }
+}
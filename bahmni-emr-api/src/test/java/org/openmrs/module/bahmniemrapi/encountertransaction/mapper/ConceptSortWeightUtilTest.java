@@ -24,6 +24,7 @@ public class ConceptSortWeightUtilTest {
     public void setUp() throws Exception {
         mockStatic(LocaleUtility.class);
         when(LocaleUtility.getDefaultLocale()).thenReturn(Locale.ENGLISH);
+        ConceptSortWeightUtil.clearIndexes();
     }
 
     @Test
@@ -54,4 +55,50 @@ public class ConceptSortWeightUtilTest {
         Assert.assertEquals(0, ConceptSortWeightUtil.getSortWeightFor("goobe", Arrays.asList(c1, c2)));
     }
 
+    @Test
+    public void shouldMoveOnByTheDirectMembersOnlyAfterASetWithoutTheName() {
+        Concept c1 = new ConceptBuilder().withName("c1").withDataType("N/A").build();
+        Concept c11 = new ConceptBuilder().withName("c11").withDataType("N/A").build();
+        Concept c111 = new ConceptBuilder().withName("c111").withDataType("N/A").build();
+        Concept c112 = new ConceptBuilder().withName("c112").withDataType("N/A").build();
+        Concept c12 = new ConceptBuilder().withName("c12").withDataType("N/A").build();
+        c11.addSetMember(c111);
+        c11.addSetMember(c112);
+        c1.addSetMember(c11);
+        c1.addSetMember(c12);
+        Concept c2 = new ConceptBuilder().withName("c2").withDataType("N/A").build();
+
+        Assert.assertEquals(3, ConceptSortWeightUtil.getSortWeightFor("c111", Arrays.asList(c1, c2)));
+        Assert.assertEquals(4, ConceptSortWeightUtil.getSortWeightFor("c112", Arrays.asList(c1, c2)));
+        Assert.assertEquals(5, ConceptSortWeightUtil.getSortWeightFor("c12", Arrays.asList(c1, c2)));
+        Assert.assertEquals(4, ConceptSortWeightUtil.getSortWeightFor("c2", Arrays.asList(c1, c2)));
+    }
+
+    @Test
+    public void shouldUseTheFirstConceptWithTheNameIgnoringCase() {
+        Concept c1 = new ConceptBuilder().withName("c1").withDataType("N/A").build();
+        Concept pulse = new ConceptBuilder().withName("Pulse").withDataType("N/A").build();
+        c1.addSetMember(pulse);
+        Concept c2 = new ConceptBuilder().withName("PULSE").withDataType("N/A").build();
+
+        Assert.assertEquals(2, ConceptSortWeightUtil.getSortWeightFor("pulse", Arrays.asList(c1, c2)));
+        Assert.assertEquals(0, ConceptSortWeightUtil.getSortWeightFor(null, Arrays.asList(c1, c2)));
+    }
+
+    @Test
+    public void shouldReuseTheIndexOfSavedRootConceptsUntilTheIndexesAreCleared() {
+        Concept c1 = new ConceptBuilder().withName("c1").withDataType("N/A").build();
+        c1.setId(1);
+        Concept c11 = new ConceptBuilder().withName("c11").withDataType("N/A").build();
+        c1.addSetMember(c11);
+
+        Assert.assertEquals(2, ConceptSortWeightUtil.getSortWeightFor("c11", Arrays.asList(c1)));
+        c11.getName().setName("renamed");
+        Assert.assertEquals(2, ConceptSortWeightUtil.getSortWeightFor("c11", Arrays.asList(c1)));
+
+        ConceptSortWeightUtil.clearIndexes();
+
+        Assert.assertEquals(0, ConceptSortWeightUtil.getSortWeightFor("c11", Arrays.asList(c1)));
+        Assert.assertEquals(2, ConceptSortWeightUtil.getSortWeightFor("renamed", Arrays.asList(c1)));
+    }
 }
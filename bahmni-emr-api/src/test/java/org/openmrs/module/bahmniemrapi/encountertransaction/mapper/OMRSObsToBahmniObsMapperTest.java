@@ -5,6 +5,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.openmrs.Concept;
+import org.openmrs.ConceptName;
 import org.openmrs.Encounter;
 import org.openmrs.Obs;
 import org.openmrs.Person;
@@ -17,12 +18,15 @@ import org.openmrs.module.bahmniemrapi.builder.ObsBuilder;
 import org.openmrs.module.bahmniemrapi.builder.PersonBuilder;
 import org.openmrs.module.bahmniemrapi.builder.VisitBuilder;
 import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BahmniObservation;
+import org.openmrs.module.bahmniemrapi.encountertransaction.dao.ObsMappingDao;
 import org.openmrs.module.emrapi.encounter.ConceptMapper;
 import org.openmrs.module.emrapi.encounter.ObservationMapper;
 import org.openmrs.module.emrapi.encounter.mapper.DrugMapper1_12;
 import org.openmrs.module.emrapi.encounter.mapper.UserMapper;
 import org.openmrs.module.emrapi.encounter.matcher.ObservationTypeMatcher;
+import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
 import org.openmrs.test.TestUtil;
+import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.util.LocaleUtility;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
@@ -31,6 +35,7 @@ import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Locale;
 
 import static java.util.Arrays.asList;
@@ -38,6 +43,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.when;
@@ -51,6 +58,8 @@ public class OMRSObsToBahmniObsMapperTest {
     private ObservationTypeMatcher observationTypeMatcher;
     @Mock
     private User authenticatedUser;
+    @Mock
+    private ObsMappingDao obsMappingDao;
     private ObservationMapper observationMapper;
 
     @Before
@@ -121,6 +130,40 @@ public class OMRSObsToBahmniObsMapperTest {
         assertEquals(TestUtil.createDateTime("2010-01-02"), parentObservation.getVisitStartDateTime());
     }
 
+    @Test
+    public void shouldPrefetchEncountersAndCodedAnswersOnceForTheWholeList() throws Exception {
+        Date date = new SimpleDateFormat("MMMM d, yyyy", Locale.ENGLISH).parse("January 2, 2010");
+        Person person = new PersonBuilder().withUUID("puuid").withPersonName("testPersonName").build();
+        User user = new User(person);
+        Visit visit = new VisitBuilder().withPerson(person).withUUID("vuuid").withStartDatetime(date).build();
+        Encounter encounter = new EncounterBuilder().withVisit(visit).withPatient(person).withUUID("euuid").withDatetime(date).build();
+        encounter.setEncounterId(10);
+
+        Concept answer = new ConceptBuilder().withName("Yes").withDataType("cdatatype", "hl7abbrev").withUUID("answer-uuid").withClass("").build();
+        answer.setConceptId(20);
+        answer.setFullySpecifiedName(new ConceptName("Oui", Locale.FRENCH));
+        Concept question = new ConceptBuilder().withName("Smoker").withCodedDataType().withUUID("question-uuid").withClass("").build();
+        question.setConceptId(21);
+        Obs firstObs = new ObsBuilder().withPerson(person).withEncounter(encounter).withConcept(question).withValue(answer).withDatetime(date).withCreator(user).build();
+        Obs secondObs = new ObsBuilder().withPerson(person).withEncounter(encounter).withConcept(question).withValue(answer).withDatetime(date).withCreator(user).build();
+
+        when(authenticatedUser.getUserProperty(OpenmrsConstants.USER_PROPERTY_DEFAULT_LOCALE)).thenReturn("fr");
+        when(LocaleUtility.fromSpecification("fr")).thenReturn(Locale.FRENCH);
+        when(obsMappingDao.getConceptsWithNames(new HashSet<>(asList(20, 21)))).thenReturn(asList(answer, question));
+
+        Collection<BahmniObservation> observations = new OMRSObsToBahmniObsMapper(new ETObsToBahmniObsMapper(null), observationTypeMatcher, observationMapper, obsMappingDao)
+                .map(asList(firstObs, secondObs), null);
+
+        assertEquals(2, observations.size());
+        for (BahmniObservation observation : observations) {
+            assertEquals("Oui", ((EncounterTransaction.Concept) observation.getValue()).getShortName());
+            assertEquals("euuid", observation.getEncounterUuid());
+        }
+        verify(obsMappingDao, times(1)).getEncountersWithVisitAndProviders(new HashSet<>(asList(10)));
+        verify(obsMappingDao, times(1)).getConceptsWithNames(new HashSet<>(asList(20, 21)));
+        verify(authenticatedUser, times(1)).getUserProperty(OpenmrsConstants.USER_PROPERTY_DEFAULT_LOCALE);
+    }
+
     private BahmniObservation getObservation(String uuid, Collection<BahmniObservation> childObservations) {
         for (BahmniObservation o : childObservations) {
             if (o.getUuid().equals(uuid)) {
@@ -0,0 +1,139 @@
+package org.openmrs.module.bahmniemrapi.encountertransaction.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.openmrs.Patient;
+import org.openmrs.api.PatientService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BahmniEncounterTransaction;
+import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BulkEncounterTransactionResult;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Context.class)
+public class BulkEncounterTransactionSaverTest {
+    @Mock
+    private BahmniEncounterTransactionService bahmniEncounterTransactionService;
+    @Mock
+    private PatientService patientService;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private BulkEncounterTransactionSaver bulkEncounterTransactionSaver;
+    private Patient patientA;
+    private Patient patientB;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        PowerMockito.mockStatic(Context.class);
+        when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenReturn(mock(TransactionStatus.class));
+        patientA = new Patient(1);
+        patientB = new Patient(2);
+        when(patientService.getPatientByUuid("patientA")).thenReturn(patientA);
+        when(patientService.getPatientByUuid("patientB")).thenReturn(patientB);
+        when(patientService.getPatient(1)).thenReturn(patientA);
+        when(patientService.getPatient(2)).thenReturn(patientB);
+        bulkEncounterTransactionSaver = new BulkEncounterTransactionSaver(bahmniEncounterTransactionService, patientService, transactionManager);
+    }
+
+    @Test
+    public void shouldSaveTheTransactionsOfAPatientTogetherAndLookThePatientUpOnce() {
+        BahmniEncounterTransaction first = encounterTransaction("patientA");
+        BahmniEncounterTransaction second = encounterTransaction("patientB");
+        BahmniEncounterTransaction third = encounterTransaction("patientA");
+        saves(first, "encounter1");
+        saves(second, "encounter2");
+        saves(third, "encounter3");
+
+        List<BulkEncounterTransactionResult> results = bulkEncounterTransactionSaver.saveAll(Arrays.asList(first, second, third), 2);
+
+        InOrder inOrder = inOrder(bahmniEncounterTransactionService);
+        inOrder.verify(bahmniEncounterTransactionService).save(same(first), eq(patientA), any(Date.class), any(Date.class), eq(true));
+        inOrder.verify(bahmniEncounterTransactionService).save(same(third), eq(patientA), any(Date.class), any(Date.class), eq(true));
+        inOrder.verify(bahmniEncounterTransactionService).save(same(second), eq(patientB), any(Date.class), any(Date.class), eq(true));
+        verify(patientService, times(1)).getPatientByUuid("patientA");
+        verify(patientService).getPatient(1);
+        verify(transactionManager, times(2)).commit(any(TransactionStatus.class));
+        PowerMockito.verifyStatic(times(2));
+        Context.flushSession();
+        PowerMockito.verifyStatic(times(2));
+        Context.clearSession();
+        assertEquals("encounter1", results.get(0).getEncounterUuid());
+        assertEquals("encounter2", results.get(1).getEncounterUuid());
+        assertEquals("encounter3", results.get(2).getEncounterUuid());
+        assertEquals(BulkEncounterTransactionResult.Status.SAVED, results.get(1).getStatus());
+    }
+
+    @Test
+    public void shouldRollTheChunkBackWhenATransactionFailsAndHoldBackLaterTransactionsOfItsPatients() {
+        BahmniEncounterTransaction first = encounterTransaction("patientA");
+        BahmniEncounterTransaction second = encounterTransaction("patientB");
+        BahmniEncounterTransaction third = encounterTransaction("patientA");
+        saves(first, "encounter1");
+        when(bahmniEncounterTransactionService.save(same(third), any(Patient.class), any(Date.class), any(Date.class), anyBoolean()))
+                .thenThrow(new RuntimeException("Invalid observation"));
+        saves(second, "encounter2");
+
+        List<BulkEncounterTransactionResult> results = bulkEncounterTransactionSaver.saveAll(Arrays.asList(first, second, third), 2);
+
+        verify(transactionManager).rollback(any(TransactionStatus.class));
+        verify(transactionManager).commit(any(TransactionStatus.class));
+        assertEquals(BulkEncounterTransactionResult.Status.NOT_SAVED, results.get(0).getStatus());
+        assertEquals(BulkEncounterTransactionResult.Status.SAVED, results.get(1).getStatus());
+        assertEquals(BulkEncounterTransactionResult.Status.FAILED, results.get(2).getStatus());
+        assertEquals("Invalid observation", results.get(2).getError());
+        PowerMockito.verifyStatic(times(1));
+        Context.flushSession();
+        PowerMockito.verifyStatic(times(2));
+        Context.clearSession();
+    }
+
+    @Test
+    public void shouldFailTheTransactionsOfAnUnknownPatient() {
+        BahmniEncounterTransaction first = encounterTransaction("unknown");
+
+        List<BulkEncounterTransactionResult> results = bulkEncounterTransactionSaver.saveAll(Arrays.asList(first), 2);
+
+        assertEquals(BulkEncounterTransactionResult.Status.FAILED, results.get(0).getStatus());
+        assertEquals("Patient unknown not found", results.get(0).getError());
+    }
+
+    private BahmniEncounterTransaction encounterTransaction(String patientUuid) {
+        BahmniEncounterTransaction bahmniEncounterTransaction = new BahmniEncounterTransaction();
+        bahmniEncounterTransaction.setPatientUuid(patientUuid);
+        return bahmniEncounterTransaction;
+    }
+
+    private void saves(BahmniEncounterTransaction bahmniEncounterTransaction, String encounterUuid) {
+        BahmniEncounterTransaction savedEncounterTransaction = new BahmniEncounterTransaction();
+        savedEncounterTransaction.setEncounterUuid(encounterUuid);
+        savedEncounterTransaction.setPatientUuid(bahmniEncounterTransaction.getPatientUuid());
+        when(bahmniEncounterTransactionService.save(same(bahmniEncounterTransaction), any(Patient.class), any(Date.class), any(Date.class), anyBoolean()))
+                .thenReturn(savedEncounterTransaction);
+    }
+}
@@ -0,0 +1,89 @@
+package org.openmrs.module.bahmniemrapi.groovy;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class GroovyScriptCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private GroovyScriptCache groovyScriptCache;
+
+    @Before
+    public void setUp() {
+        groovyScriptCache = new GroovyScriptCache();
+    }
+
+    @Test
+    public void shouldCompileAScriptOnlyOnceWhileItIsUnchanged() throws Exception {
+        File script = writeScript(temporaryFolder.newFile("Greeting.groovy"), "first");
+
+        Class firstClass = groovyScriptCache.getScriptClass(script);
+        Class secondClass = groovyScriptCache.getScriptClass(script);
+
+        assertSame(firstClass, secondClass);
+        assertEquals(1, groovyScriptCache.getCompileCount());
+        assertEquals(1, groovyScriptCache.getHitCount());
+        assertEquals(1, groovyScriptCache.getMissCount());
+        assertEquals(0.5, groovyScriptCache.getHitRate(), 0.0001);
+    }
+
+    @Test
+    public void shouldRecompileAScriptWhenItsContentChanges() throws Exception {
+        File script = writeScript(temporaryFolder.newFile("Greeting.groovy"), "first");
+        Callable first = groovyScriptCache.getSharedInstance(script, Callable.class);
+
+        writeScript(script, "second, changed");
+        script.setLastModified(script.lastModified() + 2000);
+        Callable second = groovyScriptCache.getSharedInstance(script, Callable.class);
+
+        assertEquals("first", first.call());
+        assertEquals("second, changed", second.call());
+        assertEquals(2, groovyScriptCache.getCompileCount());
+    }
+
+    @Test
+    public void shouldNotRecompileWhenOnlyTheModificationTimeChanges() throws Exception {
+        File script = writeScript(temporaryFolder.newFile("Greeting.groovy"), "first");
+        Class firstClass = groovyScriptCache.getScriptClass(script);
+
+        script.setLastModified(script.lastModified() + 2000);
+
+        assertSame(firstClass, groovyScriptCache.getScriptClass(script));
+        assertEquals(1, groovyScriptCache.getCompileCount());
+    }
+
+    @Test
+    public void shouldShareOneInstanceButCreateNewInstancesOnRequest() throws Exception {
+        File script = writeScript(temporaryFolder.newFile("Greeting.groovy"), "first");
+
+        assertSame(groovyScriptCache.getSharedInstance(script, Callable.class), groovyScriptCache.getSharedInstance(script, Callable.class));
+        assertNotSame(groovyScriptCache.newInstance(script, Callable.class), groovyScriptCache.newInstance(script, Callable.class));
+        assertEquals(1, groovyScriptCache.getCompileCount());
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void shouldThrowFileNotFoundForAMissingScript() throws Exception {
+        groovyScriptCache.getScriptClass(new File(temporaryFolder.getRoot(), "Missing.groovy"));
+    }
+
+    private File writeScript(File file, String greeting) throws IOException {
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("class Greeting implements java.util.concurrent.Callable { def call() { return \"" + greeting + "\" } }");
+        }
+        return file;
+    }
+}
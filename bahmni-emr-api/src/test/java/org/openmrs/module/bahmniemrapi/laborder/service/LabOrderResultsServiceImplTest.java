@@ -23,9 +23,6 @@ import static org.mockito.MockitoAnnotations.initMocks;
 
 public class LabOrderResultsServiceImplTest {
 
-    @Mock
-    EncounterTransaction encounterTransaction;
-
     @Mock
     Encounter encounter;
 
@@ -41,28 +38,36 @@ public class LabOrderResultsServiceImplTest {
     @Test
     public void filterTestOrdersEvenWhenTheyAreDiscontinued() throws Exception {
         List<String> concepts = Arrays.asList("concept1", "concept2","concept3");
-        Map<String, Encounter> encounterTestOrderUuidMap = new HashMap<>();
         EncounterTransaction.Order order1 = createOrder("uuid1","concept1", Order.Action.NEW.toString(), null);
         EncounterTransaction.Order order2 = createOrder("uuid2", "concept2", Order.Action.REVISE.toString(), null);
         EncounterTransaction.Order order3 = createOrder("uuid3", "concept3", Order.Action.NEW.toString(), new Date());
-        when(encounterTransaction.getOrders()).thenReturn(Arrays.asList(order1, order2, order3));
 
-        List<EncounterTransaction.Order> orders = labOrderResultsServiceImpl.filterTestOrders(encounterTransaction, encounter, encounterTestOrderUuidMap, concepts, null, null);
+        List<EncounterTransaction.Order> orders = labOrderResultsServiceImpl.filterTestOrders(Arrays.asList(order1, order2, order3), concepts, null, null);
 
         assertEquals(3, orders.size());
     }
 
     @Test
     public void filterTestOrdersShouldNotFilterByConcept() throws Exception {
-        Map<String, Encounter> encounterTestOrderUuidMap = new HashMap<>();
         EncounterTransaction.Order order1 = createOrder("uuid1","concept1", Order.Action.NEW.toString(), null);
-        when(encounterTransaction.getOrders()).thenReturn(Arrays.asList(order1));
 
-        List<EncounterTransaction.Order> orders = labOrderResultsServiceImpl.filterTestOrders(encounterTransaction, encounter, encounterTestOrderUuidMap, null, null, null);
+        List<EncounterTransaction.Order> orders = labOrderResultsServiceImpl.filterTestOrders(Arrays.asList(order1), null, null, null);
 
         assertEquals(1, orders.size());
     }
 
+    @Test
+    public void filterTestOrdersShouldFilterByDateCreated() throws Exception {
+        EncounterTransaction.Order order1 = createOrder("uuid1","concept1", Order.Action.NEW.toString(), null);
+        order1.setDateCreated(new Date(1000));
+        EncounterTransaction.Order order2 = createOrder("uuid2","concept1", Order.Action.NEW.toString(), null);
+        order2.setDateCreated(new Date(3000));
+
+        List<EncounterTransaction.Order> orders = labOrderResultsServiceImpl.filterTestOrders(Arrays.asList(order1, order2), null, new Date(2000), null);
+
+        assertEquals(Arrays.asList(order2), orders);
+    }
+
     @Test
     public void mapOrdersWithObsShouldMapAllObservationsToLabOrderResults() {
         EncounterTransaction.Order order1 = createOrder("uuid1","concept1", Order.Action.NEW.toString(), null);
@@ -117,6 +122,7 @@ public class LabOrderResultsServiceImplTest {
         order.setAction(action);
         order.setDateStopped(dateStopped);
         order.setUuid(uuid);
+        order.setDateCreated(new Date());
         order.setOrderType(LabOrderResultsServiceImpl.LAB_ORDER_TYPE);
         return order;
     }
@@ -0,0 +1,27 @@
+package org.openmrs.module.bahmniemrapi.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class LatencyReservoirTest {
+
+    @Test
+    public void shouldComputePercentilesOverTheMostRecentSamples() throws Exception {
+        LatencyReservoir latencyReservoir = new LatencyReservoir();
+        latencyReservoir.record(100000);
+        for (int latency = 1; latency <= LatencyReservoir.SAMPLE_SIZE; latency++) {
+            latencyReservoir.record(latency);
+        }
+
+        assertEquals(LatencyReservoir.SAMPLE_SIZE + 1, latencyReservoir.getCount());
+        assertEquals(100000, latencyReservoir.getMax());
+        assertArrayEquals(new long[]{512, LatencyReservoir.SAMPLE_SIZE}, latencyReservoir.percentiles(50, 100));
+    }
+
+    @Test
+    public void shouldReportZeroPercentilesWhenNothingWasRecorded() throws Exception {
+        assertArrayEquals(new long[]{0, 0}, new LatencyReservoir().percentiles(50, 99));
+    }
+}
@@ -2,6 +2,7 @@ package org.bahmni.module.bahmnicore;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.bahmni.module.bahmnicore.dao.impl.DrugSearchIndex;
 import org.bahmni.module.bahmnicore.properties.BahmniCoreProperties;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.BaseModuleActivator;
@@ -15,8 +16,21 @@ public class Activator extends BaseModuleActivator {
 		log.info("Started the Bahmni Core module");
         Context.updateSearchIndex();
 		BahmniCoreProperties.load();
+		buildDrugSearchIndex();
     }
 
+	private void buildDrugSearchIndex() {
+		try {
+			for (DrugSearchIndex drugSearchIndex : Context.getRegisteredComponents(DrugSearchIndex.class)) {
+				if (drugSearchIndex.isEnabled()) {
+					drugSearchIndex.rebuild();
+				}
+			}
+		} catch (Exception e) {
+			log.warn("Could not build the drug search index on startup, it will be built on first search", e);
+		}
+	}
+
 	@Override
 	public void stopped() {
 		log.info("Stopped the Bahmni Core module");
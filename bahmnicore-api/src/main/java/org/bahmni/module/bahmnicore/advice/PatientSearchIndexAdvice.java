@@ -0,0 +1,76 @@
+package org.bahmni.module.bahmnicore.advice;
+
+import org.bahmni.module.bahmnicore.dao.PatientSearchIndexDao;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.Person;
+import org.openmrs.PersonName;
+import org.openmrs.api.context.Context;
+import org.springframework.aop.AfterReturningAdvice;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps patient_search_index in step with the person, person name and patient identifier
+ * saved, voided or purged through PatientService and PersonService. Does nothing while the index is not in use.
+ */
+public class PatientSearchIndexAdvice implements AfterReturningAdvice {
+    private static final List<String> UPDATE_METHOD_PREFIXES = Arrays.asList("save", "void", "unvoid", "purge", "merge");
+
+    private PatientSearchIndexDao patientSearchIndexDao;
+
+    public PatientSearchIndexAdvice() {
+    }
+
+    public PatientSearchIndexAdvice(PatientSearchIndexDao patientSearchIndexDao) {
+        this.patientSearchIndexDao = patientSearchIndexDao;
+    }
+
+    @Override
+    public void afterReturning(Object returnValue, Method method, Object[] arguments, Object target) throws Throwable {
+        if (!isUpdate(method) || !getPatientSearchIndexDao().isMaintained()) return;
+
+        Set<Integer> personIds = new LinkedHashSet<>();
+        addPersonId(returnValue, personIds);
+        if (arguments != null) {
+            for (Object argument : arguments) {
+                addPersonId(argument, personIds);
+            }
+        }
+        for (Integer personId : personIds) {
+            getPatientSearchIndexDao().refresh(personId);
+        }
+    }
+
+    private boolean isUpdate(Method method) {
+        for (String prefix : UPDATE_METHOD_PREFIXES) {
+            if (method.getName().startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    private void addPersonId(Object value, Set<Integer> personIds) {
+        if (value instanceof Person) {
+            personIds.add(((Person) value).getPersonId());
+        } else if (value instanceof PersonName && ((PersonName) value).getPerson() != null) {
+            personIds.add(((PersonName) value).getPerson().getPersonId());
+        } else if (value instanceof PatientIdentifier && ((PatientIdentifier) value).getPatient() != null) {
+            personIds.add(((PatientIdentifier) value).getPatient().getPatientId());
+        } else if (value instanceof Collection) {
+            for (Object element : (Collection) value) {
+                addPersonId(element, personIds);
+            }
+        }
+    }
+
+    private PatientSearchIndexDao getPatientSearchIndexDao() {
+        if (patientSearchIndexDao == null) {
+            patientSearchIndexDao = Context.getRegisteredComponents(PatientSearchIndexDao.class).get(0);
+        }
+        return patientSearchIndexDao;
+    }
+}
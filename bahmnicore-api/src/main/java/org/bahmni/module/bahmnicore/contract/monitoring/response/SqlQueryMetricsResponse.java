@@ -0,0 +1,43 @@
+package org.bahmni.module.bahmnicore.contract.monitoring.response;
+
+public class SqlQueryMetricsResponse {
+    private final String queryId;
+    private final long callCount;
+    private final long errorCount;
+    private final long rowsReturned;
+    private final long p50LatencyInMillis;
+    private final long p99LatencyInMillis;
+
+    public SqlQueryMetricsResponse(String queryId, long callCount, long errorCount, long rowsReturned, long p50LatencyInMillis, long p99LatencyInMillis) {
+        this.queryId = queryId;
+        this.callCount = callCount;
+        this.errorCount = errorCount;
+        this.rowsReturned = rowsReturned;
+        this.p50LatencyInMillis = p50LatencyInMillis;
+        this.p99LatencyInMillis = p99LatencyInMillis;
+    }
+
+    public String getQueryId() {
+        return queryId;
+    }
+
+    public long getCallCount() {
+        return callCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public long getRowsReturned() {
+        return rowsReturned;
+    }
+
+    public long getP50LatencyInMillis() {
+        return p50LatencyInMillis;
+    }
+
+    public long getP99LatencyInMillis() {
+        return p99LatencyInMillis;
+    }
+}
@@ -19,6 +19,7 @@ public class PatientSearchParameters {
     private String programAttributeFieldName;
     private String[] addressSearchResultFields;
     private String[] patientSearchResultFields;
+    private String continuationToken;
 
     public PatientSearchParameters(RequestContext context) {
         String query = context.getParameter("q");
@@ -53,6 +54,7 @@ public class PatientSearchParameters {
         this.setProgramAttributeFieldName(context.getParameter("programAttributeFieldName"));
         this.setAddressSearchResultFields((String[]) parameterMap.get("addressSearchResultsConfig"));
         this.setPatientSearchResultFields((String[]) parameterMap.get("patientSearchResultsConfig"));
+        this.setContinuationToken(context.getParameter("continuationToken"));
     }
 
     public String getIdentifier() {
@@ -154,4 +156,12 @@ public class PatientSearchParameters {
     public void setPatientSearchResultFields(String[] patientSearchResultFields) {
         this.patientSearchResultFields = patientSearchResultFields;
     }
+
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public void setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+    }
 }
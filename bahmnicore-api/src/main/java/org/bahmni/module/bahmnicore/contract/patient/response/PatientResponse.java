@@ -20,6 +20,7 @@ public class PatientResponse {
     private int personId;
     private Date deathDate;
     private String identifier;
+    private Integer patientIdentifierId;
     private String addressFieldValue;
     private String givenName;
     private String middleName;
@@ -67,6 +68,14 @@ public class PatientResponse {
         return Integer.toString(age);
     }
 
+    public Integer getPatientIdentifierId() {
+        return patientIdentifierId;
+    }
+
+    public void setPatientIdentifierId(Integer patientIdentifierId) {
+        this.patientIdentifierId = patientIdentifierId;
+    }
+
     public String getUuid() {
         return uuid;
     }
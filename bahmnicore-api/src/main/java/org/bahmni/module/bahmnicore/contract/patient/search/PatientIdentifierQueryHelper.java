@@ -30,7 +30,7 @@ public class PatientIdentifierQueryHelper {
 
 
 	private String getIdentifierSearchCondition(String identifier, String identifierPrefix) {
-		return " identifier like  '" + identifierPrefix + "%" + StringEscapeUtils.escapeSql(identifier) + "%'";
+		return " pi.identifier like  '" + identifierPrefix + "%" + StringEscapeUtils.escapeSql(identifier) + "%'";
 	}
 
 }
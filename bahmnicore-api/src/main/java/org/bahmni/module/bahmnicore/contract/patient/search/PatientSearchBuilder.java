@@ -14,11 +14,14 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import static org.apache.commons.lang.StringUtils.isEmpty;
+
 public class PatientSearchBuilder {
 	public static final String SELECT_STATEMENT = "select " +
 			"p.uuid as uuid, " +
 			"p.person_id as personId, " +
 			"pi.identifier as identifier, " +
+			"pi.patient_identifier_id as patientIdentifierId, " +
 			"pn.given_name as givenName, " +
 			"pn.middle_name as middleName, " +
 			"pn.family_name as familyName, " +
@@ -38,10 +41,42 @@ public class PatientSearchBuilder {
 			" left outer join visit_attribute va on va.visit_id = v.visit_id " +
 			"   and va.attribute_type_id = (select visit_attribute_type_id from visit_attribute_type where name='Admission Status') " +
 			"   and va.voided = 0";
+	public static final String SEARCH_INDEX_SELECT_STATEMENT = "select " +
+			"psi.uuid as uuid, " +
+			"psi.person_id as personId, " +
+			"pi.identifier as identifier, " +
+			"pi.patient_identifier_id as patientIdentifierId, " +
+			"psi.given_name as givenName, " +
+			"psi.middle_name as middleName, " +
+			"psi.family_name as familyName, " +
+			"psi.gender as gender, " +
+			"psi.birthdate as birthDate, " +
+			"psi.death_date as deathDate, " +
+			"psi.date_created as dateCreated, " +
+			"v.uuid as activeVisitUuid, " +
+			"(CASE va.value_reference WHEN 'Admitted' THEN TRUE ELSE FALSE END) as hasBeenAdmitted ";
+	public static final String SEARCH_INDEX_WHERE_CLAUSE = " where 1 = 1 ";
+	public static final String SEARCH_INDEX_FROM_TABLE = " from patient_search_index psi ";
+	public static final String SEARCH_INDEX_JOIN_CLAUSE = " inner join patient_identifier pi on pi.patient_id = psi.person_id " +
+			" left join person_address pa on psi.person_id=pa.person_id and pa.voided = 'false'" +
+			" left outer join visit v on v.patient_id = psi.person_id and v.date_stopped is null " +
+			" left outer join visit_attribute va on va.visit_id = v.visit_id " +
+			"   and va.attribute_type_id = (select visit_attribute_type_id from visit_attribute_type where name='Admission Status') " +
+			"   and va.voided = 0";
+	private static final String SEARCH_INDEX_GROUP_BY = "psi.person_id, psi.uuid, pi.identifier, pi.patient_identifier_id, psi.given_name, psi.middle_name, psi.family_name, " +
+			"psi.gender, psi.birthdate, psi.death_date, psi.date_created, v.uuid";
 	private static final String GROUP_BY_KEYWORD = " group by ";
 	public static final String ORDER_BY = " order by p.date_created desc LIMIT :limit OFFSET :offset";
+	private static final String OFFSET_ORDER_BY = " order by %1$s.date_created desc LIMIT :limit OFFSET :offset";
+	private static final String KEYSET_ORDER_BY = " order by %1$s.date_created desc, %1$s.person_id desc, pi.patient_identifier_id desc LIMIT :limit";
+	private static final String KEYSET_CONDITION = " and (%1$s.date_created < :lastDateCreated or (%1$s.date_created = :lastDateCreated" +
+			" and (%1$s.person_id < :lastPersonId or (%1$s.person_id = :lastPersonId and pi.patient_identifier_id < :lastPatientIdentifierId))))";
+	private static final String PATIENT_IDENTIFIER_GROUP_BY = "pi.patient_identifier_id";
 	private static final String LIMIT_PARAM = "limit";
 	private static final String OFFSET_PARAM = "offset";
+	private static final String LAST_DATE_CREATED_PARAM = "lastDateCreated";
+	private static final String LAST_PERSON_ID_PARAM = "lastPersonId";
+	private static final String LAST_PATIENT_IDENTIFIER_ID_PARAM = "lastPatientIdentifierId";
 
 
 	private String select;
@@ -52,14 +87,39 @@ public class PatientSearchBuilder {
 	private String orderBy;
 	private SessionFactory sessionFactory;
 	private Map<String,Type> types;
+	private boolean useSearchIndex;
+	private String personAlias;
+	private boolean keysetPaging;
+	private PatientSearchContinuationToken continuationToken;
 
 	public PatientSearchBuilder(SessionFactory sessionFactory){
-		select = SELECT_STATEMENT;
-		where = WHERE_CLAUSE;
-		from  = FROM_TABLE;
-		join = JOIN_CLAUSE;
-		orderBy = ORDER_BY;
-		groupBy = "";
+		this(sessionFactory, false);
+	}
+
+	/**
+	 * With useSearchIndex, patients are searched in the denormalized patient_search_index table instead of joining
+	 * person and person_name. Identifiers are still joined from patient_identifier, so a patient is found by any of
+	 * its identifiers and comes back once per identifier, as without the index. Patient and program attributes cannot
+	 * be searched on the index.
+	 */
+	public PatientSearchBuilder(SessionFactory sessionFactory, boolean useSearchIndex){
+		this.useSearchIndex = useSearchIndex;
+		if (useSearchIndex) {
+			select = SEARCH_INDEX_SELECT_STATEMENT;
+			where = SEARCH_INDEX_WHERE_CLAUSE;
+			from = SEARCH_INDEX_FROM_TABLE;
+			join = SEARCH_INDEX_JOIN_CLAUSE;
+			groupBy = SEARCH_INDEX_GROUP_BY;
+			personAlias = "psi";
+		} else {
+			select = SELECT_STATEMENT;
+			where = WHERE_CLAUSE;
+			from = FROM_TABLE;
+			join = JOIN_CLAUSE;
+			groupBy = "";
+			personAlias = "p";
+		}
+		orderBy = String.format(OFFSET_ORDER_BY, personAlias);
 		this.sessionFactory = sessionFactory;
 		types = new HashMap<>();
 
@@ -75,7 +135,11 @@ public class PatientSearchBuilder {
 		PatientAddressFieldQueryHelper patientAddressQueryHelper = new PatientAddressFieldQueryHelper(addressFieldName,addressFieldValue, addressAttributeFields);
 		where = patientAddressQueryHelper.appendToWhereClause(where);
 		select = patientAddressQueryHelper.selectClause(select);
-		groupBy = patientAddressQueryHelper.appendToGroupByClause(groupBy);
+		if (!useSearchIndex) {
+			groupBy = patientAddressQueryHelper.appendToGroupByClause(groupBy);
+		} else if (!isEmpty(addressFieldName)) {
+			groupBy = addressFieldName + "," + groupBy;
+		}
 		types.putAll(patientAddressQueryHelper.addScalarQueryResult());
 		return this;
 	}
@@ -126,13 +190,28 @@ public class PatientSearchBuilder {
 		return this;
 	}
 
+	/**
+	 * Switches from offset paging to keyset paging on date_created, person_id and patient_identifier_id. A patient
+	 * comes back once per identifier, so the identifier is part of the key. A null token asks for the first page.
+	 */
+	public PatientSearchBuilder withContinuationToken(PatientSearchContinuationToken continuationToken){
+		this.keysetPaging = true;
+		this.continuationToken = continuationToken;
+		if (continuationToken != null) {
+			where = where + String.format(KEYSET_CONDITION, personAlias);
+		}
+		orderBy = String.format(KEYSET_ORDER_BY, personAlias);
+		return this;
+	}
+
 	public SQLQuery buildSqlQuery(Integer limit, Integer offset){
-		String query = select + from + join + where + GROUP_BY_KEYWORD + groupBy  + orderBy;
+		String query = select + from + join + where + GROUP_BY_KEYWORD + withPatientIdentifierId(groupBy) + orderBy;
 
 		SQLQuery sqlQuery = sessionFactory.getCurrentSession()
 				.createSQLQuery(query)
 				.addScalar("uuid", StandardBasicTypes.STRING)
 				.addScalar("identifier", StandardBasicTypes.STRING)
+				.addScalar("patientIdentifierId", StandardBasicTypes.INTEGER)
 				.addScalar("givenName", StandardBasicTypes.STRING)
 				.addScalar("personId", StandardBasicTypes.INTEGER)
 				.addScalar("middleName", StandardBasicTypes.STRING)
@@ -152,9 +231,23 @@ public class PatientSearchBuilder {
 		}
 
 		sqlQuery.setParameter(LIMIT_PARAM, limit);
-		sqlQuery.setParameter(OFFSET_PARAM, offset);
+		if (!keysetPaging) {
+			sqlQuery.setParameter(OFFSET_PARAM, offset);
+		}
+		if (continuationToken != null) {
+			sqlQuery.setParameter(LAST_DATE_CREATED_PARAM, continuationToken.getDateCreated());
+			sqlQuery.setParameter(LAST_PERSON_ID_PARAM, continuationToken.getPersonId());
+			sqlQuery.setParameter(LAST_PATIENT_IDENTIFIER_ID_PARAM, continuationToken.getPatientIdentifierId());
+		}
 		sqlQuery.setResultTransformer(Transformers.aliasToBean(PatientResponse.class));
 		return sqlQuery;
 	}
 
+	private String withPatientIdentifierId(String groupBy) {
+		if (isEmpty(groupBy) || groupBy.contains(PATIENT_IDENTIFIER_GROUP_BY)) {
+			return groupBy;
+		}
+		return groupBy + ", " + PATIENT_IDENTIFIER_GROUP_BY;
+	}
+
 }
@@ -0,0 +1,60 @@
+package org.bahmni.module.bahmnicore.contract.patient.search;
+
+import org.bahmni.module.bahmnicore.contract.patient.response.PatientResponse;
+
+import java.util.Date;
+
+import static org.apache.commons.lang.StringUtils.isBlank;
+
+/**
+ * Position of the last row of a search page, as dateCreated, personId and patientIdentifierId, used to seek to the
+ * next page. A patient has a row per identifier, so patientIdentifierId tells apart rows of the same patient.
+ * Serialized as "&lt;dateCreated in millis&gt;_&lt;personId&gt;_&lt;patientIdentifierId&gt;".
+ */
+public class PatientSearchContinuationToken {
+	private static final String SEPARATOR = "_";
+
+	private final Date dateCreated;
+	private final Integer personId;
+	private final Integer patientIdentifierId;
+
+	public PatientSearchContinuationToken(Date dateCreated, Integer personId, Integer patientIdentifierId) {
+		this.dateCreated = dateCreated;
+		this.personId = personId;
+		this.patientIdentifierId = patientIdentifierId;
+	}
+
+	public static PatientSearchContinuationToken after(PatientResponse patient) {
+		return new PatientSearchContinuationToken(patient.getDateCreated(), patient.getPersonId(), patient.getPatientIdentifierId());
+	}
+
+	public static PatientSearchContinuationToken parse(String token) {
+		if (isBlank(token)) {
+			return null;
+		}
+		String[] parts = token.split(SEPARATOR);
+		try {
+			if (parts.length != 3) throw new NumberFormatException();
+			return new PatientSearchContinuationToken(new Date(Long.parseLong(parts[0])), Integer.valueOf(parts[1]), Integer.valueOf(parts[2]));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid patient search continuation token:" + token);
+		}
+	}
+
+	public Date getDateCreated() {
+		return dateCreated;
+	}
+
+	public Integer getPersonId() {
+		return personId;
+	}
+
+	public Integer getPatientIdentifierId() {
+		return patientIdentifierId;
+	}
+
+	@Override
+	public String toString() {
+		return dateCreated.getTime() + SEPARATOR + personId + SEPARATOR + patientIdentifierId;
+	}
+}
@@ -1,9 +1,19 @@
 package org.bahmni.module.bahmnicore.dao;
 
 import org.bahmni.module.bahmnicore.model.BahmniAddressHierarchyEntry;
+import org.bahmni.module.bahmnicore.model.BahmniAddressHierarchyLevel;
 
 import java.util.List;
 
 public interface BahmniAddressHierarchyDao {
     List<BahmniAddressHierarchyEntry> getAddressHierarchyEntriesByUuid(List<String> uuids);
+
+    List<BahmniAddressHierarchyEntry> getAddressHierarchyEntriesById(List<Integer> ids);
+
+    /**
+     * Every entry of the hierarchy, without its level attached.
+     */
+    List<BahmniAddressHierarchyEntry> getAllAddressHierarchyEntries();
+
+    List<BahmniAddressHierarchyLevel> getAddressHierarchyLevels();
 }
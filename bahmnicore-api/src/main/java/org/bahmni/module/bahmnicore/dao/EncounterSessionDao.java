@@ -0,0 +1,24 @@
+package org.bahmni.module.bahmnicore.dao;
+
+import org.openmrs.Encounter;
+import org.openmrs.EncounterType;
+import org.openmrs.Patient;
+import org.openmrs.Provider;
+import org.openmrs.User;
+import org.openmrs.Visit;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+public interface EncounterSessionDao {
+    /**
+     * Non voided encounters of the patient and type between the two dates, at most maxResults of them. With providers
+     * only encounters of one of those providers match, otherwise only encounters without providers created by the
+     * creator. When filterByPatientProgram is set, encounters of the patient program match, or encounters outside any
+     * episode when no patient program is given.
+     */
+    List<Encounter> getEncountersInSession(Patient patient, EncounterType encounterType, Date fromDate, Date toDate,
+                                           Visit visit, Collection<Provider> providers, User creator,
+                                           boolean filterByPatientProgram, String patientProgramUuid, int maxResults);
+}
@@ -29,6 +29,8 @@ public interface ObsDao {
 
     List<Obs> getObsByPatientAndVisit(String patientUuid, List<String> conceptNames, List<Integer> listOfVisitIds, Integer limit, ObsDaoImpl.OrderBy sortOrder, List<String> obsIgnoreList, Boolean filterOutOrderObs, Order order, Date startDate, Date endDate);
 
+    List<Obs> getLatestOrInitialObsForConcepts(String patientUuid, List<String> conceptNames, List<Integer> listOfVisitIds, ObsDaoImpl.OrderBy sortOrder, List<String> obsIgnoreList, Boolean filterOutOrderObs, Order order);
+
     List<Obs> getObsForConceptsByEncounter(String encounterUuid, List<String> conceptNames);
 
     Obs getChildObsFromParent(String parentObsUuid, Concept childConcept);
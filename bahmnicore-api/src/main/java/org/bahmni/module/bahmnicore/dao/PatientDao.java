@@ -11,7 +11,7 @@ public interface PatientDao {
     public List<PatientResponse> getPatients(String identifier, String identifierPrefix, String name, String customAttribute,
                                              String addressFieldName, String addressFieldValue, Integer length, Integer offset,
                                              String[] patientAttributes, String programAttribute, String programAttributeField,
-                                             String[] addressSearchResultFields, String[] patientSearchResultFields);
+                                             String[] addressSearchResultFields, String[] patientSearchResultFields, String continuationToken);
 
     public Patient getPatient(String identifier);
 
@@ -0,0 +1,36 @@
+package org.bahmni.module.bahmnicore.dao;
+
+public interface PatientSearchIndexDao {
+
+    /**
+     * Whether any of the tables kept by {@link #refresh(Integer)} is in use, so callers can skip working out what
+     * changed when nothing needs refreshing.
+     */
+    public boolean isMaintained();
+
+    public void refresh(Integer personId);
+
+    /**
+     * Whether searches can read patient_search_index: it is turned on and not waiting to be rebuilt.
+     */
+    public boolean isSearchIndexReady();
+
+    /**
+     * Whether partial identifier lookups can read patient_identifier_suffix: it is turned on and not waiting to be
+     * reconciled.
+     */
+    public boolean isIdentifierSuffixIndexReady();
+
+    /**
+     * Runs the rebuild or reconcile asked for by turning a table on, if it has not run yet.
+     */
+    public void catchUp();
+
+    public void rebuildSearchIndex();
+
+    /**
+     * Brings patient_identifier_suffix in line with patient_identifier, for identifiers written without going
+     * through the patient service.
+     */
+    public int reconcileIdentifierSuffixes();
+}
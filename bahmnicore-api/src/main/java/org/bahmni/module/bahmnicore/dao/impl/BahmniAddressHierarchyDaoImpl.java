@@ -11,60 +11,95 @@ import org.hibernate.type.StandardBasicTypes;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Repository
 public class BahmniAddressHierarchyDaoImpl implements BahmniAddressHierarchyDao {
+    private static final String ENTRY_QUERY = "select ahe.address_hierarchy_entry_id as addressHierarchyEntryId, ahe.parent_id as parentId, ahe.uuid as uuid, ahe.level_id as levelId, " +
+            " ahe.user_generated_id as userGeneratedId, ahe.name as name from address_hierarchy_entry ahe ";
+    private static final String LEVEL_QUERY = "select ahl.address_hierarchy_level_id as levelId, ahl.parent_level_id as parentLevelId, ahl.uuid as uuid, ahl.required as required, " +
+            " ahl.address_field as addressField, ahl.name as name from address_hierarchy_level ahl ";
+
     @Autowired
     private SessionFactory sessionFactory;
 
     @Override
     public List<BahmniAddressHierarchyEntry> getAddressHierarchyEntriesByUuid(List<String> uuids) {
-        Session currentSession = sessionFactory.getCurrentSession();
-        List<BahmniAddressHierarchyEntry> bahmniAddressHierarchyEntries;
-        StringBuilder queryString = new StringBuilder("select ahe.address_hierarchy_entry_id as addressHierarchyEntryId, ahe.parent_id as parentId, ahe.uuid as uuid, ahe.level_id as levelId, " +
-                " ahe.user_generated_id as userGeneratedId, ahe.name as name from address_hierarchy_entry ahe " +
-                "where ahe.uuid in (:uuids) ");
+        SQLQuery sqlQuery = createEntryQuery("where ahe.uuid in (:uuids) ");
+        sqlQuery.setParameterList("uuids", uuids);
+        return withLevels((List<BahmniAddressHierarchyEntry>) sqlQuery.list());
+    }
 
+    @Override
+    public List<BahmniAddressHierarchyEntry> getAddressHierarchyEntriesById(List<Integer> ids) {
+        SQLQuery sqlQuery = createEntryQuery("where ahe.address_hierarchy_entry_id in (:ids) ");
+        sqlQuery.setParameterList("ids", ids);
+        return withLevels((List<BahmniAddressHierarchyEntry>) sqlQuery.list());
+    }
+
+    @Override
+    public List<BahmniAddressHierarchyEntry> getAllAddressHierarchyEntries() {
+        return (List<BahmniAddressHierarchyEntry>) createEntryQuery("").list();
+    }
+
+    @Override
+    public List<BahmniAddressHierarchyLevel> getAddressHierarchyLevels() {
+        return (List<BahmniAddressHierarchyLevel>) createLevelQuery("").list();
+    }
+
+    private SQLQuery createEntryQuery(String whereClause) {
+        Session currentSession = sessionFactory.getCurrentSession();
         SQLQuery sqlQuery = currentSession
-                .createSQLQuery(queryString.toString())
+                .createSQLQuery(ENTRY_QUERY + whereClause)
                 .addScalar("uuid", StandardBasicTypes.STRING)
                 .addScalar("addressHierarchyEntryId", StandardBasicTypes.INTEGER)
                 .addScalar("parentId", StandardBasicTypes.INTEGER)
                 .addScalar("levelId", StandardBasicTypes.INTEGER)
                 .addScalar("userGeneratedId", StandardBasicTypes.STRING)
                 .addScalar("name", StandardBasicTypes.STRING);
-
-        sqlQuery.setParameterList("uuids", uuids);
         sqlQuery.setResultTransformer(Transformers.aliasToBean(BahmniAddressHierarchyEntry.class));
-
-        bahmniAddressHierarchyEntries = (List<BahmniAddressHierarchyEntry>) sqlQuery.list();
-        for(BahmniAddressHierarchyEntry bahmniAddressHierarchyEntry: bahmniAddressHierarchyEntries){
-            bahmniAddressHierarchyEntry.setAddressHierarchyLevel(getAddressHierarchyLevelById(bahmniAddressHierarchyEntry.getLevelId()));
-        }
-
-        return bahmniAddressHierarchyEntries;
+        return sqlQuery;
     }
 
-    private BahmniAddressHierarchyLevel getAddressHierarchyLevelById(Integer levelId) {
-
+    private SQLQuery createLevelQuery(String whereClause) {
         Session currentSession = sessionFactory.getCurrentSession();
-        StringBuilder queryString = new StringBuilder("select ahl.address_hierarchy_level_id as levelId, ahl.parent_level_id as parentLevelId, ahl.uuid as uuid, ahl.required as required, " +
-                " ahl.address_field as addressField, ahl.name as name from address_hierarchy_level ahl " +
-                "where ahl.address_hierarchy_level_id = (:levelId) ");
-
         SQLQuery sqlQuery = currentSession
-                .createSQLQuery(queryString.toString())
+                .createSQLQuery(LEVEL_QUERY + whereClause)
                 .addScalar("uuid", StandardBasicTypes.STRING)
                 .addScalar("parentLevelId", StandardBasicTypes.INTEGER)
                 .addScalar("required", StandardBasicTypes.BOOLEAN)
                 .addScalar("levelId", StandardBasicTypes.INTEGER)
                 .addScalar("addressField", StandardBasicTypes.STRING)
                 .addScalar("name", StandardBasicTypes.STRING);
-
-        sqlQuery.setParameter("levelId", levelId);
         sqlQuery.setResultTransformer(Transformers.aliasToBean(BahmniAddressHierarchyLevel.class));
+        return sqlQuery;
+    }
+
+    private List<BahmniAddressHierarchyEntry> withLevels(List<BahmniAddressHierarchyEntry> bahmniAddressHierarchyEntries) {
+        Set<Integer> levelIds = new HashSet<>();
+        for (BahmniAddressHierarchyEntry bahmniAddressHierarchyEntry : bahmniAddressHierarchyEntries) {
+            if (bahmniAddressHierarchyEntry.getLevelId() != null) {
+                levelIds.add(bahmniAddressHierarchyEntry.getLevelId());
+            }
+        }
+        if (levelIds.isEmpty()) {
+            return bahmniAddressHierarchyEntries;
+        }
 
-        return (BahmniAddressHierarchyLevel) sqlQuery.uniqueResult();
+        SQLQuery sqlQuery = createLevelQuery("where ahl.address_hierarchy_level_id in (:levelIds) ");
+        sqlQuery.setParameterList("levelIds", new ArrayList<>(levelIds));
+        Map<Integer, BahmniAddressHierarchyLevel> levelsById = new HashMap<>();
+        for (BahmniAddressHierarchyLevel level : (List<BahmniAddressHierarchyLevel>) sqlQuery.list()) {
+            levelsById.put(level.getLevelId(), level);
+        }
+        for (BahmniAddressHierarchyEntry bahmniAddressHierarchyEntry : bahmniAddressHierarchyEntries) {
+            bahmniAddressHierarchyEntry.setAddressHierarchyLevel(levelsById.get(bahmniAddressHierarchyEntry.getLevelId()));
+        }
+        return bahmniAddressHierarchyEntries;
     }
 }
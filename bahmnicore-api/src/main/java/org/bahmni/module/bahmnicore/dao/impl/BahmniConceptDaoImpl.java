@@ -1,8 +1,10 @@
 package org.bahmni.module.bahmnicore.dao.impl;
 
 import org.bahmni.module.bahmnicore.dao.BahmniConceptDao;
+import org.bahmni.module.referencedata.helper.ConceptMetadataCache;
 import org.hibernate.Query;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Restrictions;
 import org.hibernate.type.StandardBasicTypes;
 import org.openmrs.Concept;
 import org.openmrs.ConceptAnswer;
@@ -13,8 +15,10 @@ import org.springframework.stereotype.Repository;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 public class BahmniConceptDaoImpl implements BahmniConceptDao {
@@ -28,6 +32,10 @@ public class BahmniConceptDaoImpl implements BahmniConceptDao {
             " and answerConceptNames.voided = false ";
     @Autowired
     private SessionFactory sessionFactory;
+    @Autowired
+    private DrugSearchIndex drugSearchIndex;
+    @Autowired
+    private ConceptAnswerSearchIndex conceptAnswerSearchIndex;
     private String drugsWithConceptNamesForConceptSet = "concept_set csmembers " +
     "INNER JOIN concept c ON c.concept_id = csmembers.concept_id and csmembers.concept_set= (:conceptSetId) " +
     "RIGHT JOIN concept_name cn ON csmembers.concept_id = cn.concept_id and cn.voided = 0 " +
@@ -35,6 +43,9 @@ public class BahmniConceptDaoImpl implements BahmniConceptDao {
 
     @Override
     public Collection<ConceptAnswer> searchByQuestion(Concept questionConcept, String searchQuery) {
+        if (conceptAnswerSearchIndex.isEnabled()) {
+            return getConceptAnswersByIds(conceptAnswerSearchIndex.searchAnswerIds(questionConcept, searchQuery));
+        }
         String[] queryArray = (searchQuery==null? "":searchQuery).split(WHITE_SPACE);
         StringBuffer queryStringBuffer = new StringBuffer(BASE_SEARCH_QUERY);
         appendSearchQueriesToBase(queryArray, queryStringBuffer);
@@ -52,13 +63,19 @@ public class BahmniConceptDaoImpl implements BahmniConceptDao {
 
     @Override
     public Concept getConceptByFullySpecifiedName(String fullySpecifiedConceptName) {
-        List<Concept> concepts = sessionFactory.getCurrentSession()
-                .createQuery("select concept " +
-                        "from ConceptName as conceptName " +
-                        "where conceptName.conceptNameType ='FULLY_SPECIFIED' " +
-                        " and lower(conceptName.name)= lower(:fullySpecifiedName)")
-                .setString("fullySpecifiedName", fullySpecifiedConceptName)
-                .list();
+        List<Concept> concepts = ConceptMetadataCache.getInstance().getConceptsByName("fullySpecifiedName", fullySpecifiedConceptName,
+                Context.getConceptService(), new ConceptMetadataCache.NameLookup() {
+                    @Override
+                    public List<Concept> find(String conceptName) {
+                        return sessionFactory.getCurrentSession()
+                                .createQuery("select concept " +
+                                        "from ConceptName as conceptName " +
+                                        "where conceptName.conceptNameType ='FULLY_SPECIFIED' " +
+                                        " and lower(conceptName.name)= lower(:fullySpecifiedName)")
+                                .setString("fullySpecifiedName", conceptName)
+                                .list();
+                    }
+                });
 
         return concepts.size() > 0 ? concepts.get(0) : null;
     }
@@ -75,7 +92,9 @@ public class BahmniConceptDaoImpl implements BahmniConceptDao {
     @Override
     public List searchDrugsByDrugName(Integer conceptSetId, String searchTerm) {
         List drugIds;
-        if (null != searchTerm) {
+        if (drugSearchIndex.isEnabled()) {
+            drugIds = drugSearchIndex.searchDrugIdsInConceptSet(conceptSetId, searchTerm);
+        } else if (null != searchTerm) {
             drugIds = sessionFactory.getCurrentSession()
                 .createSQLQuery(getSqlForDrugsMatchingEitherConceptOrDrugName())
                 .addScalar("drugId", StandardBasicTypes.INTEGER)
@@ -108,14 +127,43 @@ public class BahmniConceptDaoImpl implements BahmniConceptDao {
     }
 
     private List<Drug> getDrugsByDrugIds(List<Integer> drugsIdsInSortedOrder) {
-        List<Drug> drugsInSortedOrder;
-        drugsInSortedOrder = new ArrayList<>();
+        List<Drug> drugsInSortedOrder = new ArrayList<>();
+        if (drugsIdsInSortedOrder.isEmpty()) {
+            return drugsInSortedOrder;
+        }
+        List<Drug> drugs = sessionFactory.getCurrentSession()
+                .createCriteria(Drug.class)
+                .add(Restrictions.in("drugId", drugsIdsInSortedOrder))
+                .list();
+        Map<Integer, Drug> drugsById = new HashMap<>();
+        for (Drug drug : drugs) {
+            drugsById.put(drug.getDrugId(), drug);
+        }
         for (Integer drugId : drugsIdsInSortedOrder) {
-            drugsInSortedOrder.add(Context.getConceptService().getDrug(drugId));
+            drugsInSortedOrder.add(drugsById.get(drugId));
         }
         return drugsInSortedOrder;
     }
 
+    private List<ConceptAnswer> getConceptAnswersByIds(List<Integer> answerIdsInRankedOrder) {
+        List<ConceptAnswer> answersInRankedOrder = new ArrayList<>();
+        if (answerIdsInRankedOrder.isEmpty()) {
+            return answersInRankedOrder;
+        }
+        List<ConceptAnswer> answers = sessionFactory.getCurrentSession()
+                .createCriteria(ConceptAnswer.class)
+                .add(Restrictions.in("conceptAnswerId", answerIdsInRankedOrder))
+                .list();
+        Map<Integer, ConceptAnswer> answersById = new HashMap<>();
+        for (ConceptAnswer answer : answers) {
+            answersById.put(answer.getConceptAnswerId(), answer);
+        }
+        for (Integer answerId : answerIdsInRankedOrder) {
+            answersInRankedOrder.add(answersById.get(answerId));
+        }
+        return answersInRankedOrder;
+    }
+
     private void appendSearchQueriesToBase(String[] queryArray, StringBuffer queryStringBuffer) {
         for (int i = 0; i < queryArray.length; i++) {
             queryStringBuffer.append(" and lower(answerConceptNames.name) like :query" + i);
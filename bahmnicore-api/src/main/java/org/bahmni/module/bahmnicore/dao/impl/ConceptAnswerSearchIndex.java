@@ -0,0 +1,366 @@
+package org.bahmni.module.bahmnicore.dao.impl;
+
+import org.bahmni.module.referencedata.helper.CacheInvalidation;
+import org.bahmni.module.referencedata.helper.ConceptServiceChangeListener;
+import org.hibernate.SessionFactory;
+import org.hibernate.type.StandardBasicTypes;
+import org.openmrs.Concept;
+import org.openmrs.Drug;
+import org.openmrs.api.context.Context;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per question index of the names of its coded answers, for type ahead searches of answers. Names are broken into
+ * words, and the suffixes of all the words are kept sorted, so the names containing a search token are found by a
+ * binary search rather than by scanning every name. A search returns the answers having a name that contains all the
+ * tokens, which is what the like query of {@link BahmniConceptDaoImpl#searchByQuestion} matches.
+ * <p/>
+ * Answers are ranked by how well their best name matches: the whole search term, a name starting with the first
+ * token, names where every token starts a word, and then the rest. Within a rank, names in the language of the user
+ * come first, then answers in their sort weight order, then by name.
+ * <p/>
+ * The index of a question is built on its first search and dropped when the question or any of its answers is
+ * changed through the concept service, or once it is older than {@link #MAX_AGE_MINUTES}.
+ */
+@Component
+public class ConceptAnswerSearchIndex implements ConceptServiceChangeListener {
+    public static final String USE_CONCEPT_ANSWER_SEARCH_INDEX_GLOBAL_PROPERTY = "bahmni.conceptAnswerSearch.useIndex";
+    private static final int MAX_QUESTIONS = 100;
+    private static final long MAX_AGE_MINUTES = 30;
+    private static final String NON_WORD_CHARACTERS = "[^\\p{L}\\p{N}]+";
+
+    private SessionFactory sessionFactory;
+    //counts the drops, so an index loaded across a drop is used but not kept; guarded by this
+    private long drops;
+    private final Map<Integer, QuestionIndex> indexes = new LinkedHashMap<Integer, QuestionIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, QuestionIndex> eldest) {
+            return size() > MAX_QUESTIONS;
+        }
+    };
+
+    @Autowired
+    public ConceptAnswerSearchIndex(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public boolean isEnabled() {
+        return Boolean.valueOf(Context.getAdministrationService().getGlobalProperty(USE_CONCEPT_ANSWER_SEARCH_INDEX_GLOBAL_PROPERTY));
+    }
+
+    /**
+     * Ids of the concept answers of the question having a non voided name that contains every token of the search
+     * term, best matches first. All answers with a non voided name when the term has no tokens.
+     */
+    public List<Integer> searchAnswerIds(Concept questionConcept, String searchTerm) {
+        QuestionIndex index = getIndex(questionConcept.getId());
+        String term = normalize(searchTerm);
+        List<String> tokens = tokensOf(term);
+        String language = Context.getLocale() == null ? null : Context.getLocale().getLanguage();
+        return index.search(term, tokens, language);
+    }
+
+    @Override
+    public void conceptChanged(Concept concept) {
+        if (concept == null || concept.getId() == null) {
+            return;
+        }
+        final Integer conceptId = concept.getId();
+        CacheInvalidation.nowAndOnCompletion(new Runnable() {
+            @Override
+            public void run() {
+                dropIndexesOf(conceptId);
+            }
+        });
+    }
+
+    private synchronized void dropIndexesOf(Integer conceptId) {
+        drops++;
+        indexes.remove(conceptId);
+        Iterator<QuestionIndex> questionIndexes = indexes.values().iterator();
+        while (questionIndexes.hasNext()) {
+            if (questionIndexes.next().answerConceptIds.contains(conceptId)) {
+                questionIndexes.remove();
+            }
+        }
+    }
+
+    @Override
+    public void drugChanged(Drug drug) {
+    }
+
+    public synchronized void clear() {
+        indexes.clear();
+    }
+
+    private QuestionIndex getIndex(Integer questionConceptId) {
+        long dropsBeforeLoad;
+        synchronized (this) {
+            QuestionIndex index = indexes.get(questionConceptId);
+            if (index != null && !index.isOlderThan(MAX_AGE_MINUTES)) {
+                return index;
+            }
+            dropsBeforeLoad = drops;
+        }
+        QuestionIndex index = load(questionConceptId);
+        synchronized (this) {
+            if (drops == dropsBeforeLoad) {
+                indexes.put(questionConceptId, index);
+            }
+        }
+        return index;
+    }
+
+    private QuestionIndex load(Integer questionConceptId) {
+        List<Object[]> rows = sessionFactory.getCurrentSession()
+                .createSQLQuery("select ca.concept_answer_id as answerId, ca.answer_concept as answerConceptId, ca.sort_weight as sortWeight, " +
+                        "cn.name as name, cn.locale as locale from concept_answer ca " +
+                        "inner join concept_name cn on cn.concept_id = ca.answer_concept and cn.voided = 0 " +
+                        "where ca.concept_id = :questionConceptId")
+                .addScalar("answerId", StandardBasicTypes.INTEGER)
+                .addScalar("answerConceptId", StandardBasicTypes.INTEGER)
+                .addScalar("sortWeight", StandardBasicTypes.DOUBLE)
+                .addScalar("name", StandardBasicTypes.STRING)
+                .addScalar("locale", StandardBasicTypes.STRING)
+                .setParameter("questionConceptId", questionConceptId)
+                .list();
+        return new QuestionIndex(rows);
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static List<String> tokensOf(String normalizedText) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : normalizedText.split(NON_WORD_CHARACTERS)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static class QuestionIndex {
+        private final long builtAt = System.currentTimeMillis();
+        private final Set<Integer> answerConceptIds = new HashSet<>();
+        private final List<IndexedName> names = new ArrayList<>();
+        private final Map<Integer, Double> sortWeights = new HashMap<>();
+        private final String[] words;
+        private final int[][] namesOfWord;
+        private final long[] suffixes;
+
+        private QuestionIndex(List<Object[]> rows) {
+            Map<String, List<Integer>> namesByWord = new HashMap<>();
+            for (Object[] row : rows) {
+                Integer answerId = (Integer) row[0];
+                answerConceptIds.add((Integer) row[1]);
+                sortWeights.put(answerId, (Double) row[2]);
+                IndexedName name = new IndexedName(answerId, normalize((String) row[3]), languageOf((String) row[4]));
+                int nameIndex = names.size();
+                names.add(name);
+                for (String word : new HashSet<>(name.words)) {
+                    if (!namesByWord.containsKey(word)) {
+                        namesByWord.put(word, new ArrayList<Integer>());
+                    }
+                    namesByWord.get(word).add(nameIndex);
+                }
+            }
+
+            words = namesByWord.keySet().toArray(new String[namesByWord.size()]);
+            namesOfWord = new int[words.length][];
+            List<Long> allSuffixes = new ArrayList<>();
+            for (int wordIndex = 0; wordIndex < words.length; wordIndex++) {
+                List<Integer> nameIndexes = namesByWord.get(words[wordIndex]);
+                namesOfWord[wordIndex] = new int[nameIndexes.size()];
+                for (int i = 0; i < nameIndexes.size(); i++) {
+                    namesOfWord[wordIndex][i] = nameIndexes.get(i);
+                }
+                for (int offset = 0; offset < words[wordIndex].length(); offset++) {
+                    allSuffixes.add(suffix(wordIndex, offset));
+                }
+            }
+            Collections.sort(allSuffixes, new Comparator<Long>() {
+                @Override
+                public int compare(Long suffix, Long otherSuffix) {
+                    return compareSuffix(suffix, words[wordIndexOf(otherSuffix)], (int) (long) otherSuffix);
+                }
+            });
+            suffixes = new long[allSuffixes.size()];
+            for (int i = 0; i < suffixes.length; i++) {
+                suffixes[i] = allSuffixes.get(i);
+            }
+        }
+
+        private boolean isOlderThan(long minutes) {
+            return System.currentTimeMillis() - builtAt > TimeUnit.MINUTES.toMillis(minutes);
+        }
+
+        private List<Integer> search(String term, List<String> tokens, String language) {
+            BitSet matchingNames = new BitSet(names.size());
+            matchingNames.set(0, names.size());
+            for (String token : tokens) {
+                matchingNames.and(namesContaining(token));
+                if (matchingNames.isEmpty()) {
+                    return new ArrayList<>();
+                }
+            }
+
+            Map<Integer, RankedAnswer> answers = new LinkedHashMap<>();
+            for (int nameIndex = matchingNames.nextSetBit(0); nameIndex >= 0; nameIndex = matchingNames.nextSetBit(nameIndex + 1)) {
+                IndexedName name = names.get(nameIndex);
+                RankedAnswer candidate = new RankedAnswer(name.answerId, rankOf(name, term, tokens),
+                        language != null && language.equals(name.language), sortWeights.get(name.answerId), name.name);
+                RankedAnswer current = answers.get(name.answerId);
+                if (current == null || BY_RANK.compare(candidate, current) < 0) {
+                    answers.put(name.answerId, candidate);
+                }
+            }
+            List<RankedAnswer> rankedAnswers = new ArrayList<>(answers.values());
+            Collections.sort(rankedAnswers, BY_RANK);
+            List<Integer> answerIds = new ArrayList<>(rankedAnswers.size());
+            for (RankedAnswer rankedAnswer : rankedAnswers) {
+                answerIds.add(rankedAnswer.answerId);
+            }
+            return answerIds;
+        }
+
+        private BitSet namesContaining(String token) {
+            BitSet matchingNames = new BitSet(names.size());
+            int low = 0;
+            int high = suffixes.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compareSuffix(suffixes[middle], token, 0) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            for (int i = low; i < suffixes.length && startsWith(suffixes[i], token); i++) {
+                for (int nameIndex : namesOfWord[wordIndexOf(suffixes[i])]) {
+                    matchingNames.set(nameIndex);
+                }
+            }
+            return matchingNames;
+        }
+
+        private int rankOf(IndexedName name, String term, List<String> tokens) {
+            if (name.name.equals(term)) {
+                return 0;
+            }
+            if (!tokens.isEmpty() && name.name.startsWith(tokens.get(0))) {
+                return 1;
+            }
+            for (String token : tokens) {
+                if (!name.hasWordStartingWith(token)) {
+                    return 3;
+                }
+            }
+            return 2;
+        }
+
+        private static long suffix(int wordIndex, int offset) {
+            return ((long) wordIndex << 32) | offset;
+        }
+
+        private static int wordIndexOf(long suffix) {
+            return (int) (suffix >>> 32);
+        }
+
+        /**
+         * Compares the suffix with the text from the offset on, without copying either.
+         */
+        private int compareSuffix(long suffix, String text, int textOffset) {
+            String word = words[wordIndexOf(suffix)];
+            int wordOffset = (int) suffix;
+            while (wordOffset < word.length() && textOffset < text.length()) {
+                char wordChar = word.charAt(wordOffset++);
+                char textChar = text.charAt(textOffset++);
+                if (wordChar != textChar) {
+                    return wordChar - textChar;
+                }
+            }
+            return (word.length() - wordOffset) - (text.length() - textOffset);
+        }
+
+        private boolean startsWith(long suffix, String token) {
+            return words[wordIndexOf(suffix)].startsWith(token, (int) suffix);
+        }
+
+        private static String languageOf(String locale) {
+            return locale == null ? null : locale.split("_")[0];
+        }
+    }
+
+    private static class IndexedName {
+        private final int answerId;
+        private final String name;
+        private final String language;
+        private final List<String> words;
+
+        private IndexedName(int answerId, String name, String language) {
+            this.answerId = answerId;
+            this.name = name;
+            this.language = language;
+            this.words = tokensOf(name);
+        }
+
+        private boolean hasWordStartingWith(String token) {
+            for (String word : words) {
+                if (word.startsWith(token)) return true;
+            }
+            return false;
+        }
+    }
+
+    private static class RankedAnswer {
+        private final int answerId;
+        private final int rank;
+        private final boolean inUserLanguage;
+        private final Double sortWeight;
+        private final String name;
+
+        private RankedAnswer(int answerId, int rank, boolean inUserLanguage, Double sortWeight, String name) {
+            this.answerId = answerId;
+            this.rank = rank;
+            this.inUserLanguage = inUserLanguage;
+            this.sortWeight = sortWeight;
+            this.name = name;
+        }
+    }
+
+    private static final Comparator<RankedAnswer> BY_RANK = new Comparator<RankedAnswer>() {
+        @Override
+        public int compare(RankedAnswer answer, RankedAnswer otherAnswer) {
+            if (answer.rank != otherAnswer.rank) {
+                return answer.rank < otherAnswer.rank ? -1 : 1;
+            }
+            if (answer.inUserLanguage != otherAnswer.inUserLanguage) {
+                return answer.inUserLanguage ? -1 : 1;
+            }
+            if (answer.sortWeight != null && otherAnswer.sortWeight != null && !answer.sortWeight.equals(otherAnswer.sortWeight)) {
+                return answer.sortWeight.compareTo(otherAnswer.sortWeight);
+            }
+            if ((answer.sortWeight == null) != (otherAnswer.sortWeight == null)) {
+                return answer.sortWeight != null ? -1 : 1;
+            }
+            return answer.name.compareTo(otherAnswer.name);
+        }
+    };
+}
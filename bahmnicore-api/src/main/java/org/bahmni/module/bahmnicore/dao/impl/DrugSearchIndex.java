@@ -0,0 +1,419 @@
+package org.bahmni.module.bahmnicore.dao.impl;
+
+import org.apache.log4j.Logger;
+import org.bahmni.module.referencedata.helper.ConceptServiceChangeListener;
+import org.hibernate.SessionFactory;
+import org.hibernate.type.StandardBasicTypes;
+import org.openmrs.Concept;
+import org.openmrs.Drug;
+import org.openmrs.api.context.Context;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In memory index of drug names, the names of their concepts and the concept sets their concepts belong to, for
+ * type ahead drug searches. Every name is broken into trigrams; a search intersects the drugs of the trigrams of the
+ * search term and then checks the remaining few for the term. Terms shorter than a trigram scan all drugs.
+ * <p/>
+ * The index is built on first use. Every change to a concept or drug through the concept service moves the index to
+ * a new generation once its transaction commits, and a rebuild is started in the background; searches keep using the
+ * previous snapshot until the new one is ready. A snapshot remembers the generation it was loaded for, so a change
+ * committed while a snapshot is being loaded is picked up by another rebuild. As a safety net for changes made
+ * outside the concept service the index is also rebuilt once it is older than {@link #MAX_AGE_MINUTES}.
+ */
+@Component
+public class DrugSearchIndex implements ConceptServiceChangeListener, DisposableBean {
+    public static final String USE_DRUG_SEARCH_INDEX_GLOBAL_PROPERTY = "bahmni.drugSearch.useIndex";
+    private static final Logger log = Logger.getLogger(DrugSearchIndex.class);
+    private static final long MAX_AGE_MINUTES = 30;
+    private static final int GRAM_SIZE = 3;
+
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "drug-search-index-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+    private SessionFactory sessionFactory;
+    private volatile Snapshot snapshot;
+
+    @Autowired
+    public DrugSearchIndex(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public boolean isEnabled() {
+        return Boolean.valueOf(Context.getAdministrationService().getGlobalProperty(USE_DRUG_SEARCH_INDEX_GLOBAL_PROPERTY));
+    }
+
+    /**
+     * Ids of drugs whose name or concept name starts with the phrase, followed by those containing it elsewhere,
+     * each group ordered by drug name.
+     */
+    public List<Integer> searchDrugIds(String phrase, boolean includeRetired, String conceptUuid) {
+        Snapshot current = getSnapshot();
+        String term = normalize(phrase);
+        List<IndexedDrug> startingWith = new ArrayList<>();
+        List<IndexedDrug> containing = new ArrayList<>();
+        for (IndexedDrug drug : current.candidates(term)) {
+            if ((drug.retired && !includeRetired) || (conceptUuid != null && !conceptUuid.equals(drug.conceptUuid))) {
+                continue;
+            }
+            if (drug.startsWith(term)) {
+                startingWith.add(drug);
+            } else if (drug.contains(term)) {
+                containing.add(drug);
+            }
+        }
+        Collections.sort(startingWith, BY_NAME);
+        Collections.sort(containing, BY_NAME);
+        List<Integer> drugIds = idsOf(startingWith);
+        drugIds.addAll(idsOf(containing));
+        return drugIds;
+    }
+
+    /**
+     * Ids of the active drugs of the members of a concept set matching the term by drug or concept name, in the sort
+     * order of the set. All of them when there is no term.
+     */
+    public List<Integer> searchDrugIdsInConceptSet(Integer conceptSetId, String searchTerm) {
+        Snapshot current = getSnapshot();
+        String term = searchTerm == null ? null : normalize(searchTerm);
+        List<Integer> drugIds = new ArrayList<>();
+        List<Integer> memberConceptIds = current.setMembers.get(conceptSetId);
+        if (memberConceptIds == null) {
+            return drugIds;
+        }
+        for (Integer conceptId : memberConceptIds) {
+            List<IndexedDrug> drugs = current.drugsByConcept.get(conceptId);
+            if (drugs == null) continue;
+            for (IndexedDrug drug : drugs) {
+                if (!drug.retired && (term == null || drug.contains(term))) {
+                    drugIds.add(drug.drugId);
+                }
+            }
+        }
+        return drugIds;
+    }
+
+    @Override
+    public void conceptChanged(Concept concept) {
+        changedOnCommit();
+    }
+
+    @Override
+    public void drugChanged(Drug drug) {
+        changedOnCommit();
+    }
+
+    /**
+     * Loads the index of the current generation on the calling thread, in its session.
+     */
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        long loadedGeneration = generation.get();
+        Snapshot loaded = load(loadedGeneration);
+        Snapshot current = snapshot;
+        if (current == null || current.generation <= loadedGeneration) {
+            snapshot = loaded;
+        }
+        log.info("Built drug search index of " + loaded.drugs.size() + " drugs in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    @Override
+    public void destroy() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    private void changedOnCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            changed();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                changed();
+            }
+        });
+    }
+
+    private void changed() {
+        generation.incrementAndGet();
+        if (snapshot != null) {
+            scheduleRebuild();
+        }
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    rebuild();
+                }
+                return snapshot;
+            }
+        }
+        if (current.generation < generation.get() || current.isOlderThan(MAX_AGE_MINUTES)) {
+            scheduleRebuild();
+        }
+        return current;
+    }
+
+    private void scheduleRebuild() {
+        if (!rebuildScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            rebuildExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // cleared before loading, so that a change committed during the load schedules the next rebuild
+                    rebuildScheduled.set(false);
+                    rebuildInOwnSession();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rebuildScheduled.set(false);
+        }
+    }
+
+    private void rebuildInOwnSession() {
+        Context.openSession();
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.error("Could not rebuild the drug search index, searches keep using the previous one", e);
+        } finally {
+            Context.closeSession();
+        }
+    }
+
+    private Snapshot load(long loadedGeneration) {
+        List<Object[]> drugRows = sessionFactory.getCurrentSession()
+                .createSQLQuery("select d.drug_id as drugId, d.name as drugName, d.concept_id as conceptId, d.retired as retired, c.uuid as conceptUuid " +
+                        "from drug d inner join concept c on c.concept_id = d.concept_id")
+                .addScalar("drugId", StandardBasicTypes.INTEGER)
+                .addScalar("drugName", StandardBasicTypes.STRING)
+                .addScalar("conceptId", StandardBasicTypes.INTEGER)
+                .addScalar("retired", StandardBasicTypes.BOOLEAN)
+                .addScalar("conceptUuid", StandardBasicTypes.STRING)
+                .list();
+        List<Object[]> conceptNameRows = sessionFactory.getCurrentSession()
+                .createSQLQuery("select cn.concept_id as conceptId, cn.name as name from concept_name cn " +
+                        "where cn.voided = 0 and cn.concept_id in (select d.concept_id from drug d)")
+                .addScalar("conceptId", StandardBasicTypes.INTEGER)
+                .addScalar("name", StandardBasicTypes.STRING)
+                .list();
+        List<Object[]> setMemberRows = sessionFactory.getCurrentSession()
+                .createSQLQuery("select cs.concept_set as conceptSetId, cs.concept_id as conceptId from concept_set cs " +
+                        "where cs.concept_id in (select d.concept_id from drug d) order by cs.concept_set, cs.sort_weight")
+                .addScalar("conceptSetId", StandardBasicTypes.INTEGER)
+                .addScalar("conceptId", StandardBasicTypes.INTEGER)
+                .list();
+
+        Map<Integer, List<String>> conceptNames = new HashMap<>();
+        for (Object[] row : conceptNameRows) {
+            Integer conceptId = (Integer) row[0];
+            if (!conceptNames.containsKey(conceptId)) {
+                conceptNames.put(conceptId, new ArrayList<String>());
+            }
+            conceptNames.get(conceptId).add(normalize((String) row[1]));
+        }
+
+        List<IndexedDrug> drugs = new ArrayList<>(drugRows.size());
+        Map<Integer, List<IndexedDrug>> drugsByConcept = new HashMap<>();
+        for (Object[] row : drugRows) {
+            Integer conceptId = (Integer) row[2];
+            List<String> names = conceptNames.containsKey(conceptId) ? conceptNames.get(conceptId) : Collections.<String>emptyList();
+            IndexedDrug drug = new IndexedDrug((Integer) row[0], (String) row[1], Boolean.TRUE.equals(row[3]), (String) row[4], names);
+            drugs.add(drug);
+            if (!drugsByConcept.containsKey(conceptId)) {
+                drugsByConcept.put(conceptId, new ArrayList<IndexedDrug>());
+            }
+            drugsByConcept.get(conceptId).add(drug);
+        }
+
+        Map<Integer, List<Integer>> setMembers = new HashMap<>();
+        for (Object[] row : setMemberRows) {
+            Integer conceptSetId = (Integer) row[0];
+            if (!setMembers.containsKey(conceptSetId)) {
+                setMembers.put(conceptSetId, new ArrayList<Integer>());
+            }
+            setMembers.get(conceptSetId).add((Integer) row[1]);
+        }
+        return new Snapshot(loadedGeneration, drugs, drugsByConcept, setMembers);
+    }
+
+    private static String normalize(String name) {
+        return name == null ? "" : name.trim().toLowerCase();
+    }
+
+    private static List<Integer> idsOf(List<IndexedDrug> drugs) {
+        List<Integer> drugIds = new ArrayList<>(drugs.size());
+        for (IndexedDrug drug : drugs) {
+            drugIds.add(drug.drugId);
+        }
+        return drugIds;
+    }
+
+    private static final Comparator<IndexedDrug> BY_NAME = new Comparator<IndexedDrug>() {
+        @Override
+        public int compare(IndexedDrug drug, IndexedDrug otherDrug) {
+            return drug.name.compareTo(otherDrug.name);
+        }
+    };
+
+    private static class IndexedDrug {
+        private final int drugId;
+        private final String name;
+        private final boolean retired;
+        private final String conceptUuid;
+        private final List<String> conceptNames;
+
+        private IndexedDrug(int drugId, String name, boolean retired, String conceptUuid, List<String> conceptNames) {
+            this.drugId = drugId;
+            this.name = normalize(name);
+            this.retired = retired;
+            this.conceptUuid = conceptUuid;
+            this.conceptNames = conceptNames;
+        }
+
+        private boolean startsWith(String term) {
+            if (name.startsWith(term)) return true;
+            for (String conceptName : conceptNames) {
+                if (conceptName.startsWith(term)) return true;
+            }
+            return false;
+        }
+
+        private boolean contains(String term) {
+            if (name.contains(term)) return true;
+            for (String conceptName : conceptNames) {
+                if (conceptName.contains(term)) return true;
+            }
+            return false;
+        }
+
+        private Set<String> grams() {
+            Set<String> grams = new LinkedHashSet<>();
+            addGrams(name, grams);
+            for (String conceptName : conceptNames) {
+                addGrams(conceptName, grams);
+            }
+            return grams;
+        }
+    }
+
+    private static void addGrams(String text, Set<String> grams) {
+        for (int i = 0; i + GRAM_SIZE <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM_SIZE));
+        }
+    }
+
+    private static class Snapshot {
+        private final long builtAt = System.currentTimeMillis();
+        private final long generation;
+        private final List<IndexedDrug> drugs;
+        private final Map<Integer, List<IndexedDrug>> drugsByConcept;
+        private final Map<Integer, List<Integer>> setMembers;
+        private final Map<String, int[]> postings = new HashMap<>();
+
+        private Snapshot(long generation, List<IndexedDrug> drugs, Map<Integer, List<IndexedDrug>> drugsByConcept, Map<Integer, List<Integer>> setMembers) {
+            this.generation = generation;
+            this.drugs = drugs;
+            this.drugsByConcept = drugsByConcept;
+            this.setMembers = setMembers;
+            Map<String, List<Integer>> positions = new HashMap<>();
+            for (int position = 0; position < drugs.size(); position++) {
+                for (String gram : drugs.get(position).grams()) {
+                    if (!positions.containsKey(gram)) {
+                        positions.put(gram, new ArrayList<Integer>());
+                    }
+                    positions.get(gram).add(position);
+                }
+            }
+            for (Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+                int[] sortedPositions = new int[entry.getValue().size()];
+                for (int i = 0; i < sortedPositions.length; i++) {
+                    sortedPositions[i] = entry.getValue().get(i);
+                }
+                postings.put(entry.getKey(), sortedPositions);
+            }
+        }
+
+        private boolean isOlderThan(long minutes) {
+            return System.currentTimeMillis() - builtAt > TimeUnit.MINUTES.toMillis(minutes);
+        }
+
+        /**
+         * Drugs that have every trigram of the term, which still have to be checked for the term itself.
+         */
+        private List<IndexedDrug> candidates(String term) {
+            if (term.length() < GRAM_SIZE) {
+                return drugs;
+            }
+            Set<String> grams = new LinkedHashSet<>();
+            addGrams(term, grams);
+            int[] matches = null;
+            for (String gram : grams) {
+                int[] gramPositions = postings.get(gram);
+                if (gramPositions == null) {
+                    return Collections.emptyList();
+                }
+                matches = matches == null ? gramPositions : intersect(matches, gramPositions);
+                if (matches.length == 0) {
+                    return Collections.emptyList();
+                }
+            }
+            List<IndexedDrug> candidates = new ArrayList<>(matches.length);
+            for (int position : matches) {
+                candidates.add(drugs.get(position));
+            }
+            return candidates;
+        }
+
+        private int[] intersect(int[] positions, int[] otherPositions) {
+            int[] common = new int[Math.min(positions.length, otherPositions.length)];
+            int i = 0, j = 0, count = 0;
+            while (i < positions.length && j < otherPositions.length) {
+                if (positions[i] == otherPositions[j]) {
+                    common[count++] = positions[i];
+                    i++;
+                    j++;
+                } else if (positions[i] < otherPositions[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return Arrays.copyOf(common, count);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.bahmni.module.bahmnicore.dao.impl;
+
+import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.bahmni.module.bahmnicore.dao.EncounterSessionDao;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openmrs.Encounter;
+import org.openmrs.EncounterType;
+import org.openmrs.Patient;
+import org.openmrs.Provider;
+import org.openmrs.User;
+import org.openmrs.Visit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public class EncounterSessionDaoImpl implements EncounterSessionDao {
+
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    @Override
+    public List<Encounter> getEncountersInSession(Patient patient, EncounterType encounterType, Date fromDate, Date toDate,
+                                                  Visit visit, Collection<Provider> providers, User creator,
+                                                  boolean filterByPatientProgram, String patientProgramUuid, int maxResults) {
+        List<Integer> providerIds = new ArrayList<>();
+        if (CollectionUtils.isNotEmpty(providers)) {
+            for (Provider provider : providers) {
+                providerIds.add(provider.getProviderId());
+            }
+        }
+        StringBuilder queryString = new StringBuilder("SELECT DISTINCT e.encounter_id FROM encounter e ");
+        if (!providerIds.isEmpty()) {
+            queryString.append("INNER JOIN encounter_provider ep ON ep.encounter_id = e.encounter_id AND ep.provider_id IN (:providerIds) ");
+        }
+        queryString.append("WHERE e.patient_id = :patientId AND e.voided = false " +
+                "AND e.encounter_datetime >= :fromDate AND e.encounter_datetime <= :toDate ");
+        if (encounterType != null) {
+            queryString.append("AND e.encounter_type = :encounterTypeId ");
+        }
+        if (visit != null) {
+            queryString.append("AND e.visit_id = :visitId ");
+        }
+        if (providerIds.isEmpty()) {
+            queryString.append("AND e.creator = :creatorId " +
+                    "AND NOT EXISTS (SELECT 1 FROM encounter_provider ep WHERE ep.encounter_id = e.encounter_id) ");
+        }
+        if (filterByPatientProgram && StringUtils.isBlank(patientProgramUuid)) {
+            queryString.append("AND NOT EXISTS (SELECT 1 FROM episode_encounter ee WHERE ee.encounter_id = e.encounter_id) ");
+        } else if (filterByPatientProgram) {
+            queryString.append("AND EXISTS (SELECT 1 FROM episode_encounter ee " +
+                    "INNER JOIN episode_patient_program epp ON epp.episode_id = ee.episode_id " +
+                    "INNER JOIN patient_program pp ON pp.patient_program_id = epp.patient_program_id " +
+                    "WHERE ee.encounter_id = e.encounter_id AND pp.uuid = :patientProgramUuid) ");
+        }
+
+        Session session = sessionFactory.getCurrentSession();
+        Query query = session.createSQLQuery(queryString.toString());
+        query.setInteger("patientId", patient.getPatientId());
+        query.setTimestamp("fromDate", fromDate);
+        query.setTimestamp("toDate", toDate);
+        if (encounterType != null) {
+            query.setInteger("encounterTypeId", encounterType.getEncounterTypeId());
+        }
+        if (visit != null) {
+            query.setInteger("visitId", visit.getVisitId());
+        }
+        if (!providerIds.isEmpty()) {
+            query.setParameterList("providerIds", providerIds);
+        } else {
+            query.setInteger("creatorId", creator.getUserId());
+        }
+        if (filterByPatientProgram && StringUtils.isNotBlank(patientProgramUuid)) {
+            query.setString("patientProgramUuid", patientProgramUuid);
+        }
+        query.setMaxResults(maxResults);
+
+        List<Encounter> encounters = new ArrayList<>();
+        for (Object encounterId : query.list()) {
+            encounters.add((Encounter) session.get(Encounter.class, ((Number) encounterId).intValue()));
+        }
+        return encounters;
+    }
+}
@@ -21,7 +21,9 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 public class ObsDaoImpl implements ObsDao {
@@ -124,6 +126,75 @@ public class ObsDaoImpl implements ObsDao {
         return queryToGetObservations.list();
     }
 
+    /**
+     * Returns, in a single round trip, the latest (DESC) or initial (ASC) non voided obs for each of the given concepts.
+     * Equivalent to calling getObsByPatientAndVisit with a limit of 1 once per concept.
+     */
+    @Override
+    public List<Obs> getLatestOrInitialObsForConcepts(String patientUuid, List<String> conceptNames, List<Integer> listOfVisitIds,
+                                                      OrderBy sortOrder, List<String> obsIgnoreList, Boolean filterOutOrderObs, Order order) {
+        if (CollectionUtils.isEmpty(conceptNames)) return new ArrayList<>();
+
+        String aggregate = sortOrder == OrderBy.ASC ? "min" : "max";
+        StringBuilder query = new StringBuilder("select obs from Obs as obs, ConceptName as cn " +
+                " where obs.person.uuid = :patientUuid " +
+                " and cn.concept = obs.concept.conceptId " +
+                " and cn.name in (:conceptNames) " +
+                " and cn.conceptNameType = :conceptNameType " +
+                " and cn.voided = false and obs.voided = false ");
+        if (CollectionUtils.isNotEmpty(obsIgnoreList)) {
+            query.append(" and cn.name not in (:obsIgnoreList) ");
+        }
+        query.append(obsFilters("obs", listOfVisitIds, filterOutOrderObs, order));
+        query.append(" and obs.obsDatetime = (select " + aggregate + "(boundaryObs.obsDatetime) from Obs as boundaryObs " +
+                " where boundaryObs.person = obs.person " +
+                " and boundaryObs.concept = obs.concept " +
+                " and boundaryObs.voided = false ");
+        query.append(obsFilters("boundaryObs", listOfVisitIds, filterOutOrderObs, order));
+        query.append(") order by obs.obsId ");
+        query.append(sortOrder == OrderBy.ASC ? "asc" : "desc");
+
+        Query queryToGetObservations = sessionFactory.getCurrentSession().createQuery(query.toString());
+        queryToGetObservations.setString("patientUuid", patientUuid);
+        queryToGetObservations.setParameterList("conceptNames", conceptNames);
+        queryToGetObservations.setParameter("conceptNameType", ConceptNameType.FULLY_SPECIFIED);
+        if (CollectionUtils.isNotEmpty(obsIgnoreList)) {
+            queryToGetObservations.setParameterList("obsIgnoreList", obsIgnoreList);
+        }
+        if (CollectionUtils.isNotEmpty(listOfVisitIds)) {
+            queryToGetObservations.setParameterList("listOfVisitIds", listOfVisitIds);
+        }
+        if (null != order) {
+            queryToGetObservations.setParameter("order", order);
+        }
+        return onePerConcept(queryToGetObservations.list());
+    }
+
+    private String obsFilters(String alias, List<Integer> listOfVisitIds, Boolean filterOutOrderObs, Order order) {
+        StringBuilder filters = new StringBuilder();
+        if (CollectionUtils.isNotEmpty(listOfVisitIds)) {
+            filters.append(" and " + alias + ".encounter.visit.visitId in (:listOfVisitIds) ");
+        }
+        if (filterOutOrderObs) {
+            filters.append(" and " + alias + ".order.orderId is null ");
+        }
+        if (null != order) {
+            filters.append(" and " + alias + ".order = (:order) ");
+        }
+        return filters.toString();
+    }
+
+    private List<Obs> onePerConcept(List<Obs> observations) {
+        Map<Integer, Obs> obsByConcept = new LinkedHashMap<>();
+        for (Obs observation : observations) {
+            Integer conceptId = observation.getConcept().getConceptId();
+            if (!obsByConcept.containsKey(conceptId)) {
+                obsByConcept.put(conceptId, observation);
+            }
+        }
+        return new ArrayList<>(obsByConcept.values());
+    }
+
     @Override
     public List<Obs> getLatestObsFor(String patientUuid, String conceptName, Integer limit) {
         Query queryToGetObservations = sessionFactory.getCurrentSession().createQuery(
@@ -1,11 +1,8 @@
 package org.bahmni.module.bahmnicore.dao.impl;
 
 import org.apache.commons.collections.CollectionUtils;
-import org.apache.log4j.Logger;
-import org.bahmni.module.bahmnicore.contract.orderTemplate.OrderTemplateJson;
 import org.bahmni.module.bahmnicore.dao.ApplicationDataDirectory;
 import org.bahmni.module.bahmnicore.dao.OrderDao;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.hibernate.Criteria;
 import org.hibernate.Query;
 import org.hibernate.SessionFactory;
@@ -23,13 +20,11 @@ import org.openmrs.Order;
 import org.openmrs.OrderType;
 import org.openmrs.Patient;
 import org.openmrs.Visit;
-import org.openmrs.module.emrapi.CareSettingType;
 import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
@@ -42,11 +37,10 @@ import java.util.Arrays;
 @Component
 public class OrderDaoImpl implements OrderDao {
     private static final String ORDER_TEMPLATES_DIRECTORY = "ordertemplates";
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
-    private static final Logger log = Logger.getLogger(OrderDaoImpl.class);
 
     private SessionFactory sessionFactory;
     private ApplicationDataDirectory applicationDataDirectory;
+    private final OrderTemplateRegistry orderTemplateRegistry = new OrderTemplateRegistry();
     private String TEMPLATES_JSON_FILE = "templates.json";
     private String FILE_SEPARATOR = "/";
 
@@ -160,32 +154,7 @@ public class OrderDaoImpl implements OrderDao {
 
     @Override
     public Collection<EncounterTransaction.DrugOrder> getDrugOrderForRegimen(String regimenName) {
-        File file = getTemplates();
-        OrderTemplateJson orderTemplates = null;
-        try {
-            orderTemplates = OBJECT_MAPPER.readValue(file, OrderTemplateJson.class);
-            setDefaultFields(orderTemplates);
-        } catch (IOException e) {
-            log.error("Could not deserialize file " + file.getAbsolutePath());
-            throw new RuntimeException(e);
-        }
-        for (OrderTemplateJson.OrderTemplate orderTemplate : orderTemplates.getOrderTemplates()) {
-            if (orderTemplate.getName().equals(regimenName)) {
-                return orderTemplate.getDrugOrders();
-            }
-        }
-        return new ArrayList<>();
-    }
-
-    private void setDefaultFields(OrderTemplateJson orderTemplateJson) {
-        for (OrderTemplateJson.OrderTemplate orderTemplate : orderTemplateJson.getOrderTemplates()) {
-            for (EncounterTransaction.DrugOrder drugOrder : orderTemplate.getDrugOrders()) {
-                drugOrder.setCareSetting(CareSettingType.OUTPATIENT);
-                drugOrder.setOrderType("Drug Order");
-                drugOrder.setDosingInstructionType("org.openmrs.module.bahmniemrapi.drugorder.dosinginstructions.FlexibleDosingInstructions");
-                drugOrder.getDosingInstructions().setAsNeeded(false);
-            }
-        }
+        return orderTemplateRegistry.getDrugOrders(getTemplates(), regimenName);
     }
 
     private File getTemplates() {
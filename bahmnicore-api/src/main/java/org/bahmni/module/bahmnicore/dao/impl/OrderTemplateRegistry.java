@@ -0,0 +1,115 @@
+package org.bahmni.module.bahmnicore.dao.impl;
+
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
+import org.openmrs.module.emrapi.CareSettingType;
+import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Order templates of a templates.json file, indexed by regimen name. The file is parsed once and parsed again only
+ * when its path, modification time or size changes. Templates are kept as json trees, and every lookup binds a new
+ * list of drug orders from the tree, so callers are free to modify what they get back.
+ */
+class OrderTemplateRegistry {
+    private static final Logger log = Logger.getLogger(OrderTemplateRegistry.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<List<EncounterTransaction.DrugOrder>> DRUG_ORDERS_TYPE = new TypeReference<List<EncounterTransaction.DrugOrder>>() {
+    };
+
+    private volatile Templates templates;
+
+    public List<EncounterTransaction.DrugOrder> getDrugOrders(File file, String regimenName) {
+        JsonNode drugOrders = getTemplates(file).byName.get(regimenName);
+        if (drugOrders == null) {
+            return new ArrayList<>();
+        }
+        try {
+            List<EncounterTransaction.DrugOrder> copy = OBJECT_MAPPER.readValue(drugOrders, DRUG_ORDERS_TYPE);
+            setDefaultFields(copy);
+            return copy;
+        } catch (IOException e) {
+            log.error("Could not deserialize order template " + regimenName + " of file " + file.getAbsolutePath());
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void clear() {
+        templates = null;
+    }
+
+    private Templates getTemplates(File file) {
+        Templates current = templates;
+        if (current != null && current.isLoadedFrom(file)) {
+            return current;
+        }
+        synchronized (this) {
+            current = templates;
+            if (current == null || !current.isLoadedFrom(file)) {
+                current = load(file);
+                templates = current;
+            }
+            return current;
+        }
+    }
+
+    private Templates load(File file) {
+        String path = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        try {
+            JsonNode root = OBJECT_MAPPER.readTree(file);
+            Map<String, JsonNode> byName = new HashMap<>();
+            JsonNode orderTemplates = root.get("orderTemplates");
+            if (orderTemplates != null) {
+                for (JsonNode orderTemplate : orderTemplates) {
+                    JsonNode name = orderTemplate.get("name");
+                    if (name != null && !byName.containsKey(name.getTextValue())) {
+                        byName.put(name.getTextValue(), orderTemplate.path("drugOrders"));
+                    }
+                }
+            }
+            log.info("Loaded " + byName.size() + " order templates from " + path);
+            return new Templates(path, lastModified, length, Collections.unmodifiableMap(byName));
+        } catch (IOException e) {
+            log.error("Could not deserialize file " + path);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void setDefaultFields(List<EncounterTransaction.DrugOrder> drugOrders) {
+        for (EncounterTransaction.DrugOrder drugOrder : drugOrders) {
+            drugOrder.setCareSetting(CareSettingType.OUTPATIENT);
+            drugOrder.setOrderType("Drug Order");
+            drugOrder.setDosingInstructionType("org.openmrs.module.bahmniemrapi.drugorder.dosinginstructions.FlexibleDosingInstructions");
+            drugOrder.getDosingInstructions().setAsNeeded(false);
+        }
+    }
+
+    private static class Templates {
+        private final String path;
+        private final long lastModified;
+        private final long length;
+        private final Map<String, JsonNode> byName;
+
+        private Templates(String path, long lastModified, long length, Map<String, JsonNode> byName) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.byName = byName;
+        }
+
+        private boolean isLoadedFrom(File file) {
+            return path.equals(file.getAbsolutePath()) && lastModified == file.lastModified() && length == file.length();
+        }
+    }
+}
@@ -3,7 +3,9 @@ package org.bahmni.module.bahmnicore.dao.impl;
 import org.apache.commons.lang3.StringUtils;
 import org.bahmni.module.bahmnicore.contract.patient.response.PatientResponse;
 import org.bahmni.module.bahmnicore.contract.patient.search.PatientSearchBuilder;
+import org.bahmni.module.bahmnicore.contract.patient.search.PatientSearchContinuationToken;
 import org.bahmni.module.bahmnicore.dao.PatientDao;
+import org.bahmni.module.bahmnicore.dao.PatientSearchIndexDao;
 import org.bahmni.module.bahmnicore.model.bahmniPatientProgram.ProgramAttributeType;
 import org.hibernate.Query;
 import org.hibernate.SQLQuery;
@@ -22,9 +24,14 @@ import java.util.List;
 
 @Repository
 public class PatientDaoImpl implements PatientDao {
+    public static final String USE_SEARCH_INDEX_GLOBAL_PROPERTY = "bahmni.patientSearch.useSearchIndex";
+    public static final String USE_IDENTIFIER_SUFFIX_INDEX_GLOBAL_PROPERTY = "bahmni.patientSearch.useIdentifierSuffixIndex";
 
     private SessionFactory sessionFactory;
 
+    @Autowired
+    private PatientSearchIndexDao patientSearchIndexDao;
+
     @Autowired
     public PatientDaoImpl(SessionFactory sessionFactory) {
         this.sessionFactory = sessionFactory;
@@ -35,20 +42,26 @@ public class PatientDaoImpl implements PatientDao {
                                              String addressFieldName, String addressFieldValue, Integer length,
                                              Integer offset, String[] customAttributeFields, String programAttributeFieldValue,
                                              String programAttributeFieldName, String[] addressSearchResultFields,
-                                             String[] patientSearchResultFields) {
+                                             String[] patientSearchResultFields, String continuationToken) {
         if(isInValidSearchParams(customAttributeFields,programAttributeFieldName)){
             return new ArrayList<>();
         }
 
         ProgramAttributeType programAttributeType = getProgramAttributeType(programAttributeFieldName);
+        List<Integer> customAttributeIds = getPersonAttributeIds(customAttributeFields);
+        List<Integer> resultAttributeIds = getPersonAttributeIds(patientSearchResultFields);
+        boolean useSearchIndex = patientSearchIndexDao.isSearchIndexReady() && customAttributeIds.isEmpty() && resultAttributeIds.isEmpty() && programAttributeType == null;
 
-        SQLQuery sqlQuery = new PatientSearchBuilder(sessionFactory)
+        PatientSearchBuilder patientSearchBuilder = new PatientSearchBuilder(sessionFactory, useSearchIndex)
                 .withPatientName(name)
                 .withPatientAddress(addressFieldName,addressFieldValue, addressSearchResultFields)
                 .withPatientIdentifier(identifier,identifierPrefix)
-                .withPatientAttributes(customAttribute, getPersonAttributeIds(customAttributeFields), getPersonAttributeIds(patientSearchResultFields))
-                .withProgramAttributes(programAttributeFieldValue, programAttributeType)
-                .buildSqlQuery(length,offset);
+                .withPatientAttributes(customAttribute, customAttributeIds, resultAttributeIds)
+                .withProgramAttributes(programAttributeFieldValue, programAttributeType);
+        if (continuationToken != null) {
+            patientSearchBuilder.withContinuationToken(PatientSearchContinuationToken.parse(continuationToken));
+        }
+        SQLQuery sqlQuery = patientSearchBuilder.buildSqlQuery(length,offset);
         return sqlQuery.list();
     }
 
@@ -96,6 +109,9 @@ public class PatientDaoImpl implements PatientDao {
 
     @Override
     public List<Patient> getPatients(String partialIdentifier, boolean shouldMatchExactPatientId) {
+        if (!shouldMatchExactPatientId && patientSearchIndexDao.isIdentifierSuffixIndexReady()) {
+            return getPatientsByIdentifierSuffix(partialIdentifier);
+        }
         if (!shouldMatchExactPatientId) {
             partialIdentifier = "%" + partialIdentifier;
             Query querytoGetPatients = sessionFactory.getCurrentSession().createQuery(
@@ -111,6 +127,33 @@ public class PatientDaoImpl implements PatientDao {
         return result;
     }
 
+    /**
+     * Same matches as identifier like '%value', found with a prefix match on the reversed identifiers of
+     * patient_identifier_suffix, which can use its index. Wildcards in the value are matched literally, as reversing
+     * the value would turn them around.
+     */
+    private List<Patient> getPatientsByIdentifierSuffix(String identifierSuffix) {
+        Session currentSession = sessionFactory.getCurrentSession();
+        String reversedIdentifier = new StringBuilder(identifierSuffix).reverse().toString();
+        List<Integer> patientIdentifierIds = currentSession.createSQLQuery(
+                "select patient_identifier_id from patient_identifier_suffix where reversed_identifier like :reversedIdentifier escape '!'")
+                .setString("reversedIdentifier", escapeLikeWildcards(reversedIdentifier) + "%")
+                .list();
+        if (patientIdentifierIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Query querytoGetPatients = currentSession.createQuery(
+                "select pi.patient " +
+                        " from PatientIdentifier pi " +
+                        " where pi.patientIdentifierId in (:patientIdentifierIds) ");
+        querytoGetPatients.setParameterList("patientIdentifierIds", patientIdentifierIds);
+        return querytoGetPatients.list();
+    }
+
+    private static String escapeLikeWildcards(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
     @Override
     public List<RelationshipType> getByAIsToB(String aIsToB) {
         Query querytoGetPatients = sessionFactory.getCurrentSession().createQuery(
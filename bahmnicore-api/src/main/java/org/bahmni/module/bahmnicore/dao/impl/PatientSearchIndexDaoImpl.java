@@ -0,0 +1,348 @@
+package org.bahmni.module.bahmnicore.dao.impl;
+
+import org.apache.log4j.Logger;
+import org.bahmni.module.bahmnicore.dao.PatientSearchIndexDao;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.GlobalPropertyListener;
+import org.openmrs.api.context.Context;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps patient_search_index and patient_identifier_suffix, each only while the global property that turns its
+ * lookups on is true. A table is not kept while its lookups are off, so patient_search_index is rebuilt when
+ * bahmni.patientSearch.useSearchIndex is turned on, and patient_identifier_suffix is reconciled when
+ * bahmni.patientSearch.useIdentifierSuffixIndex is turned on. Turning a flag on only marks its table stale; the
+ * rebuild runs on a background thread once the global property is committed, and lookups keep away from a stale
+ * table until it is done.
+ * <p/>
+ * Both are refreshed by {@link org.bahmni.module.bahmnicore.advice.PatientSearchIndexAdvice} only when patients are
+ * saved through the patient and person services. Identifiers written any other way are picked up by
+ * {@link org.bahmni.module.bahmnicore.task.PatientIdentifierSuffixReconcileTask}.
+ */
+@Repository
+public class PatientSearchIndexDaoImpl implements PatientSearchIndexDao, GlobalPropertyListener, DisposableBean {
+    private static final Logger log = Logger.getLogger(PatientSearchIndexDaoImpl.class);
+    private static final String PATIENT_SEARCH_INDEX_COLUMNS = "select p.person_id, p.uuid, pn.given_name, pn.middle_name, pn.family_name, p.gender, p.birthdate, p.death_date, p.date_created " +
+            " from patient pat " +
+            " inner join person p on p.person_id = pat.patient_id and p.voided = false " +
+            " inner join person_name pn on pn.person_name_id = " +
+            "   (select max(person_name_id) from person_name where person_id = p.person_id and voided = false and preferred = true) " +
+            " where pat.voided = false";
+    private static final String INSERT_INTO_PATIENT_SEARCH_INDEX = "insert into patient_search_index " +
+            "(person_id, uuid, given_name, middle_name, family_name, gender, birthdate, death_date, date_created) ";
+    private static final String DELETE_ENTRY = "delete from patient_search_index where person_id = :personId";
+    private static final String INSERT_ENTRY = INSERT_INTO_PATIENT_SEARCH_INDEX + PATIENT_SEARCH_INDEX_COLUMNS + " and p.person_id = :personId";
+    private static final String DELETE_ALL_ENTRIES = "delete from patient_search_index";
+    private static final String INSERT_ALL_ENTRIES = INSERT_INTO_PATIENT_SEARCH_INDEX + PATIENT_SEARCH_INDEX_COLUMNS;
+    private static final String DELETE_IDENTIFIER_SUFFIXES = "delete from patient_identifier_suffix where patient_id = :personId";
+    private static final String SELECT_IDENTIFIERS = "select patient_identifier_id, identifier from patient_identifier where patient_id = :personId";
+    private static final String INSERT_IDENTIFIER_SUFFIX = "insert into patient_identifier_suffix " +
+            "(patient_identifier_id, patient_id, reversed_identifier) values (:patientIdentifierId, :personId, :reversedIdentifier)";
+    private static final String UPDATE_IDENTIFIER_SUFFIX = "update patient_identifier_suffix set patient_id = :personId, reversed_identifier = :reversedIdentifier " +
+            "where patient_identifier_id = :patientIdentifierId";
+    private static final String SELECT_IDENTIFIERS_WITH_SUFFIXES = "select pi.patient_identifier_id, pi.patient_id, pi.identifier, s.patient_id as suffix_patient_id, s.reversed_identifier " +
+            "from patient_identifier pi left join patient_identifier_suffix s on s.patient_identifier_id = pi.patient_identifier_id " +
+            "where pi.patient_identifier_id > :afterPatientIdentifierId order by pi.patient_identifier_id";
+    private static final String DELETE_ORPHANED_IDENTIFIER_SUFFIXES = "delete from patient_identifier_suffix " +
+            "where patient_identifier_id not in (select patient_identifier_id from patient_identifier)";
+    private static final int RECONCILE_PAGE_SIZE = 1000;
+
+    private final ExecutorService catchUpExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "patient-search-index-catch-up");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final AtomicBoolean catchUpScheduled = new AtomicBoolean();
+    private final AtomicBoolean searchIndexRebuildRequested = new AtomicBoolean();
+    private final AtomicBoolean identifierSuffixReconcileRequested = new AtomicBoolean();
+
+    private SessionFactory sessionFactory;
+    private AdministrationService administrationService;
+    private PlatformTransactionManager transactionManager;
+    private volatile Boolean searchIndexEnabled;
+    private volatile Boolean identifierSuffixIndexEnabled;
+    private volatile boolean searchIndexRebuilding;
+    private volatile boolean identifierSuffixesReconciling;
+
+    @Autowired
+    public PatientSearchIndexDaoImpl(SessionFactory sessionFactory, @Qualifier("adminService") AdministrationService administrationService,
+                                     @Qualifier("transactionManager") PlatformTransactionManager transactionManager) {
+        this.sessionFactory = sessionFactory;
+        this.administrationService = administrationService;
+        this.transactionManager = transactionManager;
+        administrationService.addGlobalPropertyListener(this);
+    }
+
+    @Override
+    public boolean isSearchIndexReady() {
+        return isSearchIndexEnabled() && !searchIndexRebuildRequested.get() && !searchIndexRebuilding;
+    }
+
+    @Override
+    public boolean isIdentifierSuffixIndexReady() {
+        return isIdentifierSuffixIndexEnabled() && !identifierSuffixReconcileRequested.get() && !identifierSuffixesReconciling;
+    }
+
+    @Override
+    public boolean isMaintained() {
+        return isSearchIndexEnabled() || isIdentifierSuffixIndexEnabled();
+    }
+
+    @Override
+    public void refresh(Integer personId) {
+        if (personId == null || !isMaintained()) return;
+
+        Session session = sessionFactory.getCurrentSession();
+        session.flush();
+        if (isSearchIndexEnabled()) {
+            session.createSQLQuery(DELETE_ENTRY).setParameter("personId", personId).executeUpdate();
+            session.createSQLQuery(INSERT_ENTRY).setParameter("personId", personId).executeUpdate();
+        }
+        if (isIdentifierSuffixIndexEnabled()) {
+            refreshIdentifierSuffixes(session, personId);
+        }
+    }
+
+    @Override
+    public void rebuildSearchIndex() {
+        long startedAt = System.currentTimeMillis();
+        Session session = sessionFactory.getCurrentSession();
+        session.flush();
+        session.createSQLQuery(DELETE_ALL_ENTRIES).executeUpdate();
+        int entries = session.createSQLQuery(INSERT_ALL_ENTRIES).executeUpdate();
+        log.info("Rebuilt patient_search_index with " + entries + " patients in " + (System.currentTimeMillis() - startedAt) + " ms");
+    }
+
+    /**
+     * Walks patient_identifier a page at a time in patient_identifier_id order, adding the suffix rows that are
+     * missing and correcting the ones that no longer match their identifier, then drops the rows of identifiers
+     * that are gone. Returns the number of rows changed.
+     */
+    @Override
+    public int reconcileIdentifierSuffixes() {
+        long startedAt = System.currentTimeMillis();
+        Session session = sessionFactory.getCurrentSession();
+        session.flush();
+        int changedRows = 0;
+        int afterPatientIdentifierId = 0;
+        List<Object[]> identifiers;
+        do {
+            identifiers = session.createSQLQuery(SELECT_IDENTIFIERS_WITH_SUFFIXES)
+                    .setParameter("afterPatientIdentifierId", afterPatientIdentifierId)
+                    .setMaxResults(RECONCILE_PAGE_SIZE)
+                    .list();
+            for (Object[] identifier : identifiers) {
+                int patientIdentifierId = ((Number) identifier[0]).intValue();
+                int personId = ((Number) identifier[1]).intValue();
+                String reversedIdentifier = reverse((String) identifier[2]);
+                if (identifier[4] == null) {
+                    writeIdentifierSuffix(session, INSERT_IDENTIFIER_SUFFIX, patientIdentifierId, personId, reversedIdentifier);
+                    changedRows++;
+                } else if (((Number) identifier[3]).intValue() != personId || !reversedIdentifier.equals(identifier[4])) {
+                    writeIdentifierSuffix(session, UPDATE_IDENTIFIER_SUFFIX, patientIdentifierId, personId, reversedIdentifier);
+                    changedRows++;
+                }
+                afterPatientIdentifierId = patientIdentifierId;
+            }
+        } while (identifiers.size() == RECONCILE_PAGE_SIZE);
+        changedRows += session.createSQLQuery(DELETE_ORPHANED_IDENTIFIER_SUFFIXES).executeUpdate();
+        log.info("Reconciled patient_identifier_suffix, changing " + changedRows + " rows in " + (System.currentTimeMillis() - startedAt) + " ms");
+        return changedRows;
+    }
+
+    /**
+     * patient_identifier_suffix holds every identifier of the patient reversed, so identifiers ending with a value
+     * can be found with a prefix match on reversed_identifier.
+     */
+    private void refreshIdentifierSuffixes(Session session, Integer personId) {
+        session.createSQLQuery(DELETE_IDENTIFIER_SUFFIXES).setParameter("personId", personId).executeUpdate();
+        List<Object[]> identifiers = session.createSQLQuery(SELECT_IDENTIFIERS).setParameter("personId", personId).list();
+        for (Object[] identifier : identifiers) {
+            writeIdentifierSuffix(session, INSERT_IDENTIFIER_SUFFIX, ((Number) identifier[0]).intValue(), personId, reverse((String) identifier[1]));
+        }
+    }
+
+    private void writeIdentifierSuffix(Session session, String statement, int patientIdentifierId, int personId, String reversedIdentifier) {
+        session.createSQLQuery(statement)
+                .setParameter("patientIdentifierId", patientIdentifierId)
+                .setParameter("personId", personId)
+                .setParameter("reversedIdentifier", reversedIdentifier)
+                .executeUpdate();
+    }
+
+    /**
+     * Each job runs in its own transaction. A request that comes in while its job runs makes it run again, and a
+     * failed job stays requested, to be retried by the next catch up.
+     */
+    @Override
+    public synchronized void catchUp() {
+        if (searchIndexRebuildRequested.get()) {
+            searchIndexRebuilding = true;
+            searchIndexRebuildRequested.set(false);
+            try {
+                inTransaction(new Runnable() {
+                    @Override
+                    public void run() {
+                        rebuildSearchIndex();
+                    }
+                });
+            } catch (RuntimeException e) {
+                searchIndexRebuildRequested.set(true);
+                log.error("Could not rebuild patient_search_index, searches keep away from it until it is rebuilt", e);
+            } finally {
+                searchIndexRebuilding = false;
+            }
+        }
+        if (identifierSuffixReconcileRequested.get()) {
+            identifierSuffixesReconciling = true;
+            identifierSuffixReconcileRequested.set(false);
+            try {
+                inTransaction(new Runnable() {
+                    @Override
+                    public void run() {
+                        reconcileIdentifierSuffixes();
+                    }
+                });
+            } catch (RuntimeException e) {
+                identifierSuffixReconcileRequested.set(true);
+                log.error("Could not reconcile patient_identifier_suffix, lookups keep away from it until it is reconciled", e);
+            } finally {
+                identifierSuffixesReconciling = false;
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        catchUpExecutor.shutdownNow();
+    }
+
+    private void inTransaction(final Runnable job) {
+        new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                job.run();
+            }
+        });
+    }
+
+    private void scheduleCatchUpOnCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            scheduleCatchUp();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                scheduleCatchUp();
+            }
+        });
+    }
+
+    private void scheduleCatchUp() {
+        if (!catchUpScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            catchUpExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // cleared before catching up, so that a request made meanwhile schedules the next run
+                    catchUpScheduled.set(false);
+                    Context.openSession();
+                    try {
+                        catchUp();
+                    } finally {
+                        Context.closeSession();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            catchUpScheduled.set(false);
+        }
+    }
+
+    private static String reverse(String identifier) {
+        return new StringBuilder(identifier).reverse().toString();
+    }
+
+    private boolean isSearchIndexEnabled() {
+        Boolean enabled = searchIndexEnabled;
+        if (enabled == null) {
+            enabled = Boolean.valueOf(administrationService.getGlobalProperty(PatientDaoImpl.USE_SEARCH_INDEX_GLOBAL_PROPERTY));
+            searchIndexEnabled = enabled;
+        }
+        return enabled;
+    }
+
+    private boolean isIdentifierSuffixIndexEnabled() {
+        Boolean enabled = identifierSuffixIndexEnabled;
+        if (enabled == null) {
+            enabled = Boolean.valueOf(administrationService.getGlobalProperty(PatientDaoImpl.USE_IDENTIFIER_SUFFIX_INDEX_GLOBAL_PROPERTY));
+            identifierSuffixIndexEnabled = enabled;
+        }
+        return enabled;
+    }
+
+    @Override
+    public boolean supportsPropertyName(String propertyName) {
+        return PatientDaoImpl.USE_SEARCH_INDEX_GLOBAL_PROPERTY.equals(propertyName)
+                || PatientDaoImpl.USE_IDENTIFIER_SUFFIX_INDEX_GLOBAL_PROPERTY.equals(propertyName);
+    }
+
+    /**
+     * The flags are read as cached, since the new value is already visible to a query by now. A flag never read
+     * counts as off, so its table is brought up to date in case it was not kept. The table is only marked stale here,
+     * so saving the global property does not wait for a full table job.
+     */
+    @Override
+    public void globalPropertyChanged(GlobalProperty newValue) {
+        boolean enabled = Boolean.valueOf(newValue.getPropertyValue());
+        if (PatientDaoImpl.USE_SEARCH_INDEX_GLOBAL_PROPERTY.equals(newValue.getProperty())) {
+            boolean wasEnabled = Boolean.TRUE.equals(searchIndexEnabled);
+            searchIndexEnabled = enabled;
+            if (enabled && !wasEnabled) {
+                searchIndexRebuildRequested.set(true);
+                scheduleCatchUpOnCommit();
+            }
+        } else {
+            boolean wasEnabled = Boolean.TRUE.equals(identifierSuffixIndexEnabled);
+            identifierSuffixIndexEnabled = enabled;
+            if (enabled && !wasEnabled) {
+                identifierSuffixReconcileRequested.set(true);
+                scheduleCatchUpOnCommit();
+            }
+        }
+    }
+
+    @Override
+    public void globalPropertyDeleted(String propertyName) {
+        if (PatientDaoImpl.USE_SEARCH_INDEX_GLOBAL_PROPERTY.equals(propertyName)) {
+            searchIndexEnabled = false;
+        } else {
+            identifierSuffixIndexEnabled = false;
+        }
+    }
+}
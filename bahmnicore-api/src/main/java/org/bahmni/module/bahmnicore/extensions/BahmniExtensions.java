@@ -1,9 +1,9 @@
 package org.bahmni.module.bahmnicore.extensions;
 
-import groovy.lang.GroovyClassLoader;
 import org.apache.log4j.Logger;
 import org.bahmni.module.bahmnicore.dao.ApplicationDataDirectory;
 import org.bahmni.module.bahmnicore.dao.impl.ApplicationDataDirectoryImpl;
+import org.openmrs.module.bahmniemrapi.groovy.GroovyScriptCache;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
@@ -15,12 +15,9 @@ public class BahmniExtensions {
     private static final Logger log = Logger.getLogger(BahmniExtensions.class);
     public static final String GROOVY_EXTENSION = ".groovy";
 
-    private GroovyClassLoader groovyClassLoader;
-
     private ApplicationDataDirectory applicationDataDirectory;
 
     public BahmniExtensions() {
-        groovyClassLoader = new GroovyClassLoader();
         applicationDataDirectory = new ApplicationDataDirectoryImpl();
     }
 
@@ -31,8 +28,7 @@ public class BahmniExtensions {
             log.error("File not found " + groovyFile.getAbsolutePath());
         } else {
             try {
-                Class clazz = groovyClassLoader.parseClass(groovyFile);
-                return clazz.newInstance();
+                return GroovyScriptCache.getInstance().newInstance(groovyFile, Object.class);
             } catch (IOException | IllegalAccessException e) {
                 log.error("Problem with the groovy class " + groovyFile, e);
             } catch (InstantiationException e) {
@@ -1,54 +1,53 @@
 package org.bahmni.module.bahmnicore.matcher;
 
-import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
-import org.bahmni.module.bahmnicore.service.BahmniProgramWorkflowService;
+import org.apache.log4j.Logger;
+import org.bahmni.module.bahmnicore.dao.EncounterSessionDao;
 import org.openmrs.Encounter;
 import org.openmrs.EncounterType;
-import org.openmrs.Form;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Patient;
 import org.openmrs.Visit;
 import org.openmrs.api.AdministrationService;
 import org.openmrs.api.EncounterService;
+import org.openmrs.api.GlobalPropertyListener;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.bahmniemrapi.encountertransaction.mapper.EncounterTypeIdentifier;
 import org.openmrs.module.emrapi.encounter.EncounterParameters;
 import org.openmrs.module.emrapi.encounter.matcher.BaseEncounterMatcher;
-import org.openmrs.module.episodes.service.EpisodeService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
 @Component
-public class EncounterSessionMatcher implements BaseEncounterMatcher {
+public class EncounterSessionMatcher implements BaseEncounterMatcher, GlobalPropertyListener {
 
     public static final int DEFAULT_SESSION_DURATION_IN_MINUTES = 60;
     public static final String PATIENT_PROGAM_UUID = "patientProgramUuid";
+    public static final String SESSION_DURATION_GLOBAL_PROPERTY = "bahmni.encountersession.duration";
+    private static final Logger log = Logger.getLogger(EncounterSessionMatcher.class);
 
     private AdministrationService adminService;
     private EncounterTypeIdentifier encounterTypeIdentifier;
     private EncounterService encounterService;
-    private BahmniProgramWorkflowService bahmniProgramWorkflowService;
-    private EpisodeService episodeService;
+    private EncounterSessionDao encounterSessionDao;
+    private volatile Integer sessionDuration;
 
     @Autowired
     public EncounterSessionMatcher(@Qualifier("adminService") AdministrationService administrationService,
                                    EncounterTypeIdentifier encounterTypeIdentifier,
                                    EncounterService encounterService,
-                                   BahmniProgramWorkflowService bahmniProgramWorkflowService, EpisodeService episodeService) {
+                                   EncounterSessionDao encounterSessionDao) {
         this.adminService = administrationService;
         this.encounterTypeIdentifier = encounterTypeIdentifier;
         this.encounterService = encounterService;
-        this.bahmniProgramWorkflowService = bahmniProgramWorkflowService;
-        this.episodeService = episodeService;
+        this.encounterSessionDao = encounterSessionDao;
+        administrationService.addGlobalPropertyListener(this);
     }
 
     @Override
@@ -60,22 +59,20 @@ public class EncounterSessionMatcher implements BaseEncounterMatcher {
     }
 
     private Encounter findEncounterByUuid(Visit visit, String encounterUuid) {
-        for (Encounter encounter : visit.getEncounters()) {
-            if (encounter.getUuid().equals(encounterUuid)) {
-                return encounter;
-            }
+        Encounter encounter = encounterService.getEncounterByUuid(encounterUuid);
+        if (encounter != null && visit != null && visit.equals(encounter.getVisit())) {
+            return encounter;
         }
         return null;
     }
 
     private Encounter findMatchingEncounter(Visit visit, EncounterParameters encounterParameters) {
-        Collection<Visit> visits = null;
-        List<Encounter> matchingEncounters = new ArrayList<>();
-        if (visit != null) {
-            if (visit.getId() == null) { // To handle new Visit scenario where visit will not be persisted in DB and we get a visit obj (Called from emr-api).
-                return null;
-            }
-            visits = Arrays.asList(visit);
+        if (visit != null && visit.getId() == null) { // To handle new Visit scenario where visit will not be persisted in DB and we get a visit obj (Called from emr-api).
+            return null;
+        }
+        Patient patient = encounterParameters.getPatient();
+        if (patient == null || patient.getPatientId() == null) {
+            return null;
         }
 
         if (null == encounterParameters.getEncounterDateTime()) {
@@ -83,26 +80,15 @@ public class EncounterSessionMatcher implements BaseEncounterMatcher {
         }
         encounterParameters.setEncounterType(getEncounterType(encounterParameters));
 
-        Collection<Encounter> encounters = this.encounterService.getEncounters(encounterParameters.getPatient(), null,
-                getSearchStartDate(encounterParameters.getEncounterDateTime()),
-                encounterParameters.getEncounterDateTime(), new ArrayList<Form>(),
-                Arrays.asList(encounterParameters.getEncounterType()),
-                encounterParameters.getProviders(), null, visits, false);
-
         Map<String, Object> context = encounterParameters.getContext();
-        if (context != null) {
-            encounters = filterByPatientProgram(encounters, (String) context.get(PATIENT_PROGAM_UUID));
-        }
+        String patientProgramUuid = context != null ? (String) context.get(PATIENT_PROGAM_UUID) : null;
 
-        if (CollectionUtils.isNotEmpty(encounters)) {
-            for (Encounter encounter : encounters) {
-                if (CollectionUtils.isNotEmpty(encounterParameters.getProviders())) {
-                    matchingEncounters.add(encounter);
-                } else if (CollectionUtils.isEmpty(encounter.getEncounterProviders()) && isSameUser(encounter)) {
-                    matchingEncounters.add(encounter);
-                }
-            }
-        }
+        List<Encounter> matchingEncounters = encounterSessionDao.getEncountersInSession(patient,
+                encounterParameters.getEncounterType(),
+                getSearchStartDate(encounterParameters.getEncounterDateTime()),
+                encounterParameters.getEncounterDateTime(), visit,
+                encounterParameters.getProviders(), Context.getUserContext().getAuthenticatedUser(),
+                context != null, patientProgramUuid, 2);
 
         if (matchingEncounters.size() > 1) {
             throw new RuntimeException("More than one encounter matches the criteria");
@@ -114,21 +100,6 @@ public class EncounterSessionMatcher implements BaseEncounterMatcher {
         return null;
     }
 
-    private Collection<Encounter> filterByPatientProgram(Collection<Encounter> encounters, String patientProgramUuid) {
-        if (StringUtils.isBlank(patientProgramUuid)) {
-            Collection<Encounter> episodeEncounters = new ArrayList<>();
-            for (Encounter encounter : encounters) {
-                if (episodeService.getEpisodeForEncounter(encounter) != null) {
-                    episodeEncounters.add(encounter);
-                }
-            }
-            encounters.removeAll(episodeEncounters);
-            return encounters;
-        }
-        return CollectionUtils.intersection(encounters,
-                bahmniProgramWorkflowService.getEncountersByPatientProgramUuid(patientProgramUuid));
-    }
-
     private Date getSearchStartDate(Date endDate) {
         Date startDate = DateUtils.addMinutes(endDate, getSessionDuration() * -1);
         if (!DateUtils.isSameDay(startDate, endDate)) {
@@ -145,16 +116,39 @@ public class EncounterSessionMatcher implements BaseEncounterMatcher {
         return encounterType;
     }
 
-    private boolean isSameUser(Encounter encounter) {
-        return encounter.getCreator().getId().intValue() == Context.getUserContext().getAuthenticatedUser().getId().intValue();
+    private int getSessionDuration() {
+        Integer duration = sessionDuration;
+        if (duration == null) {
+            duration = parseSessionDuration(adminService.getGlobalProperty(SESSION_DURATION_GLOBAL_PROPERTY));
+            sessionDuration = duration;
+        }
+        return duration;
     }
 
-    private int getSessionDuration() {
-        String configuredSessionDuration = adminService.getGlobalProperty("bahmni.encountersession.duration");
-        int sessionDurationInMinutes = DEFAULT_SESSION_DURATION_IN_MINUTES;
-        if (configuredSessionDuration != null) {
-            sessionDurationInMinutes = Integer.parseInt(configuredSessionDuration);
+    private int parseSessionDuration(String configuredSessionDuration) {
+        if (configuredSessionDuration == null) {
+            return DEFAULT_SESSION_DURATION_IN_MINUTES;
+        }
+        try {
+            return Integer.parseInt(configuredSessionDuration.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring invalid value " + configuredSessionDuration + " of " + SESSION_DURATION_GLOBAL_PROPERTY);
+            return DEFAULT_SESSION_DURATION_IN_MINUTES;
         }
-        return sessionDurationInMinutes;
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean supportsPropertyName(String propertyName) {
+        return SESSION_DURATION_GLOBAL_PROPERTY.equals(propertyName);
+    }
+
+    @Override
+    public void globalPropertyChanged(GlobalProperty newValue) {
+        sessionDuration = null;
+    }
+
+    @Override
+    public void globalPropertyDeleted(String propertyName) {
+        sessionDuration = null;
+    }
+}
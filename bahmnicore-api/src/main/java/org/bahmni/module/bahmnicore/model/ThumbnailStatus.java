@@ -0,0 +1,5 @@
+package org.bahmni.module.bahmnicore.model;
+
+public enum ThumbnailStatus {
+    PENDING, CREATED, FAILED, NOT_FOUND
+}
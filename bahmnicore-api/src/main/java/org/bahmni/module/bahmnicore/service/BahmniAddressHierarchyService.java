@@ -6,4 +6,6 @@ import java.util.List;
 
 public interface BahmniAddressHierarchyService {
     List<BahmniAddressHierarchyEntry> getAddressHierarchyEntriesByUuid(List<String> uuids);
+
+    List<BahmniAddressHierarchyEntry> getAddressHierarchyEntryWithParents(String uuid);
 }
@@ -1,7 +1,11 @@
 package org.bahmni.module.bahmnicore.service;
 
+import org.bahmni.module.bahmnicore.model.ThumbnailStatus;
+
 public interface PatientImageService {
     public void saveImage(String patientIdentifier, String image);
     public String saveDocument(Integer patientId, String encounterTypeName, String images, String format);
+    public ThumbnailStatus getThumbnailStatus(String documentPath);
+    public int retryFailedThumbnails();
 
 }
@@ -6,23 +6,46 @@ import org.springframework.jdbc.support.JdbcUtils;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class RowMapper {
+    private ResultSet resultSet;
+    private List<String> columns;
+    private List<Integer> columnIndexes;
 
     public SimpleObject mapRow(ResultSet rs) throws SQLException {
+        resolveColumns(rs);
         SimpleObject row = new SimpleObject();
+        for (int i = 0; i < columns.size(); i++) {
+            Object value = rs.getObject(columnIndexes.get(i));
+            if (value == null) {
+                row.put(columns.get(i), "");
+            } else {
+                row.put(columns.get(i), value);
+            }
+        }
+        return row;
+    }
+
+    //Column labels are read once per result set. A repeated label maps to its first column, as a lookup by name would.
+    private void resolveColumns(ResultSet rs) throws SQLException {
+        if (rs == resultSet) return;
         ResultSetMetaData rsmd = rs.getMetaData();
         int columnCount = rsmd.getColumnCount();
+        Set<String> uniqueColumns = new HashSet<>();
+        columns = new ArrayList<>();
+        columnIndexes = new ArrayList<>();
         for (int index = 1; index <= columnCount; index++) {
             String column = JdbcUtils.lookupColumnName(rsmd, index);
-            Object value = rs.getObject(column);
-            if (value == null) {
-                row.put(column, "");
-            } else {
-                row.put(column, value);
+            if (uniqueColumns.add(column)) {
+                columns.add(column);
+                columnIndexes.add(index);
             }
         }
-        return row;
+        resultSet = rs;
     }
 
 }
@@ -1,12 +1,23 @@
 package org.bahmni.module.bahmnicore.service;
 
+import org.bahmni.module.bahmnicore.contract.monitoring.response.SqlQueryMetricsResponse;
 import org.openmrs.module.webservices.rest.SimpleObject;
 
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 
 public interface SqlSearchService {
+    /**
+     * Value of the "error" field that ends a streamed search which failed after its results started going out. The
+     * results before it are incomplete and the response has no nextPageToken.
+     */
+    public static final String STREAM_ERROR_MARKER = "SQL_SEARCH_FAILED";
 
     public List<SimpleObject> search(String sqlQuery, Map<String, String[]> params);
 
+    public void streamSearch(String sqlQuery, Map<String, String[]> params, Integer limit, String pageToken, OutputStream outputStream);
+
+    public List<SqlQueryMetricsResponse> getMetrics();
+
 }
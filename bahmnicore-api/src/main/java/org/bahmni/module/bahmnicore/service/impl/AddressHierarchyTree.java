@@ -0,0 +1,297 @@
+package org.bahmni.module.bahmnicore.service.impl;
+
+import org.apache.log4j.Logger;
+import org.bahmni.module.bahmnicore.dao.BahmniAddressHierarchyDao;
+import org.bahmni.module.bahmnicore.model.BahmniAddressHierarchyEntry;
+import org.bahmni.module.bahmnicore.model.BahmniAddressHierarchyLevel;
+import org.bahmni.module.referencedata.helper.AddressHierarchyChangeListener;
+import org.openmrs.api.context.Context;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In memory copy of the address hierarchy: every entry by uuid and by id, the levels, and the parent link of each
+ * entry. A snapshot is never modified once built; lookups hand out copies of its entries, so callers are free to
+ * change what they get back.
+ * <p/>
+ * The tree is loaded on first use. Entries saved through the address hierarchy service are queued once their
+ * transaction commits, and the next lookup reads just those entries again and swaps in a new snapshot holding them.
+ * Uuids the tree does not know are looked up in the database. As a safety net for changes made outside the address
+ * hierarchy service the whole tree is loaded again once it is older than {@link #MAX_AGE_HOURS}; that load runs in
+ * the background, and lookups keep using the current snapshot until it is done.
+ */
+@Component
+public class AddressHierarchyTree implements AddressHierarchyChangeListener, DisposableBean {
+    public static final String USE_ADDRESS_HIERARCHY_CACHE_GLOBAL_PROPERTY = "bahmni.addressHierarchy.useCache";
+    private static final Logger log = Logger.getLogger(AddressHierarchyTree.class);
+    private static final long MAX_AGE_HOURS = 6;
+
+    private BahmniAddressHierarchyDao bahmniAddressHierarchyDao;
+    private volatile Snapshot snapshot;
+    private final Set<String> changedUuids = Collections.synchronizedSet(new LinkedHashSet<String>());
+    private final AtomicBoolean reloadScheduled = new AtomicBoolean();
+    //uuids read on top of the old snapshot while a reload is loading, guarded by this
+    private Set<String> uuidsAppliedDuringReload;
+    private final ExecutorService reloadExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "address-hierarchy-tree-reload");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    @Autowired
+    public AddressHierarchyTree(BahmniAddressHierarchyDao bahmniAddressHierarchyDao) {
+        this.bahmniAddressHierarchyDao = bahmniAddressHierarchyDao;
+    }
+
+    public boolean isEnabled() {
+        return Boolean.valueOf(Context.getAdministrationService().getGlobalProperty(USE_ADDRESS_HIERARCHY_CACHE_GLOBAL_PROPERTY));
+    }
+
+    /**
+     * Entries of the uuids in the order asked for, skipping uuids that are not in the hierarchy.
+     */
+    public List<BahmniAddressHierarchyEntry> getEntriesByUuid(List<String> uuids) {
+        Snapshot current = getSnapshot();
+        List<String> unknownUuids = new ArrayList<>();
+        for (String uuid : uuids) {
+            if (!current.entriesByUuid.containsKey(uuid)) {
+                unknownUuids.add(uuid);
+            }
+        }
+        Map<String, BahmniAddressHierarchyEntry> unknownEntries = new HashMap<>();
+        if (!unknownUuids.isEmpty()) {
+            for (BahmniAddressHierarchyEntry entry : bahmniAddressHierarchyDao.getAddressHierarchyEntriesByUuid(unknownUuids)) {
+                unknownEntries.put(entry.getUuid(), entry);
+            }
+        }
+        List<BahmniAddressHierarchyEntry> entries = new ArrayList<>(uuids.size());
+        for (String uuid : uuids) {
+            BahmniAddressHierarchyEntry entry = current.entriesByUuid.get(uuid);
+            if (entry != null) {
+                entries.add(current.copyOf(entry));
+            } else if (unknownEntries.containsKey(uuid)) {
+                entries.add(unknownEntries.get(uuid));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * The entry of the uuid followed by its parent, grand parent and so on up to the top of the hierarchy. Empty when
+     * the uuid is not in the hierarchy.
+     */
+    public List<BahmniAddressHierarchyEntry> getEntryWithParents(String uuid) {
+        List<BahmniAddressHierarchyEntry> chain = new ArrayList<>();
+        List<BahmniAddressHierarchyEntry> entries = getEntriesByUuid(Collections.singletonList(uuid));
+        if (entries.isEmpty()) {
+            return chain;
+        }
+        Snapshot current = snapshot;
+        BahmniAddressHierarchyEntry entry = entries.get(0);
+        Set<Integer> visited = new LinkedHashSet<>();
+        while (entry != null && visited.add(entry.getAddressHierarchyEntryId())) {
+            chain.add(entry);
+            entry = parentOf(entry, current);
+        }
+        return chain;
+    }
+
+    @Override
+    public void addressHierarchyEntriesChanged(List<String> uuids) {
+        changedUuids.addAll(uuids);
+    }
+
+    @Override
+    public void destroy() {
+        reloadExecutor.shutdownNow();
+    }
+
+    /**
+     * Loads the whole tree on the calling thread, in its session. Lookups are not held up while it loads; entries
+     * changed in the meantime stay queued, and those already read on top of the old snapshot are queued again, so
+     * they are all read again on top of the new snapshot.
+     */
+    public void reload() {
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            uuidsAppliedDuringReload = new LinkedHashSet<>();
+        }
+        try {
+            Snapshot loaded = load();
+            synchronized (this) {
+                snapshot = loaded;
+                changedUuids.addAll(uuidsAppliedDuringReload);
+            }
+            log.info("Loaded address hierarchy tree of " + loaded.entriesById.size() + " entries in " + (System.currentTimeMillis() - start) + " ms");
+        } finally {
+            synchronized (this) {
+                uuidsAppliedDuringReload = null;
+            }
+        }
+    }
+
+    private Snapshot load() {
+        Map<Integer, BahmniAddressHierarchyLevel> levelsById = new HashMap<>();
+        for (BahmniAddressHierarchyLevel level : bahmniAddressHierarchyDao.getAddressHierarchyLevels()) {
+            levelsById.put(level.getLevelId(), level);
+        }
+        Map<String, BahmniAddressHierarchyEntry> entriesByUuid = new HashMap<>();
+        Map<Integer, BahmniAddressHierarchyEntry> entriesById = new HashMap<>();
+        for (BahmniAddressHierarchyEntry entry : bahmniAddressHierarchyDao.getAllAddressHierarchyEntries()) {
+            entriesByUuid.put(entry.getUuid(), entry);
+            entriesById.put(entry.getAddressHierarchyEntryId(), entry);
+        }
+        return new Snapshot(entriesByUuid, entriesById, levelsById, System.currentTimeMillis());
+    }
+
+    private BahmniAddressHierarchyEntry parentOf(BahmniAddressHierarchyEntry entry, Snapshot current) {
+        if (entry.getParentId() == null) {
+            return null;
+        }
+        BahmniAddressHierarchyEntry parent = current.entriesById.get(entry.getParentId());
+        if (parent != null) {
+            return current.copyOf(parent);
+        }
+        List<BahmniAddressHierarchyEntry> parents = bahmniAddressHierarchyDao.getAddressHierarchyEntriesById(Collections.singletonList(entry.getParentId()));
+        return parents.isEmpty() ? null : parents.get(0);
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    reload();
+                }
+            }
+            current = snapshot;
+        } else if (current.isOlderThan(MAX_AGE_HOURS)) {
+            scheduleReload();
+        }
+        if (!changedUuids.isEmpty()) {
+            current = applyChanges();
+        }
+        return current;
+    }
+
+    private void scheduleReload() {
+        if (!reloadScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            reloadExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Context.openSession();
+                    try {
+                        reload();
+                    } catch (Exception e) {
+                        log.error("Could not reload the address hierarchy tree, lookups keep using the previous one", e);
+                    } finally {
+                        Context.closeSession();
+                        reloadScheduled.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            reloadScheduled.set(false);
+        }
+    }
+
+    private synchronized Snapshot applyChanges() {
+        List<String> uuids;
+        synchronized (changedUuids) {
+            uuids = new ArrayList<>(changedUuids);
+            changedUuids.clear();
+        }
+        if (uuids.isEmpty()) {
+            return snapshot;
+        }
+        if (uuidsAppliedDuringReload != null) {
+            uuidsAppliedDuringReload.addAll(uuids);
+        }
+        Snapshot current = snapshot;
+        Map<String, BahmniAddressHierarchyEntry> entriesByUuid = new HashMap<>(current.entriesByUuid);
+        Map<Integer, BahmniAddressHierarchyEntry> entriesById = new HashMap<>(current.entriesById);
+        Map<Integer, BahmniAddressHierarchyLevel> levelsById = new HashMap<>(current.levelsById);
+        for (String uuid : uuids) {
+            BahmniAddressHierarchyEntry removed = entriesByUuid.remove(uuid);
+            if (removed != null) {
+                entriesById.remove(removed.getAddressHierarchyEntryId());
+            }
+        }
+        for (BahmniAddressHierarchyEntry entry : bahmniAddressHierarchyDao.getAddressHierarchyEntriesByUuid(uuids)) {
+            if (entry.getAddressHierarchyLevel() != null) {
+                levelsById.put(entry.getLevelId(), entry.getAddressHierarchyLevel());
+            }
+            entry.setAddressHierarchyLevel(null);
+            entriesByUuid.put(entry.getUuid(), entry);
+            entriesById.put(entry.getAddressHierarchyEntryId(), entry);
+        }
+        snapshot = new Snapshot(entriesByUuid, entriesById, levelsById, current.loadedAt);
+        return snapshot;
+    }
+
+    private static class Snapshot {
+        private final Map<String, BahmniAddressHierarchyEntry> entriesByUuid;
+        private final Map<Integer, BahmniAddressHierarchyEntry> entriesById;
+        private final Map<Integer, BahmniAddressHierarchyLevel> levelsById;
+        private final long loadedAt;
+
+        private Snapshot(Map<String, BahmniAddressHierarchyEntry> entriesByUuid, Map<Integer, BahmniAddressHierarchyEntry> entriesById,
+                         Map<Integer, BahmniAddressHierarchyLevel> levelsById, long loadedAt) {
+            this.entriesByUuid = Collections.unmodifiableMap(entriesByUuid);
+            this.entriesById = Collections.unmodifiableMap(entriesById);
+            this.levelsById = Collections.unmodifiableMap(levelsById);
+            this.loadedAt = loadedAt;
+        }
+
+        private boolean isOlderThan(long hours) {
+            return System.currentTimeMillis() - loadedAt > TimeUnit.HOURS.toMillis(hours);
+        }
+
+        private BahmniAddressHierarchyEntry copyOf(BahmniAddressHierarchyEntry entry) {
+            BahmniAddressHierarchyEntry copy = new BahmniAddressHierarchyEntry();
+            copy.setAddressHierarchyEntryId(entry.getAddressHierarchyEntryId());
+            copy.setName(entry.getName());
+            copy.setLevelId(entry.getLevelId());
+            copy.setParentId(entry.getParentId());
+            copy.setUserGeneratedId(entry.getUserGeneratedId());
+            copy.setUuid(entry.getUuid());
+            copy.setAddressHierarchyLevel(copyOf(levelsById.get(entry.getLevelId())));
+            return copy;
+        }
+
+        private BahmniAddressHierarchyLevel copyOf(BahmniAddressHierarchyLevel level) {
+            if (level == null) {
+                return null;
+            }
+            BahmniAddressHierarchyLevel copy = new BahmniAddressHierarchyLevel();
+            copy.setLevelId(level.getLevelId());
+            copy.setName(level.getName());
+            copy.setParentLevelId(level.getParentLevelId());
+            copy.setAddressField(level.getAddressField());
+            copy.setRequired(level.getRequired());
+            copy.setUuid(level.getUuid());
+            return copy;
+        }
+    }
+}
@@ -7,20 +7,50 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @Component
 @Transactional
 public class BahmniAddressHierarchyServiceImpl implements BahmniAddressHierarchyService {
     private BahmniAddressHierarchyDao bahmniAddressHierarchyDao;
+    private AddressHierarchyTree addressHierarchyTree;
 
     @Autowired
-    public BahmniAddressHierarchyServiceImpl(BahmniAddressHierarchyDao bahmniAddressHierarchyDao) {
+    public BahmniAddressHierarchyServiceImpl(BahmniAddressHierarchyDao bahmniAddressHierarchyDao, AddressHierarchyTree addressHierarchyTree) {
         this.bahmniAddressHierarchyDao = bahmniAddressHierarchyDao;
+        this.addressHierarchyTree = addressHierarchyTree;
     }
 
     @Override
     public List<BahmniAddressHierarchyEntry> getAddressHierarchyEntriesByUuid(List<String> uuids) {
+        if (addressHierarchyTree.isEnabled()) {
+            return addressHierarchyTree.getEntriesByUuid(uuids);
+        }
         return bahmniAddressHierarchyDao.getAddressHierarchyEntriesByUuid(uuids);
     }
+
+    @Override
+    public List<BahmniAddressHierarchyEntry> getAddressHierarchyEntryWithParents(String uuid) {
+        if (addressHierarchyTree.isEnabled()) {
+            return addressHierarchyTree.getEntryWithParents(uuid);
+        }
+        List<BahmniAddressHierarchyEntry> chain = new ArrayList<>(bahmniAddressHierarchyDao.getAddressHierarchyEntriesByUuid(Arrays.asList(uuid)));
+        Set<Integer> visited = new HashSet<>();
+        while (!chain.isEmpty()) {
+            BahmniAddressHierarchyEntry last = chain.get(chain.size() - 1);
+            if (last.getParentId() == null || !visited.add(last.getAddressHierarchyEntryId())) {
+                break;
+            }
+            List<BahmniAddressHierarchyEntry> parents = bahmniAddressHierarchyDao.getAddressHierarchyEntriesById(Arrays.asList(last.getParentId()));
+            if (parents.isEmpty()) {
+                break;
+            }
+            chain.add(parents.get(0));
+        }
+        return chain;
+    }
 }
@@ -8,6 +8,7 @@ import org.bahmni.module.bahmnicore.dao.impl.ObsDaoImpl;
 import org.bahmni.module.bahmnicore.service.BahmniObsService;
 import org.bahmni.module.bahmnicore.service.BahmniProgramWorkflowService;
 import org.bahmni.module.bahmnicore.util.MiscUtils;
+import org.bahmni.module.referencedata.helper.ConceptMetadataCache;
 import org.openmrs.Concept;
 import org.openmrs.Encounter;
 import org.openmrs.Obs;
@@ -29,6 +30,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -109,24 +111,16 @@ public class BahmniObsServiceImpl implements BahmniObsService {
     @Override
     public Collection<BahmniObservation> getLatest(String patientUuid, Collection<Concept> concepts, Integer numberOfVisits, List<String> obsIgnoreList,
                                                    Boolean filterOutOrderObs, Order order) {
-        List<Obs> latestObs = new ArrayList<>();
-        for (Concept concept : concepts) {
-            if (null != concept) {
-                latestObs.addAll(obsDao.getObsByPatientAndVisit(patientUuid, Arrays.asList(concept.getName().getName()),
-                        visitDao.getVisitIdsFor(patientUuid, numberOfVisits), 1, ObsDaoImpl.OrderBy.DESC, obsIgnoreList, filterOutOrderObs, order, null, null));
-            }
-        }
+        List<Obs> latestObs = getLatestOrInitialObs(patientUuid, concepts, visitDao.getVisitIdsFor(patientUuid, numberOfVisits),
+                ObsDaoImpl.OrderBy.DESC, obsIgnoreList, filterOutOrderObs, order);
 
         return omrsObsToBahmniObsMapper.map(latestObs, concepts);
     }
 
     @Override
     public Collection<BahmniObservation> getLatestObsByVisit(Visit visit, Collection<Concept> concepts, List<String> obsIgnoreList, Boolean filterOutOrderObs) {
-        List<Obs> latestObs = new ArrayList<>();
-        for (Concept concept : concepts) {
-            latestObs.addAll(obsDao.getObsByPatientAndVisit(visit.getPatient().getUuid(), Arrays.asList(concept.getName().getName()),
-                    Arrays.asList(visit.getVisitId()), 1, ObsDaoImpl.OrderBy.DESC, obsIgnoreList, filterOutOrderObs, null, null, null));
-        }
+        List<Obs> latestObs = getLatestOrInitialObs(visit.getPatient().getUuid(), concepts, Arrays.asList(visit.getVisitId()),
+                ObsDaoImpl.OrderBy.DESC, obsIgnoreList, filterOutOrderObs, null);
 
         return omrsObsToBahmniObsMapper.map(latestObs, concepts);
     }
@@ -134,25 +128,46 @@ public class BahmniObsServiceImpl implements BahmniObsService {
     @Override
     public Collection<BahmniObservation> getInitial(String patientUuid, Collection<Concept> conceptNames,
                                                     Integer numberOfVisits, List<String> obsIgnoreList, Boolean filterOutOrderObs, Order order) {
-        List<Obs> latestObs = new ArrayList<>();
-        for (Concept concept : conceptNames) {
-            latestObs.addAll(obsDao.getObsByPatientAndVisit(patientUuid, Arrays.asList(concept.getName().getName()),
-                    visitDao.getVisitIdsFor(patientUuid, numberOfVisits), 1, ObsDaoImpl.OrderBy.ASC, obsIgnoreList, filterOutOrderObs, order, null, null));
-        }
+        List<Obs> initialObs = getLatestOrInitialObs(patientUuid, conceptNames, visitDao.getVisitIdsFor(patientUuid, numberOfVisits),
+                ObsDaoImpl.OrderBy.ASC, obsIgnoreList, filterOutOrderObs, order);
 
-        return omrsObsToBahmniObsMapper.map(latestObs, conceptNames);
+        return omrsObsToBahmniObsMapper.map(initialObs, conceptNames);
     }
 
     @Override
     public Collection<BahmniObservation> getInitialObsByVisit(Visit visit, List<Concept> concepts, List<String> obsIgnoreList, Boolean filterObsWithOrders) {
-        List<Obs> latestObs = new ArrayList<>();
+        List<Obs> initialObs = getLatestOrInitialObs(visit.getPatient().getUuid(), concepts, Arrays.asList(visit.getVisitId()),
+                ObsDaoImpl.OrderBy.ASC, obsIgnoreList, filterObsWithOrders, null);
+
+        return omrsObsToBahmniObsMapper.map(initialObs, concepts);
+    }
+
+    private List<Obs> getLatestOrInitialObs(String patientUuid, Collection<Concept> concepts, List<Integer> visitIds, ObsDaoImpl.OrderBy sortOrder,
+                                            List<String> obsIgnoreList, Boolean filterOutOrderObs, Order order) {
+        List<String> conceptNames = new ArrayList<>();
         for (Concept concept : concepts) {
-            latestObs.addAll(obsDao.getObsByPatientAndVisit(visit.getPatient().getUuid(), Arrays.asList(concept.getName().getName()),
-                    Arrays.asList(visit.getVisitId()), 1, ObsDaoImpl.OrderBy.ASC, obsIgnoreList, filterObsWithOrders, null, null, null));
+            if (null != concept) {
+                conceptNames.add(concept.getName().getName());
+            }
         }
+        List<Obs> observations = obsDao.getLatestOrInitialObsForConcepts(patientUuid, conceptNames, visitIds, sortOrder, obsIgnoreList, filterOutOrderObs, order);
+        return inConceptOrder(observations, concepts);
+    }
 
-        Collection<BahmniObservation> map = omrsObsToBahmniObsMapper.map(latestObs, concepts);
-        return map;
+    private List<Obs> inConceptOrder(List<Obs> observations, Collection<Concept> concepts) {
+        Map<Integer, Obs> obsByConcept = new LinkedHashMap<>();
+        for (Obs observation : observations) {
+            obsByConcept.put(observation.getConcept().getConceptId(), observation);
+        }
+        List<Obs> orderedObs = new ArrayList<>();
+        for (Concept concept : concepts) {
+            Obs observation = null != concept ? obsByConcept.remove(concept.getConceptId()) : null;
+            if (observation != null) {
+                orderedObs.add(observation);
+            }
+        }
+        orderedObs.addAll(obsByConcept.values());
+        return orderedObs;
     }
 
     @Override
@@ -232,7 +247,7 @@ public class BahmniObsServiceImpl implements BahmniObsService {
     }
 
     private Concept getConceptByName(String conceptName) {
-        return conceptService.getConceptByName(conceptName);
+        return ConceptMetadataCache.getInstance().getConceptByName(conceptName, conceptService);
     }
 
     private Collection<Concept> getConceptsByName(List<String> conceptNames) {
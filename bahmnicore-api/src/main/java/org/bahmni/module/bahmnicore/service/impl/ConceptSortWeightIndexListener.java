@@ -0,0 +1,31 @@
+package org.bahmni.module.bahmnicore.service.impl;
+
+import org.bahmni.module.referencedata.helper.CacheInvalidation;
+import org.bahmni.module.referencedata.helper.ConceptServiceChangeListener;
+import org.openmrs.Concept;
+import org.openmrs.Drug;
+import org.openmrs.module.bahmniemrapi.encountertransaction.mapper.ConceptSortWeightUtil;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drops the cached sort weight indexes whenever a concept changes, as the name or the set members of any concept
+ * can move the sort weights of every tree holding it. They are dropped again once the transaction completes, so an
+ * index built meanwhile from the committed concepts does not outlive the change.
+ */
+@Component
+public class ConceptSortWeightIndexListener implements ConceptServiceChangeListener {
+
+    @Override
+    public void conceptChanged(Concept concept) {
+        CacheInvalidation.nowAndOnCompletion(new Runnable() {
+            @Override
+            public void run() {
+                ConceptSortWeightUtil.clearIndexes();
+            }
+        });
+    }
+
+    @Override
+    public void drugChanged(Drug drug) {
+    }
+}
@@ -1,22 +1,36 @@
 package org.bahmni.module.bahmnicore.service.impl;
 
-import liquibase.util.file.FilenameUtils;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.bahmni.module.bahmnicore.BahmniCoreException;
+import org.bahmni.module.bahmnicore.model.ThumbnailStatus;
 import org.bahmni.module.bahmnicore.properties.BahmniCoreProperties;
 import org.bahmni.module.bahmnicore.service.PatientImageService;
-import org.imgscalr.Scalr;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import javax.xml.bind.DatatypeConverter;
+import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.UUID;
 
 @Service
@@ -24,7 +38,12 @@ import java.util.UUID;
 public class PatientImageServiceImpl implements PatientImageService {
     private Log log = LogFactory.getLog(PatientImageServiceImpl.class);
     private static final String patientImagesFormat = "jpeg";
+    private static final int DECODE_CHUNK_SIZE = 64 * 1024;
+    private static final byte[] PDF_HEADER = {'%', 'P', 'D', 'F', '-'};
+    private static final int DEFAULT_THUMBNAIL_WORKERS = 2;
+    private static final int THUMBNAIL_QUEUE_SIZE = 500;
     private final Integer NO_OF_PATIENT_FILE_IN_A_DIRECTORY = 100;
+    private ThumbnailGenerator thumbnailGenerator;
 
 
     @Override
@@ -33,23 +52,57 @@ public class PatientImageServiceImpl implements PatientImageService {
             if (image == null || image.isEmpty()) return;
 
             File outputFile = new File(String.format("%s/%s.%s", BahmniCoreProperties.getProperty("bahmnicore.images.directory"), patientIdentifier, patientImagesFormat));
-            saveImageInFile(image, patientImagesFormat, outputFile);
+            File partFile = partFileOf(outputFile);
+            writeBase64ToFile(image, partFile);
+            verifyImage(partFile, patientImagesFormat);
+            moveInPlace(partFile, outputFile);
+            getThumbnailGenerator().submit(outputFile);
+            log.info(String.format("Successfully created patient image at %s", outputFile));
         } catch (IOException e) {
             throw new BahmniCoreException("[%s] : Could not save patient image", e);
         }
     }
 
+    /**
+     * Saves the document under a name made of the hash of the uploaded content, so a document uploaded again for the
+     * same patient and encounter type is stored once. Returns once the document is on disk; its thumbnail is created
+     * in the background.
+     */
     @Override
     public String saveDocument(Integer patientId, String encounterTypeName, String images, String format) {
         try {
             if (images == null || images.isEmpty()) return null;
+            if (format == null || !format.matches("[A-Za-z0-9]+")) {
+                throw new BahmniCoreException(String.format("%s is not a document format", format));
+            }
 
             String basePath = BahmniCoreProperties.getProperty("bahmnicore.documents.baseDirectory");
-            String relativeFilePath = createFilePath(basePath, patientId, encounterTypeName, format);
-
-            File outputFile = new File(String.format("%s/%s", basePath, relativeFilePath));
-            saveImageInFile(images, format, outputFile);
+            String stagingFilePath = createFilePath(basePath, patientId, encounterTypeName, format);
+            File partFile = partFileOf(documentFile(basePath, stagingFilePath));
+            log.info(String.format("Creating patient document at %s", partFile.getParent()));
+            String contentHash = writeBase64ToFile(images, partFile);
+            boolean isImage = !format.equals("pdf");
+            if (isImage) {
+                verifyImage(partFile, format);
+            } else {
+                verifyPdf(partFile);
+            }
 
+            String relativeFilePath = String.format("%s/%s", new File(stagingFilePath).getParent(), createFileName(patientId, encounterTypeName, contentHash, format));
+            File outputFile = documentFile(basePath, relativeFilePath);
+            if (outputFile.exists()) {
+                log.info(String.format("Patient document already exists at %s", outputFile));
+                Files.delete(partFile.toPath());
+                if (isImage && getThumbnailStatus(outputFile) == ThumbnailStatus.NOT_FOUND) {
+                    getThumbnailGenerator().submit(outputFile);
+                }
+                return relativeFilePath;
+            }
+            moveInPlace(partFile, outputFile);
+            if (isImage) {
+                getThumbnailGenerator().submit(outputFile);
+            }
+            log.info(String.format("Successfully created patient document at %s", outputFile));
             return relativeFilePath;
 
         } catch (IOException e) {
@@ -57,9 +110,54 @@ public class PatientImageServiceImpl implements PatientImageService {
         }
     }
 
+    @Override
+    public ThumbnailStatus getThumbnailStatus(String documentPath) {
+        String basePath = BahmniCoreProperties.getProperty("bahmnicore.documents.baseDirectory");
+        try {
+            return getThumbnailStatus(documentFile(basePath, documentPath));
+        } catch (IOException e) {
+            throw new BahmniCoreException("[%s] : Could not find patient Document ", e);
+        }
+    }
+
+    @Override
+    public int retryFailedThumbnails() {
+        return getThumbnailGenerator().retryFailed();
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (thumbnailGenerator != null) {
+            thumbnailGenerator.shutdown();
+            thumbnailGenerator = null;
+        }
+    }
+
+    /**
+     * The document at the path relative to the documents directory. Paths leading out of the documents directory are
+     * rejected.
+     */
+    private File documentFile(String basePath, String documentPath) throws IOException {
+        File baseDirectory = new File(basePath).getCanonicalFile();
+        File document = new File(baseDirectory, documentPath).getCanonicalFile();
+        if (!document.toPath().startsWith(baseDirectory.toPath())) {
+            throw new BahmniCoreException(String.format("%s is not in the documents directory", documentPath));
+        }
+        return document;
+    }
+
+    private ThumbnailStatus getThumbnailStatus(File image) {
+        return thumbnailGenerator != null ? thumbnailGenerator.getStatus(image) :
+                (ThumbnailGenerator.thumbnailFileOf(image).exists() ? ThumbnailStatus.CREATED : ThumbnailStatus.NOT_FOUND);
+    }
+
     private String createFileName(Integer patientId, String encounterTypeName, Object format) {
         String uuid = UUID.randomUUID().toString();
-        return String.format("%s-%s-%s.%s", patientId, encounterTypeName, uuid, format);
+        return createFileName(patientId, encounterTypeName, uuid, format);
+    }
+
+    private String createFileName(Integer patientId, String encounterTypeName, String id, Object format) {
+        return String.format("%s-%s-%s.%s", patientId, encounterTypeName, id, format);
     }
 
     protected String createFilePath(String basePath, Integer patientId, String encounterTypeName, String format) {
@@ -78,26 +176,151 @@ public class PatientImageServiceImpl implements PatientImageService {
         return directory.toString();
     }
 
-    private void saveImageInFile(String image, String format, File outputFile) throws IOException {
-        log.info(String.format("Creating patient image at %s", outputFile));
-        byte[] decodedBytes = DatatypeConverter.parseBase64Binary(image);
-        if (format.equals("pdf")) {
-            FileUtils.writeByteArrayToFile(outputFile, decodedBytes);
-        } else {
-            BufferedImage bufferedImage = ImageIO.read(new ByteArrayInputStream(decodedBytes));
-            ImageIO.write(bufferedImage, format, outputFile);
-            createThumbnail(bufferedImage, outputFile);
-            bufferedImage.flush();
-            log.info(String.format("Successfully created patient image at %s", outputFile));
+    /**
+     * Decodes the base64 content into the file a chunk at a time, so only one chunk of decoded bytes is held in
+     * memory. The file is synced to disk before returning. Returns the sha-256 hash of the decoded content.
+     */
+    protected String writeBase64ToFile(String content, File outputFile) throws IOException {
+        MessageDigest digest = sha256();
+        FileOutputStream fileOutputStream = new FileOutputStream(outputFile);
+        try (OutputStream outputStream = new BufferedOutputStream(new DigestOutputStream(fileOutputStream, digest))) {
+            char[] chunk = new char[DECODE_CHUNK_SIZE];
+            int length = 0;
+            for (int i = 0; i < content.length(); i++) {
+                char character = content.charAt(i);
+                if (isBase64Character(character)) {
+                    chunk[length++] = character;
+                    if (length == chunk.length) {
+                        outputStream.write(DatatypeConverter.parseBase64Binary(new String(chunk, 0, length)));
+                        length = 0;
+                    }
+                }
+            }
+            if (length > 0) {
+                outputStream.write(DatatypeConverter.parseBase64Binary(new String(chunk, 0, length)));
+            }
+            outputStream.flush();
+            fileOutputStream.getFD().sync();
+        } catch (IOException | RuntimeException e) {
+            outputFile.delete();
+            throw e;
+        }
+        return DatatypeConverter.printHexBinary(digest.digest()).toLowerCase();
+    }
+
+    /**
+     * Checks the header of the image. An image of another format than the one it is saved as is re-encoded to that
+     * format, as all uploads used to be, so the content of a file always matches its extension.
+     */
+    private void verifyImage(File file, String format) throws IOException {
+        String detectedFormat = imageFormatOf(file);
+        if (detectedFormat == null) {
+            file.delete();
+            throw new IOException(String.format("%s is not a readable image", file));
+        }
+        if (!detectedFormat.equals(normalizeImageFormat(format))) {
+            log.info(String.format("Re-encoding %s image %s as %s", detectedFormat, file, format));
+            reencode(file, format);
+        }
+    }
+
+    private String imageFormatOf(File file) throws IOException {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(file)) {
+            if (imageInputStream == null) {
+                return null;
+            }
+            Iterator<ImageReader> imageReaders = ImageIO.getImageReaders(imageInputStream);
+            if (!imageReaders.hasNext()) {
+                return null;
+            }
+            ImageReader imageReader = imageReaders.next();
+            try {
+                return normalizeImageFormat(imageReader.getFormatName());
+            } finally {
+                imageReader.dispose();
+            }
+        }
+    }
+
+    private void reencode(File file, String format) throws IOException {
+        try {
+            BufferedImage image = ImageIO.read(file);
+            if (image == null) {
+                throw new IOException(String.format("%s is not a readable image", file));
+            }
+            if (normalizeImageFormat(format).equals(patientImagesFormat) && image.getColorModel().hasAlpha()) {
+                image = withoutAlpha(image);
+            }
+            File reencodedFile = new File(file.getAbsolutePath() + "." + format);
+            try {
+                if (!ImageIO.write(image, format, reencodedFile)) {
+                    throw new IOException(String.format("Images can not be saved as %s", format));
+                }
+                moveInPlace(reencodedFile, file);
+            } finally {
+                reencodedFile.delete();
+                image.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            file.delete();
+            throw e;
+        }
+    }
+
+    private BufferedImage withoutAlpha(BufferedImage image) {
+        BufferedImage opaqueImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = opaqueImage.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return opaqueImage;
+    }
+
+    private void verifyPdf(File file) throws IOException {
+        byte[] header = new byte[PDF_HEADER.length];
+        int read;
+        try (InputStream inputStream = new FileInputStream(file)) {
+            read = inputStream.read(header);
+        }
+        if (read != header.length || !Arrays.equals(header, PDF_HEADER)) {
+            file.delete();
+            throw new IOException(String.format("%s is not a pdf document", file));
         }
     }
 
-    private void createThumbnail(BufferedImage image, File outputFile) throws IOException {
-        String nameWithoutExtension = FilenameUtils.removeExtension(outputFile.getAbsolutePath());
-        String extension = FilenameUtils.getExtension(outputFile.getAbsolutePath());
-        File thumbnailFile = new File(String.format("%s_thumbnail.%s", nameWithoutExtension, extension));
-        BufferedImage reSizedImage = Scalr.resize(image, 100);
-        ImageIO.write(reSizedImage, extension, thumbnailFile);
-        reSizedImage.flush();
+    private static String normalizeImageFormat(String format) {
+        String normalizedFormat = format.toLowerCase();
+        return normalizedFormat.equals("jpg") ? "jpeg" : normalizedFormat;
+    }
+
+    private void moveInPlace(File source, File target) throws IOException {
+        Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private File partFileOf(File file) {
+        return new File(file.getAbsolutePath() + ".part");
+    }
+
+    private synchronized ThumbnailGenerator getThumbnailGenerator() {
+        if (thumbnailGenerator == null) {
+            String workers = BahmniCoreProperties.getProperty("bahmnicore.documents.thumbnailWorkers");
+            thumbnailGenerator = new ThumbnailGenerator(workers == null ? DEFAULT_THUMBNAIL_WORKERS : Integer.parseInt(workers.trim()), THUMBNAIL_QUEUE_SIZE);
+        }
+        return thumbnailGenerator;
+    }
+
+    private static boolean isBase64Character(char character) {
+        return (character >= 'A' && character <= 'Z') || (character >= 'a' && character <= 'z') || (character >= '0' && character <= '9')
+                || character == '+' || character == '/' || character == '=';
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new BahmniCoreException("SHA-256 is not available", e);
+        }
     }
 }
@@ -0,0 +1,29 @@
+package org.bahmni.module.bahmnicore.service.impl;
+
+import org.bahmni.module.bahmnicore.contract.monitoring.response.SqlQueryMetricsResponse;
+import org.openmrs.module.bahmniemrapi.metrics.LatencyReservoir;
+
+/**
+ * Call count, failures, rows returned and latency percentiles of one sql search query.
+ * Percentiles are computed over the most recent {@link LatencyReservoir#SAMPLE_SIZE} calls.
+ */
+public class SqlQueryMetrics {
+    private final LatencyReservoir latencies = new LatencyReservoir();
+    private long errorCount;
+    private long rowsReturned;
+
+    public synchronized void recordSuccess(long latencyInMillis, int rows) {
+        latencies.record(latencyInMillis);
+        rowsReturned += rows;
+    }
+
+    public synchronized void recordFailure(long latencyInMillis) {
+        latencies.record(latencyInMillis);
+        errorCount++;
+    }
+
+    public synchronized SqlQueryMetricsResponse toResponse(String queryId) {
+        long[] percentiles = latencies.percentiles(50, 99);
+        return new SqlQueryMetricsResponse(queryId, latencies.getCount(), errorCount, rowsReturned, percentiles[0], percentiles[1]);
+    }
+}
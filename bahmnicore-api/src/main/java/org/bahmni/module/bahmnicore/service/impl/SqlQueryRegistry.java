@@ -0,0 +1,76 @@
+package org.bahmni.module.bahmnicore.service.impl;
+
+import org.apache.commons.lang3.StringUtils;
+import org.bahmni.module.bahmnicore.util.CompiledSqlQuery;
+import org.bahmni.module.bahmnicore.util.SqlQueryHelper;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.GlobalPropertyListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compiled sql search queries keyed by query id (the name of the global property holding the sql).
+ * A query can declare the columns it is paged by in a second global property named after it with a ".pageKey" suffix,
+ * as a comma separated list. An entry is dropped as soon as either global property is saved or purged.
+ */
+public class SqlQueryRegistry implements GlobalPropertyListener {
+    public static final String PAGE_KEY_SUFFIX = ".pageKey";
+
+    private final AdministrationService administrationService;
+    private final SqlQueryHelper sqlQueryHelper;
+    private final ConcurrentMap<String, CompiledSqlQuery> compiledQueries = new ConcurrentHashMap<>();
+
+    public SqlQueryRegistry(AdministrationService administrationService, SqlQueryHelper sqlQueryHelper) {
+        this.administrationService = administrationService;
+        this.sqlQueryHelper = sqlQueryHelper;
+    }
+
+    public CompiledSqlQuery get(String queryId) {
+        CompiledSqlQuery compiledQuery = compiledQueries.get(queryId);
+        if (compiledQuery == null) {
+            String query = administrationService.getGlobalProperty(queryId);
+            if (query == null) throw new RuntimeException("No such query:" + queryId);
+            compiledQuery = sqlQueryHelper.compile(query).withPageKeyColumns(getPageKeyColumns(queryId));
+            compiledQueries.put(queryId, compiledQuery);
+        }
+        return compiledQuery;
+    }
+
+    private List<String> getPageKeyColumns(String queryId) {
+        List<String> columns = new ArrayList<>();
+        String pageKey = administrationService.getGlobalProperty(queryId + PAGE_KEY_SUFFIX);
+        if (StringUtils.isNotBlank(pageKey)) {
+            for (String column : pageKey.split(",")) {
+                columns.add(column.trim());
+            }
+        }
+        return columns;
+    }
+
+    public void invalidateAll() {
+        compiledQueries.clear();
+    }
+
+    @Override
+    public boolean supportsPropertyName(String propertyName) {
+        return compiledQueries.containsKey(queryIdOf(propertyName));
+    }
+
+    @Override
+    public void globalPropertyChanged(GlobalProperty newValue) {
+        compiledQueries.remove(queryIdOf(newValue.getProperty()));
+    }
+
+    @Override
+    public void globalPropertyDeleted(String propertyName) {
+        compiledQueries.remove(queryIdOf(propertyName));
+    }
+
+    private String queryIdOf(String propertyName) {
+        return propertyName.endsWith(PAGE_KEY_SUFFIX) ? propertyName.substring(0, propertyName.length() - PAGE_KEY_SUFFIX.length()) : propertyName;
+    }
+}
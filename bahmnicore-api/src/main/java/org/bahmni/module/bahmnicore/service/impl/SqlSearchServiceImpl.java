@@ -1,48 +1,315 @@
 package org.bahmni.module.bahmnicore.service.impl;
 
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.bahmni.module.bahmnicore.contract.monitoring.response.SqlQueryMetricsResponse;
 import org.bahmni.module.bahmnicore.service.RowMapper;
 import org.bahmni.module.bahmnicore.service.SqlSearchService;
+import org.bahmni.module.bahmnicore.util.CompiledSqlQuery;
 import org.bahmni.module.bahmnicore.util.SqlQueryHelper;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonStreamContext;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.openmrs.api.AdministrationService;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.util.DatabaseUpdater;
 
+import javax.xml.bind.DatatypeConverter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class SqlSearchServiceImpl implements SqlSearchService {
+    private static final String MYSQL = "MySQL";
+    private static final int STREAMING_FETCH_SIZE = 500;
+    private static final Logger log = Logger.getLogger(SqlSearchServiceImpl.class);
+
     private AdministrationService administrationService;
+    private SqlQueryHelper sqlQueryHelper = new SqlQueryHelper();
+    private SqlQueryRegistry sqlQueryRegistry;
+    private final ConcurrentMap<String, SqlQueryMetrics> metrics = new ConcurrentHashMap<>();
 
     public void setAdministrationService(AdministrationService administrationService) {
         this.administrationService = administrationService;
+        this.sqlQueryRegistry = new SqlQueryRegistry(administrationService, sqlQueryHelper);
+        administrationService.addGlobalPropertyListener(sqlQueryRegistry);
     }
 
     @Override
     public List<SimpleObject>  search(String queryId, Map<String, String[]> params) {
+        long startTime = System.currentTimeMillis();
+        CompiledSqlQuery query = getCompiledQuery(queryId, params);
+        SqlQueryMetrics queryMetrics = getMetricsFor(queryId);
         List<SimpleObject> results = new ArrayList<>();
-        SqlQueryHelper sqlQueryHelper = new SqlQueryHelper();
-        String query = getSql(queryId);
         try( Connection conn = DatabaseUpdater.getConnection();
-             PreparedStatement statement = sqlQueryHelper.constructPreparedStatement(query,params,conn);
+             PreparedStatement statement = query.prepare(conn, params);
              ResultSet resultSet = statement.executeQuery()) {
 
             RowMapper rowMapper = new RowMapper();
             while (resultSet.next()) {
                 results.add(rowMapper.mapRow(resultSet));
             }
+            queryMetrics.recordSuccess(System.currentTimeMillis() - startTime, results.size());
             return results;
         } catch (Exception e) {
+            queryMetrics.recordFailure(System.currentTimeMillis() - startTime);
             throw new RuntimeException(e);
         }
     }
 
-    private String getSql(String queryId) {
-        String query = administrationService.getGlobalProperty(queryId);
-        if (query == null) throw new RuntimeException("No such query:" + queryId);
+    /**
+     * Without a limit or a page token every row of the query is streamed as is. A query that declares page key
+     * columns is paged by key, in the order of those columns, so a page costs the same wherever it starts. Any other
+     * query is paged in its own order with an offset cursor. Either way the page token is opaque to the caller.
+     * <p/>
+     * The query runs and its first row is read before anything is written, so most failures reach the caller as a
+     * failed request. A failure once rows have been written is logged here and the response ends with
+     * {@link SqlSearchService#STREAM_ERROR_MARKER} in its "error" field, as the status line has gone out by then.
+     */
+    @Override
+    public void streamSearch(String queryId, Map<String, String[]> params, Integer limit, String pageToken, OutputStream outputStream) {
+        long startTime = System.currentTimeMillis();
+        CompiledSqlQuery query = getCompiledQuery(queryId, params);
+        SqlQueryMetrics queryMetrics = getMetricsFor(queryId);
+        PageToken after = PageToken.decode(pageToken);
+        List<String> pageKeyColumns = query.getPageKeyColumns();
+        boolean keyset = (limit != null || after != null) && !pageKeyColumns.isEmpty();
+        if (after != null && keyset != (after.key != null)) {
+            throw new IllegalArgumentException("The page token is not one of query " + queryId);
+        }
+        int skippedRows = after != null && after.offset != null ? after.offset : 0;
+        int rows = 0;
+        JsonGenerator jsonGenerator = null;
+        try (Connection conn = DatabaseUpdater.getConnection();
+             PreparedStatement statement = keyset ?
+                     query.preparePage(conn, params, after == null ? null : after.key, limit == null ? null : limit + 1) :
+                     query.prepare(conn, params)) {
+            if (!keyset && limit != null) {
+                statement.setMaxRows(skippedRows + limit + 1);
+            }
+            statement.setFetchSize(streamingFetchSize(conn));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (keyset) {
+                    checkPageKeyColumns(resultSet, pageKeyColumns);
+                }
+                int skipped = 0;
+                while (skipped < skippedRows && resultSet.next()) {
+                    skipped++;
+                }
+                RowMapper rowMapper = new RowMapper();
+                SimpleObject row = resultSet.next() ? rowMapper.mapRow(resultSet) : null;
+                List<Object> rowKey = row != null && keyset ? pageKey(resultSet, pageKeyColumns) : null;
+
+                jsonGenerator = new ObjectMapper().getJsonFactory().createJsonGenerator(outputStream, JsonEncoding.UTF8);
+                jsonGenerator.writeStartObject();
+                jsonGenerator.writeArrayFieldStart("results");
+                List<Object> lastKey = null;
+                boolean hasMoreRows = false;
+                while (row != null) {
+                    if (limit != null && rows >= limit) {
+                        hasMoreRows = true;
+                        break;
+                    }
+                    jsonGenerator.writeObject(row);
+                    lastKey = rowKey;
+                    rows++;
+                    row = resultSet.next() ? rowMapper.mapRow(resultSet) : null;
+                    rowKey = row != null && keyset ? pageKey(resultSet, pageKeyColumns) : null;
+                }
+                jsonGenerator.writeEndArray();
+                if (hasMoreRows) {
+                    PageToken next = keyset ? PageToken.after(lastKey) : PageToken.atOffset(skippedRows + rows);
+                    jsonGenerator.writeStringField("nextPageToken", next.encode());
+                }
+                jsonGenerator.writeEndObject();
+                jsonGenerator.flush();
+            }
+            queryMetrics.recordSuccess(System.currentTimeMillis() - startTime, rows);
+        } catch (Exception e) {
+            queryMetrics.recordFailure(System.currentTimeMillis() - startTime);
+            if (jsonGenerator == null) {
+                throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+            }
+            log.error("Sql search " + queryId + " failed after " + rows + " rows", e);
+            writeErrorMarker(jsonGenerator);
+        }
+    }
+
+    private void checkPageKeyColumns(ResultSet resultSet, List<String> pageKeyColumns) {
+        for (String column : pageKeyColumns) {
+            try {
+                resultSet.findColumn(column);
+            } catch (SQLException e) {
+                throw new IllegalArgumentException("The query does not return its page key column " + column, e);
+            }
+        }
+    }
+
+    private List<Object> pageKey(ResultSet resultSet, List<String> pageKeyColumns) throws SQLException {
+        List<Object> key = new ArrayList<>(pageKeyColumns.size());
+        for (String column : pageKeyColumns) {
+            Object value = resultSet.getObject(column);
+            if (value == null) {
+                throw new IllegalStateException("Page key column " + column + " is null");
+            }
+            key.add(value);
+        }
+        return key;
+    }
+
+    //Closes whatever is open down to the response object, which then gets the error field in place of a nextPageToken
+    private void writeErrorMarker(JsonGenerator jsonGenerator) {
+        try {
+            JsonStreamContext context = jsonGenerator.getOutputContext();
+            while (!context.inRoot() && !(context.inObject() && context.getParent().inRoot())) {
+                if (context.inArray()) {
+                    jsonGenerator.writeEndArray();
+                } else {
+                    jsonGenerator.writeEndObject();
+                }
+                context = jsonGenerator.getOutputContext();
+            }
+            if (context.inRoot()) {
+                jsonGenerator.writeStartObject();
+            }
+            jsonGenerator.writeStringField("error", STREAM_ERROR_MARKER);
+            jsonGenerator.writeEndObject();
+            jsonGenerator.flush();
+        } catch (Exception writeFailure) {
+            log.error("Could not write the error marker of a failed sql search", writeFailure);
+        }
+    }
+
+    @Override
+    public List<SqlQueryMetricsResponse> getMetrics() {
+        List<SqlQueryMetricsResponse> allMetrics = new ArrayList<>();
+        for (Map.Entry<String, SqlQueryMetrics> queryMetrics : metrics.entrySet()) {
+            allMetrics.add(queryMetrics.getValue().toResponse(queryMetrics.getKey()));
+        }
+        return allMetrics;
+    }
+
+    private CompiledSqlQuery getCompiledQuery(String queryId, Map<String, String[]> params) {
+        CompiledSqlQuery query = sqlQueryRegistry.get(queryId);
+        if (sqlQueryHelper.hasAdditionalParams(params)) {
+            return sqlQueryHelper.compile(sqlQueryHelper.parseAdditionalParams(params.get("additionalParams")[0], query.getQueryString()))
+                    .withPageKeyColumns(query.getPageKeyColumns());
+        }
         return query;
     }
+
+    //MySQL only streams rows one at a time when the fetch size is Integer.MIN_VALUE, other drivers honour a plain fetch size
+    private int streamingFetchSize(Connection conn) throws SQLException {
+        return MYSQL.equalsIgnoreCase(conn.getMetaData().getDatabaseProductName()) ? Integer.MIN_VALUE : STREAMING_FETCH_SIZE;
+    }
+
+    /**
+     * Where the next page starts: the page key of the last row sent, or for a query without page key columns the
+     * number of rows sent so far. Encoded as base64 of a JSON array of strings, the first naming the kind of token
+     * and each key value tagged with its type so it binds back as that type.
+     */
+    static class PageToken {
+        private static final String OFFSET = "offset";
+        private static final String KEY = "key";
+
+        final Integer offset;
+        final List<Object> key;
+
+        private PageToken(Integer offset, List<Object> key) {
+            this.offset = offset;
+            this.key = key;
+        }
+
+        static PageToken atOffset(int offset) {
+            return new PageToken(offset, null);
+        }
+
+        static PageToken after(List<Object> key) {
+            return new PageToken(null, key);
+        }
+
+        String encode() {
+            List<String> values = new ArrayList<>();
+            if (key == null) {
+                values.add(OFFSET);
+                values.add(String.valueOf(offset));
+            } else {
+                values.add(KEY);
+                for (Object value : key) {
+                    values.add(encodeValue(value));
+                }
+            }
+            try {
+                return DatatypeConverter.printBase64Binary(new ObjectMapper().writeValueAsBytes(values));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        static PageToken decode(String pageToken) {
+            if (StringUtils.isBlank(pageToken)) return null;
+            try {
+                String[] values = new ObjectMapper().readValue(DatatypeConverter.parseBase64Binary(pageToken), String[].class);
+                if (values.length == 2 && OFFSET.equals(values[0])) {
+                    int offset = Integer.parseInt(values[1]);
+                    if (offset < 0) throw new NumberFormatException();
+                    return atOffset(offset);
+                }
+                if (values.length > 1 && KEY.equals(values[0])) {
+                    List<Object> key = new ArrayList<>();
+                    for (int i = 1; i < values.length; i++) {
+                        key.add(decodeValue(values[i]));
+                    }
+                    return after(key);
+                }
+            } catch (IOException | RuntimeException e) {
+                throw new IllegalArgumentException("Invalid page token:" + pageToken, e);
+            }
+            throw new IllegalArgumentException("Invalid page token:" + pageToken);
+        }
+
+        private static String encodeValue(Object value) {
+            if (value instanceof Date) {
+                return "t" + ((Date) value).getTime();
+            }
+            if (value instanceof Number) {
+                return "n" + value;
+            }
+            return "s" + value;
+        }
+
+        private static Object decodeValue(String value) {
+            switch (value.charAt(0)) {
+                case 't':
+                    return new Timestamp(Long.parseLong(value.substring(1)));
+                case 'n':
+                    return new BigDecimal(value.substring(1));
+                case 's':
+                    return value.substring(1);
+                default:
+                    throw new IllegalArgumentException("Invalid page key value:" + value);
+            }
+        }
+    }
+
+    private SqlQueryMetrics getMetricsFor(String queryId) {
+        SqlQueryMetrics queryMetrics = metrics.get(queryId);
+        if (queryMetrics == null) {
+            metrics.putIfAbsent(queryId, new SqlQueryMetrics());
+            queryMetrics = metrics.get(queryId);
+        }
+        return queryMetrics;
+    }
 }
@@ -0,0 +1,128 @@
+package org.bahmni.module.bahmnicore.service.impl;
+
+import liquibase.util.file.FilenameUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bahmni.module.bahmnicore.model.ThumbnailStatus;
+import org.imgscalr.Scalr;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the thumbnails of saved images on a small pool of background threads, so that saving an image does not wait
+ * for it to be decoded and scaled. At most queueSize thumbnails wait for a thread; images submitted beyond that are
+ * marked failed straight away. A failed thumbnail can be tried again up to {@link #MAX_ATTEMPTS} times in all.
+ */
+class ThumbnailGenerator {
+    static final int MAX_ATTEMPTS = 3;
+    private static final int THUMBNAIL_SIZE = 100;
+    private Log log = LogFactory.getLog(ThumbnailGenerator.class);
+
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentMap<String, Task> tasks = new ConcurrentHashMap<>();
+
+    ThumbnailGenerator(int workers, int queueSize) {
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "bahmni-thumbnail-generator");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    static File thumbnailFileOf(File image) {
+        String nameWithoutExtension = FilenameUtils.removeExtension(image.getAbsolutePath());
+        String extension = FilenameUtils.getExtension(image.getAbsolutePath());
+        return new File(String.format("%s_thumbnail.%s", nameWithoutExtension, extension));
+    }
+
+    void submit(File image) {
+        Task task = new Task(image);
+        tasks.put(image.getAbsolutePath(), task);
+        execute(task);
+    }
+
+    ThumbnailStatus getStatus(File image) {
+        Task task = tasks.get(image.getAbsolutePath());
+        if (task != null) {
+            return task.status;
+        }
+        return thumbnailFileOf(image).exists() ? ThumbnailStatus.CREATED : ThumbnailStatus.NOT_FOUND;
+    }
+
+    /**
+     * Submits again the failed thumbnails that have attempts left, returning how many were submitted.
+     */
+    int retryFailed() {
+        int retried = 0;
+        for (Task task : tasks.values()) {
+            if (task.status == ThumbnailStatus.FAILED && task.attempts < MAX_ATTEMPTS) {
+                task.status = ThumbnailStatus.PENDING;
+                execute(task);
+                retried++;
+            }
+        }
+        return retried;
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void execute(Task task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.warn(String.format("Thumbnail queue is full, could not create thumbnail of %s", task.image));
+            task.attempts++;
+            task.status = ThumbnailStatus.FAILED;
+        }
+    }
+
+    private void createThumbnail(File image) throws IOException {
+        BufferedImage bufferedImage = ImageIO.read(image);
+        if (bufferedImage == null) {
+            throw new IOException(String.format("%s is not a readable image", image));
+        }
+        BufferedImage reSizedImage = Scalr.resize(bufferedImage, THUMBNAIL_SIZE);
+        ImageIO.write(reSizedImage, FilenameUtils.getExtension(image.getName()), thumbnailFileOf(image));
+        reSizedImage.flush();
+        bufferedImage.flush();
+    }
+
+    private class Task implements Runnable {
+        private final File image;
+        private volatile ThumbnailStatus status = ThumbnailStatus.PENDING;
+        private volatile int attempts;
+
+        private Task(File image) {
+            this.image = image;
+        }
+
+        @Override
+        public void run() {
+            attempts++;
+            try {
+                createThumbnail(image);
+                tasks.remove(image.getAbsolutePath(), this);
+            } catch (Exception e) {
+                log.error(String.format("Could not create thumbnail of %s, attempt %d of %d", image, attempts, MAX_ATTEMPTS), e);
+                status = ThumbnailStatus.FAILED;
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.bahmni.module.bahmnicore.task;
+
+import org.bahmni.module.bahmnicore.dao.PatientSearchIndexDao;
+import org.bahmni.module.bahmnicore.dao.impl.PatientDaoImpl;
+import org.openmrs.api.context.Context;
+import org.openmrs.scheduler.tasks.AbstractTask;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Reconciles patient_identifier_suffix with patient_identifier while suffix lookups are on, picking up identifiers
+ * written by imports or sql that did not go through the patient service. It first retries any rebuild or reconcile
+ * asked for by turning a table on that has not gone through.
+ */
+public class PatientIdentifierSuffixReconcileTask extends AbstractTask {
+
+    @Override
+    public void execute() {
+        final PatientSearchIndexDao patientSearchIndexDao = Context.getRegisteredComponents(PatientSearchIndexDao.class).get(0);
+        patientSearchIndexDao.catchUp();
+        String enabled = Context.getAdministrationService().getGlobalProperty(PatientDaoImpl.USE_IDENTIFIER_SUFFIX_INDEX_GLOBAL_PROPERTY);
+        if (!Boolean.parseBoolean(enabled)) {
+            return;
+        }
+        PlatformTransactionManager transactionManager = Context.getRegisteredComponents(PlatformTransactionManager.class).get(0);
+        new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                patientSearchIndexDao.reconcileIdentifierSuffixes();
+            }
+        });
+    }
+}
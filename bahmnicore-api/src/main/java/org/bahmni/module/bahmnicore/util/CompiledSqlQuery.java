@@ -0,0 +1,133 @@
+package org.bahmni.module.bahmnicore.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A sql search query with its place holders already parsed, so it can be prepared repeatedly without re-parsing.
+ * A query can declare page key columns, which identify a row and are used to page through it by key.
+ */
+public class CompiledSqlQuery {
+    private static final Pattern COLUMN_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final String queryString;
+    private final String preparedStatementSql;
+    private final List<SqlQueryParameter> parameters;
+    private final List<String> pageKeyColumns;
+
+    public CompiledSqlQuery(String queryString, String preparedStatementSql, List<SqlQueryParameter> parameters) {
+        this(queryString, preparedStatementSql, parameters, Collections.<String>emptyList());
+    }
+
+    private CompiledSqlQuery(String queryString, String preparedStatementSql, List<SqlQueryParameter> parameters, List<String> pageKeyColumns) {
+        this.queryString = queryString;
+        this.preparedStatementSql = preparedStatementSql;
+        this.parameters = Collections.unmodifiableList(parameters);
+        this.pageKeyColumns = Collections.unmodifiableList(pageKeyColumns);
+    }
+
+    /**
+     * The same query paged by the given columns, which together have to be unique and not null for every row.
+     */
+    public CompiledSqlQuery withPageKeyColumns(List<String> pageKeyColumns) {
+        List<String> columns = new ArrayList<>();
+        for (String column : pageKeyColumns) {
+            if (!COLUMN_NAME.matcher(column).matches()) {
+                throw new IllegalArgumentException("Invalid page key column:" + column);
+            }
+            columns.add(column);
+        }
+        return new CompiledSqlQuery(queryString, preparedStatementSql, parameters, columns);
+    }
+
+    public String getQueryString() {
+        return queryString;
+    }
+
+    public String getPreparedStatementSql() {
+        return preparedStatementSql;
+    }
+
+    public List<SqlQueryParameter> getParameters() {
+        return parameters;
+    }
+
+    public List<String> getPageKeyColumns() {
+        return pageKeyColumns;
+    }
+
+    public PreparedStatement prepare(Connection conn, Map<String, String[]> params) throws SQLException {
+        PreparedStatement preparedStatement = conn.prepareStatement(preparedStatementSql);
+        bindParameters(preparedStatement, params);
+        return preparedStatement;
+    }
+
+    /**
+     * Prepares a page of the query in the order of its page key columns, starting after the given key values when
+     * there are any. The query is wrapped as a derived table, so its column labels have to be unique.
+     */
+    public PreparedStatement preparePage(Connection conn, Map<String, String[]> params, List<Object> afterKey, Integer maxRows) throws SQLException {
+        if (pageKeyColumns.isEmpty()) {
+            throw new IllegalStateException("The query has no page key columns");
+        }
+        StringBuilder sql = new StringBuilder("select * from (").append(withoutTrailingSemicolon(preparedStatementSql)).append(") page");
+        if (afterKey != null) {
+            sql.append(" where ").append(afterKeyCondition());
+        }
+        sql.append(" order by ");
+        for (int column = 0; column < pageKeyColumns.size(); column++) {
+            sql.append(column == 0 ? "" : ", ").append("page.").append(pageKeyColumns.get(column));
+        }
+        if (maxRows != null) {
+            sql.append(" limit ?");
+        }
+        PreparedStatement preparedStatement = conn.prepareStatement(sql.toString());
+        int i = bindParameters(preparedStatement, params);
+        if (afterKey != null) {
+            for (int column = 0; column < pageKeyColumns.size(); column++) {
+                for (int equalColumn = 0; equalColumn <= column; equalColumn++) {
+                    preparedStatement.setObject(i++, afterKey.get(equalColumn));
+                }
+            }
+        }
+        if (maxRows != null) {
+            preparedStatement.setInt(i, maxRows);
+        }
+        return preparedStatement;
+    }
+
+    //(c1 > ?) or (c1 = ? and c2 > ?) or ..., so the rows come after the key in the order of the columns
+    private String afterKeyCondition() {
+        StringBuilder condition = new StringBuilder();
+        for (int column = 0; column < pageKeyColumns.size(); column++) {
+            condition.append(column == 0 ? "(" : " or (");
+            for (int equalColumn = 0; equalColumn < column; equalColumn++) {
+                condition.append("page.").append(pageKeyColumns.get(equalColumn)).append(" = ? and ");
+            }
+            condition.append("page.").append(pageKeyColumns.get(column)).append(" > ?)");
+        }
+        return condition.toString();
+    }
+
+    private int bindParameters(PreparedStatement preparedStatement, Map<String, String[]> params) throws SQLException {
+        int i = 1;
+        if (params != null) {
+            for (SqlQueryParameter parameter : parameters) {
+                String paramValue = params.get(parameter.getName())[0];
+                parameter.bind(preparedStatement, i++, paramValue);
+            }
+        }
+        return i;
+    }
+
+    private String withoutTrailingSemicolon(String sql) {
+        String trimmed = sql.trim();
+        return trimmed.endsWith(";") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+    }
+}
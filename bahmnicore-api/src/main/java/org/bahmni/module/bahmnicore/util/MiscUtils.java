@@ -1,6 +1,7 @@
 package org.bahmni.module.bahmnicore.util;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.bahmni.module.referencedata.helper.ConceptMetadataCache;
 import org.openmrs.Concept;
 import org.openmrs.api.ConceptService;
 
@@ -13,7 +14,7 @@ public class MiscUtils {
         if (CollectionUtils.isNotEmpty(conceptNames)) {
             List<Concept> rootConcepts = new ArrayList<>();
             for (String rootConceptName : conceptNames) {
-                Concept concept = conceptService.getConceptByName(rootConceptName);
+                Concept concept = ConceptMetadataCache.getInstance().getConceptByName(rootConceptName, conceptService);
                 if (concept != null) {
                     rootConcepts.add(concept);
                 }
@@ -40,25 +40,26 @@ public class SqlQueryHelper {
         return  queryString.replaceAll(PARAM_PLACE_HOLDER_REGEX,"?");
     }
 
+    public CompiledSqlQuery compile(String queryString) {
+        List<SqlQueryParameter> parameters = new ArrayList<>();
+        for (String placeHolder : getParamNamesFromPlaceHolders(queryString)) {
+            parameters.add(SqlQueryParameter.parse(placeHolder));
+        }
+        return new CompiledSqlQuery(queryString, transformIntoPreparedStatementFormat(queryString), parameters);
+    }
+
     public PreparedStatement constructPreparedStatement(String queryString, Map<String, String[]> params, Connection conn) throws SQLException {
-        if (params.get("additionalParams") != null && params.get("additionalParams") != null) {
+        if (hasAdditionalParams(params)) {
             queryString = parseAdditionalParams(params.get("additionalParams")[0], queryString);
         }
+        return compile(queryString).prepare(conn, params);
+    }
 
-        List<String> paramNamesFromPlaceHolders = getParamNamesFromPlaceHolders(queryString);
-        String statement = transformIntoPreparedStatementFormat(queryString);
-        PreparedStatement preparedStatement = conn.prepareStatement(statement);
-        if(params != null ){
-            int i=1;
-            for (String paramName : paramNamesFromPlaceHolders) {
-                String paramValue = params.get(paramName)[0];
-                preparedStatement.setObject(i++,paramValue);
-            }
-        }
-        return preparedStatement;
+    public boolean hasAdditionalParams(Map<String, String[]> params) {
+        return params != null && params.get("additionalParams") != null;
     }
 
-    String parseAdditionalParams(String additionalParams, String queryString) {
+    public String parseAdditionalParams(String additionalParams, String queryString) {
         try {
             AdditionalSearchParam additionalSearchParams = new ObjectMapper().readValue(additionalParams, AdditionalSearchParam.class);
             String test = additionalSearchParams.getTests();
@@ -0,0 +1,80 @@
+package org.bahmni.module.bahmnicore.util;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+/**
+ * A named place holder of a sql search query. The type is declared in the query as ${name:type},
+ * place holders without a declared type are bound as strings.
+ */
+public class SqlQueryParameter {
+    private static final String TYPE_SEPARATOR = ":";
+    private static final String DATE_FORMAT = "yyyy-MM-dd";
+
+    public enum Type {STRING, INTEGER, DECIMAL, BOOLEAN, DATE}
+
+    private final String name;
+    private final Type type;
+
+    public SqlQueryParameter(String name, Type type) {
+        this.name = name;
+        this.type = type;
+    }
+
+    public static SqlQueryParameter parse(String placeHolder) {
+        int separatorIndex = placeHolder.indexOf(TYPE_SEPARATOR);
+        if (separatorIndex < 0) {
+            return new SqlQueryParameter(placeHolder.trim(), Type.STRING);
+        }
+        String name = placeHolder.substring(0, separatorIndex).trim();
+        String type = placeHolder.substring(separatorIndex + 1).trim().toUpperCase();
+        try {
+            return new SqlQueryParameter(name, Type.valueOf(type));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown type '" + type + "' declared for sql query parameter " + name, e);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void bind(PreparedStatement preparedStatement, int index, String value) throws SQLException {
+        if (value == null) {
+            preparedStatement.setNull(index, Types.NULL);
+            return;
+        }
+        switch (type) {
+            case INTEGER:
+                preparedStatement.setLong(index, Long.parseLong(value.trim()));
+                break;
+            case DECIMAL:
+                preparedStatement.setBigDecimal(index, new BigDecimal(value.trim()));
+                break;
+            case BOOLEAN:
+                preparedStatement.setBoolean(index, Boolean.parseBoolean(value.trim()));
+                break;
+            case DATE:
+                preparedStatement.setDate(index, parseDate(value.trim()));
+                break;
+            default:
+                preparedStatement.setString(index, value);
+        }
+    }
+
+    private java.sql.Date parseDate(String value) {
+        try {
+            return new java.sql.Date(new SimpleDateFormat(DATE_FORMAT).parse(value).getTime());
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Sql query parameter " + name + " should be a date in " + DATE_FORMAT + " format", e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.bahmni.module.bahmnicore.advice;
+
+import org.bahmni.module.bahmnicore.dao.PatientSearchIndexDao;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.api.PatientService;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class PatientSearchIndexAdviceTest {
+    @Mock
+    private PatientSearchIndexDao patientSearchIndexDao;
+
+    private PatientSearchIndexAdvice patientSearchIndexAdvice;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        when(patientSearchIndexDao.isMaintained()).thenReturn(true);
+        patientSearchIndexAdvice = new PatientSearchIndexAdvice(patientSearchIndexDao);
+    }
+
+    @Test
+    public void shouldRefreshIndexForSavedPatientOnce() throws Throwable {
+        Patient patient = new Patient(12);
+
+        patientSearchIndexAdvice.afterReturning(patient, PatientService.class.getMethod("savePatient", Patient.class), new Object[]{patient}, null);
+
+        verify(patientSearchIndexDao, times(1)).refresh(12);
+    }
+
+    @Test
+    public void shouldRefreshIndexForPatientOfSavedIdentifier() throws Throwable {
+        PatientIdentifier patientIdentifier = new PatientIdentifier();
+        patientIdentifier.setPatient(new Patient(14));
+
+        patientSearchIndexAdvice.afterReturning(patientIdentifier, PatientService.class.getMethod("savePatientIdentifier", PatientIdentifier.class), new Object[]{patientIdentifier}, null);
+
+        verify(patientSearchIndexDao, times(1)).refresh(14);
+    }
+
+    @Test
+    public void shouldNotRefreshIndexOnReads() throws Throwable {
+        Patient patient = new Patient(12);
+
+        patientSearchIndexAdvice.afterReturning(patient, PatientService.class.getMethod("getPatient", Integer.class), new Object[]{12}, null);
+
+        verify(patientSearchIndexDao, never()).refresh(anyInt());
+    }
+
+    @Test
+    public void shouldNotRefreshIndexWhenTheIndexIsNotInUse() throws Throwable {
+        when(patientSearchIndexDao.isMaintained()).thenReturn(false);
+        Patient patient = new Patient(12);
+
+        patientSearchIndexAdvice.afterReturning(patient, PatientService.class.getMethod("savePatient", Patient.class), new Object[]{patient}, null);
+
+        verify(patientSearchIndexDao, never()).refresh(anyInt());
+    }
+}
@@ -0,0 +1,41 @@
+package org.bahmni.module.bahmnicore.contract.patient.search;
+
+import org.bahmni.module.bahmnicore.contract.patient.response.PatientResponse;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PatientSearchContinuationTokenTest {
+
+	@Test
+	public void shouldCreateTokenFromLastPatientOfPage(){
+		PatientResponse patient = new PatientResponse();
+		patient.setDateCreated(new Date(1218795429000L));
+		patient.setPersonId(1001);
+		patient.setPatientIdentifierId(7);
+
+		assertEquals("1218795429000_1001_7", PatientSearchContinuationToken.after(patient).toString());
+	}
+
+	@Test
+	public void shouldParseToken(){
+		PatientSearchContinuationToken token = PatientSearchContinuationToken.parse("1218795429000_1001_7");
+
+		assertEquals(new Date(1218795429000L), token.getDateCreated());
+		assertEquals(Integer.valueOf(1001), token.getPersonId());
+		assertEquals(Integer.valueOf(7), token.getPatientIdentifierId());
+	}
+
+	@Test
+	public void shouldTreatBlankTokenAsFirstPage(){
+		assertNull(PatientSearchContinuationToken.parse(""));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectMalformedToken(){
+		PatientSearchContinuationToken.parse("yesterday_1001_7");
+	}
+}
@@ -2,7 +2,9 @@ package org.bahmni.module.bahmnicore.dao.impl;
 
 import org.bahmni.module.bahmnicore.BaseIntegrationTest;
 import org.bahmni.module.bahmnicore.contract.patient.response.PatientResponse;
+import org.bahmni.module.bahmnicore.contract.patient.search.PatientSearchContinuationToken;
 import org.bahmni.module.bahmnicore.dao.PatientDao;
+import org.hibernate.SessionFactory;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -22,6 +24,9 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
     @Autowired
     private PatientDao patientDao;
 
+    @Autowired
+    private SessionFactory sessionFactory;
+
     @Before
     public void setUp() throws Exception {
         executeDataSet("apiTestData.xml");
@@ -30,7 +35,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
     @Test
     public void shouldSearchByPatientIdentifier() {
         String[] addressResultFields = {"city_village"};
-        List<PatientResponse> patients = patientDao.getPatients("200001", "GAN", "", null, "city_village", "", 100, 0, null,"",null,addressResultFields,null);
+        List<PatientResponse> patients = patientDao.getPatients("200001", "GAN", "", null, "city_village", "", 100, 0, null,"",null,addressResultFields,null,null);
         assertEquals(1, patients.size());
         PatientResponse patient = patients.get(0);
         assertEquals("341b4e41-790c-484f-b6ed-71dc8da222db", patient.getUuid());
@@ -46,7 +51,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
 
     @Test
     public void shouldSearchByPartialPatientIdentifier() {
-        List<PatientResponse> patients = patientDao.getPatients("02", "GAN", "", null, "city_village", "", 100, 0, null,"",null,null,null);
+        List<PatientResponse> patients = patientDao.getPatients("02", "GAN", "", null, "city_village", "", 100, 0, null,"",null,null,null,null);
         assertEquals(1, patients.size());
         PatientResponse patient = patients.get(0);
 
@@ -56,7 +61,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
     @Test
     public void shouldSearchByName() {
 
-        List<PatientResponse> patients = patientDao.getPatients("", null, "Horatio", null, "city_village", "", 100, 0, null,"",null,null,null);
+        List<PatientResponse> patients = patientDao.getPatients("", null, "Horatio", null, "city_village", "", 100, 0, null,"",null,null,null,null);
 
         assertEquals(3, patients.size());
         PatientResponse patient1 = patients.get(0);
@@ -72,7 +77,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
 
     @Test
     public void shouldSearchAcrossFirstNameAndLastName() {
-        List<PatientResponse> patients = patientDao.getPatients("", null, "Horati Sinha", null, "city_village", "", 100, 0, null,"",null,null,null);
+        List<PatientResponse> patients = patientDao.getPatients("", null, "Horati Sinha", null, "city_village", "", 100, 0, null,"",null,null,null,null);
 
         assertEquals(1, patients.size());
         PatientResponse patient1 = patients.get(0);
@@ -84,7 +89,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
     @Test
     public void shouldSearchByVillage() {
         String[] addressResultFields = {"city_village"};
-        List<PatientResponse> patients = patientDao.getPatients("", null, "", null, "city_village", "Ramgarh", 100, 0, null,"",null,addressResultFields,null);
+        List<PatientResponse> patients = patientDao.getPatients("", null, "", null, "city_village", "Ramgarh", 100, 0, null,"",null,addressResultFields,null,null);
         assertEquals(1, patients.size());
         PatientResponse patient = patients.get(0);
         assertEquals("341b4e41-790c-484f-b6ed-71dc8da222db", patient.getUuid());
@@ -101,7 +106,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
     @Test
     public void shouldSearchByNameAndVillage() {
         String[] addressResultFields = {"city_village"};
-        List<PatientResponse> patients = patientDao.getPatients("", null, "Sin", null, "city_village", "Ramgarh", 100, 0, null,"",null,addressResultFields,null);
+        List<PatientResponse> patients = patientDao.getPatients("", null, "Sin", null, "city_village", "Ramgarh", 100, 0, null,"",null,addressResultFields,null,null);
         assertEquals(1, patients.size());
         PatientResponse patient = patients.get(0);
         assertEquals("341b4e41-790c-484f-b6ed-71dc8da222db", patient.getUuid());
@@ -117,7 +122,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
 
     @Test
     public void shouldSortResultsByCreationDate() {
-        List<PatientResponse> patients = patientDao.getPatients("", null, "Sinha", null, "city_village", "", 100, 0, null,"",null,null,null);
+        List<PatientResponse> patients = patientDao.getPatients("", null, "Sinha", null, "city_village", "", 100, 0, null,"",null,null,null,null);
         assertEquals(2, patients.size());
         assertEquals("Sinha", patients.get(0).getFamilyName());
         assertEquals("Sinha", patients.get(0).getFamilyName());
@@ -125,18 +130,59 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
 
     @Test
     public void shouldReturnResultAfterGivenOffset() throws Exception {
-        List<PatientResponse> patients = patientDao.getPatients("", null, "Sinha", null, "city_village", "", 100, 1, null,"",null,null,null);
+        List<PatientResponse> patients = patientDao.getPatients("", null, "Sinha", null, "city_village", "", 100, 1, null,"",null,null,null,null);
         assertEquals(1, patients.size());
 
-        patients = patientDao.getPatients("", null, "Sinha", null, "city_village", "", 100, 2, null,"",null,null,null);
+        patients = patientDao.getPatients("", null, "Sinha", null, "city_village", "", 100, 2, null,"",null,null,null,null);
         assertEquals(0, patients.size());
     }
 
+    @Test
+    public void shouldReturnNextPageAfterGivenContinuationToken() throws Exception {
+        List<PatientResponse> firstPage = patientDao.getPatients("", null, "Sinha", null, "city_village", "", 1, 0, null,"",null,null,null,"");
+        assertEquals(1, firstPage.size());
+
+        String continuationToken = PatientSearchContinuationToken.after(firstPage.get(0)).toString();
+        List<PatientResponse> secondPage = patientDao.getPatients("", null, "Sinha", null, "city_village", "", 1, 0, null,"",null,null,null,continuationToken);
+        assertEquals(1, secondPage.size());
+        assertFalse(firstPage.get(0).getUuid().equals(secondPage.get(0).getUuid()));
+
+        continuationToken = PatientSearchContinuationToken.after(secondPage.get(0)).toString();
+        List<PatientResponse> thirdPage = patientDao.getPatients("", null, "Sinha", null, "city_village", "", 1, 0, null,"",null,null,null,continuationToken);
+        assertEquals(0, thirdPage.size());
+    }
+
+    @Test
+    public void shouldPageThroughEveryIdentifierOfAPatientOneRowAtATime() throws Exception {
+        sessionFactory.getCurrentSession().createSQLQuery("insert into patient_identifier " +
+                "(patient_identifier_id, patient_id, identifier, identifier_type, preferred, creator, date_created, voided, uuid) values " +
+                "(201, 1025, 'GAN900001', 1, 0, 1, '2005-09-22 00:00:00', 0, 'a6a0e4f2-0d7b-4b5e-9d8e-5a2f7c1b3e01'), " +
+                "(202, 1025, 'GAN900002', 1, 0, 1, '2005-09-22 00:00:00', 0, 'a6a0e4f2-0d7b-4b5e-9d8e-5a2f7c1b3e02')").executeUpdate();
+        List<String> allRows = new ArrayList<>();
+        for (PatientResponse patient : patientDao.getPatients("", null, "Sinha", null, "city_village", "", 100, 0, null, "", null, null, null, null)) {
+            allRows.add(patient.getIdentifier());
+        }
+
+        List<String> pagedRows = new ArrayList<>();
+        String continuationToken = "";
+        List<PatientResponse> page = patientDao.getPatients("", null, "Sinha", null, "city_village", "", 1, 0, null, "", null, null, null, continuationToken);
+        while (!page.isEmpty()) {
+            assertEquals(1, page.size());
+            pagedRows.add(page.get(0).getIdentifier());
+            continuationToken = PatientSearchContinuationToken.after(page.get(0)).toString();
+            page = patientDao.getPatients("", null, "Sinha", null, "city_village", "", 1, 0, null, "", null, null, null, continuationToken);
+        }
+
+        assertEquals(4, pagedRows.size());
+        assertTrue(pagedRows.containsAll(asList("GAN200001", "GAN900001", "GAN900002", "GAN200002")));
+        assertEquals(allRows.size(), pagedRows.size());
+    }
+
     @Test
     public void shouldFetchBasedOnPatientAttributeTypes() throws Exception {
         String[] patientAttributes = { "caste"};
         String[] patientResultFields = {"caste"};
-        List<PatientResponse> patients = patientDao.getPatients("", null, "", "testCaste1", "city_village", null, 100, 0, patientAttributes,"",null,null,patientResultFields);
+        List<PatientResponse> patients = patientDao.getPatients("", null, "", "testCaste1", "city_village", null, 100, 0, patientAttributes,"",null,null,patientResultFields,null);
 
         assertEquals(1, patients.size());
     }
@@ -168,7 +214,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
 
     @Test
     public void shouldFetchPatientsByProgramAttributes(){
-        List<PatientResponse> patients = patientDao.getPatients("", null, "", "", "city_village", null, 100, 0, null,"Stage1","stage",null,null);
+        List<PatientResponse> patients = patientDao.getPatients("", null, "", "", "city_village", null, 100, 0, null,"Stage1","stage",null,null,null);
         assertEquals(1, patients.size());
         PatientResponse response = patients.get(0);
         assertEquals("GAN200002",response.getIdentifier());
@@ -181,7 +227,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
         String[] addressResultFields = {"city_village"};
         String[] patientResultFields = {"caste"};
 
-        List<PatientResponse> patients = patientDao.getPatients("", "", "John", "testCaste1", "city_village", "Bilaspur", 100, 0, new String[]{"caste","givenNameLocal"},"Stage1","stage",addressResultFields,patientResultFields);
+        List<PatientResponse> patients = patientDao.getPatients("", "", "John", "testCaste1", "city_village", "Bilaspur", 100, 0, new String[]{"caste","givenNameLocal"},"Stage1","stage",addressResultFields,patientResultFields,null);
         assertEquals(1, patients.size());
         PatientResponse response = patients.get(0);
         assertEquals("GAN200002",response.getIdentifier());
@@ -201,7 +247,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
     @Ignore
     public void shouldFetchPatientsByCodedConcepts(){
 
-        List<PatientResponse> patients = patientDao.getPatients("", "", "John", "testCaste1", "city_village", "Bilaspur", 100, 0, new String[]{"caste"}, "Fac", "facility",null,null);
+        List<PatientResponse> patients = patientDao.getPatients("", "", "John", "testCaste1", "city_village", "Bilaspur", 100, 0, new String[]{"caste"}, "Fac", "facility",null,null,null);
         assertEquals(1, patients.size());
         PatientResponse response = patients.get(0);
         assertEquals("GAN200002",response.getIdentifier());
@@ -220,7 +266,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
     @Test
     public void shouldFetchPatientsByOnlyOneProgramAttribute(){
         String[] addressResultFields = {"city_village"};
-        List<PatientResponse> patients = patientDao.getPatients("", null, "", null, "city_village", "", 100, 0, null,"Stage1","stage",addressResultFields,null);
+        List<PatientResponse> patients = patientDao.getPatients("", null, "", null, "city_village", "", 100, 0, null,"Stage1","stage",addressResultFields,null,null);
         assertEquals(1, patients.size());
         PatientResponse response = patients.get(0);
         assertEquals("GAN200002",response.getIdentifier());
@@ -237,18 +283,18 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
 
     @Test
     public void shouldSearchByPatientIdentifierWithAttributes() {
-        List<PatientResponse> patients = patientDao.getPatients("", "", "John", null, "city_village", "", 100, 0, null,"",null,null,null);
+        List<PatientResponse> patients = patientDao.getPatients("", "", "John", null, "city_village", "", 100, 0, null,"",null,null,null,null);
         assertEquals(5, patients.size());
     }
 
     @Test
     public void shouldReturnAdmissionStatus() throws Exception{
-        List<PatientResponse> patients = patientDao.getPatients("200000", "", null, null, "city_village", null, 10, 0, null, null, null,null,null);
+        List<PatientResponse> patients = patientDao.getPatients("200000", "", null, null, "city_village", null, 10, 0, null, null, null,null,null,null);
         assertEquals(1, patients.size());
         PatientResponse patient200000 = patients.get(0);
         assertFalse(patient200000.getHasBeenAdmitted());
 
-        patients = patientDao.getPatients("200002", "", null, null, "city_village", null, 10, 0, null, null, null,null,null);
+        patients = patientDao.getPatients("200002", "", null, null, "city_village", null, 10, 0, null, null, null,null,null,null);
         assertEquals(1, patients.size());
         PatientResponse patient200003 = patients.get(0);
         assertTrue(patient200003.getHasBeenAdmitted());
@@ -258,7 +304,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
     public void shouldReturnAddressAndPatientAttributes() throws Exception{
         String[] addressResultFields = {"address3"};
         String[] patientResultFields = {"middleNameLocal"  ,  "familyNameLocal" ,"givenNameLocal"};
-        List<PatientResponse> patients = patientDao.getPatients("GAN200002", "", null, null, null, null, 100, 0, new String[]{"caste","givenNameLocal"},null,null,addressResultFields,patientResultFields);
+        List<PatientResponse> patients = patientDao.getPatients("GAN200002", "", null, null, null, null, 100, 0, new String[]{"caste","givenNameLocal"},null,null,addressResultFields,patientResultFields,null);
         assertEquals(1, patients.size());
         PatientResponse patient200002 = patients.get(0);
         assertTrue("{\"givenNameLocal\":\"ram\",\"middleNameLocal\":\"singh\",\"familyNameLocal\":\"gond\"}".equals(patient200002.getCustomAttribute()));
@@ -267,7 +313,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
 
     @Test
     public void shouldSearchPatientByNameWithSingleQuote() throws Exception {
-        List<PatientResponse> patients = patientDao.getPatients(null, null, "na'me", null, null, null, 10, 0, null, null, null, null, null);
+        List<PatientResponse> patients = patientDao.getPatients(null, null, "na'me", null, null, null, 10, 0, null, null, null, null, null, null);
 
         PatientResponse patient = patients.get(0);
 
@@ -278,7 +324,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
 
     @Test
     public void shouldSearchPatientByNameWithOneSingleQuoteInSearchString() throws Exception {
-        List<PatientResponse>  patients = patientDao.getPatients(null, null, "'", null, null, null, 10, 0, null, null, null, null, null);
+        List<PatientResponse>  patients = patientDao.getPatients(null, null, "'", null, null, null, 10, 0, null, null, null, null, null, null);
 
         PatientResponse patientSearchWithJustSingleQuote = patients.get(0);
 
@@ -288,28 +334,28 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
 
     @Test
     public void shouldSearchPatientNameByMultipleSingleQuotesInSearchString() throws Exception {
-        List<PatientResponse>  patients = patientDao.getPatients(null, null, "'''", null, null, null, 10, 0, null, null, null, null, null);
+        List<PatientResponse>  patients = patientDao.getPatients(null, null, "'''", null, null, null, 10, 0, null, null, null, null, null, null);
 
         assertEquals(0, patients.size());
     }
 
     @Test
     public void shouldGiveEmptyResultIfPatientDoesnotExistWithGivenPatientName() throws Exception {
-        List<PatientResponse> patients = patientDao.getPatients(null, null, "ab'me", null, null, null, 10, 0, null, null, null, null, null);
+        List<PatientResponse> patients = patientDao.getPatients(null, null, "ab'me", null, null, null, 10, 0, null, null, null, null, null, null);
 
         assertEquals(0, patients.size());
     }
 
     @Test
     public void shouldGiveAllThePatientsIfWeSearchWithPercentile() throws Exception {
-        List<PatientResponse> patients = patientDao.getPatients(null, null, "%", null, null, null, 10, 0, null, null, null, null, null);
+        List<PatientResponse> patients = patientDao.getPatients(null, null, "%", null, null, null, 10, 0, null, null, null, null, null, null);
 
         assertEquals(10, patients.size());
     }
 
     @Test
     public void shouldGiveThePatientsIfWeSearchBySpaceSeperatedString() throws Exception {
-        List<PatientResponse> patients = patientDao.getPatients(null, null, "special character", null, null, null, 10, 0, null, null, null, null, null);
+        List<PatientResponse> patients = patientDao.getPatients(null, null, "special character", null, null, null, 10, 0, null, null, null, null, null, null);
 
         assertEquals(2, patients.size());
     }
@@ -319,7 +365,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
         String[] patientAttributes = { "caste","address3"};
         String[] patientResultFields = {"caste","address3"};
         String[] addressResultFields = {"address3"};
-        List<PatientResponse> patients = patientDao.getPatients("", null, "", "go'nd", null, null, 100, 0, patientAttributes,null,null,addressResultFields, patientResultFields);
+        List<PatientResponse> patients = patientDao.getPatients("", null, "", "go'nd", null, null, 100, 0, patientAttributes,null,null,addressResultFields, patientResultFields,null);
 
         assertEquals(1, patients.size());
 
@@ -328,7 +374,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
         assertTrue("{ \"address3\" : \"Dindori\"}".equals(patients.get(0).getAddressFieldValue()));
 
 
-        patients = patientDao.getPatients("", null, "", "'", null, null, 100, 0, patientAttributes,null,null,addressResultFields, patientResultFields);
+        patients = patientDao.getPatients("", null, "", "'", null, null, 100, 0, patientAttributes,null,null,addressResultFields, patientResultFields,null);
 
         PatientResponse patientWithSingleQuoteInSearch = patients.get(0);
 
@@ -337,14 +383,14 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
         assertTrue("{ \"address3\" : \"Dindori\"}".equals(patientWithSingleQuoteInSearch.getAddressFieldValue()));
 
 
-        patients = patientDao.getPatients("", null, "", "'''", null, null, 100, 0, patientAttributes,null,null,addressResultFields, patientResultFields);
+        patients = patientDao.getPatients("", null, "", "'''", null, null, 100, 0, patientAttributes,null,null,addressResultFields, patientResultFields,null);
 
         assertEquals(0, patients.size());
     }
 
     @Test
     public void shouldFetchPatientsByProgramAttributesWhenThereIsSingleQuoteInProgramAttribute(){
-        List<PatientResponse> patients = patientDao.getPatients("", null, "", "", null, null, 100, 0, null,"Stage'12","stage",null,null);
+        List<PatientResponse> patients = patientDao.getPatients("", null, "", "", null, null, 100, 0, null,"Stage'12","stage",null,null,null);
 
         PatientResponse response = patients.get(0);
 
@@ -354,7 +400,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
 
     @Test
     public void shouldFetchPatientsByProgramAttributeWhenThereIsJustOneSingleQuoteInSearchString() throws Exception {
-        List<PatientResponse> patients = patientDao.getPatients("", null, "", "", null, null, 100, 0, null,"'","stage",null,null);
+        List<PatientResponse> patients = patientDao.getPatients("", null, "", "", null, null, 100, 0, null,"'","stage",null,null,null);
 
         PatientResponse response = patients.get(0);
 
@@ -364,14 +410,14 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
 
     @Test
     public void shouldFetchPatientsByParogramAttributeWhenThreAreMultipleSingleQuotesInSearchString() throws Exception {
-        List<PatientResponse> patients = patientDao.getPatients("", null, "", "", null, null, 100, 0, null,"''''","stage",null,null);
+        List<PatientResponse> patients = patientDao.getPatients("", null, "", "", null, null, 100, 0, null,"''''","stage",null,null,null);
 
         assertEquals(0, patients.size());
     }
 
     @Test
     public void shouldFetchPatientsByPatientIdentifierWhenThereIsSingleQuoteInPatientIdentifier(){
-        List<PatientResponse> patients = patientDao.getPatients("51'0003", "SEV", "", "", null, null, 100, 0, null,null, null,null,null);
+        List<PatientResponse> patients = patientDao.getPatients("51'0003", "SEV", "", "", null, null, 100, 0, null,null, null,null,null,null);
 
         PatientResponse response = patients.get(0);
 
@@ -381,7 +427,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
 
     @Test
     public void shouldFetchPatientsByPatientIdentifierWhenThereIsJustOneSingleQuoteInPatientIdentifier() throws Exception {
-        List<PatientResponse> patients = patientDao.getPatients("'", "", "", "", null, null, 100, 0, null,null, null,null,null);
+        List<PatientResponse> patients = patientDao.getPatients("'", "", "", "", null, null, 100, 0, null,null, null,null,null,null);
 
         PatientResponse response = patients.get(0);
 
@@ -392,7 +438,7 @@ public class BahmniPatientDaoImplIT extends BaseIntegrationTest {
     @Test
     public void shouldSearchPatientsByPatientIdentifierWhenThereAreMultipleSinglesInSearchString() throws Exception {
 
-        List<PatientResponse> patients = patientDao.getPatients("'''", "", "", "", null, null, 100, 0, null,null, null,null,null);
+        List<PatientResponse> patients = patientDao.getPatients("'''", "", "", "", null, null, 100, 0, null,null, null,null,null,null);
 
         assertEquals(0, patients.size());
     }
@@ -0,0 +1,49 @@
+package org.bahmni.module.bahmnicore.dao.impl;
+
+import org.bahmni.module.bahmnicore.BaseIntegrationTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.api.ConceptService;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConceptAnswerSearchIndexIT extends BaseIntegrationTest {
+    @Autowired
+    private ConceptAnswerSearchIndex conceptAnswerSearchIndex;
+
+    @Autowired
+    private ConceptService conceptService;
+
+    private Concept questionConcept;
+
+    @Before
+    public void setUp() throws Exception {
+        executeDataSet("sampleCodedConcept.xml");
+        conceptAnswerSearchIndex.clear();
+        questionConcept = conceptService.getConcept(90);
+    }
+
+    @Test
+    public void shouldFindAnswersHavingANameContainingEveryToken() {
+        assertEquals(Arrays.asList(1003), conceptAnswerSearchIndex.searchAnswerIds(questionConcept, " ab sk  "));
+        assertEquals(Arrays.asList(1002, 1003), conceptAnswerSearchIndex.searchAnswerIds(questionConcept, "in  ab"));
+        assertEquals(Collections.<Integer>emptyList(), conceptAnswerSearchIndex.searchAnswerIds(questionConcept, "in  and another term that is not present"));
+        assertEquals(Arrays.asList(1004), conceptAnswerSearchIndex.searchAnswerIds(questionConcept, "aCnE"));
+    }
+
+    @Test
+    public void shouldNotFindAnswersByVoidedNames() {
+        assertEquals(Collections.<Integer>emptyList(), conceptAnswerSearchIndex.searchAnswerIds(questionConcept, "Porphyria"));
+        assertEquals(4, conceptAnswerSearchIndex.searchAnswerIds(questionConcept, null).size());
+    }
+
+    @Test
+    public void shouldRankAnswersWithATokenStartingAWordFirst() {
+        assertEquals(Arrays.asList(1003, 1002), conceptAnswerSearchIndex.searchAnswerIds(questionConcept, "s"));
+    }
+}
@@ -0,0 +1,47 @@
+package org.bahmni.module.bahmnicore.dao.impl;
+
+import org.bahmni.module.bahmnicore.BaseIntegrationTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DrugSearchIndexIT extends BaseIntegrationTest {
+    @Autowired
+    private DrugSearchIndex drugSearchIndex;
+
+    @Before
+    public void setUp() throws Exception {
+        executeDataSet("drugsWithConcepts.xml");
+        drugSearchIndex.rebuild();
+    }
+
+    @Test
+    public void shouldSearchDrugsOfAConceptSetByDrugOrConceptNameInSortWeightOrder() {
+        assertEquals(Arrays.asList(2001, 4001, 6001), drugSearchIndex.searchDrugIdsInConceptSet(3010, "t"));
+        assertEquals(Arrays.asList(4001), drugSearchIndex.searchDrugIdsInConceptSet(3010, "IsOnIazId"));
+        assertEquals(Arrays.asList(2001, 4001, 6001), drugSearchIndex.searchDrugIdsInConceptSet(3010, null));
+    }
+
+    @Test
+    public void shouldListDrugsStartingWithThePhraseBeforeDrugsContainingIt() {
+        List<Integer> drugIds = drugSearchIndex.searchDrugIds("paracetamol", false, null);
+        assertTrue(drugIds.indexOf(6001) >= 0);
+        assertTrue(drugIds.indexOf(6001) < drugIds.indexOf(8001));
+
+        List<Integer> drugIdsContainingHighDose = drugSearchIndex.searchDrugIds("high dose", false, null);
+        assertTrue(drugIdsContainingHighDose.containsAll(Arrays.asList(6001, 8001)));
+        assertFalse(drugIdsContainingHighDose.contains(4001));
+    }
+
+    @Test
+    public void shouldFilterDrugsByConceptUuid() {
+        assertEquals(Arrays.asList(8001), drugSearchIndex.searchDrugIds("paracetamol", false, "a9310077-e601-4326-bb05-c6e11fe32025"));
+    }
+}
@@ -0,0 +1,89 @@
+package org.bahmni.module.bahmnicore.dao.impl;
+
+import org.bahmni.module.bahmnicore.BaseIntegrationTest;
+import org.bahmni.module.bahmnicore.dao.EncounterSessionDao;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Encounter;
+import org.openmrs.EncounterType;
+import org.openmrs.Patient;
+import org.openmrs.Provider;
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EncounterSessionDaoImplIT extends BaseIntegrationTest {
+
+    @Autowired
+    private EncounterSessionDao encounterSessionDao;
+
+    private Patient patient;
+    private EncounterType encounterType;
+    private User creator;
+    private Date fromDate;
+    private Date toDate;
+
+    @Before
+    public void setUp() throws Exception {
+        executeDataSet("patientProgramTestData.xml");
+        patient = Context.getPatientService().getPatient(7);
+        encounterType = Context.getEncounterService().getEncounterType(909);
+        creator = Context.getUserService().getUser(1);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        fromDate = dateFormat.parse("2008-08-18 23:30:00");
+        toDate = dateFormat.parse("2008-08-19 00:30:00");
+    }
+
+    @Test
+    public void shouldGetEncounterOfTheCreatorInTheSession() {
+        List<Encounter> encounters = encounterSessionDao.getEncountersInSession(patient, encounterType, fromDate, toDate,
+                null, null, creator, false, null, 2);
+
+        assertEquals(1, encounters.size());
+        assertEquals(Integer.valueOf(890), encounters.get(0).getEncounterId());
+    }
+
+    @Test
+    public void shouldNotGetEncountersOutsideTheSession() {
+        List<Encounter> encounters = encounterSessionDao.getEncountersInSession(patient, encounterType, toDate, toDate,
+                null, null, creator, false, null, 2);
+
+        assertTrue(encounters.isEmpty());
+    }
+
+    @Test
+    public void shouldGetEncounterOfThePatientProgram() {
+        List<Encounter> encounters = encounterSessionDao.getEncountersInSession(patient, encounterType, fromDate, toDate,
+                null, null, creator, true, "dfdfoifo-dkcd-475d-b939-6d82327f36a3", 2);
+
+        assertEquals(1, encounters.size());
+        assertTrue(encounterSessionDao.getEncountersInSession(patient, encounterType, fromDate, toDate,
+                null, null, creator, true, "df0foifo-dkcd-475d-b939-6d82327f36a3", 2).isEmpty());
+    }
+
+    @Test
+    public void shouldLeaveOutEncountersOfEpisodesWhenNoPatientProgramIsGiven() {
+        List<Encounter> encounters = encounterSessionDao.getEncountersInSession(patient, encounterType, fromDate, toDate,
+                null, null, creator, true, null, 2);
+
+        assertTrue(encounters.isEmpty());
+    }
+
+    @Test
+    public void shouldOnlyGetEncountersOfTheProvidersWhenProvidersAreGiven() {
+        Provider provider = Context.getProviderService().getProvider(1);
+
+        List<Encounter> encounters = encounterSessionDao.getEncountersInSession(patient, encounterType, fromDate, toDate,
+                null, Collections.singleton(provider), creator, false, null, 2);
+
+        assertTrue(encounters.isEmpty());
+    }
+}
@@ -14,6 +14,7 @@ import java.util.Date;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 
 public class ObsDaoIT extends BaseIntegrationTest {
 	@Autowired
@@ -69,6 +70,30 @@ public class ObsDaoIT extends BaseIntegrationTest {
         assertEquals(125.0, allObs.get(0).getValueNumeric());
     }
 
+    @Test
+    public void shouldRetrieveLatestAndInitialObsForEachConceptInOneQuery() throws Exception {
+        String patientUuid = "86526ed5-3c11-11de-a0ba-001e378eb67a";
+        for (ObsDaoImpl.OrderBy sortOrder : ObsDaoImpl.OrderBy.values()) {
+            List<Obs> expectedObs = new ArrayList<>();
+            for (String conceptName : Arrays.asList("Blood Pressure", "Systolic", "Diastolic")) {
+                expectedObs.addAll(obsDao.getObsByPatientAndVisit(patientUuid, Arrays.asList(conceptName), new ArrayList<Integer>(), 1, sortOrder, null, false, null, null, null));
+            }
+
+            List<Obs> allObs = obsDao.getLatestOrInitialObsForConcepts(patientUuid, Arrays.asList("Blood Pressure", "Systolic", "Diastolic"),
+                    new ArrayList<Integer>(), sortOrder, null, false, null);
+
+            assertEquals(expectedObs.size(), allObs.size());
+            assertTrue(allObs.containsAll(expectedObs));
+        }
+    }
+
+    @Test
+    public void shouldNotQueryLatestObsWhenNoConceptsAreGiven() throws Exception {
+        List<Obs> allObs = obsDao.getLatestOrInitialObsForConcepts("86526ed5-3c11-11de-a0ba-001e378eb67a", new ArrayList<String>(),
+                new ArrayList<Integer>(), ObsDaoImpl.OrderBy.DESC, null, false, null);
+        assertEquals(0, allObs.size());
+    }
+
     @Test
 	public void shouldRetrieveNumericalConceptsForPatient() throws Exception {
 		assertEquals(5, obsDao.getNumericConceptsForPerson("86526ed5-3c11-11de-a0ba-001e378eb67a").size());
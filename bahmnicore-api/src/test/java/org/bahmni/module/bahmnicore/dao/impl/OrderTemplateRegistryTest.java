@@ -0,0 +1,68 @@
+package org.bahmni.module.bahmnicore.dao.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OrderTemplateRegistryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private OrderTemplateRegistry registry = new OrderTemplateRegistry();
+
+    @Test
+    public void shouldReturnDrugOrdersOfTheRegimenWithDefaultFields() throws Exception {
+        File file = writeTemplates(template("Regimen A", "Paracetamol") + "," + template("Regimen B", "Ibuprofen"));
+
+        List<EncounterTransaction.DrugOrder> drugOrders = registry.getDrugOrders(file, "Regimen B");
+
+        assertEquals(1, drugOrders.size());
+        assertEquals("Ibuprofen", drugOrders.get(0).getDrug().getName());
+        assertEquals("Drug Order", drugOrders.get(0).getOrderType());
+        assertTrue(registry.getDrugOrders(file, "Unknown regimen").isEmpty());
+    }
+
+    @Test
+    public void shouldHandOutCopiesThatDoNotAffectLaterLookups() throws Exception {
+        File file = writeTemplates(template("Regimen A", "Paracetamol"));
+
+        registry.getDrugOrders(file, "Regimen A").get(0).getDrug().setName("Changed");
+
+        assertEquals("Paracetamol", registry.getDrugOrders(file, "Regimen A").get(0).getDrug().getName());
+    }
+
+    @Test
+    public void shouldReloadTemplatesWhenTheFileIsModified() throws Exception {
+        File file = writeTemplates(template("Regimen A", "Paracetamol"));
+        assertEquals("Paracetamol", registry.getDrugOrders(file, "Regimen A").get(0).getDrug().getName());
+
+        long lastModified = file.lastModified();
+        writeTemplates(template("Regimen A", "Ibuprofen"));
+        file.setLastModified(lastModified + 2000);
+
+        assertEquals("Ibuprofen", registry.getDrugOrders(file, "Regimen A").get(0).getDrug().getName());
+    }
+
+    private String template(String name, String drugName) {
+        return "{\"name\": \"" + name + "\", \"drugOrders\": [{\"drug\": {\"name\": \"" + drugName + "\"}, " +
+                "\"dosingInstructions\": {\"dose\": 1.0, \"doseUnits\": \"Tablet(s)\"}}]}";
+    }
+
+    private File writeTemplates(String templates) throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "templates.json");
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("{\"orderTemplates\": [" + templates + "]}");
+        }
+        return file;
+    }
+}
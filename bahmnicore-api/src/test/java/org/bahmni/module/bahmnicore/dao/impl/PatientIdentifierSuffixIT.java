@@ -0,0 +1,137 @@
+package org.bahmni.module.bahmnicore.dao.impl;
+
+import org.bahmni.module.bahmnicore.BaseIntegrationTest;
+import org.bahmni.module.bahmnicore.dao.PatientDao;
+import org.bahmni.module.bahmnicore.dao.PatientSearchIndexDao;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.api.PatientService;
+import org.openmrs.api.context.Context;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PatientIdentifierSuffixIT extends BaseIntegrationTest {
+    private static final String CREATE_PATIENT_IDENTIFIER_SUFFIX = "create table if not exists patient_identifier_suffix (" +
+            "patient_identifier_id int not null primary key, patient_id int not null, reversed_identifier varchar(50) not null)";
+    private static final String[] SUFFIXES = {"200001", "0001", "GAN200000", "3", "'0003", "GAN", "_00001", "%1"};
+
+    @Autowired
+    private PatientDao patientDao;
+
+    @Autowired
+    private PatientSearchIndexDao patientSearchIndexDao;
+
+    @Autowired
+    private PatientService patientService;
+
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    @Before
+    public void setUp() throws Exception {
+        sessionFactory.getCurrentSession().createSQLQuery(CREATE_PATIENT_IDENTIFIER_SUFFIX).executeUpdate();
+        executeDataSet("apiTestData.xml");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        setIdentifierSuffixIndex("false");
+    }
+
+    @Test
+    public void shouldFindTheSamePatientsAsAnIdentifierLikeQueryOnceTurnedOn() throws Exception {
+        setIdentifierSuffixIndex("true");
+
+        for (String suffix : SUFFIXES) {
+            assertSameAsLikeQuery(suffix);
+        }
+        assertEquals(Collections.singletonList(104), patientIds(patientDao.getPatients("'0003", false)));
+    }
+
+    @Test
+    public void shouldMatchWildcardsInTheValueLiterally() throws Exception {
+        setIdentifierSuffixIndex("true");
+
+        assertEquals(0, patientDao.getPatients("_00001", false).size());
+        assertEquals(0, patientDao.getPatients("%1", false).size());
+    }
+
+    @Test
+    public void shouldFindSavedIdentifiersAndKeepVoidedOnesAsTheLikeQueryDoes() throws Exception {
+        setIdentifierSuffixIndex("true");
+        Patient patient = patientService.getPatient(1025);
+        PatientIdentifier identifier = new PatientIdentifier("NEW900123", patientService.getPatientIdentifierType(2), Context.getLocationService().getLocation(1));
+        patient.addIdentifier(identifier);
+        patientService.savePatient(patient);
+        patientSearchIndexDao.refresh(1025);
+
+        assertEquals(Collections.singletonList(1025), patientIds(patientDao.getPatients("900123", false)));
+        assertSameAsLikeQuery("900123");
+
+        patientService.voidPatientIdentifier(identifier, "entered in error");
+        patientSearchIndexDao.refresh(1025);
+
+        assertSameAsLikeQuery("900123");
+        assertSameAsLikeQuery("200001");
+    }
+
+    @Test
+    public void shouldReconcileIdentifiersWrittenOutsideThePatientService() throws Exception {
+        setIdentifierSuffixIndex("true");
+        sessionFactory.getCurrentSession().createSQLQuery("update patient_identifier set identifier = 'GAN777777' where patient_identifier_id = 2").executeUpdate();
+        sessionFactory.getCurrentSession().createSQLQuery("insert into patient_identifier " +
+                "(patient_identifier_id, patient_id, identifier, identifier_type, preferred, creator, date_created, voided, uuid) " +
+                "values (100, 1024, 'OUT123456', 1, 0, 1, '2016-10-20 00:00:00', 0, 'f1c2d3e4-5b6a-4c7d-8e9f-0a1b2c3d4e5f')").executeUpdate();
+        assertEquals(0, patientDao.getPatients("777777", false).size());
+
+        assertTrue(patientSearchIndexDao.reconcileIdentifierSuffixes() >= 2);
+
+        assertEquals(Collections.singletonList(1025), patientIds(patientDao.getPatients("777777", false)));
+        assertEquals(Collections.singletonList(1024), patientIds(patientDao.getPatients("123456", false)));
+        assertEquals(0, patientDao.getPatients("200001", false).size());
+        for (String suffix : SUFFIXES) {
+            assertSameAsLikeQuery(suffix);
+        }
+        assertEquals(0, patientSearchIndexDao.reconcileIdentifierSuffixes());
+    }
+
+    private void assertSameAsLikeQuery(String suffix) {
+        List<Integer> likeQuery = sessionFactory.getCurrentSession()
+                .createQuery("select pi.patient.patientId from PatientIdentifier pi where pi.identifier like :suffix escape '!'")
+                .setString("suffix", "%" + suffix.replace("!", "!!").replace("%", "!%").replace("_", "!_"))
+                .list();
+        List<Integer> expected = new ArrayList<>(likeQuery);
+        Collections.sort(expected);
+        assertEquals(suffix, expected, patientIds(patientDao.getPatients(suffix, false)));
+    }
+
+    private void setIdentifierSuffixIndex(String enabled) {
+        GlobalProperty suffixIndex = Context.getAdministrationService().getGlobalPropertyObject(PatientDaoImpl.USE_IDENTIFIER_SUFFIX_INDEX_GLOBAL_PROPERTY);
+        if (suffixIndex == null) {
+            suffixIndex = new GlobalProperty(PatientDaoImpl.USE_IDENTIFIER_SUFFIX_INDEX_GLOBAL_PROPERTY);
+        }
+        suffixIndex.setPropertyValue(enabled);
+        Context.getAdministrationService().saveGlobalProperty(suffixIndex);
+        patientSearchIndexDao.catchUp();
+    }
+
+    private List<Integer> patientIds(List<Patient> patients) {
+        List<Integer> patientIds = new ArrayList<>();
+        for (Patient patient : patients) {
+            patientIds.add(patient.getPatientId());
+        }
+        Collections.sort(patientIds);
+        return patientIds;
+    }
+}
@@ -0,0 +1,121 @@
+package org.bahmni.module.bahmnicore.dao.impl;
+
+import org.bahmni.module.bahmnicore.BaseIntegrationTest;
+import org.bahmni.module.bahmnicore.contract.patient.response.PatientResponse;
+import org.bahmni.module.bahmnicore.dao.PatientDao;
+import org.bahmni.module.bahmnicore.dao.PatientSearchIndexDao;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PatientSearchIndexDaoImplIT extends BaseIntegrationTest {
+    private static final String CREATE_PATIENT_SEARCH_INDEX = "create table if not exists patient_search_index (" +
+            "person_id int not null primary key, uuid char(38) not null, given_name varchar(50), middle_name varchar(50), " +
+            "family_name varchar(50), gender varchar(50), birthdate date, death_date datetime, date_created datetime not null)";
+
+    @Autowired
+    private PatientDao patientDao;
+
+    @Autowired
+    private PatientSearchIndexDao patientSearchIndexDao;
+
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    @Before
+    public void setUp() throws Exception {
+        sessionFactory.getCurrentSession().createSQLQuery(CREATE_PATIENT_SEARCH_INDEX).executeUpdate();
+        executeDataSet("apiTestData.xml");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        setSearchIndex("false");
+    }
+
+    @Test
+    public void shouldSearchTheIndexWithoutAContinuationToken() throws Exception {
+        List<PatientResponse> withoutIndex = patientDao.getPatients("", null, "Sinha", null, "city_village", "", 100, 0, null, "", null, null, null, null);
+
+        setSearchIndex("true");
+        List<PatientResponse> withIndex = patientDao.getPatients("", null, "Sinha", null, "city_village", "", 100, 0, null, "", null, null, null, null);
+
+        assertEquals(2, withIndex.size());
+        assertEquals(uuidsAndIdentifiers(withoutIndex), uuidsAndIdentifiers(withIndex));
+    }
+
+    @Test
+    public void shouldReturnTheNextPageOfTheIndexAfterAnOffset() throws Exception {
+        setSearchIndex("true");
+
+        List<PatientResponse> patients = patientDao.getPatients("", null, "Sinha", null, "city_village", "", 100, 1, null, "", null, null, null, null);
+
+        assertEquals(1, patients.size());
+    }
+
+    @Test
+    public void shouldFindPatientsByAnyOfTheirIdentifiersAsWithoutTheIndex() throws Exception {
+        String[][] identifierSearches = {{"200001", "GAN"}, {"02", "GAN"}, {"300001", ""}, {"'", ""}};
+        List<List<String>> withoutIndex = new ArrayList<>();
+        for (String[] identifierSearch : identifierSearches) {
+            withoutIndex.add(uuidsAndIdentifiers(patientDao.getPatients(identifierSearch[0], identifierSearch[1], "", null, "city_village", "", 100, 0, null, "", null, null, null, null)));
+        }
+
+        setSearchIndex("true");
+
+        for (int i = 0; i < identifierSearches.length; i++) {
+            String[] identifierSearch = identifierSearches[i];
+            List<String> withIndex = uuidsAndIdentifiers(patientDao.getPatients(identifierSearch[0], identifierSearch[1], "", null, "city_village", "", 100, 0, null, "", null, null, null, null));
+            assertEquals(withoutIndex.get(i), withIndex);
+        }
+    }
+
+    @Test
+    public void shouldKeepSearchesOffTheIndexUntilItIsRebuilt() throws Exception {
+        GlobalProperty searchIndex = Context.getAdministrationService().getGlobalPropertyObject(PatientDaoImpl.USE_SEARCH_INDEX_GLOBAL_PROPERTY);
+        if (searchIndex == null) {
+            searchIndex = new GlobalProperty(PatientDaoImpl.USE_SEARCH_INDEX_GLOBAL_PROPERTY);
+        }
+        searchIndex.setPropertyValue("true");
+        Context.getAdministrationService().saveGlobalProperty(searchIndex);
+
+        assertFalse(patientSearchIndexDao.isSearchIndexReady());
+        assertEquals(2, patientDao.getPatients("", null, "Sinha", null, "city_village", "", 100, 0, null, "", null, null, null, null).size());
+
+        patientSearchIndexDao.catchUp();
+
+        assertTrue(patientSearchIndexDao.isSearchIndexReady());
+    }
+
+    private void setSearchIndex(String enabled) {
+        GlobalProperty searchIndex = Context.getAdministrationService().getGlobalPropertyObject(PatientDaoImpl.USE_SEARCH_INDEX_GLOBAL_PROPERTY);
+        if (searchIndex == null) {
+            searchIndex = new GlobalProperty(PatientDaoImpl.USE_SEARCH_INDEX_GLOBAL_PROPERTY);
+        }
+        searchIndex.setPropertyValue(enabled);
+        Context.getAdministrationService().saveGlobalProperty(searchIndex);
+        patientSearchIndexDao.catchUp();
+    }
+
+    //Patients created at the same time can come back in either order, so the results are compared sorted
+    private List<String> uuidsAndIdentifiers(List<PatientResponse> patients) {
+        List<String> uuidsAndIdentifiers = new ArrayList<>();
+        for (PatientResponse patient : patients) {
+            uuidsAndIdentifiers.add(patient.getUuid() + " " + patient.getIdentifier());
+        }
+        Collections.sort(uuidsAndIdentifiers);
+        return uuidsAndIdentifiers;
+    }
+}
@@ -1,16 +1,17 @@
 package org.bahmni.module.bahmnicore.matcher;
 
 import org.apache.commons.lang3.time.DateUtils;
-import org.bahmni.module.bahmnicore.service.BahmniProgramWorkflowService;
+import org.bahmni.module.bahmnicore.dao.EncounterSessionDao;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.BDDMockito;
 import org.mockito.Mock;
+import org.mockito.stubbing.OngoingStubbing;
 import org.openmrs.Encounter;
-import org.openmrs.EncounterProvider;
 import org.openmrs.EncounterType;
+import org.openmrs.GlobalProperty;
 import org.openmrs.Location;
 import org.openmrs.Patient;
 import org.openmrs.Person;
@@ -18,20 +19,17 @@ import org.openmrs.Provider;
 import org.openmrs.User;
 import org.openmrs.Visit;
 import org.openmrs.api.AdministrationService;
+import org.openmrs.api.EncounterService;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.context.UserContext;
-import org.openmrs.api.impl.EncounterServiceImpl;
 import org.openmrs.module.bahmniemrapi.encountertransaction.mapper.EncounterTypeIdentifier;
 import org.openmrs.module.emrapi.encounter.EncounterParameters;
-import org.openmrs.module.episodes.Episode;
-import org.openmrs.module.episodes.service.EpisodeService;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
@@ -46,14 +44,16 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
-import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -67,50 +67,38 @@ public class EncounterSessionMatcherTest {
     @Mock
     private EncounterTypeIdentifier encounterTypeIdentifier;
     @Mock
-    private EncounterServiceImpl encounterService;
-    private Set<Provider> providers;
-    private Set<EncounterProvider> encounterProviders;
-    private User creator;
+    private EncounterService encounterService;
+    @Mock
+    private EncounterSessionDao encounterSessionDao;
     @Mock
     private UserContext userContext;
-    private EncounterType encounterType;
     @Mock
     private Encounter encounter;
-    private Person person;
+    private Set<Provider> providers;
+    private User creator;
+    private EncounterType encounterType;
     private Patient patient;
     private Visit visit;
-    private EncounterSessionMatcher encounterSessionMatcher;
     private Location location;
-    @Mock
-    private BahmniProgramWorkflowService bahmniProgramWorkflowService;
-
-    @Mock
-    private EpisodeService episodeService;
+    private EncounterSessionMatcher encounterSessionMatcher;
 
     @Before
-    public void setUp(){
+    public void setUp() {
         initMocks(this);
-        encounterSessionMatcher = new EncounterSessionMatcher(administrationService, encounterTypeIdentifier, encounterService, bahmniProgramWorkflowService, episodeService);
+        encounterSessionMatcher = new EncounterSessionMatcher(administrationService, encounterTypeIdentifier, encounterService, encounterSessionDao);
         visit = new Visit();
         visit.setId(3);
 
+        Person person = new Person();
+        person.setId(1234);
         providers = new HashSet<>();
         Provider provider = new Provider();
         provider.setId(1234);
         provider.setProviderId(1234);
+        provider.setPerson(person);
         providers.add(provider);
 
-        encounterProviders = new HashSet<>();
-        EncounterProvider encounterProvider = new EncounterProvider();
-        encounterProvider.setProvider(provider);
-        encounterProviders.add(encounterProvider);
-
         encounterType = new EncounterType("Test", "Test");
-
-        encounter = mock(Encounter.class);
-        person = new Person();
-        person.setId(1234);
-        provider.setPerson(person);
         location = new Location();
         location.setUuid("location");
 
@@ -121,38 +109,26 @@ public class EncounterSessionMatcherTest {
         patient.setId(1111);
         patient.setUuid("patient_uuid");
 
-        userContext = mock(UserContext.class);
-
         when(administrationService.getGlobalProperty("bahmni.encountersession.duration")).thenReturn("60");
-        when(administrationService.getGlobalProperty("bahmni.encounterType.default")).thenReturn("Consultation");
         when(encounter.getCreator()).thenReturn(creator);
-        when(encounter.getEncounterDatetime()).thenReturn(new Date());
 
         PowerMockito.mockStatic(Context.class);
         BDDMockito.given(Context.getUserContext()).willReturn(userContext);
-
         when(userContext.getAuthenticatedUser()).thenReturn(creator);
 
-        when(encounterService.getEncounters(any(Patient.class), any(Location.class), any(Date.class), any(Date.class), any(Collection.class), any(Collection.class), any(Collection.class), any(Collection.class), any(Collection.class), eq(false))).thenReturn(Arrays.asList(encounter));
-        when(bahmniProgramWorkflowService.getEncountersByPatientProgramUuid(null)).thenReturn(Collections.<Encounter>emptyList());
+        whenEncountersInSession().thenReturn(Arrays.asList(encounter));
     }
 
     @Test
-    public void shouldReturnEncounterOfDefaultTypeIfEncounterParameterDoesNotHaveEncounterTypeAndLocationIsNotSet(){
-        visit.addEncounter(encounter);
-        when(encounter.getProvider()).thenReturn(person);
+    public void shouldReturnEncounterOfDefaultTypeIfEncounterParameterDoesNotHaveEncounterTypeAndLocationIsNotSet() {
         EncounterType defaultEncounterType = new EncounterType();
-        when(encounter.getEncounterType()).thenReturn(defaultEncounterType);
-        when(encounter.getDateChanged()).thenReturn(new Date());
-        when(encounter.getLocation()).thenReturn(null);
-        when(encounter.getEncounterProviders()).thenReturn(encounterProviders);
-        when(encounter.getCreator()).thenReturn(creator);
         when(encounterTypeIdentifier.getDefaultEncounterType()).thenReturn(defaultEncounterType);
 
         Encounter encounterReturned = encounterSessionMatcher.findEncounter(visit, getEncounterParameters(providers, null, null));
 
         assertNotNull(encounterReturned);
-        assertTrue(encounter.getEncounterType().equals(defaultEncounterType));
+        verify(encounterSessionDao).getEncountersInSession(eq(patient), eq(defaultEncounterType), any(Date.class), any(Date.class),
+                eq(visit), eq(providers), eq(creator), eq(false), (String) eq(null), eq(2));
     }
 
     @Test
@@ -163,87 +139,63 @@ public class EncounterSessionMatcherTest {
 
         Encounter encounterReturned = encounterSessionMatcher.findEncounter(visit, encounterParameters);
 
-        ArgumentCaptor<Patient> patientArgumentCaptor = ArgumentCaptor.forClass(Patient.class);
-        ArgumentCaptor<Location> locationArgumentCaptor = ArgumentCaptor.forClass(Location.class);
-        ArgumentCaptor<Date> dateArgumentCaptor = ArgumentCaptor.forClass(Date.class);
-        ArgumentCaptor<Collection> collectionArgumentCaptor = ArgumentCaptor.forClass(Collection.class);
-
-        verify(encounterService).getEncounters(patientArgumentCaptor.capture(), locationArgumentCaptor.capture(), dateArgumentCaptor.capture(), dateArgumentCaptor.capture(), collectionArgumentCaptor.capture(), collectionArgumentCaptor.capture(), collectionArgumentCaptor.capture(),collectionArgumentCaptor.capture(), collectionArgumentCaptor.capture(), eq(false));
-        assertEquals(encounterDate, dateArgumentCaptor.getAllValues().get(1));
-        assertEquals(DateUtils.addMinutes(encounterDate, -60), dateArgumentCaptor.getAllValues().get(0));
+        Date[] searchDates = captureSearchDates();
+        assertEquals(DateUtils.addMinutes(encounterDate, -60), searchDates[0]);
+        assertEquals(encounterDate, searchDates[1]);
         assertNotNull(encounterReturned);
     }
 
     @Test
-    public void shouldReturnNullWhenNewlyCreatedVisitIsPassedEncounter(){
+    public void shouldReturnNullWhenNewlyCreatedVisitIsPassedEncounter() {
         EncounterParameters encounterParameters = getEncounterParameters(providers, location);
         encounterParameters.setEncounterDateTime(DateUtils.addDays(new Date(), -10));
 
         Encounter encounterReturned = encounterSessionMatcher.findEncounter(new Visit(), encounterParameters);
-        ArgumentCaptor<Patient> patientArgumentCaptor = ArgumentCaptor.forClass(Patient.class);
-        ArgumentCaptor<Location> locationArgumentCaptor = ArgumentCaptor.forClass(Location.class);
-        ArgumentCaptor<Date> dateArgumentCaptor = ArgumentCaptor.forClass(Date.class);
-        ArgumentCaptor<Collection> collectionArgumentCaptor = ArgumentCaptor.forClass(Collection.class);
 
-        verify(encounterService, times(0)).getEncounters(patientArgumentCaptor.capture(), locationArgumentCaptor.capture(), dateArgumentCaptor.capture(), dateArgumentCaptor.capture(), collectionArgumentCaptor.capture(), collectionArgumentCaptor.capture(), collectionArgumentCaptor.capture(),collectionArgumentCaptor.capture(), collectionArgumentCaptor.capture(), eq(false));
+        verify(encounterSessionDao, never()).getEncountersInSession(any(Patient.class), any(EncounterType.class), any(Date.class), any(Date.class),
+                any(Visit.class), any(Collection.class), any(User.class), anyBoolean(), anyString(), eq(2));
         assertNull(encounterReturned);
     }
 
     @Test
-    public void shouldGetEncounterFromSameDay(){
+    public void shouldGetEncounterFromSameDay() {
         EncounterParameters encounterParameters = getEncounterParameters(providers, location);
         Date encounterDateTime = DateUtils.addMinutes(DateUtils.truncate(new Date(), Calendar.DATE), 15);
         encounterParameters.setEncounterDateTime(encounterDateTime);
 
         Encounter encounterReturned = encounterSessionMatcher.findEncounter(visit, encounterParameters);
-        ArgumentCaptor<Patient> patientArgumentCaptor = ArgumentCaptor.forClass(Patient.class);
-        ArgumentCaptor<Location> locationArgumentCaptor = ArgumentCaptor.forClass(Location.class);
-        ArgumentCaptor<Date> dateArgumentCaptor = ArgumentCaptor.forClass(Date.class);
-        ArgumentCaptor<Collection> collectionArgumentCaptor = ArgumentCaptor.forClass(Collection.class);
 
-        verify(encounterService).getEncounters(patientArgumentCaptor.capture(), locationArgumentCaptor.capture(), dateArgumentCaptor.capture(), dateArgumentCaptor.capture(), collectionArgumentCaptor.capture(), collectionArgumentCaptor.capture(), collectionArgumentCaptor.capture(), collectionArgumentCaptor.capture(), collectionArgumentCaptor.capture(), eq(false));
-        assertEquals(DateUtils.truncate(encounterParameters.getEncounterDateTime(), Calendar.DATE), dateArgumentCaptor.getAllValues().get(0));
-        assertEquals(encounterParameters.getEncounterDateTime(), dateArgumentCaptor.getAllValues().get(1));
+        Date[] searchDates = captureSearchDates();
+        assertEquals(DateUtils.truncate(encounterDateTime, Calendar.DATE), searchDates[0]);
+        assertEquals(encounterDateTime, searchDates[1]);
         assertNotNull(encounterReturned);
     }
 
     @Test
-    public void shouldGetRetrospectiveEncounter(){
+    public void shouldGetRetrospectiveEncounter() {
         EncounterParameters encounterParameters = getEncounterParameters(providers, location);
         encounterParameters.setEncounterDateTime(DateUtils.truncate(new Date(), Calendar.DATE));
 
         Encounter encounterReturned = encounterSessionMatcher.findEncounter(visit, encounterParameters);
-        ArgumentCaptor<Patient> patientArgumentCaptor = ArgumentCaptor.forClass(Patient.class);
-        ArgumentCaptor<Location> locationArgumentCaptor = ArgumentCaptor.forClass(Location.class);
-        ArgumentCaptor<Date> dateArgumentCaptor = ArgumentCaptor.forClass(Date.class);
-        ArgumentCaptor<Collection> collectionArgumentCaptor = ArgumentCaptor.forClass(Collection.class);
 
-        verify(encounterService).getEncounters(patientArgumentCaptor.capture(), locationArgumentCaptor.capture(), dateArgumentCaptor.capture(), dateArgumentCaptor.capture(), collectionArgumentCaptor.capture(), collectionArgumentCaptor.capture(), collectionArgumentCaptor.capture(), collectionArgumentCaptor.capture(), collectionArgumentCaptor.capture(), eq(false));
-        assertEquals(dateArgumentCaptor.getAllValues().get(0), dateArgumentCaptor.getAllValues().get(1));
-        assertEquals(encounterParameters.getEncounterDateTime(), dateArgumentCaptor.getAllValues().get(0));
+        Date[] searchDates = captureSearchDates();
+        assertEquals(searchDates[0], searchDates[1]);
+        assertEquals(encounterParameters.getEncounterDateTime(), searchDates[0]);
         assertNotNull(encounterReturned);
     }
 
     @Test
-    public void shouldMatchEncounterBasedOnUserWhenNoProviderIsSupplied(){
+    public void shouldMatchEncounterBasedOnUserWhenNoProviderIsSupplied() {
         EncounterParameters encounterParameters = getEncounterParameters(null, location);
         encounterParameters.setEncounterDateTime(DateUtils.truncate(new Date(), Calendar.DATE));
-
-
-        Encounter e1 = new Encounter();
         User creator1 = new User(1);
-        e1.setCreator(creator1);
-
-        Encounter e2 = new Encounter();
-        User creator2 = new User(2);
-        e2.setCreator(creator2);
-
         when(userContext.getAuthenticatedUser()).thenReturn(creator1);
-        when(encounterService.getEncounters(any(Patient.class), any(Location.class), any(Date.class), any(Date.class), any(Collection.class), any(Collection.class), any(Collection.class), any(Collection.class), any(Collection.class), eq(false))).thenReturn(Arrays.asList(e1, e2));
 
         Encounter encounterReturned = encounterSessionMatcher.findEncounter(null, encounterParameters);
+
         assertNotNull(encounterReturned);
-        assertEquals(encounterReturned.getCreator(), creator1);
+        verify(encounterSessionDao).getEncountersInSession(eq(patient), eq(encounterType), any(Date.class), any(Date.class),
+                (Visit) eq(null), (Collection<Provider>) eq(null), eq(creator1), eq(false), (String) eq(null), eq(2));
     }
 
     @Test
@@ -253,99 +205,81 @@ public class EncounterSessionMatcherTest {
         String patientProgramUuid = "94393942-dc4d-11e5-b5d2-0a1d41d68578";
         context.put("patientProgramUuid", patientProgramUuid);
         encounterParameters.setContext(context);
-
         encounterParameters.setEncounterDateTime(DateUtils.truncate(new Date(), Calendar.DATE));
-
-        Encounter e1 = new Encounter();
-        User creator1 = new User(1);
-        e1.setCreator(creator1);
-
-        when(userContext.getAuthenticatedUser()).thenReturn(creator1);
-        when(encounterService.getEncounters(any(Patient.class), any(Location.class), any(Date.class), any(Date.class), any(Collection.class), any(Collection.class), any(Collection.class), any(Collection.class), any(Collection.class), eq(false)))
-                .thenReturn(Arrays.asList(e1));
-        when(bahmniProgramWorkflowService.getEncountersByPatientProgramUuid(patientProgramUuid)).thenReturn(Collections.<Encounter>emptyList());
+        whenEncountersInSession().thenReturn(Collections.<Encounter>emptyList());
 
         Encounter encounterReturned = encounterSessionMatcher.findEncounter(null, encounterParameters);
+
         assertNull(encounterReturned);
+        verify(encounterSessionDao).getEncountersInSession(eq(patient), eq(encounterType), any(Date.class), any(Date.class),
+                (Visit) eq(null), (Collection<Provider>) eq(null), eq(creator), eq(true), eq(patientProgramUuid), eq(2));
     }
 
     @Test
     public void shouldThrowExceptionWhenMultipleEncountersAreMatched() throws Exception {
         EncounterParameters encounterParameters = getEncounterParameters(null, location);
         encounterParameters.setEncounterDateTime(DateUtils.truncate(new Date(), Calendar.DATE));
-
-        Encounter e1 = new Encounter();
-        User creator1 = new User(1);
-        e1.setCreator(creator1);
-
-        Encounter e2 = new Encounter();
-        e2.setCreator(creator1);
-
-        when(userContext.getAuthenticatedUser()).thenReturn(creator1);
-        when(encounterService.getEncounters(any(Patient.class), any(Location.class), any(Date.class), any(Date.class), any(Collection.class), any(Collection.class), any(Collection.class), any(Collection.class), any(Collection.class), eq(false))).thenReturn(Arrays.asList(e1, e2));
+        whenEncountersInSession().thenReturn(Arrays.asList(new Encounter(), new Encounter()));
 
         try {
             encounterSessionMatcher.findEncounter(null, encounterParameters);
-            assertFalse("should not have matched encounter", false);
-        }catch (RuntimeException e){
-           assertEquals("More than one encounter matches the criteria", e.getMessage());
+            fail("should not have matched encounter");
+        } catch (RuntimeException e) {
+            assertEquals("More than one encounter matches the criteria", e.getMessage());
         }
     }
 
     @Test
-    public void shouldReturnNullIfProgramUuidIsNotSpecifiedAndOnlyEncountersRelatedToProgramsAreOpen(){
+    public void shouldLeaveOutEncountersOfEpisodesIfProgramUuidIsNotSpecified() {
         EncounterParameters encounterParameters = getEncounterParameters(null, location);
         HashMap<String, Object> context = new HashMap<>();
         context.put("patientProgramUuid", null);
         encounterParameters.setContext(context);
-
         encounterParameters.setEncounterDateTime(DateUtils.truncate(new Date(), Calendar.DATE));
-
-        Encounter e1 = new Encounter();
-        User creator1 = new User(1);
-        e1.setCreator(creator1);
-        List<Encounter> encounters = new ArrayList<>();
-        encounters.add(e1);
-
-        when(userContext.getAuthenticatedUser()).thenReturn(creator1);
-        when(encounterService.getEncounters(any(Patient.class), any(Location.class), any(Date.class), any(Date.class), any(Collection.class), any(Collection.class), any(Collection.class), any(Collection.class), any(Collection.class), eq(false)))
-                .thenReturn(encounters);
-        when(episodeService.getEpisodeForEncounter(e1)).thenReturn(new Episode());
+        Encounter e2 = new Encounter();
+        whenEncountersInSession().thenReturn(Arrays.asList(e2));
 
         Encounter encounterReturned = encounterSessionMatcher.findEncounter(null, encounterParameters);
 
-        verify(episodeService, times(1)).getEpisodeForEncounter(e1);
-        assertThat(encounterReturned, is(nullValue()));
+        verify(encounterSessionDao).getEncountersInSession(eq(patient), eq(encounterType), any(Date.class), any(Date.class),
+                (Visit) eq(null), (Collection<Provider>) eq(null), eq(creator), eq(true), (String) eq(null), eq(2));
+        assertThat(encounterReturned, is(equalTo(e2)));
     }
 
     @Test
-    public void shouldRemoveAllEncountersAssociatedWithEpisodes(){
-        EncounterParameters encounterParameters = getEncounterParameters(null, location);
-        HashMap<String, Object> context = new HashMap<>();
-        context.put("patientProgramUuid", null);
-        encounterParameters.setContext(context);
+    public void shouldReturnEncounterOfTheUuidOnlyIfItBelongsToTheVisit() {
+        EncounterParameters encounterParameters = getEncounterParameters(providers, location);
+        encounterParameters.setEncounterUuid("encounter_uuid");
+        when(encounterService.getEncounterByUuid("encounter_uuid")).thenReturn(encounter);
+        when(encounter.getVisit()).thenReturn(visit);
 
-        encounterParameters.setEncounterDateTime(DateUtils.truncate(new Date(), Calendar.DATE));
+        assertSame(encounter, encounterSessionMatcher.findEncounter(visit, encounterParameters));
+        assertThat(encounterSessionMatcher.findEncounter(new Visit(), encounterParameters), is(nullValue()));
+    }
 
-        Encounter e1 = new Encounter();
-        User creator1 = new User(1);
-        e1.setCreator(creator1);
-        Encounter e2 = new Encounter();
-        e2.setCreator(creator1);
-        List<Encounter> encounters = new ArrayList<>();
-        encounters.add(e1);
-        encounters.add(e2);
+    @Test
+    public void shouldReadTheSessionDurationAgainOnlyWhenItChanges() {
+        EncounterParameters encounterParameters = getEncounterParameters(providers, location);
 
-        when(userContext.getAuthenticatedUser()).thenReturn(creator1);
-        when(encounterService.getEncounters(any(Patient.class), any(Location.class), any(Date.class), any(Date.class), any(Collection.class), any(Collection.class), any(Collection.class), any(Collection.class), any(Collection.class), eq(false)))
-                .thenReturn(encounters);
-        when(episodeService.getEpisodeForEncounter(e1)).thenReturn(new Episode());
+        encounterSessionMatcher.findEncounter(visit, encounterParameters);
+        encounterSessionMatcher.findEncounter(visit, encounterParameters);
+        verify(administrationService, times(1)).getGlobalProperty("bahmni.encountersession.duration");
 
-        Encounter encounterReturned = encounterSessionMatcher.findEncounter(null, encounterParameters);
+        encounterSessionMatcher.globalPropertyChanged(new GlobalProperty("bahmni.encountersession.duration", "30"));
+        encounterSessionMatcher.findEncounter(visit, encounterParameters);
+        verify(administrationService, times(2)).getGlobalProperty("bahmni.encountersession.duration");
+    }
 
-        verify(episodeService, times(1)).getEpisodeForEncounter(e1);
-        verify(episodeService, times(1)).getEpisodeForEncounter(e2);
-        assertThat(encounterReturned, is(equalTo(e2)));
+    private OngoingStubbing<List<Encounter>> whenEncountersInSession() {
+        return when(encounterSessionDao.getEncountersInSession(any(Patient.class), any(EncounterType.class), any(Date.class), any(Date.class),
+                any(Visit.class), any(Collection.class), any(User.class), anyBoolean(), anyString(), eq(2)));
+    }
+
+    private Date[] captureSearchDates() {
+        ArgumentCaptor<Date> dateArgumentCaptor = ArgumentCaptor.forClass(Date.class);
+        verify(encounterSessionDao).getEncountersInSession(any(Patient.class), any(EncounterType.class), dateArgumentCaptor.capture(), dateArgumentCaptor.capture(),
+                any(Visit.class), any(Collection.class), any(User.class), anyBoolean(), anyString(), eq(2));
+        return dateArgumentCaptor.getAllValues().toArray(new Date[2]);
     }
 
     private EncounterParameters getEncounterParameters(Set<Provider> providers, Location location) {
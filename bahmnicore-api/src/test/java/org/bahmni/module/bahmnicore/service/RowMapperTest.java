@@ -0,0 +1,49 @@
+package org.bahmni.module.bahmnicore.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.openmrs.module.webservices.rest.SimpleObject;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class RowMapperTest {
+    @Mock
+    private ResultSet resultSet;
+    @Mock
+    private ResultSetMetaData metaData;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(3);
+        when(metaData.getColumnLabel(1)).thenReturn("identifier");
+        when(metaData.getColumnLabel(2)).thenReturn("name");
+        when(metaData.getColumnLabel(3)).thenReturn("identifier");
+    }
+
+    @Test
+    public void shouldReadColumnLabelsOncePerResultSet() throws Exception {
+        when(resultSet.getObject(1)).thenReturn("GAN200000", "GAN200001");
+        when(resultSet.getObject(2)).thenReturn("Ram", null);
+        RowMapper rowMapper = new RowMapper();
+
+        SimpleObject firstRow = rowMapper.mapRow(resultSet);
+        SimpleObject secondRow = rowMapper.mapRow(resultSet);
+
+        assertEquals("GAN200000", firstRow.get("identifier"));
+        assertEquals("Ram", firstRow.get("name"));
+        assertEquals("GAN200001", secondRow.get("identifier"));
+        assertEquals("", secondRow.get("name"));
+        assertEquals(2, secondRow.size());
+        verify(resultSet, times(1)).getMetaData();
+    }
+}
@@ -0,0 +1,144 @@
+package org.bahmni.module.bahmnicore.service.impl;
+
+import org.bahmni.module.bahmnicore.dao.BahmniAddressHierarchyDao;
+import org.bahmni.module.bahmnicore.model.BahmniAddressHierarchyEntry;
+import org.bahmni.module.bahmnicore.model.BahmniAddressHierarchyLevel;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class AddressHierarchyTreeTest {
+    @Mock
+    private BahmniAddressHierarchyDao bahmniAddressHierarchyDao;
+
+    private AddressHierarchyTree addressHierarchyTree;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        when(bahmniAddressHierarchyDao.getAddressHierarchyLevels()).thenReturn(Arrays.asList(level(1, "State"), level(2, "District"), level(3, "Village")));
+        when(bahmniAddressHierarchyDao.getAllAddressHierarchyEntries()).thenReturn(Arrays.asList(
+                entry(1, null, 1, "state", "Maharashtra"),
+                entry(2, 1, 2, "district", "Pune"),
+                entry(3, 2, 3, "village", "Wagholi")));
+        addressHierarchyTree = new AddressHierarchyTree(bahmniAddressHierarchyDao);
+    }
+
+    @Test
+    public void shouldLookUpEntriesWithTheirLevelsWithoutGoingToTheDatabaseAgain() {
+        addressHierarchyTree.getEntriesByUuid(Arrays.asList("village"));
+        List<BahmniAddressHierarchyEntry> entries = addressHierarchyTree.getEntriesByUuid(Arrays.asList("district", "village"));
+
+        assertEquals("Pune", entries.get(0).getName());
+        assertEquals("District", entries.get(0).getAddressHierarchyLevel().getName());
+        assertEquals("Wagholi", entries.get(1).getName());
+        verify(bahmniAddressHierarchyDao, times(1)).getAllAddressHierarchyEntries();
+    }
+
+    @Test
+    public void shouldWalkUpTheParentsOfAnEntry() {
+        List<BahmniAddressHierarchyEntry> chain = addressHierarchyTree.getEntryWithParents("village");
+
+        assertEquals(3, chain.size());
+        assertEquals("Wagholi", chain.get(0).getName());
+        assertEquals("Pune", chain.get(1).getName());
+        assertEquals("Maharashtra", chain.get(2).getName());
+    }
+
+    @Test
+    public void shouldHandOutCopiesThatDoNotAffectLaterLookups() {
+        addressHierarchyTree.getEntriesByUuid(Arrays.asList("village")).get(0).setName("Changed");
+
+        assertEquals("Wagholi", addressHierarchyTree.getEntriesByUuid(Arrays.asList("village")).get(0).getName());
+    }
+
+    @Test
+    public void shouldReadOnlyTheChangedEntriesAgain() {
+        addressHierarchyTree.getEntriesByUuid(Arrays.asList("village"));
+        BahmniAddressHierarchyEntry renamed = entry(3, 2, 3, "village", "Wagholi Gaon");
+        renamed.setAddressHierarchyLevel(level(3, "Village"));
+        when(bahmniAddressHierarchyDao.getAddressHierarchyEntriesByUuid(Arrays.asList("village"))).thenReturn(Arrays.asList(renamed));
+
+        addressHierarchyTree.addressHierarchyEntriesChanged(Arrays.asList("village"));
+
+        assertEquals("Wagholi Gaon", addressHierarchyTree.getEntriesByUuid(Arrays.asList("village")).get(0).getName());
+        assertEquals("Wagholi Gaon", addressHierarchyTree.getEntriesByUuid(Arrays.asList("village")).get(0).getName());
+        verify(bahmniAddressHierarchyDao, times(1)).getAddressHierarchyEntriesByUuid(Arrays.asList("village"));
+        verify(bahmniAddressHierarchyDao, times(1)).getAllAddressHierarchyEntries();
+    }
+
+    @Test
+    public void shouldReadEntriesChangedDuringAReloadAgainOnTopOfTheReloadedTree() {
+        addressHierarchyTree.getEntriesByUuid(Arrays.asList("village"));
+        final BahmniAddressHierarchyEntry renamed = entry(3, 2, 3, "village", "Wagholi Gaon");
+        when(bahmniAddressHierarchyDao.getAddressHierarchyEntriesByUuid(Arrays.asList("village"))).thenReturn(Arrays.asList(renamed));
+        final List<BahmniAddressHierarchyEntry> loadedBeforeTheRename = Arrays.asList(
+                entry(1, null, 1, "state", "Maharashtra"),
+                entry(2, 1, 2, "district", "Pune"),
+                entry(3, 2, 3, "village", "Wagholi"));
+        when(bahmniAddressHierarchyDao.getAllAddressHierarchyEntries()).thenAnswer(new Answer<List<BahmniAddressHierarchyEntry>>() {
+            @Override
+            public List<BahmniAddressHierarchyEntry> answer(InvocationOnMock invocation) {
+                addressHierarchyTree.addressHierarchyEntriesChanged(Arrays.asList("village"));
+                addressHierarchyTree.getEntriesByUuid(Arrays.asList("village"));
+                return loadedBeforeTheRename;
+            }
+        });
+
+        addressHierarchyTree.reload();
+
+        assertEquals("Wagholi Gaon", addressHierarchyTree.getEntriesByUuid(Arrays.asList("village")).get(0).getName());
+    }
+
+    @Test
+    public void shouldLookUpUnknownUuidsInTheDatabase() {
+        BahmniAddressHierarchyEntry newVillage = entry(4, 2, 3, "newVillage", "Kharadi");
+        when(bahmniAddressHierarchyDao.getAddressHierarchyEntriesByUuid(Arrays.asList("newVillage"))).thenReturn(Arrays.asList(newVillage));
+
+        List<BahmniAddressHierarchyEntry> entries = addressHierarchyTree.getEntriesByUuid(Arrays.asList("village", "newVillage"));
+
+        assertEquals(2, entries.size());
+        assertEquals("Kharadi", entries.get(1).getName());
+    }
+
+    @Test
+    public void shouldKeepTheOrderAskedForWhenSomeUuidsAreLookedUpInTheDatabase() {
+        BahmniAddressHierarchyEntry newVillage = entry(4, 2, 3, "newVillage", "Kharadi");
+        when(bahmniAddressHierarchyDao.getAddressHierarchyEntriesByUuid(Arrays.asList("newVillage", "unknown"))).thenReturn(Arrays.asList(newVillage));
+
+        List<BahmniAddressHierarchyEntry> entries = addressHierarchyTree.getEntriesByUuid(Arrays.asList("newVillage", "village", "unknown", "state"));
+
+        assertEquals(3, entries.size());
+        assertEquals("Kharadi", entries.get(0).getName());
+        assertEquals("Wagholi", entries.get(1).getName());
+        assertEquals("Maharashtra", entries.get(2).getName());
+    }
+
+    private BahmniAddressHierarchyEntry entry(Integer id, Integer parentId, Integer levelId, String uuid, String name) {
+        BahmniAddressHierarchyEntry entry = new BahmniAddressHierarchyEntry();
+        entry.setAddressHierarchyEntryId(id);
+        entry.setParentId(parentId);
+        entry.setLevelId(levelId);
+        entry.setUuid(uuid);
+        entry.setName(name);
+        return entry;
+    }
+
+    private BahmniAddressHierarchyLevel level(Integer levelId, String name) {
+        BahmniAddressHierarchyLevel level = new BahmniAddressHierarchyLevel();
+        level.setLevelId(levelId);
+        level.setName(name);
+        return level;
+    }
+}
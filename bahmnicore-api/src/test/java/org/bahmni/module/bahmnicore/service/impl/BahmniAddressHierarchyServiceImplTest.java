@@ -8,9 +8,11 @@ import org.junit.Test;
 import org.mockito.Mock;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -22,10 +24,13 @@ public class BahmniAddressHierarchyServiceImplTest {
     @Mock
     private BahmniAddressHierarchyDao bahmniAddressHierarchyDao;
 
+    @Mock
+    private AddressHierarchyTree addressHierarchyTree;
+
     @Before
     public void setUp() throws Exception {
         initMocks(this);
-        bahmniAddressHierarchyService = new BahmniAddressHierarchyServiceImpl(bahmniAddressHierarchyDao);
+        bahmniAddressHierarchyService = new BahmniAddressHierarchyServiceImpl(bahmniAddressHierarchyDao, addressHierarchyTree);
     }
 
     @Test
@@ -43,4 +48,37 @@ public class BahmniAddressHierarchyServiceImplTest {
         verify(bahmniAddressHierarchyDao, times(1)).getAddressHierarchyEntriesByUuid(uuids);
         assertEquals(addressHierarchyEntry.getName(), hierarchyEntriesByUuid.get(0).getName());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldWalkUpTheParentsOfAnEntry() throws Exception {
+        BahmniAddressHierarchyEntry village = entry(3, 2, "village");
+        BahmniAddressHierarchyEntry district = entry(2, 1, "district");
+        BahmniAddressHierarchyEntry state = entry(1, null, "state");
+        when(bahmniAddressHierarchyDao.getAddressHierarchyEntriesByUuid(Arrays.asList("village"))).thenReturn(Arrays.asList(village));
+        when(bahmniAddressHierarchyDao.getAddressHierarchyEntriesById(Arrays.asList(2))).thenReturn(Arrays.asList(district));
+        when(bahmniAddressHierarchyDao.getAddressHierarchyEntriesById(Arrays.asList(1))).thenReturn(Arrays.asList(state));
+
+        List<BahmniAddressHierarchyEntry> chain = bahmniAddressHierarchyService.getAddressHierarchyEntryWithParents("village");
+
+        assertEquals(Arrays.asList(village, district, state), chain);
+    }
+
+    @Test
+    public void shouldLookUpEntriesInTheTreeWhenItIsEnabled() throws Exception {
+        List<String> uuids = Arrays.asList("uuid");
+        List<BahmniAddressHierarchyEntry> addressHierarchyEntries = Arrays.asList(entry(1, null, "uuid"));
+        when(addressHierarchyTree.isEnabled()).thenReturn(true);
+        when(addressHierarchyTree.getEntriesByUuid(uuids)).thenReturn(addressHierarchyEntries);
+
+        assertEquals(addressHierarchyEntries, bahmniAddressHierarchyService.getAddressHierarchyEntriesByUuid(uuids));
+        verify(bahmniAddressHierarchyDao, never()).getAddressHierarchyEntriesByUuid(uuids);
+    }
+
+    private BahmniAddressHierarchyEntry entry(Integer id, Integer parentId, String uuid) {
+        BahmniAddressHierarchyEntry entry = new BahmniAddressHierarchyEntry();
+        entry.setAddressHierarchyEntryId(id);
+        entry.setParentId(parentId);
+        entry.setUuid(uuid);
+        return entry;
+    }
+}
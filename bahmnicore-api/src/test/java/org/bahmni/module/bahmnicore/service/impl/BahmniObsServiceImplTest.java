@@ -109,13 +109,27 @@ public class BahmniObsServiceImplTest {
     @Test
     public void shouldGetInitialObservations() throws Exception {
         Concept weightConcept = new ConceptBuilder().withName("Weight").build();
-        Integer limit = 1;
         VisitBuilder visitBuilder = new VisitBuilder();
         Visit visit = visitBuilder.withUUID("visitId").withEncounter(new Encounter(1)).withPerson(new Person()).build();
         List<String> obsIgnoreList = new ArrayList<>();
         bahmniObsService.getInitialObsByVisit(visit, Arrays.asList(weightConcept), obsIgnoreList, true);
-        verify(obsDao).getObsByPatientAndVisit(visit.getPatient().getUuid(), Arrays.asList("Weight"),
-                Arrays.asList(visit.getVisitId()), limit, ObsDaoImpl.OrderBy.ASC, obsIgnoreList, true, null, null, null);
+        verify(obsDao).getLatestOrInitialObsForConcepts(visit.getPatient().getUuid(), Arrays.asList("Weight"),
+                Arrays.asList(visit.getVisitId()), ObsDaoImpl.OrderBy.ASC, obsIgnoreList, true, null);
+    }
+
+    @Test
+    public void shouldGetLatestObservationsForAllConceptsInOneCall() throws Exception {
+        Concept weightConcept = new ConceptBuilder().withName("Weight").build();
+        Concept pulseConcept = new ConceptBuilder().withName("Pulse").build();
+        Integer numberOfVisits = 2;
+        List<Integer> visitIds = Arrays.asList(1, 2);
+        when(visitDao.getVisitIdsFor(personUUID, numberOfVisits)).thenReturn(visitIds);
+
+        bahmniObsService.getLatest(personUUID, Arrays.asList(weightConcept, pulseConcept), numberOfVisits, null, false, null);
+
+        verify(visitDao, times(1)).getVisitIdsFor(personUUID, numberOfVisits);
+        verify(obsDao, times(1)).getLatestOrInitialObsForConcepts(personUUID, Arrays.asList("Weight", "Pulse"),
+                visitIds, ObsDaoImpl.OrderBy.DESC, null, false, null);
     }
 
     @Test
@@ -1,14 +1,27 @@
 package org.bahmni.module.bahmnicore.service.impl;
 
+import org.bahmni.module.bahmnicore.BahmniCoreException;
 import org.bahmni.module.bahmnicore.properties.BahmniCoreProperties;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import javax.xml.bind.DatatypeConverter;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
@@ -17,6 +30,9 @@ import static org.mockito.Mockito.when;
 @PrepareForTest(BahmniCoreProperties.class)
 public class PatientImageServiceImplTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private PatientImageServiceImpl patientImageService;
 
     @Test
@@ -34,4 +50,73 @@ public class PatientImageServiceImplTest {
         File absoluteFileDirectory = new File("./300");
         absoluteFileDirectory.delete();
     }
+
+    @Test
+    public void shouldDecodeBase64ContentLongerThanAChunkIntoTheFile() throws Exception {
+        byte[] content = new byte[200 * 1024 + 7];
+        new Random(42).nextBytes(content);
+        String base64 = DatatypeConverter.printBase64Binary(content).replaceAll("(.{76})", "$1\n");
+        File outputFile = temporaryFolder.newFile("content.bin");
+        patientImageService = new PatientImageServiceImpl();
+
+        String contentHash = patientImageService.writeBase64ToFile(base64, outputFile);
+
+        assertArrayEquals(content, Files.readAllBytes(outputFile.toPath()));
+        assertEquals(64, contentHash.length());
+    }
+
+    @Test
+    public void shouldStoreTheSameDocumentOnlyOnce() throws Exception {
+        String basePath = temporaryFolder.getRoot().getAbsolutePath();
+        PowerMockito.mockStatic(BahmniCoreProperties.class);
+        when(BahmniCoreProperties.getProperty("bahmnicore.documents.baseDirectory")).thenReturn(basePath);
+        String pdf = DatatypeConverter.printBase64Binary("%PDF-1.4 document".getBytes("UTF-8"));
+        patientImageService = new PatientImageServiceImpl();
+
+        String firstPath = patientImageService.saveDocument(280, "Radiology", pdf, "pdf");
+        String secondPath = patientImageService.saveDocument(280, "Radiology", pdf, "pdf");
+
+        assertEquals(firstPath, secondPath);
+        assertTrue(firstPath.startsWith("300/280-Radiology-"));
+        assertEquals(Arrays.asList(new File(firstPath).getName()), Arrays.asList(new File(basePath, "300").list()));
+        assertEquals("%PDF-1.4 document", new String(Files.readAllBytes(new File(basePath, firstPath).toPath()), "UTF-8"));
+    }
+
+    @Test(expected = BahmniCoreException.class)
+    public void shouldRejectThumbnailStatusOfADocumentOutsideTheDocumentsDirectory() throws Exception {
+        PowerMockito.mockStatic(BahmniCoreProperties.class);
+        when(BahmniCoreProperties.getProperty("bahmnicore.documents.baseDirectory")).thenReturn(temporaryFolder.newFolder("documents").getAbsolutePath());
+        patientImageService = new PatientImageServiceImpl();
+
+        patientImageService.getThumbnailStatus("300/../../secret.jpeg");
+    }
+
+    @Test
+    public void shouldStoreAnImageUploadedInAnotherFormatInTheFormatItIsSavedAs() throws Exception {
+        String basePath = temporaryFolder.getRoot().getAbsolutePath();
+        PowerMockito.mockStatic(BahmniCoreProperties.class);
+        when(BahmniCoreProperties.getProperty("bahmnicore.documents.baseDirectory")).thenReturn(basePath);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB), "png", png);
+        patientImageService = new PatientImageServiceImpl();
+
+        try {
+            String path = patientImageService.saveDocument(280, "Radiology", DatatypeConverter.printBase64Binary(png.toByteArray()), "jpeg");
+
+            try (ImageInputStream storedImage = ImageIO.createImageInputStream(new File(basePath, path))) {
+                assertEquals("jpeg", ImageIO.getImageReaders(storedImage).next().getFormatName().toLowerCase());
+            }
+        } finally {
+            patientImageService.shutdown();
+        }
+    }
+
+    @Test(expected = BahmniCoreException.class)
+    public void shouldRejectADocumentThatIsNotAPdf() throws Exception {
+        PowerMockito.mockStatic(BahmniCoreProperties.class);
+        when(BahmniCoreProperties.getProperty("bahmnicore.documents.baseDirectory")).thenReturn(temporaryFolder.getRoot().getAbsolutePath());
+        patientImageService = new PatientImageServiceImpl();
+
+        patientImageService.saveDocument(280, "Radiology", DatatypeConverter.printBase64Binary("<html></html>".getBytes("UTF-8")), "pdf");
+    }
 }
@@ -0,0 +1,35 @@
+package org.bahmni.module.bahmnicore.service.impl;
+
+import org.bahmni.module.bahmnicore.contract.monitoring.response.SqlQueryMetricsResponse;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SqlQueryMetricsTest {
+
+    @Test
+    public void shouldSummariseCallsRowsAndLatencies() throws Exception {
+        SqlQueryMetrics sqlQueryMetrics = new SqlQueryMetrics();
+        for (int latency = 1; latency <= 100; latency++) {
+            sqlQueryMetrics.recordSuccess(latency, 2);
+        }
+        sqlQueryMetrics.recordFailure(500);
+
+        SqlQueryMetricsResponse response = sqlQueryMetrics.toResponse("queryId");
+
+        assertEquals("queryId", response.getQueryId());
+        assertEquals(101, response.getCallCount());
+        assertEquals(1, response.getErrorCount());
+        assertEquals(200, response.getRowsReturned());
+        assertEquals(51, response.getP50LatencyInMillis());
+        assertEquals(100, response.getP99LatencyInMillis());
+    }
+
+    @Test
+    public void shouldReportZeroLatencyWhenThereAreNoCalls() throws Exception {
+        SqlQueryMetricsResponse response = new SqlQueryMetrics().toResponse("queryId");
+
+        assertEquals(0, response.getCallCount());
+        assertEquals(0, response.getP50LatencyInMillis());
+    }
+}
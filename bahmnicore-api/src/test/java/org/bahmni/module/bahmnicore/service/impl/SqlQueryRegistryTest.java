@@ -0,0 +1,73 @@
+package org.bahmni.module.bahmnicore.service.impl;
+
+import org.bahmni.module.bahmnicore.util.CompiledSqlQuery;
+import org.bahmni.module.bahmnicore.util.SqlQueryHelper;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.AdministrationService;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class SqlQueryRegistryTest {
+    private static final String QUERY_ID = "emrapi.sqlSearch.activePatients";
+
+    @Mock
+    private AdministrationService administrationService;
+
+    private SqlQueryRegistry sqlQueryRegistry;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        sqlQueryRegistry = new SqlQueryRegistry(administrationService, new SqlQueryHelper());
+        when(administrationService.getGlobalProperty(QUERY_ID)).thenReturn("select * from visit where location_id = ${location_id:integer}");
+    }
+
+    @Test
+    public void shouldCompileQueryOnlyOnce() throws Exception {
+        CompiledSqlQuery compiledSqlQuery = sqlQueryRegistry.get(QUERY_ID);
+
+        assertSame(compiledSqlQuery, sqlQueryRegistry.get(QUERY_ID));
+        assertEquals("select * from visit where location_id = ?", compiledSqlQuery.getPreparedStatementSql());
+        verify(administrationService, times(1)).getGlobalProperty(QUERY_ID);
+    }
+
+    @Test
+    public void shouldRecompileQueryWhenGlobalPropertyChanges() throws Exception {
+        sqlQueryRegistry.get(QUERY_ID);
+        assertTrue(sqlQueryRegistry.supportsPropertyName(QUERY_ID));
+
+        when(administrationService.getGlobalProperty(QUERY_ID)).thenReturn("select * from visit");
+        sqlQueryRegistry.globalPropertyChanged(new GlobalProperty(QUERY_ID, "select * from visit"));
+
+        assertFalse(sqlQueryRegistry.supportsPropertyName(QUERY_ID));
+        assertEquals("select * from visit", sqlQueryRegistry.get(QUERY_ID).getPreparedStatementSql());
+    }
+
+    @Test
+    public void shouldReadThePageKeyColumnsOfAQueryAndRecompileWhenTheyChange() throws Exception {
+        assertTrue(sqlQueryRegistry.get(QUERY_ID).getPageKeyColumns().isEmpty());
+
+        when(administrationService.getGlobalProperty(QUERY_ID + SqlQueryRegistry.PAGE_KEY_SUFFIX)).thenReturn("date_started, visit_id");
+        assertTrue(sqlQueryRegistry.supportsPropertyName(QUERY_ID + SqlQueryRegistry.PAGE_KEY_SUFFIX));
+        sqlQueryRegistry.globalPropertyChanged(new GlobalProperty(QUERY_ID + SqlQueryRegistry.PAGE_KEY_SUFFIX, "date_started, visit_id"));
+
+        assertEquals(Arrays.asList("date_started", "visit_id"), sqlQueryRegistry.get(QUERY_ID).getPageKeyColumns());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void shouldFailForUnknownQuery() throws Exception {
+        sqlQueryRegistry.get("emrapi.sqlSearch.unknown");
+    }
+}
@@ -0,0 +1,47 @@
+package org.bahmni.module.bahmnicore.service.impl;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SqlSearchServiceImplTest {
+
+    @Test
+    public void shouldRoundTripAKeyPageToken() throws Exception {
+        Timestamp dateCreated = Timestamp.valueOf("2015-06-01 10:15:30");
+        SqlSearchServiceImpl.PageToken pageToken = SqlSearchServiceImpl.PageToken.decode(
+                SqlSearchServiceImpl.PageToken.after(Arrays.<Object>asList(dateCreated, 250, "GAN:200001")).encode());
+
+        assertEquals(Arrays.<Object>asList(dateCreated, new BigDecimal(250), "GAN:200001"), pageToken.key);
+        assertNull(pageToken.offset);
+    }
+
+    @Test
+    public void shouldRoundTripAnOffsetPageToken() throws Exception {
+        SqlSearchServiceImpl.PageToken pageToken = SqlSearchServiceImpl.PageToken.decode(SqlSearchServiceImpl.PageToken.atOffset(40).encode());
+
+        assertEquals(Integer.valueOf(40), pageToken.offset);
+        assertNull(pageToken.key);
+    }
+
+    @Test
+    public void shouldStartFromFirstRowWhenThereIsNoPageToken() throws Exception {
+        assertNull(SqlSearchServiceImpl.PageToken.decode(null));
+        assertNull(SqlSearchServiceImpl.PageToken.decode(""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidPageToken() throws Exception {
+        SqlSearchServiceImpl.PageToken.decode("bm90LWEtbnVtYmVy");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectAPlainOffset() throws Exception {
+        SqlSearchServiceImpl.PageToken.decode("MjUw");
+    }
+}
@@ -0,0 +1,68 @@
+package org.bahmni.module.bahmnicore.service.impl;
+
+import org.bahmni.module.bahmnicore.model.ThumbnailStatus;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ThumbnailGeneratorTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ThumbnailGenerator thumbnailGenerator = new ThumbnailGenerator(1, 10);
+
+    @After
+    public void tearDown() {
+        thumbnailGenerator.shutdown();
+    }
+
+    @Test
+    public void shouldCreateTheThumbnailInTheBackground() throws Exception {
+        File image = temporaryFolder.newFile("1-Radiology-abc.jpeg");
+        ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "jpeg", image);
+
+        thumbnailGenerator.submit(image);
+
+        assertEquals(ThumbnailStatus.CREATED, waitForStatus(image));
+        BufferedImage thumbnail = ImageIO.read(new File(temporaryFolder.getRoot(), "1-Radiology-abc_thumbnail.jpeg"));
+        assertEquals(100, thumbnail.getWidth());
+    }
+
+    @Test
+    public void shouldRetryAFailedThumbnailOnlyUpToTheMaximumAttempts() throws Exception {
+        File image = temporaryFolder.newFile("1-Radiology-def.jpeg");
+        Files.write(image.toPath(), "not an image".getBytes("UTF-8"));
+
+        thumbnailGenerator.submit(image);
+        assertEquals(ThumbnailStatus.FAILED, waitForStatus(image));
+
+        for (int attempt = 1; attempt < ThumbnailGenerator.MAX_ATTEMPTS; attempt++) {
+            assertEquals(1, thumbnailGenerator.retryFailed());
+            assertEquals(ThumbnailStatus.FAILED, waitForStatus(image));
+        }
+        assertEquals(0, thumbnailGenerator.retryFailed());
+    }
+
+    @Test
+    public void shouldReportImagesItHasNotSeen() throws Exception {
+        assertEquals(ThumbnailStatus.NOT_FOUND, thumbnailGenerator.getStatus(new File(temporaryFolder.getRoot(), "unknown.jpeg")));
+        assertTrue(temporaryFolder.newFile("known_thumbnail.jpeg").exists());
+        assertEquals(ThumbnailStatus.CREATED, thumbnailGenerator.getStatus(new File(temporaryFolder.getRoot(), "known.jpeg")));
+    }
+
+    private ThumbnailStatus waitForStatus(File image) throws InterruptedException {
+        for (int i = 0; i < 100 && thumbnailGenerator.getStatus(image) == ThumbnailStatus.PENDING; i++) {
+            Thread.sleep(50);
+        }
+        return thumbnailGenerator.getStatus(image);
+    }
+}
@@ -6,9 +6,18 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.openmrs.api.AdministrationService;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class SqlQueryHelperTest {
@@ -64,4 +73,52 @@ public class SqlQueryHelperTest {
 
         assertEquals(expectedQueryString,result);
     }
+
+    @Test
+    public void shouldCompileQueryWithDeclaredParameterTypes(){
+        String queryString ="select * from encounter where date_started > ${en_date_started:date} AND visit_id=${en_visit_id:integer} and uuid=${en_uuid}";
+        CompiledSqlQuery compiledSqlQuery = sqlQueryHelper.compile(queryString);
+
+        assertEquals("select * from encounter where date_started > ? AND visit_id=? and uuid=?", compiledSqlQuery.getPreparedStatementSql());
+        assertEquals(3, compiledSqlQuery.getParameters().size());
+        assertEquals("en_date_started", compiledSqlQuery.getParameters().get(0).getName());
+        assertEquals(SqlQueryParameter.Type.DATE, compiledSqlQuery.getParameters().get(0).getType());
+        assertEquals("en_visit_id", compiledSqlQuery.getParameters().get(1).getName());
+        assertEquals(SqlQueryParameter.Type.INTEGER, compiledSqlQuery.getParameters().get(1).getType());
+        assertEquals("en_uuid", compiledSqlQuery.getParameters().get(2).getName());
+        assertEquals(SqlQueryParameter.Type.STRING, compiledSqlQuery.getParameters().get(2).getType());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotCompileQueryWithUnknownParameterType(){
+        sqlQueryHelper.compile("select * from encounter where visit_id=${en_visit_id:number}");
+    }
+
+    @Test
+    public void shouldPrepareAPageAfterTheKeyOfTheLastRow() throws Exception {
+        Connection connection = mock(Connection.class);
+        PreparedStatement preparedStatement = mock(PreparedStatement.class);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        Timestamp dateCreated = Timestamp.valueOf("2015-06-01 10:15:30");
+        Map<String, String[]> params = new HashMap<>();
+        params.put("en_visit_id", new String[]{"12"});
+
+        sqlQueryHelper.compile("select * from person where visit_id=${en_visit_id:integer};")
+                .withPageKeyColumns(Arrays.asList("date_created", "person_id"))
+                .preparePage(connection, params, Arrays.<Object>asList(dateCreated, 250), 11);
+
+        verify(connection).prepareStatement("select * from (select * from person where visit_id=?) page" +
+                " where (page.date_created > ?) or (page.date_created = ? and page.person_id > ?)" +
+                " order by page.date_created, page.person_id limit ?");
+        verify(preparedStatement).setLong(1, 12L);
+        verify(preparedStatement).setObject(2, dateCreated);
+        verify(preparedStatement).setObject(3, dateCreated);
+        verify(preparedStatement).setObject(4, 250);
+        verify(preparedStatement).setInt(5, 11);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectAPageKeyColumnThatIsNotAPlainName() throws Exception {
+        sqlQueryHelper.compile("select * from person").withPageKeyColumns(Arrays.asList("person_id; drop table person"));
+    }
 }
@@ -13,31 +13,73 @@
  */
 package org.bahmni.module.bahmnicore.web.filter;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
 import org.openmrs.api.context.Context;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.xml.bind.DatatypeConverter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Filter intended for all /ws/rest/* calls to sets Expires headers
- * based on global property bahmni.cacheHeadersFilter.expiresDuration
+ * based on global property bahmni.cacheHeadersFilter.expiresDuration.
+ * <p/>
+ * Successful GET responses are buffered to give them a strong ETag, the hash of the body. A request whose
+ * If-None-Match carries that ETag gets a 304 with no body. For request paths matching one of the regular expressions
+ * in bahmni.cacheHeadersFilter.etagCacheUrlPatterns the ETag is also remembered for
+ * bahmni.cacheHeadersFilter.etagCacheSeconds, and a matching If-None-Match is answered with a 304 without running the
+ * request at all. The global properties are read once and again only when they change.
  */
-public class CacheHeadersFilter implements Filter {
+public class CacheHeadersFilter implements Filter, GlobalPropertyListener {
+    public static final String EXPIRES_DURATION_GLOBAL_PROPERTY = "bahmni.cacheHeadersFilter.expiresDuration";
+    public static final String ETAG_CACHE_URL_PATTERNS_GLOBAL_PROPERTY = "bahmni.cacheHeadersFilter.etagCacheUrlPatterns";
+    public static final String ETAG_CACHE_SECONDS_GLOBAL_PROPERTY = "bahmni.cacheHeadersFilter.etagCacheSeconds";
+    private static final List<String> GLOBAL_PROPERTIES = Arrays.asList(EXPIRES_DURATION_GLOBAL_PROPERTY,
+            ETAG_CACHE_URL_PATTERNS_GLOBAL_PROPERTY, ETAG_CACHE_SECONDS_GLOBAL_PROPERTY);
+    private static final int MAX_CACHED_ETAGS = 1000;
 
     protected final Log log = LogFactory.getLog(getClass());
 
+    private volatile Settings settings;
+    private boolean listening;
+    private final Map<String, CachedETag> cachedETags = Collections.synchronizedMap(new LinkedHashMap<String, CachedETag>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedETag> eldest) {
+            return size() > MAX_CACHED_ETAGS;
+        }
+    });
+
     @Override
     public void init(FilterConfig arg0) throws ServletException {
         log.debug("Initializing CacheHeadersFilter");
@@ -46,24 +88,275 @@ public class CacheHeadersFilter implements Filter {
     @Override
     public void destroy() {
         log.debug("Destroying CacheHeadersFilter");
+        synchronized (this) {
+            if (listening) {
+                Context.getAdministrationService().removeGlobalPropertyListener(this);
+                listening = false;
+            }
+        }
     }
 
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException,
             ServletException {
+        if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)
+                || !"GET".equals(((HttpServletRequest) request).getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        Settings currentSettings = getSettings();
+        String ifNoneMatch = httpRequest.getHeader("If-None-Match");
+
+        String cacheKey = currentSettings.isCached(pathOf(httpRequest)) ? cacheKeyOf(httpRequest) : null;
+        if (cacheKey != null && ifNoneMatch != null) {
+            CachedETag cachedETag = cachedETags.get(cacheKey);
+            if (cachedETag != null && cachedETag.isFresh(currentSettings.etagCacheSeconds) && matches(ifNoneMatch, cachedETag.eTag)) {
+                log.debug(String.format("Answering %s from the cached ETag", cacheKey));
+                notModified(httpResponse, cachedETag.eTag, currentSettings);
+                return;
+            }
+        }
 
-        chain.doFilter(request, response);
+        BufferedResponse bufferedResponse = new BufferedResponse(httpResponse);
+        chain.doFilter(request, bufferedResponse);
+        byte[] body = bufferedResponse.getBody();
 
-        if (response instanceof HttpServletResponse) {
-            HttpServletResponse httpResponse = (HttpServletResponse) response;
-            HttpServletRequest httpRequest = (HttpServletRequest) request;
-            if ("GET".equals(httpRequest.getMethod()) &&  httpResponse.getStatus() == 200) {
-                int expiresDuration = NumberUtils.toInt(Context.getAdministrationService().getGlobalProperty("bahmni.cacheHeadersFilter.expiresDuration"), 0);
-                log.debug(String.format("Setting expires header with duration %s", expiresDuration));
-                httpResponse.setDateHeader("Expires", DateUtils.addMinutes(new Date(), expiresDuration).getTime());
-             }
+        if (bufferedResponse.getStatus() != HttpServletResponse.SC_OK) {
+            writeBody(httpResponse, body);
+            return;
+        }
+        String eTag = eTagOf(body);
+        if (cacheKey != null) {
+            cachedETags.put(cacheKey, new CachedETag(eTag));
+        }
+        if (ifNoneMatch != null && matches(ifNoneMatch, eTag)) {
+            notModified(httpResponse, eTag, currentSettings);
+            return;
         }
+        setCacheHeaders(httpResponse, eTag, currentSettings);
+        httpResponse.setContentLength(body.length);
+        writeBody(httpResponse, body);
+    }
+
+    private void notModified(HttpServletResponse httpResponse, String eTag, Settings currentSettings) {
+        httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        setCacheHeaders(httpResponse, eTag, currentSettings);
+    }
+
+    private void setCacheHeaders(HttpServletResponse httpResponse, String eTag, Settings currentSettings) {
+        log.debug(String.format("Setting expires header with duration %s", currentSettings.expiresDuration));
+        httpResponse.setDateHeader("Expires", DateUtils.addMinutes(new Date(), currentSettings.expiresDuration).getTime());
+        httpResponse.setHeader("ETag", eTag);
+    }
+
+    private void writeBody(HttpServletResponse httpResponse, byte[] body) throws IOException {
+        if (body.length > 0) {
+            httpResponse.getOutputStream().write(body);
+        }
+        httpResponse.flushBuffer();
+    }
+
+    private String pathOf(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private String cacheKeyOf(HttpServletRequest request) {
+        String user = Context.isAuthenticated() ? Context.getAuthenticatedUser().getUuid() : "";
+        return request.getRequestURI() + "?" + StringUtils.defaultString(request.getQueryString())
+                + "|" + StringUtils.defaultString(request.getHeader("Accept-Language")) + "|" + user;
+    }
+
+    static boolean matches(String ifNoneMatch, String eTag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*") || trimmed.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String eTagOf(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return "\"" + DatatypeConverter.printHexBinary(digest).toLowerCase() + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Settings getSettings() {
+        Settings current = settings;
+        if (current == null) {
+            synchronized (this) {
+                if (!listening) {
+                    Context.getAdministrationService().addGlobalPropertyListener(this);
+                    listening = true;
+                }
+                current = new Settings(
+                        NumberUtils.toInt(Context.getAdministrationService().getGlobalProperty(EXPIRES_DURATION_GLOBAL_PROPERTY), 0),
+                        Context.getAdministrationService().getGlobalProperty(ETAG_CACHE_URL_PATTERNS_GLOBAL_PROPERTY),
+                        NumberUtils.toInt(Context.getAdministrationService().getGlobalProperty(ETAG_CACHE_SECONDS_GLOBAL_PROPERTY), 0));
+                settings = current;
+            }
+        }
+        return current;
+    }
+
+    @Override
+    public boolean supportsPropertyName(String propertyName) {
+        return GLOBAL_PROPERTIES.contains(propertyName);
+    }
+
+    @Override
+    public void globalPropertyChanged(GlobalProperty newValue) {
+        settings = null;
+        cachedETags.clear();
+    }
+
+    @Override
+    public void globalPropertyDeleted(String propertyName) {
+        settings = null;
+        cachedETags.clear();
     }
-}
 
+    private class Settings {
+        private final int expiresDuration;
+        private final List<Pattern> etagCacheUrlPatterns = new ArrayList<>();
+        private final int etagCacheSeconds;
 
+        private Settings(int expiresDuration, String etagCacheUrlPatterns, int etagCacheSeconds) {
+            this.expiresDuration = expiresDuration;
+            this.etagCacheSeconds = etagCacheSeconds;
+            if (StringUtils.isNotBlank(etagCacheUrlPatterns)) {
+                for (String urlPattern : etagCacheUrlPatterns.split(",")) {
+                    try {
+                        this.etagCacheUrlPatterns.add(Pattern.compile(urlPattern.trim()));
+                    } catch (PatternSyntaxException e) {
+                        log.warn(String.format("Ignoring invalid url pattern %s of %s", urlPattern, ETAG_CACHE_URL_PATTERNS_GLOBAL_PROPERTY));
+                    }
+                }
+            }
+        }
+
+        private boolean isCached(String path) {
+            if (etagCacheSeconds <= 0) {
+                return false;
+            }
+            for (Pattern pattern : etagCacheUrlPatterns) {
+                if (pattern.matcher(path).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class CachedETag {
+        private final String eTag;
+        private final long createdAt = System.currentTimeMillis();
+
+        private CachedETag(String eTag) {
+            this.eTag = eTag;
+        }
+
+        private boolean isFresh(int seconds) {
+            return System.currentTimeMillis() - createdAt < TimeUnit.SECONDS.toMillis(seconds);
+        }
+    }
+
+    /**
+     * Holds the body in memory instead of sending it, and keeps the status it was given.
+     */
+    private static class BufferedResponse extends HttpServletResponseWrapper {
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private int status = SC_OK;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        private BufferedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void setStatus(int status) {
+            this.status = status;
+            super.setStatus(status);
+        }
+
+        @Override
+        public void setStatus(int status, String message) {
+            this.status = status;
+            super.setStatus(status, message);
+        }
+
+        @Override
+        public void sendError(int status) throws IOException {
+            this.status = status;
+            super.sendError(status);
+        }
+
+        @Override
+        public void sendError(int status, String message) throws IOException {
+            this.status = status;
+            super.sendError(status, message);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            this.status = SC_MOVED_TEMPORARILY;
+            super.sendRedirect(location);
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public void setContentLength(int length) {
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (outputStream == null) {
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) {
+                        body.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] bytes, int offset, int length) {
+                        body.write(bytes, offset, length);
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws UnsupportedEncodingException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        private byte[] getBody() {
+            if (writer != null) {
+                writer.flush();
+            }
+            return body.toByteArray();
+        }
+    }
+}
@@ -17,6 +17,8 @@ import org.bahmni.module.admin.csv.models.PatientProgramRow;
 import org.bahmni.module.admin.csv.models.PatientRow;
 import org.bahmni.module.admin.csv.models.ReferenceTermRow;
 import org.bahmni.module.admin.csv.models.RelationshipRow;
+import org.bahmni.module.admin.csv.persister.BulkEncounterPersister;
+import org.bahmni.module.admin.csv.persister.BulkImportMetrics;
 import org.bahmni.module.admin.csv.persister.ConceptPersister;
 import org.bahmni.module.admin.csv.persister.ConceptSetPersister;
 import org.bahmni.module.admin.csv.persister.DatabasePersister;
@@ -34,6 +36,7 @@ import org.hibernate.engine.SessionImplementor;
 import org.hibernate.impl.SessionImpl;
 import org.openmrs.api.AdministrationService;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -67,6 +70,11 @@ public class AdminImportController extends BaseRestController {
     public static final String SHOULD_MATCH_EXACT_PATIENT_ID_CONFIG = "uploaded.should.matchExactPatientId";
 
     private static final boolean DEFAULT_SHOULD_MATCH_EXACT_PATIENT_ID = false;
+    public static final String BULK_ENCOUNTER_IMPORT_PARTITIONS_CONFIG = "bahmni.encounterImport.bulk.partitions";
+    public static final String BULK_ENCOUNTER_IMPORT_BATCH_SIZE_CONFIG = "bahmni.encounterImport.bulk.batchSize";
+    private static final int DEFAULT_BULK_ENCOUNTER_IMPORT_PARTITIONS = 8;
+    private static final int DEFAULT_BULK_ENCOUNTER_IMPORT_BATCH_SIZE = 100;
+    private static final int BULK_ENCOUNTER_IMPORT_READERS_PER_PARTITION = 4;
     public static final String ENCOUNTER_FILES_DIRECTORY = "encounter/";
     private static final String PROGRAM_FILES_DIRECTORY = "program/";
     private static final String CONCEPT_FILES_DIRECTORY = "concept/";
@@ -80,6 +88,9 @@ public class AdminImportController extends BaseRestController {
     @Autowired
     private EncounterPersister encounterPersister;
 
+    @Autowired
+    private BulkEncounterPersister bulkEncounterPersister;
+
     @Autowired
     private PatientProgramPersister patientProgramPersister;
 
@@ -125,7 +136,8 @@ public class AdminImportController extends BaseRestController {
 
     @RequestMapping(value = baseUrl + "/encounter", method = RequestMethod.POST)
     @ResponseBody
-    public boolean upload(@RequestParam(value = "file") MultipartFile file, @RequestParam(value = "patientMatchingAlgorithm", required = false) String patientMatchingAlgorithm) throws IOException {
+    public boolean upload(@RequestParam(value = "file") MultipartFile file, @RequestParam(value = "patientMatchingAlgorithm", required = false) String patientMatchingAlgorithm,
+                          @RequestParam(value = "bulk", required = false, defaultValue = "false") boolean bulk) throws IOException {
         try {
             String configuredExactPatientIdMatch = administrationService.getGlobalProperty(SHOULD_MATCH_EXACT_PATIENT_ID_CONFIG);
             boolean shouldMatchExactPatientId = DEFAULT_SHOULD_MATCH_EXACT_PATIENT_ID;
@@ -133,6 +145,12 @@ public class AdminImportController extends BaseRestController {
                 shouldMatchExactPatientId = Boolean.parseBoolean(configuredExactPatientIdMatch);
 
             encounterPersister.init(Context.getUserContext(), patientMatchingAlgorithm, shouldMatchExactPatientId);
+            if (bulk) {
+                int partitions = getIntegerGlobalProperty(BULK_ENCOUNTER_IMPORT_PARTITIONS_CONFIG, DEFAULT_BULK_ENCOUNTER_IMPORT_PARTITIONS);
+                bulkEncounterPersister.init(partitions, getIntegerGlobalProperty(BULK_ENCOUNTER_IMPORT_BATCH_SIZE_CONFIG, DEFAULT_BULK_ENCOUNTER_IMPORT_BATCH_SIZE));
+                // several reader threads per partition, so that a partition has rows waiting to be saved in one transaction
+                return importCsv(ENCOUNTER_FILES_DIRECTORY, file, bulkEncounterPersister, partitions * BULK_ENCOUNTER_IMPORT_READERS_PER_PARTITION, true, MultipleEncounterRow.class);
+            }
             return importCsv(ENCOUNTER_FILES_DIRECTORY, file, encounterPersister, 5, true, MultipleEncounterRow.class);
         } catch (Throwable e) {
             logger.error("Could not upload file", e);
@@ -140,6 +158,23 @@ public class AdminImportController extends BaseRestController {
         }
     }
 
+    @RequestMapping(value = baseUrl + "/encounter/bulkStatus", method = RequestMethod.GET)
+    @ResponseBody
+    public SimpleObject bulkEncounterImportStatus() {
+        BulkImportMetrics metrics = bulkEncounterPersister.getMetrics();
+        return new SimpleObject()
+                .add("partitions", bulkEncounterPersister.getNumberOfPartitions())
+                .add("processedRows", metrics.getProcessedRows())
+                .add("failedRows", metrics.getFailedRows())
+                .add("rowsPerSecond", metrics.getRowsPerSecond())
+                .add("errorRate", metrics.getErrorRate());
+    }
+
+    private int getIntegerGlobalProperty(String property, int defaultValue) {
+        String value = administrationService.getGlobalProperty(property);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
     @RequestMapping(value = baseUrl + "/referenceterms", method = RequestMethod.POST)
     @ResponseBody
     public boolean uploadReferenceTerms(@RequestParam(value = "file") MultipartFile file) throws IOException {
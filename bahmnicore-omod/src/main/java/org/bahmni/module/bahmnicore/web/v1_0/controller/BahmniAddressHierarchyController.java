@@ -48,4 +48,10 @@ public class BahmniAddressHierarchyController {
         return bahmniAddressHierarchyService.getAddressHierarchyEntriesByUuid(uuids);
     }
 
+    @RequestMapping(method = RequestMethod.GET, value = "/addressHierarchy/{uuid}/parents")
+    @ResponseBody
+    public List<BahmniAddressHierarchyEntry> getWithParents(@PathVariable("uuid") String uuid) {
+        return bahmniAddressHierarchyService.getAddressHierarchyEntryWithParents(uuid);
+    }
+
 }
@@ -7,8 +7,12 @@ import org.openmrs.api.EncounterService;
 import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BahmniEncounterSearchParameters;
 import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BahmniEncounterTransaction;
 import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BahmniObservation;
+import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BulkEncounterTransactionRequest;
+import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BulkEncounterTransactionResult;
+import org.openmrs.module.bahmniemrapi.encountertransaction.contract.EncounterSaveStageMetrics;
 import org.openmrs.module.bahmniemrapi.encountertransaction.mapper.BahmniEncounterTransactionMapper;
 import org.openmrs.module.bahmniemrapi.encountertransaction.service.BahmniEncounterTransactionService;
+import org.openmrs.module.bahmniemrapi.encountertransaction.service.BulkEncounterTransactionSaver;
 import org.openmrs.module.emrapi.encounter.EmrEncounterService;
 import org.openmrs.module.emrapi.encounter.EncounterTransactionMapper;
 import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
@@ -26,6 +30,7 @@ import org.springframework.web.bind.annotation.ResponseBody;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 
 @Controller
@@ -37,6 +42,9 @@ public class BahmniEncounterController extends BaseRestController {
     private BahmniEncounterTransactionService bahmniEncounterTransactionService;
     private BahmniEncounterTransactionMapper bahmniEncounterTransactionMapper;
 
+    @Autowired
+    private BulkEncounterTransactionSaver bulkEncounterTransactionSaver;
+
     public BahmniEncounterController() {
     }
 
@@ -90,9 +98,33 @@ public class BahmniEncounterController extends BaseRestController {
     @RequestMapping(method = RequestMethod.POST)
     @ResponseBody
     @Transactional
-    public BahmniEncounterTransaction update(@RequestBody BahmniEncounterTransaction bahmniEncounterTransaction) {
+    public BahmniEncounterTransaction update(@RequestBody BahmniEncounterTransaction bahmniEncounterTransaction,
+                                             @RequestParam(value = "minimalResponse", defaultValue = "false") boolean minimalResponse) {
         setUuidsForObservations(bahmniEncounterTransaction.getObservations());
-        return bahmniEncounterTransactionService.save(bahmniEncounterTransaction);
+        return bahmniEncounterTransactionService.save(bahmniEncounterTransaction, minimalResponse);
+    }
+
+    public BahmniEncounterTransaction update(BahmniEncounterTransaction bahmniEncounterTransaction) {
+        return update(bahmniEncounterTransaction, false);
+    }
+
+    /**
+     * Saves the encounter transactions in chunks, committing each chunk on its own, and returns the outcome of each
+     * transaction in request order.
+     */
+    @RequestMapping(method = RequestMethod.POST, value = "/bulk")
+    @ResponseBody
+    public List<BulkEncounterTransactionResult> bulkUpdate(@RequestBody BulkEncounterTransactionRequest bulkEncounterTransactionRequest) {
+        for (BahmniEncounterTransaction bahmniEncounterTransaction : bulkEncounterTransactionRequest.getEncounterTransactions()) {
+            setUuidsForObservations(bahmniEncounterTransaction.getObservations());
+        }
+        return bulkEncounterTransactionSaver.saveAll(bulkEncounterTransactionRequest.getEncounterTransactions());
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/metrics")
+    @ResponseBody
+    public List<EncounterSaveStageMetrics> metrics() {
+        return bahmniEncounterTransactionService.getSaveMetrics();
     }
 
     public BahmniEncounterTransaction get(String encounterUuid) {
@@ -0,0 +1,27 @@
+package org.bahmni.module.bahmnicore.web.v1_0.controller;
+
+import org.bahmni.module.referencedata.helper.ConceptMetadataCache;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+@Controller
+@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/bahmnicore/conceptMetadataCache")
+public class ConceptMetadataCacheController extends BaseRestController {
+
+    @RequestMapping(method = RequestMethod.GET, value = "metrics")
+    @ResponseBody
+    public SimpleObject metrics() {
+        ConceptMetadataCache conceptMetadataCache = ConceptMetadataCache.getInstance();
+        return new SimpleObject()
+                .add("entries", conceptMetadataCache.size())
+                .add("hitCount", conceptMetadataCache.getHitCount())
+                .add("missCount", conceptMetadataCache.getMissCount())
+                .add("evictionCount", conceptMetadataCache.getEvictionCount())
+                .add("hitRate", conceptMetadataCache.getHitRate());
+    }
+}
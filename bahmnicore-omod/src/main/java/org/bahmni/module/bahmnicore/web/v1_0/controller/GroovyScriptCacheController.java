@@ -0,0 +1,27 @@
+package org.bahmni.module.bahmnicore.web.v1_0.controller;
+
+import org.openmrs.module.bahmniemrapi.groovy.GroovyScriptCache;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+@Controller
+@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/bahmnicore/groovyScriptCache")
+public class GroovyScriptCacheController extends BaseRestController {
+
+    @RequestMapping(method = RequestMethod.GET, value = "metrics")
+    @ResponseBody
+    public SimpleObject metrics() {
+        GroovyScriptCache groovyScriptCache = GroovyScriptCache.getInstance();
+        return new SimpleObject()
+                .add("cachedScripts", groovyScriptCache.size())
+                .add("compileCount", groovyScriptCache.getCompileCount())
+                .add("hitCount", groovyScriptCache.getHitCount())
+                .add("missCount", groovyScriptCache.getMissCount())
+                .add("hitRate", groovyScriptCache.getHitRate());
+    }
+}
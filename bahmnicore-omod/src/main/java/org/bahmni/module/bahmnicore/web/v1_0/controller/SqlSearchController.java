@@ -1,5 +1,6 @@
 package org.bahmni.module.bahmnicore.web.v1_0.controller;
 
+import org.bahmni.module.bahmnicore.contract.monitoring.response.SqlQueryMetricsResponse;
 import org.bahmni.module.bahmnicore.service.SqlSearchService;
 import org.openmrs.api.AdministrationService;
 import org.openmrs.module.webservices.rest.SimpleObject;
@@ -14,6 +15,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.util.List;
 
 @Controller
@@ -33,6 +35,22 @@ public class SqlSearchController extends BaseRestController {
         return sqlSearchService.search(query, request.getParameterMap());
     }
 
+    @RequestMapping(method = RequestMethod.GET, params = "stream=true")
+    public void streamSearch(@RequestParam("q") String query,
+                             @RequestParam(value = "limit", required = false) Integer limit,
+                             @RequestParam(value = "pageToken", required = false) String pageToken,
+                             HttpServletRequest request, HttpServletResponse response) throws Exception {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        sqlSearchService.streamSearch(query, request.getParameterMap(), limit, pageToken, response.getOutputStream());
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "metrics")
+    @ResponseBody
+    public List<SqlQueryMetricsResponse> metrics() {
+        return sqlSearchService.getMetrics();
+    }
+
     @RequestMapping(method = RequestMethod.GET, value = "globalproperty")
     @ResponseBody
     public Object retrieve(@RequestParam(value = "property", required = true) String name) {
@@ -2,6 +2,7 @@ package org.bahmni.module.bahmnicore.web.v1_0.controller;
 
 import org.apache.commons.lang.StringUtils;
 import org.bahmni.module.bahmnicore.model.DocumentImage;
+import org.bahmni.module.bahmnicore.model.ThumbnailStatus;
 import org.bahmni.module.bahmnicore.service.PatientImageService;
 import org.openmrs.Patient;
 import org.openmrs.Visit;
@@ -19,6 +20,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 @Controller
@@ -50,4 +52,16 @@ public class VisitDocumentController extends BaseRestController {
         }
         return patientImageService.saveDocument(patient.getId(), encounterTypeName, image.getImage(), image.getFormat());
     }
+
+    @RequestMapping(method = RequestMethod.GET, value = baseVisitDocumentUrl + "/thumbnailStatus")
+    @ResponseBody
+    public ThumbnailStatus getThumbnailStatus(@RequestParam(value = "documentPath") String documentPath) {
+        return patientImageService.getThumbnailStatus(documentPath);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = baseVisitDocumentUrl + "/retryThumbnails")
+    @ResponseBody
+    public int retryFailedThumbnails() {
+        return patientImageService.retryFailedThumbnails();
+    }
 }
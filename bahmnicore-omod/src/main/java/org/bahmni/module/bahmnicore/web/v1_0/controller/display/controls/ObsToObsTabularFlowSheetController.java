@@ -7,6 +7,7 @@ import org.bahmni.module.bahmnicore.extensions.BahmniExtensions;
 import org.bahmni.module.bahmnicore.service.BahmniObsService;
 import org.bahmni.module.bahmnicore.util.BahmniDateUtil;
 import org.bahmni.module.bahmnicore.web.v1_0.mapper.BahmniObservationsToTabularViewMapper;
+import org.bahmni.module.referencedata.helper.ConceptMetadataCache;
 import org.openmrs.Concept;
 import org.openmrs.api.ConceptService;
 import org.openmrs.module.bahmniemrapi.drugogram.contract.BaseTableExtension;
@@ -23,6 +24,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import java.text.ParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
@@ -40,6 +42,7 @@ public class ObsToObsTabularFlowSheetController {
     private BahmniObservationsToTabularViewMapper bahmniObservationsToTabularViewMapper;
     private ConceptMapper conceptMapper;
     private BahmniExtensions bahmniExtensions;
+    private ConceptMetadataCache conceptMetadataCache = ConceptMetadataCache.getInstance();
     public static final String FLOWSHEET_EXTENSION = "flowsheetExtension";
 
     private static Logger logger = Logger.getLogger(ObsToObsTabularFlowSheetController.class);
@@ -69,8 +72,8 @@ public class ObsToObsTabularFlowSheetController {
             @RequestParam(value = "endDate", required = false) String endDateStr,
             @RequestParam(value = "enrollment", required = false) String patientProgramUuid) throws ParseException {
 
-        Concept rootConcept = conceptService.getConceptByName(conceptSet);
-        Concept childConcept = conceptService.getConceptByName(groupByConcept);
+        Concept rootConcept = conceptMetadataCache.getConceptByName(conceptSet, conceptService);
+        Concept childConcept = conceptMetadataCache.getConceptByName(groupByConcept, conceptService);
         validate(conceptSet, groupByConcept, rootConcept, childConcept);
         Date startDate = BahmniDateUtil.convertToDate(startDateStr, BahmniDateUtil.DateFormatType.UTC);
         Date endDate = BahmniDateUtil.convertToDate(endDateStr, BahmniDateUtil.DateFormatType.UTC);
@@ -107,28 +110,18 @@ public class ObsToObsTabularFlowSheetController {
     private void setNormalRangeAndUnits(Set<EncounterTransaction.Concept> headers) {
         for (EncounterTransaction.Concept header : headers) {
             if (CONCEPT_DETAILS.equals(header.getConceptClass())) {
-                List<Concept> setMembers = conceptService.getConceptsByConceptSet(conceptService.getConceptByUuid(header.getUuid()));
+                List<Concept> setMembers = conceptMetadataCache.getConceptsByConceptSet(conceptService.getConceptByUuid(header.getUuid()), conceptService);
                 Concept primaryConcept = getNumeric(setMembers);
                 if (primaryConcept == null) continue;
-                header.setHiNormal(getHiNormal(primaryConcept));
-                header.setLowNormal(getLowNormal(primaryConcept));
-                header.setUnits(getUnits(primaryConcept));
+                ConceptMetadataCache.NumericRange numericRange = conceptMetadataCache.getNumericRange(primaryConcept, conceptService);
+                if (numericRange == null) continue;
+                header.setHiNormal(numericRange.getHiNormal());
+                header.setLowNormal(numericRange.getLowNormal());
+                header.setUnits(numericRange.getUnits());
             }
         }
     }
 
-    private String getUnits(Concept primaryConcept) {
-        return conceptService.getConceptNumeric(primaryConcept.getConceptId()).getUnits();
-    }
-
-    private Double getLowNormal(Concept primaryConcept) {
-        return conceptService.getConceptNumeric(primaryConcept.getConceptId()).getLowNormal();
-    }
-
-    private Double getHiNormal(Concept primaryConcept) {
-        return conceptService.getConceptNumeric(primaryConcept.getConceptId()).getHiNormal();
-    }
-
     private Concept getNumeric(List<Concept> setMembers) {
         for (Concept setMember : setMembers) {
             if (setMember.getDatatype().isNumeric()) {
@@ -150,27 +143,29 @@ public class ObsToObsTabularFlowSheetController {
         return sortedConcepts;
     }
 
+    /**
+     * Keeps the first initialCount and the last latestCount observations in a single pass. The latest ones are held
+     * in a ring buffer, so when there are fewer observations than both counts together all of them are kept.
+     */
     private Collection<BahmniObservation> filterDataByCount(Collection<BahmniObservation> bahmniObservations, Integer initialCount, Integer latestCount) {
         if (initialCount == null && latestCount == null) return bahmniObservations;
-        Collection<BahmniObservation> bahmniObservationCollection = new ArrayList<>();
-
-        if (bahmniObservations.size() < (getIntegerValue(initialCount) + getIntegerValue(latestCount))) {
-            latestCount = bahmniObservations.size();
-            initialCount = 0;
-        }
-        bahmniObservationCollection.addAll(filter(bahmniObservations, 0, getIntegerValue(initialCount)));
-        bahmniObservationCollection.addAll(filter(bahmniObservations, bahmniObservations.size() - getIntegerValue(latestCount), bahmniObservations.size()));
-
-        return bahmniObservationCollection;
-    }
-
-    private Collection<BahmniObservation> filter(Collection<BahmniObservation> bahmniObservations, int fromIndex, int toIndex) {
-        Collection<BahmniObservation> bahmniObservationCollection = new ArrayList<>();
-        fromIndex = (fromIndex > bahmniObservations.size() || fromIndex < 0) ? 0 : fromIndex;
-        toIndex = (toIndex > bahmniObservations.size()) ? bahmniObservations.size() : toIndex;
-        for (int index = fromIndex; index < toIndex; index++) {
-            bahmniObservationCollection.add((BahmniObservation) CollectionUtils.get(bahmniObservations, index));
+        int initial = Math.max(0, getIntegerValue(initialCount));
+        int latest = Math.max(0, getIntegerValue(latestCount));
+
+        List<BahmniObservation> bahmniObservationCollection = new ArrayList<>();
+        ArrayDeque<BahmniObservation> latestObservations = new ArrayDeque<>();
+        for (BahmniObservation bahmniObservation : bahmniObservations) {
+            if (bahmniObservationCollection.size() < initial) {
+                bahmniObservationCollection.add(bahmniObservation);
+                continue;
+            }
+            if (latest == 0) break;
+            if (latestObservations.size() == latest) {
+                latestObservations.removeFirst();
+            }
+            latestObservations.addLast(bahmniObservation);
         }
+        bahmniObservationCollection.addAll(latestObservations);
         return bahmniObservationCollection;
     }
 
@@ -2,6 +2,7 @@ package org.bahmni.module.bahmnicore.web.v1_0.controller.search;
 
 import org.bahmni.module.bahmnicore.contract.patient.PatientSearchParameters;
 import org.bahmni.module.bahmnicore.contract.patient.response.PatientResponse;
+import org.bahmni.module.bahmnicore.contract.patient.search.PatientSearchContinuationToken;
 import org.bahmni.module.bahmnicore.service.BahmniPatientService;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestConstants;
@@ -26,6 +27,7 @@ import java.util.List;
 @Controller
 @RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/bahmnicore/search/patient")
 public class BahmniPatientSearchController extends BaseRestController {
+    private static final String CONTINUATION_TOKEN_HEADER = "X-Continuation-Token";
 
     private BahmniPatientService bahmniPatientService;
 
@@ -42,6 +44,10 @@ public class BahmniPatientSearchController extends BaseRestController {
         RequestContext requestContext = RestUtil.getRequestContext(request, response);
         PatientSearchParameters searchParameters = new PatientSearchParameters(requestContext);
         List<PatientResponse> patients = bahmniPatientService.search(searchParameters);
+        if (searchParameters.getContinuationToken() != null && !patients.isEmpty() && patients.size() == searchParameters.getLength()) {
+            PatientResponse lastPatient = patients.get(patients.size() - 1);
+            response.setHeader(CONTINUATION_TOKEN_HEADER, PatientSearchContinuationToken.after(lastPatient).toString());
+        }
         return new AlreadyPaged<>(requestContext, patients, false);
     }
 }
@@ -1,7 +1,5 @@
 package org.bahmni.module.bahmnicore.web.v1_0.mapper;
 
-import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.collections.Predicate;
 import org.openmrs.module.bahmniemrapi.encountertransaction.contract.BahmniObservation;
 import org.openmrs.module.bahmniemrapi.pivottable.contract.PivotRow;
 import org.openmrs.module.bahmniemrapi.pivottable.contract.PivotTable;
@@ -10,6 +8,7 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -23,9 +22,13 @@ public class BahmniObservationsToTabularViewMapper {
         }
 
         List<PivotRow> rows = new ArrayList<>();
+        Set<String> columnUuids = new HashSet<>();
+        for (EncounterTransaction.Concept conceptName : conceptNames) {
+            columnUuids.add(conceptName.getUuid());
+        }
 
         for (BahmniObservation bahmniObservation : bahmniObservations) {
-            PivotRow pivotRow = constructRow(bahmniObservation, conceptNames);
+            PivotRow pivotRow = constructRow(bahmniObservation, columnUuids);
             if (isNonNullRow(groupByConcept, pivotRow)) {
                 rows.add(pivotRow);
             }
@@ -52,34 +55,27 @@ public class BahmniObservationsToTabularViewMapper {
         return nonNullRow;
     }
 
-    private PivotRow constructRow(BahmniObservation bahmniObservation, Set<EncounterTransaction.Concept> conceptNames) {
+    private PivotRow constructRow(BahmniObservation bahmniObservation, Set<String> columnUuids) {
         PivotRow row = new PivotRow();
-        constructColumns(conceptNames, row, bahmniObservation);
+        constructColumns(columnUuids, row, bahmniObservation);
         return row;
     }
 
-    private void constructColumns(Set<EncounterTransaction.Concept> conceptNames, PivotRow row, BahmniObservation observation) {
+    private void constructColumns(Set<String> columnUuids, PivotRow row, BahmniObservation observation) {
         if (observation.getConcept().isSet()) {
             if (observation.getConcept().getConceptClass().equals("Concept Details")) {
-                addColumn(conceptNames, row, observation);
+                addColumn(columnUuids, row, observation);
             }
             for (BahmniObservation bahmniObservation : observation.getGroupMembers()) {
-                constructColumns(conceptNames, row, bahmniObservation);
+                constructColumns(columnUuids, row, bahmniObservation);
             }
         } else {
-            addColumn(conceptNames, row, observation);
+            addColumn(columnUuids, row, observation);
         }
     }
 
-    private void addColumn(Set<EncounterTransaction.Concept> conceptNames, PivotRow row, final BahmniObservation observation) {
-        Object foundElement = CollectionUtils.find(conceptNames, new Predicate() {
-            @Override
-            public boolean evaluate(Object o) {
-                EncounterTransaction.Concept concept = (EncounterTransaction.Concept) o;
-                return concept.getUuid().equals(observation.getConcept().getUuid());
-            }
-        });
-        if (foundElement != null) {
+    private void addColumn(Set<String> columnUuids, PivotRow row, BahmniObservation observation) {
+        if (columnUuids.contains(observation.getConcept().getUuid())) {
             row.addColumn(observation.getConcept().getName(), observation);
         }
     }
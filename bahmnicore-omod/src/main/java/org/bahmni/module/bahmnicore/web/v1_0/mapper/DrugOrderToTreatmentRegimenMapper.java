@@ -15,31 +15,44 @@ import org.springframework.stereotype.Component;
 import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
+/**
+ * Builds the rows of a treatment regimen from drug orders. The start and stop dates, drug name and dose of every
+ * order are worked out once up front, rows of a date are found by navigating the sorted rows instead of scanning
+ * them, and an order only visits the rows its dates cross.
+ * <p/>
+ * Rows are written in the same order as they always were: rows of one date are told apart by their drugs, so the
+ * rows a regimen ends up with depend on the order of the writes.
+ */
 @Component
 public class DrugOrderToTreatmentRegimenMapper {
 
 	public TreatmentRegimen map(List<Order> drugOrders, Set<Concept> headersConfig) throws ParseException {
 		TreatmentRegimen treatmentRegimen = new TreatmentRegimen();
 		Set<Concept> headers = new LinkedHashSet<>();
-		SortedSet<RegimenRow> regimenRows = new TreeSet<>(new RegimenRow.RegimenComparator());
+		TreeSet<RegimenRow> regimenRows = new TreeSet<>(new RegimenRow.RegimenComparator());
+		Map<Order, RegimenOrder> regimenOrders = regimenOrdersOf(drugOrders);
 
 //		filterDrugsWhichDoesntHaveDose(drugOrders);
-		constructRegimenRowsForDrugsWhichAreStartedAndStoppedOnSameDate(regimenRows, drugOrders, headers);
-		filterDrugsWhichAreStoppedBeforeScheduledDate(drugOrders);
+		constructRegimenRowsForDrugsWhichAreStartedAndStoppedOnSameDate(regimenRows, drugOrders, headers, regimenOrders);
+		filterDrugsWhichAreStoppedBeforeScheduledDate(drugOrders, regimenOrders);
 
-		for (Order order : drugOrders) {
-			DrugOrder drugOrder = (DrugOrder) order;
-			headers.add(drugOrder.getConcept());
+		List<RegimenOrder> remainingOrders = regimenOrdersIn(drugOrders, regimenOrders);
+		for (RegimenOrder regimenOrder : remainingOrders) {
+			headers.add(regimenOrder.drugOrder.getConcept());
 
-			constructRegimenRows(drugOrders, regimenRows, drugOrder);
+			constructRegimenRows(remainingOrders, regimenRows, regimenOrder);
 		}
 		Set<EncounterTransaction.Concept> headersConcept;
 		if (!CollectionUtils.isEmpty(headersConfig))
@@ -51,6 +64,24 @@ public class DrugOrderToTreatmentRegimenMapper {
 		return treatmentRegimen;
 	}
 
+	private Map<Order, RegimenOrder> regimenOrdersOf(List<Order> drugOrders) throws ParseException {
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+		Map<Order, RegimenOrder> regimenOrders = new IdentityHashMap<>();
+		for (Order order : drugOrders) {
+			DrugOrder drugOrder = (DrugOrder) order;
+			regimenOrders.put(order, new RegimenOrder(drugOrder, getDose(drugOrder), dateFormat));
+		}
+		return regimenOrders;
+	}
+
+	private List<RegimenOrder> regimenOrdersIn(List<Order> drugOrders, Map<Order, RegimenOrder> regimenOrders) {
+		List<RegimenOrder> orders = new ArrayList<>(drugOrders.size());
+		for (Order order : drugOrders) {
+			orders.add(regimenOrders.get(order));
+		}
+		return orders;
+	}
+
 	private void filterDrugsWhichDoesntHaveDose(List<Order> drugOrders) {
 		CollectionUtils.filter(drugOrders, new Predicate() {
 
@@ -62,102 +93,65 @@ public class DrugOrderToTreatmentRegimenMapper {
 		});
 	}
 
-	private void filterDrugsWhichAreStoppedBeforeScheduledDate(List<Order> drugOrders) {
+	private void filterDrugsWhichAreStoppedBeforeScheduledDate(List<Order> drugOrders, final Map<Order, RegimenOrder> regimenOrders) {
 		CollectionUtils.filter(drugOrders, new Predicate() {
 
 			@Override
 			public boolean evaluate(Object o) {
-				DrugOrder drugOrder = (DrugOrder) o;
-				try {
-					Date autoExpiryDate = drugOrder.getDateStopped() != null ?
-							getOnlyDate(drugOrder.getDateStopped()) :
-							getOnlyDate(drugOrder.getAutoExpireDate());
-					Date dateActivated = drugOrder.getScheduledDate() != null ?
-							getOnlyDate(drugOrder.getScheduledDate()) :
-							getOnlyDate(drugOrder.getDateActivated());
-					if (autoExpiryDate == null)
-						return true;
-					return dateActivated.before(autoExpiryDate);
-				} catch (ParseException e) {
-					e.printStackTrace();
-				}
-				return false;
+				RegimenOrder regimenOrder = regimenOrders.get(o);
+				if (regimenOrder.stopDate == null)
+					return true;
+				return regimenOrder.startDate.before(regimenOrder.stopDate);
 			}
 		});
 	}
 
-	private void constructRegimenRowsForDrugsWhichAreStartedAndStoppedOnSameDate(SortedSet<RegimenRow> regimenRows,
+	private void constructRegimenRowsForDrugsWhichAreStartedAndStoppedOnSameDate(TreeSet<RegimenRow> regimenRows,
 	                                                                             List<Order> drugOrders,
-	                                                                             Set<Concept> headers)
-			throws ParseException {
-		Collection drugOrdersStartedAndStoppedOnSameDate = CollectionUtils.select(drugOrders, new Predicate() {
-
-			@Override
-			public boolean evaluate(Object o) {
-				DrugOrder drugOrder = (DrugOrder) o;
-				try {
-					Date startDate = drugOrder.getScheduledDate() != null ?
-							getOnlyDate(drugOrder.getScheduledDate()) :
-							getOnlyDate(drugOrder.getDateActivated());
-					Date stopDate = drugOrder.getDateStopped() != null ?
-							getOnlyDate(drugOrder.getDateStopped()) :
-							getOnlyDate(drugOrder.getAutoExpireDate());
-					if (stopDate == null)
-						return false;
-					return startDate.equals(stopDate);
-				}
-				catch (ParseException e) {
-					e.printStackTrace();
-				}
-				return false;
+	                                                                             Set<Concept> headers,
+	                                                                             Map<Order, RegimenOrder> regimenOrders) {
+		List<RegimenOrder> drugOrdersStartedAndStoppedOnSameDate = new ArrayList<>();
+		Set<Order> ordersStartedAndStoppedOnSameDate = new HashSet<>();
+		for (Order order : drugOrders) {
+			RegimenOrder regimenOrder = regimenOrders.get(order);
+			if (regimenOrder.stopDate != null && regimenOrder.startDate.equals(regimenOrder.stopDate)) {
+				drugOrdersStartedAndStoppedOnSameDate.add(regimenOrder);
+				ordersStartedAndStoppedOnSameDate.add(order);
 			}
-		});
+		}
 
 		for (int i = 0; i < drugOrdersStartedAndStoppedOnSameDate.size(); i++) {
-			DrugOrder drugOrder = (DrugOrder) CollectionUtils.get(drugOrdersStartedAndStoppedOnSameDate, i);
-			headers.add(drugOrder.getConcept());
-			SortedSet<RegimenRow> dateActivatedRow = findOrCreateRowForDateActivated(regimenRows, drugOrder);
-			SortedSet<RegimenRow> dateStoppedRow = findOrCreateRowForForDateStopped(regimenRows, drugOrder);
-
-			Date stoppedDate =
-					drugOrder.getDateStopped() != null ? drugOrder.getDateStopped() : drugOrder.getAutoExpireDate();
-			if (i > 0 && dateActivatedRow.iterator().next().getDate().equals(getOnlyDate(stoppedDate))
+			RegimenOrder regimenOrder = drugOrdersStartedAndStoppedOnSameDate.get(i);
+			headers.add(regimenOrder.drugOrder.getConcept());
+			SortedSet<RegimenRow> dateActivatedRow = getRegimenRowFor(regimenRows, regimenOrder.startDate);
+			SortedSet<RegimenRow> dateStoppedRow = getRegimenRowFor(regimenRows, regimenOrder.stopDate);
+
+			if (i > 0 && dateActivatedRow.iterator().next().getDate().equals(regimenOrder.stopDate)
 					&& dateActivatedRow.size() > 1) {
-				constructRowForDateActivated(drugOrder, dateActivatedRow.iterator().next());
-				constructRowForDateStopped(drugOrder, stoppedDate, (RegimenRow) CollectionUtils.get(dateStoppedRow, 1));
+				constructRowForDateActivated(regimenOrder, dateActivatedRow.iterator().next());
+				constructRowForDateStopped(regimenOrder, (RegimenRow) CollectionUtils.get(dateStoppedRow, 1));
 			} else {
-				constructRowsForDateActivated(dateActivatedRow, drugOrder);
-				constructRowsForDateStopped(dateStoppedRow, drugOrder);
+				constructRowsForDateActivated(dateActivatedRow, regimenOrder);
+				constructRowsForDateStopped(dateStoppedRow, regimenOrder);
 			}
 
 			regimenRows.addAll(dateActivatedRow);
 			regimenRows.addAll(dateStoppedRow);
 		}
 
-		drugOrders.removeAll(drugOrdersStartedAndStoppedOnSameDate);
+		drugOrders.removeAll(ordersStartedAndStoppedOnSameDate);
 		for (Order order : drugOrders) {
-			DrugOrder drugOrder = (DrugOrder) order;
+			RegimenOrder regimenOrder = regimenOrders.get(order);
 
-			String drugName = drugOrder.getConcept().getName().getName();
-			String dosage = getDose(drugOrder);
-
-			for (RegimenRow regimenRow : regimenRows) {
-				Date dateActivated = drugOrder.getScheduledDate() != null ?
-						getOnlyDate(drugOrder.getScheduledDate()) :
-						getOnlyDate(drugOrder.getDateActivated());
-				Date dateStopped = drugOrder.getAutoExpireDate() != null ?
-						getOnlyDate(drugOrder.getAutoExpireDate()) :
-						getOnlyDate(drugOrder.getDateStopped());
-				if (orderCrossDate(drugOrder, regimenRow.getDate())) {
-					if (dateStopped == null)
-						regimenRow.addDrugs(drugName, dosage);
-					else if ( !"Stop".equals(regimenRow.getDrugs().get(drugName))) {
-						regimenRow.addDrugs(drugName, dosage);
-					}
-					else if (drugOrder.getAction().equals(Order.Action.REVISE)
-							&& regimenRow.getDate().equals(dateActivated)) {
-						regimenRow.addDrugs(drugName, dosage);
-					}
+			for (RegimenRow regimenRow : rowsCrossedBy(regimenRows, regimenOrder)) {
+				if (regimenOrder.expiryDate == null)
+					regimenRow.addDrugs(regimenOrder.drugName, regimenOrder.dose);
+				else if (!"Stop".equals(regimenRow.getDrugs().get(regimenOrder.drugName))) {
+					regimenRow.addDrugs(regimenOrder.drugName, regimenOrder.dose);
+				}
+				else if (regimenOrder.drugOrder.getAction().equals(Order.Action.REVISE)
+						&& regimenRow.getDate().equals(regimenOrder.startDate)) {
+					regimenRow.addDrugs(regimenOrder.drugName, regimenOrder.dose);
 				}
 			}
 		}
@@ -165,124 +159,113 @@ public class DrugOrderToTreatmentRegimenMapper {
 
 	private Set<EncounterTransaction.Concept> mapHeaders(Set<Concept> headers) {
 		Set<EncounterTransaction.Concept> headersConcept = new LinkedHashSet<>();
-        for (Concept header : headers) {
-				headersConcept.add(new ConceptMapper().map(header));
-			}
-        return headersConcept;
+		for (Concept header : headers) {
+			headersConcept.add(new ConceptMapper().map(header));
+		}
+		return headersConcept;
 	}
 
-	private void constructRegimenRows(List<Order> drugOrders, SortedSet<RegimenRow> regimenRows, DrugOrder drugOrder)
-			throws ParseException {
-		SortedSet<RegimenRow> dateActivatedRow = findOrCreateRowForDateActivated(regimenRows, drugOrder);
-		SortedSet<RegimenRow> dateStoppedRow = findOrCreateRowForForDateStopped(regimenRows, drugOrder);
+	private void constructRegimenRows(List<RegimenOrder> regimenOrders, TreeSet<RegimenRow> regimenRows, RegimenOrder regimenOrder) {
+		SortedSet<RegimenRow> dateActivatedRow = getRegimenRowFor(regimenRows, regimenOrder.startDate);
+		SortedSet<RegimenRow> dateStoppedRow = regimenOrder.stopDate != null ? getRegimenRowFor(regimenRows, regimenOrder.stopDate) : null;
 
-		for (Order order1 : drugOrders) {
-			DrugOrder drugOrder1 = (DrugOrder) order1;
-
-			constructRowsForDateActivated(dateActivatedRow, drugOrder1);
+		for (RegimenOrder regimenOrder1 : regimenOrders) {
+			constructRowsForDateActivated(dateActivatedRow, regimenOrder1);
 			if (dateStoppedRow != null)
-				constructRowsForDateStopped(dateStoppedRow, drugOrder1);
-
+				constructRowsForDateStopped(dateStoppedRow, regimenOrder1);
 		}
 		regimenRows.addAll(dateActivatedRow);
 		if (dateStoppedRow != null)
 			regimenRows.addAll(dateStoppedRow);
 	}
 
-	private void constructRowsForDateStopped(SortedSet<RegimenRow> dateStoppedRow, DrugOrder drugOrder1)
-			throws ParseException {
-		Date stoppedDate =
-				drugOrder1.getDateStopped() != null ? drugOrder1.getDateStopped() : drugOrder1.getAutoExpireDate();
-
-        for (RegimenRow regimenRow : dateStoppedRow) {
-            constructRowForDateStopped(drugOrder1, stoppedDate, regimenRow);
-        }
+	private void constructRowsForDateStopped(SortedSet<RegimenRow> dateStoppedRow, RegimenOrder regimenOrder) {
+		for (RegimenRow regimenRow : dateStoppedRow) {
+			constructRowForDateStopped(regimenOrder, regimenRow);
+		}
 	}
 
-	private void constructRowForDateStopped(DrugOrder drugOrder1, Date stoppedDate, RegimenRow regimenRow)
-			throws ParseException {
-
-		if (orderCrossDate(drugOrder1, regimenRow.getDate())) {
-			String drugName = drugOrder1.getConcept().getName().getName();
-			String dosage = getDose(drugOrder1);
-			Date startDate = drugOrder1.getScheduledDate() != null ? drugOrder1.getScheduledDate(): drugOrder1.getDateActivated();
-			if (stoppedDate == null && (startDate.before(regimenRow.getDate()) || startDate.equals(regimenRow.getDate()) ))
-				regimenRow.addDrugs(drugName, dosage);
-			else if (stoppedDate != null && getOnlyDate(stoppedDate).equals(regimenRow.getDate()))
-				regimenRow.addDrugs(drugName, "Stop");
-			else if (stoppedDate != null )
-				regimenRow.addDrugs(drugName, dosage);
+	private void constructRowForDateStopped(RegimenOrder regimenOrder, RegimenRow regimenRow) {
+		if (orderCrossDate(regimenOrder, regimenRow.getDate())) {
+			Date startDate = regimenOrder.startDateTime;
+			if (regimenOrder.stopDateTime == null && (startDate.before(regimenRow.getDate()) || startDate.equals(regimenRow.getDate())))
+				regimenRow.addDrugs(regimenOrder.drugName, regimenOrder.dose);
+			else if (regimenOrder.stopDateTime != null && regimenOrder.stopDate.equals(regimenRow.getDate()))
+				regimenRow.addDrugs(regimenOrder.drugName, "Stop");
+			else if (regimenOrder.stopDateTime != null)
+				regimenRow.addDrugs(regimenOrder.drugName, regimenOrder.dose);
 		}
 	}
 
-	private void constructRowsForDateActivated(SortedSet<RegimenRow> dateActivatedRow, DrugOrder drugOrder1)
-			throws ParseException {
+	private void constructRowsForDateActivated(SortedSet<RegimenRow> dateActivatedRow, RegimenOrder regimenOrder) {
 		for (RegimenRow regimenRow : dateActivatedRow) {
-			constructRowForDateActivated(drugOrder1, regimenRow);
+			constructRowForDateActivated(regimenOrder, regimenRow);
 		}
 	}
 
-	private void constructRowForDateActivated(DrugOrder drugOrder1, RegimenRow regimenRow) throws ParseException {
-		Date dateActivated = drugOrder1.getScheduledDate() != null ?
-				getOnlyDate(drugOrder1.getScheduledDate()) :
-				getOnlyDate(drugOrder1.getDateActivated());
-		Date dateStopped = drugOrder1.getAutoExpireDate() != null ?
-				getOnlyDate(drugOrder1.getAutoExpireDate()) :
-				getOnlyDate(drugOrder1.getDateStopped());
-		String drugName = drugOrder1.getConcept().getName().getName();
-
-		String dosage = getDose(drugOrder1);
-		if (dateStopped == null && (dateActivated.before(regimenRow.getDate()) || dateActivated.equals(regimenRow.getDate())) ) {
-			regimenRow.addDrugs(drugName, dosage);
+	private void constructRowForDateActivated(RegimenOrder regimenOrder, RegimenRow regimenRow) {
+		Date dateActivated = regimenOrder.startDate;
+		Date dateStopped = regimenOrder.expiryDate;
+		String drugName = regimenOrder.drugName;
+
+		if (dateStopped == null && (dateActivated.before(regimenRow.getDate()) || dateActivated.equals(regimenRow.getDate()))) {
+			regimenRow.addDrugs(drugName, regimenOrder.dose);
 		}
-		else if (dateStopped != null && orderCrossDate(drugOrder1, regimenRow.getDate()) && !"Stop"
+		else if (dateStopped != null && orderCrossDate(regimenOrder, regimenRow.getDate()) && !"Stop"
 				.equals(regimenRow.getDrugs().get(drugName))) {
-			regimenRow.addDrugs(drugName, dosage);
+			regimenRow.addDrugs(drugName, regimenOrder.dose);
 		}
-		else if (dateStopped != null && orderCrossDate(drugOrder1, regimenRow.getDate()) && drugOrder1.getAction().equals(Order.Action.REVISE)
+		else if (dateStopped != null && orderCrossDate(regimenOrder, regimenRow.getDate()) && regimenOrder.drugOrder.getAction().equals(Order.Action.REVISE)
 				&& regimenRow.getDate().equals(dateActivated)) {
-			regimenRow.addDrugs(drugName, dosage);
+			regimenRow.addDrugs(drugName, regimenOrder.dose);
 		}
 	}
 
-	private boolean orderCrossDate(DrugOrder drugOrder, Date date) throws ParseException {
-		Date autoExpiryDate = drugOrder.getDateStopped() != null ?
-				getOnlyDate(drugOrder.getDateStopped()) :
-				getOnlyDate(drugOrder.getAutoExpireDate());
-		Date dateActivated = drugOrder.getScheduledDate() != null ?
-				getOnlyDate(drugOrder.getScheduledDate()) :
-				getOnlyDate(drugOrder.getDateActivated());
+	private boolean orderCrossDate(RegimenOrder regimenOrder, Date date) {
+		Date autoExpiryDate = regimenOrder.stopDate;
+		Date dateActivated = regimenOrder.startDate;
 		if (autoExpiryDate == null)
 			return true;
 		return dateActivated.equals(date) || autoExpiryDate.equals(date) || dateActivated.before(date) && autoExpiryDate
 				.after(date);
 	}
 
-	private SortedSet<RegimenRow> findOrCreateRowForDateActivated(SortedSet<RegimenRow> regimenRows, DrugOrder drugOrder)
-			throws ParseException {
-		Date date = drugOrder.getScheduledDate() != null ?
-				getOnlyDate(drugOrder.getScheduledDate()) :
-				getOnlyDate(drugOrder.getDateActivated());
-
-		return getRegimenRowFor(regimenRows, date);
+	/**
+	 * The rows the order crosses, in row order: every row for an order that is not stopped, else the rows from its
+	 * start to its stop date.
+	 */
+	private List<RegimenRow> rowsCrossedBy(TreeSet<RegimenRow> regimenRows, RegimenOrder regimenOrder) {
+		if (regimenOrder.stopDate == null) {
+			return new ArrayList<>(regimenRows);
+		}
+		if (regimenOrder.startDate.after(regimenOrder.stopDate)) {
+			List<RegimenRow> rows = rowsBetween(regimenRows, regimenOrder.stopDate, regimenOrder.stopDate);
+			rows.addAll(rowsBetween(regimenRows, regimenOrder.startDate, regimenOrder.startDate));
+			return rows;
+		}
+		return rowsBetween(regimenRows, regimenOrder.startDate, regimenOrder.stopDate);
 	}
 
-	private SortedSet<RegimenRow> findOrCreateRowForForDateStopped(SortedSet<RegimenRow> regimenRows, DrugOrder drugOrder)
-			throws ParseException {
-		Date date = drugOrder.getDateStopped() != null ?
-				getOnlyDate(drugOrder.getDateStopped()) :
-				getOnlyDate(drugOrder.getAutoExpireDate());
-		if (date == null)
-			return null;
-		return getRegimenRowFor(regimenRows, date);
+	/**
+	 * Rows dated from one date to another, both included, in row order. Rows of a date sort after every earlier date
+	 * whatever their drugs, so the rows start right after a row dated just before the first date.
+	 */
+	private List<RegimenRow> rowsBetween(TreeSet<RegimenRow> regimenRows, Date from, Date to) {
+		List<RegimenRow> rows = new ArrayList<>();
+		RegimenRow justBefore = new RegimenRow(new Date(from.getTime() - 1), new HashMap<String, String>());
+		for (RegimenRow regimenRow : regimenRows.tailSet(justBefore, false)) {
+			if (regimenRow.getDate().after(to)) {
+				break;
+			}
+			rows.add(regimenRow);
+		}
+		return rows;
 	}
 
-	private SortedSet<RegimenRow> getRegimenRowFor(SortedSet<RegimenRow> regimenRows, Date date) {
+	private SortedSet<RegimenRow> getRegimenRowFor(TreeSet<RegimenRow> regimenRows, Date date) {
 		SortedSet<RegimenRow> foundRows = new TreeSet<>(new RegimenRow.RegimenComparator());
-		for (RegimenRow regimenRow : regimenRows) {
-			if (regimenRow.getDate().equals(date)) {
-				foundRows.add(regimenRow);
-			}
+		for (RegimenRow regimenRow : rowsBetween(regimenRows, date, date)) {
+			foundRows.add(regimenRow);
 		}
 		if (CollectionUtils.isNotEmpty(foundRows)) {
 			return foundRows;
@@ -294,11 +277,10 @@ public class DrugOrderToTreatmentRegimenMapper {
 		return foundRows;
 	}
 
-	private Date getOnlyDate(Date date) throws ParseException {
+	private static Date getOnlyDate(Date date, SimpleDateFormat dateFormat) throws ParseException {
 		if(date == null)
 			return null;
-		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-		return sdf.parse(sdf.format(date));
+		return dateFormat.parse(dateFormat.format(date));
 	}
 
 	private String getDose(DrugOrder drugOrder) {
@@ -319,4 +301,30 @@ public class DrugOrderToTreatmentRegimenMapper {
 		}
 		return dosage;
 	}
+
+	/**
+	 * A drug order with its dates worked out once. The start date is the scheduled date, or else the date activated.
+	 * The stop date is the date stopped, or else the auto expire date; the expiry date prefers the auto expire date.
+	 */
+	private static class RegimenOrder {
+		private final DrugOrder drugOrder;
+		private final String drugName;
+		private final String dose;
+		private final Date startDateTime;
+		private final Date stopDateTime;
+		private final Date startDate;
+		private final Date stopDate;
+		private final Date expiryDate;
+
+		private RegimenOrder(DrugOrder drugOrder, String dose, SimpleDateFormat dateFormat) throws ParseException {
+			this.drugOrder = drugOrder;
+			this.drugName = drugOrder.getConcept().getName().getName();
+			this.dose = dose;
+			this.startDateTime = drugOrder.getScheduledDate() != null ? drugOrder.getScheduledDate() : drugOrder.getDateActivated();
+			this.stopDateTime = drugOrder.getDateStopped() != null ? drugOrder.getDateStopped() : drugOrder.getAutoExpireDate();
+			this.startDate = getOnlyDate(startDateTime, dateFormat);
+			this.stopDate = getOnlyDate(stopDateTime, dateFormat);
+			this.expiryDate = getOnlyDate(drugOrder.getAutoExpireDate() != null ? drugOrder.getAutoExpireDate() : drugOrder.getDateStopped(), dateFormat);
+		}
+	}
 }
@@ -1,5 +1,6 @@
 package org.bahmni.module.bahmnicore.web.v1_0.search;
 
+import org.bahmni.module.bahmnicore.dao.impl.DrugSearchIndex;
 import org.openmrs.Drug;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.web.RequestContext;
@@ -8,8 +9,10 @@ import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
 import org.openmrs.module.webservices.rest.web.resource.api.SearchConfig;
 import org.openmrs.module.webservices.rest.web.resource.api.SearchHandler;
 import org.openmrs.module.webservices.rest.web.resource.api.SearchQuery;
+import org.openmrs.module.webservices.rest.web.resource.impl.AlreadyPaged;
 import org.openmrs.module.webservices.rest.web.resource.impl.NeedsPaging;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
@@ -26,9 +29,15 @@ public class BahmniDrugSearchHandler implements SearchHandler {
         return new SearchConfig("ordered", RestConstants.VERSION_1 + "/drug", Arrays.asList("1.10.*", "1.11.*", "1.12.*"), searchQuery);
     }
 
+    @Autowired
+    private DrugSearchIndex drugSearchIndex;
+
     @Override
     public PageableResult search(RequestContext ctx) throws ResponseException {
         boolean includeRetired = ctx.getIncludeAll();
+        if (drugSearchIndex.isEnabled()) {
+            return searchIndex(ctx, includeRetired);
+        }
             String searchPhrase = ctx.getParameter("q");
             LinkedHashSet<Drug> drugs = new LinkedHashSet<>(findDrugsStartingWith(searchPhrase, includeRetired, ctx));
             LinkedHashSet<Drug> drugsHavingConcept = new LinkedHashSet<>();
@@ -49,6 +58,17 @@ public class BahmniDrugSearchHandler implements SearchHandler {
             return new NeedsPaging<>(new ArrayList<>(drugs), ctx);
     }
 
+    private PageableResult searchIndex(RequestContext ctx, boolean includeRetired) {
+        List<Integer> drugIds = drugSearchIndex.searchDrugIds(ctx.getParameter("q"), includeRetired, ctx.getParameter("conceptUuid"));
+        int fromIndex = Math.min(ctx.getStartIndex(), drugIds.size());
+        int toIndex = Math.min(fromIndex + ctx.getLimit(), drugIds.size());
+        List<Drug> drugs = new ArrayList<>();
+        for (Integer drugId : drugIds.subList(fromIndex, toIndex)) {
+            drugs.add(Context.getConceptService().getDrug(drugId));
+        }
+        return new AlreadyPaged<>(ctx, drugs, toIndex < drugIds.size());
+    }
+
     private List<Drug> findDrugsStartingWith(String searchPhrase, boolean includeRetired, RequestContext ctx) {
         return Context.getConceptService().getDrugs(searchPhrase, null, false, true, includeRetired, ctx.getStartIndex(), ctx.getLimit());
     }
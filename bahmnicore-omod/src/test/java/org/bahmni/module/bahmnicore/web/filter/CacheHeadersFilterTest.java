@@ -0,0 +1,134 @@
+package org.bahmni.module.bahmnicore.web.filter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Context.class)
+public class CacheHeadersFilterTest {
+    @Mock
+    private AdministrationService administrationService;
+
+    private CacheHeadersFilter cacheHeadersFilter;
+    private CountingFilterChain filterChain;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        PowerMockito.mockStatic(Context.class);
+        when(Context.getAdministrationService()).thenReturn(administrationService);
+        when(Context.isAuthenticated()).thenReturn(false);
+        when(administrationService.getGlobalProperty(CacheHeadersFilter.EXPIRES_DURATION_GLOBAL_PROPERTY)).thenReturn("10");
+        cacheHeadersFilter = new CacheHeadersFilter();
+        filterChain = new CountingFilterChain("{\"name\":\"Vitals\"}");
+    }
+
+    @Test
+    public void shouldSetAnETagAndExpiresOnSuccessfulGets() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        cacheHeadersFilter.doFilter(request(null), response, filterChain);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("{\"name\":\"Vitals\"}", response.getContentAsString());
+        assertEquals(CacheHeadersFilter.eTagOf(response.getContentAsByteArray()), response.getHeader("ETag"));
+        assertNotNull(response.getHeader("Expires"));
+    }
+
+    @Test
+    public void shouldAnswerAMatchingIfNoneMatchWithNotModified() throws Exception {
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        cacheHeadersFilter.doFilter(request(null), firstResponse, filterChain);
+        String eTag = (String) firstResponse.getHeader("ETag");
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        cacheHeadersFilter.doFilter(request("\"other\", " + eTag), response, filterChain);
+
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+        assertEquals(eTag, response.getHeader("ETag"));
+    }
+
+    @Test
+    public void shouldNotRunTheRequestForACachedETagOfAConfiguredPath() throws Exception {
+        when(administrationService.getGlobalProperty(CacheHeadersFilter.ETAG_CACHE_URL_PATTERNS_GLOBAL_PROPERTY)).thenReturn("/ws/rest/v1/bahmnicore/config/.*");
+        when(administrationService.getGlobalProperty(CacheHeadersFilter.ETAG_CACHE_SECONDS_GLOBAL_PROPERTY)).thenReturn("60");
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        cacheHeadersFilter.doFilter(request(null), firstResponse, filterChain);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        cacheHeadersFilter.doFilter(request((String) firstResponse.getHeader("ETag")), response, filterChain);
+
+        assertEquals(304, response.getStatus());
+        assertEquals(1, filterChain.calls);
+    }
+
+    @Test
+    public void shouldReadTheGlobalPropertiesAgainOnlyWhenTheyChange() throws Exception {
+        cacheHeadersFilter.doFilter(request(null), new MockHttpServletResponse(), filterChain);
+        cacheHeadersFilter.doFilter(request(null), new MockHttpServletResponse(), filterChain);
+        verify(administrationService, times(1)).getGlobalProperty(CacheHeadersFilter.EXPIRES_DURATION_GLOBAL_PROPERTY);
+
+        cacheHeadersFilter.globalPropertyChanged(new GlobalProperty(CacheHeadersFilter.EXPIRES_DURATION_GLOBAL_PROPERTY, "20"));
+        cacheHeadersFilter.doFilter(request(null), new MockHttpServletResponse(), filterChain);
+        verify(administrationService, times(2)).getGlobalProperty(CacheHeadersFilter.EXPIRES_DURATION_GLOBAL_PROPERTY);
+    }
+
+    @Test
+    public void shouldPassOtherMethodsThrough() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/openmrs/ws/rest/v1/bahmnicore/config/all");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        cacheHeadersFilter.doFilter(request, response, filterChain);
+
+        assertNull(response.getHeader("ETag"));
+        assertEquals("{\"name\":\"Vitals\"}", response.getContentAsString());
+    }
+
+    private MockHttpServletRequest request(String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/openmrs/ws/rest/v1/bahmnicore/config/all");
+        request.setContextPath("/openmrs");
+        if (ifNoneMatch != null) {
+            request.addHeader("If-None-Match", ifNoneMatch);
+        }
+        return request;
+    }
+
+    private static class CountingFilterChain implements FilterChain {
+        private final String body;
+        private int calls;
+
+        private CountingFilterChain(String body) {
+            this.body = body;
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+            calls++;
+            response.getWriter().write(body);
+        }
+    }
+}
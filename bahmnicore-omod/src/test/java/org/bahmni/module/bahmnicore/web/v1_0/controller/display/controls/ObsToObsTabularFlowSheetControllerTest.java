@@ -264,6 +264,28 @@ public class ObsToObsTabularFlowSheetControllerTest {
         assertEquals(pivotTable, actualPivotTable);
     }
 
+    @Test
+    public void shouldKeepOnlyTheInitialAndLatestObservationsWhenThereAreMoreThanBothCounts() throws Exception {
+        Concept groupByConcept = new ConceptBuilder().withName("GroupByConcept").withClass("N/A").withDataType("Numeric").withSet(false).build();
+        Concept rootConcept = new ConceptBuilder().withName("ConceptSetName").withClass("N/A").withSetMember(groupByConcept).withDataType("Numeric").withSet(true).build();
+        when(conceptService.getConceptByName("ConceptSetName")).thenReturn(rootConcept);
+        when(conceptService.getConceptByName("GroupByConcept")).thenReturn(groupByConcept);
+
+        ArrayList<BahmniObservation> bahmniObservations = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            bahmniObservations.add(new BahmniObservation().setConcept(conceptMapper.map(groupByConcept)).setValue(i));
+        }
+        when(bahmniObsService.observationsFor("patientUuid", rootConcept, groupByConcept, -1, null, null, null)).thenReturn(bahmniObservations);
+        List<BahmniObservation> expectedObservations = Arrays.asList(bahmniObservations.get(0), bahmniObservations.get(1), bahmniObservations.get(4), bahmniObservations.get(5));
+        PivotTable pivotTable = new PivotTable();
+        when(bahmniObservationsToTabularViewMapper.constructTable(Matchers.<Set<EncounterTransaction.Concept>>any(), eq(expectedObservations), anyString())).thenReturn(pivotTable);
+
+        PivotTable actualPivotTable = obsToObsPivotTableController.constructPivotTableFor("patientUuid", -1, "ConceptSetName", "GroupByConcept", null, 2, 2, null, null, null, null);
+
+        verify(bahmniObservationsToTabularViewMapper, times(1)).constructTable(Matchers.<Set<EncounterTransaction.Concept>>any(), eq(expectedObservations), anyString());
+        assertEquals(pivotTable, actualPivotTable);
+    }
+
     @Test
     public void shouldSortTheConceptsAsTheOrderDefinedIntheConceptNames() throws Exception {
         Concept member1 = new ConceptBuilder().withName("Member1").withClass("N/A").withDataType("Numeric").withSet(false).build();
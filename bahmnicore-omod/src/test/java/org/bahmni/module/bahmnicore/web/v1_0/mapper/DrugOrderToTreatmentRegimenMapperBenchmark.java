@@ -0,0 +1,68 @@
+package org.bahmni.module.bahmnicore.web.v1_0.mapper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openmrs.Order;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.util.LocaleUtility;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.bahmni.module.bahmnicore.web.v1_0.mapper.TreatmentRegimenFixtures.assertSameRegimen;
+import static org.bahmni.module.bahmnicore.web.v1_0.mapper.TreatmentRegimenFixtures.syntheticRegimen;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Times the treatment regimen mapper against the mapper it replaced on long synthetic regimens, checking on the way
+ * that both build the same regimen. Not picked up by the build; run it with
+ * <code>mvn test -Dtest=DrugOrderToTreatmentRegimenMapperBenchmark</code>.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({LocaleUtility.class})
+public class DrugOrderToTreatmentRegimenMapperBenchmark {
+
+    private static final int[] REGIMEN_SIZES = {50, 200, 500};
+    private static final int WARM_UP_RUNS = 3;
+    private static final int TIMED_RUNS = 5;
+
+    @Before
+    public void setUp() throws Exception {
+        mockStatic(LocaleUtility.class);
+        when(LocaleUtility.getDefaultLocale()).thenReturn(Locale.ENGLISH);
+        Context.setUserContext(new UserContext());
+    }
+
+    @Test
+    public void shouldBuildLongRegimensFasterThanTheLegacyMapper() throws Exception {
+        DrugOrderToTreatmentRegimenMapper mapper = new DrugOrderToTreatmentRegimenMapper();
+        LegacyDrugOrderToTreatmentRegimenMapper legacyMapper = new LegacyDrugOrderToTreatmentRegimenMapper();
+        for (int size : REGIMEN_SIZES) {
+            List<Order> drugOrders = syntheticRegimen(size, size);
+            assertSameRegimen(legacyMapper.map(new ArrayList<>(drugOrders), null), mapper.map(new ArrayList<>(drugOrders), null));
+
+            long legacyNanos = 0;
+            long nanos = 0;
+            for (int run = 0; run < WARM_UP_RUNS + TIMED_RUNS; run++) {
+                long startedAt = System.nanoTime();
+                legacyMapper.map(new ArrayList<>(drugOrders), null);
+                long legacyTook = System.nanoTime() - startedAt;
+                startedAt = System.nanoTime();
+                mapper.map(new ArrayList<>(drugOrders), null);
+                long took = System.nanoTime() - startedAt;
+                if (run >= WARM_UP_RUNS) {
+                    legacyNanos += legacyTook;
+                    nanos += took;
+                }
+            }
+            System.out.println(String.format("%d drug orders: legacy mapper %.1f ms, mapper %.1f ms",
+                    size, legacyNanos / TIMED_RUNS / 1e6, nanos / TIMED_RUNS / 1e6));
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 
@@ -831,4 +832,17 @@ public class DrugOrderToTreatmentRegimenMapperTest {
         assertEquals("Stop", stoppedDateRow.getDrugs().get("Ibeprofen"));
         assertEquals(null, stoppedDateRow.getDrugs().get("Paracetemol"));
     }
+
+    @Test
+    public void shouldBuildTheSameRegimenAsTheLegacyMapperForLongRegimens() throws Exception {
+        LegacyDrugOrderToTreatmentRegimenMapper legacyMapper = new LegacyDrugOrderToTreatmentRegimenMapper();
+        for (long seed = 1; seed <= 20; seed++) {
+            List<Order> drugOrders = TreatmentRegimenFixtures.syntheticRegimen(seed, 60);
+
+            TreatmentRegimen expected = legacyMapper.map(new ArrayList<>(drugOrders), null);
+            TreatmentRegimen treatmentRegimen = drugOrderToTreatmentRegimenMapper.map(new ArrayList<>(drugOrders), null);
+
+            TreatmentRegimenFixtures.assertSameRegimen(expected, treatmentRegimen);
+        }
+    }
 }
@@ -0,0 +1,96 @@
+package org.bahmni.module.bahmnicore.web.v1_0.mapper;
+
+import org.bahmni.test.builder.ConceptBuilder;
+import org.bahmni.test.builder.DrugOrderBuilder;
+import org.openmrs.Concept;
+import org.openmrs.DrugOrder;
+import org.openmrs.Order;
+import org.openmrs.module.bahmniemrapi.drugogram.contract.RegimenRow;
+import org.openmrs.module.bahmniemrapi.drugogram.contract.TreatmentRegimen;
+import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Synthetic regimens for the treatment regimen mapper test and benchmark.
+ */
+class TreatmentRegimenFixtures {
+    private static final String[] DRUG_NAMES = {"Isoniazid", "Rifampicin", "Pyrazinamide", "Ethambutol", "Streptomycin",
+            "Kanamycin", "Levofloxacin", "Moxifloxacin", "Ethionamide", "Cycloserine", "Linezolid", "Bedaquiline"};
+
+    private TreatmentRegimenFixtures() {
+    }
+
+    /**
+     * Drug orders spread over a couple of years, with revisions, scheduled orders, orders stopped on the day they
+     * start and orders stopped before their scheduled date. The same seed always gives the same regimen.
+     */
+    static List<Order> syntheticRegimen(long seed, int size) {
+        Random random = new Random(seed);
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2015, Calendar.JANUARY, 1, 9, 30, 0);
+        Date firstDay = calendar.getTime();
+        Concept[] concepts = new Concept[DRUG_NAMES.length];
+        for (int i = 0; i < DRUG_NAMES.length; i++) {
+            concepts[i] = new ConceptBuilder().withName(DRUG_NAMES[i]).withUUID(DRUG_NAMES[i] + " uuid").withSet(false).withDataType("N/A").build();
+        }
+
+        List<Order> drugOrders = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int drug = random.nextInt(DRUG_NAMES.length);
+            Date start = addDays(firstDay, random.nextInt(Math.max(size * 2, 30)), random.nextInt(8));
+            DrugOrderBuilder builder = new DrugOrderBuilder().withDrugName(DRUG_NAMES[drug]).withConcept(concepts[drug])
+                    .withDose((double) (1 + random.nextInt(4)) * 100).withFrequency("Day")
+                    .withOrderAction(random.nextInt(4) == 0 ? Order.Action.REVISE : Order.Action.NEW);
+            if (random.nextInt(5) == 0) {
+                builder.withDateActivated(addDays(start, -random.nextInt(10), 0)).withScheduledDate(start);
+            } else {
+                builder.withDateActivated(start);
+            }
+            int duration = random.nextInt(10);
+            if (duration == 0) {
+                builder.withAutoExpireDate(addDays(start, 0, 1));
+            } else if (duration == 1) {
+                builder.withAutoExpireDate(addDays(start, -1 - random.nextInt(3), 0));
+            } else if (duration > 2) {
+                builder.withAutoExpireDate(addDays(start, random.nextInt(60), 0));
+            }
+            DrugOrder drugOrder = builder.build();
+            if (random.nextInt(6) == 0 && drugOrder.getAutoExpireDate() != null) {
+                drugOrder.setDateStopped(addDays(start, random.nextInt(20), 2));
+            }
+            drugOrders.add(drugOrder);
+        }
+        return drugOrders;
+    }
+
+    static void assertSameRegimen(TreatmentRegimen expected, TreatmentRegimen actual) {
+        assertEquals(expected.getHeaders().size(), actual.getHeaders().size());
+        Iterator<EncounterTransaction.Concept> actualHeaders = actual.getHeaders().iterator();
+        for (EncounterTransaction.Concept header : expected.getHeaders()) {
+            assertEquals(header.getName(), actualHeaders.next().getName());
+        }
+        assertEquals(expected.getRows().size(), actual.getRows().size());
+        Iterator<RegimenRow> actualRows = actual.getRows().iterator();
+        for (RegimenRow row : expected.getRows()) {
+            RegimenRow actualRow = actualRows.next();
+            assertEquals(row.getDate(), actualRow.getDate());
+            assertEquals(row.getDrugs(), actualRow.getDrugs());
+        }
+    }
+
+    private static Date addDays(Date date, int days, int hours) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        calendar.add(Calendar.DATE, days);
+        calendar.add(Calendar.HOUR_OF_DAY, hours);
+        return calendar.getTime();
+    }
+}
@@ -0,0 +1,9 @@
+package org.bahmni.module.bahmnicoreui.helper;
+
+import org.bahmni.module.bahmnicoreui.contract.DiseaseDataParams;
+import org.bahmni.module.bahmnicoreui.contract.DiseaseSummaryData;
+import org.openmrs.Patient;
+
+public interface DiseaseSummaryAggregator {
+    DiseaseSummaryData aggregate(Patient patient, DiseaseDataParams queryParams);
+}
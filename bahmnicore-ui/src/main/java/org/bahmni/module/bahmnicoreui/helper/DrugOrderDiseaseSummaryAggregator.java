@@ -19,7 +19,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Component
-public class DrugOrderDiseaseSummaryAggregator {
+public class DrugOrderDiseaseSummaryAggregator implements DiseaseSummaryAggregator {
 
     private final Integer DEFAULT_VISIT_NUMBER = 50;
     private final VisitService visitService;
@@ -36,6 +36,7 @@ public class DrugOrderDiseaseSummaryAggregator {
         this.visitDao = visitDao;
     }
 
+    @Override
     public DiseaseSummaryData aggregate(Patient patient, DiseaseDataParams diseaseDataParams) {
         DiseaseSummaryData diseaseSummaryData = new DiseaseSummaryData();
         List<Concept> concepts = conceptHelper.getConceptsForNames(diseaseDataParams.getDrugConcepts());
@@ -20,7 +20,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Component
-public class LabDiseaseSummaryAggregator {
+public class LabDiseaseSummaryAggregator implements DiseaseSummaryAggregator {
 
     private final Integer DEFAULT_VISIT_NUMBER = 50;
     private final ConceptHelper conceptHelper;
@@ -38,6 +38,7 @@ public class LabDiseaseSummaryAggregator {
         this.visitDao = visitDao;
     }
 
+    @Override
     public DiseaseSummaryData aggregate(Patient patient, DiseaseDataParams diseaseDataParams) {
         DiseaseSummaryData diseaseSummaryData =  new DiseaseSummaryData();
         List<Concept> concepts = conceptHelper.getConceptsForNames(diseaseDataParams.getLabConcepts());
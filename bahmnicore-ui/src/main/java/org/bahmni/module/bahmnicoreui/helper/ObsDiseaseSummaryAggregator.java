@@ -19,7 +19,7 @@ import java.util.Collections;
 import java.util.List;
 
 @Component
-public class ObsDiseaseSummaryAggregator {
+public class ObsDiseaseSummaryAggregator implements DiseaseSummaryAggregator {
 
     private final ConceptHelper conceptHelper;
     private BahmniObsService bahmniObsService;
@@ -31,6 +31,7 @@ public class ObsDiseaseSummaryAggregator {
         this.conceptHelper = conceptHelper;
     }
 
+    @Override
     public DiseaseSummaryData aggregate(Patient patient, DiseaseDataParams queryParams) {
         DiseaseSummaryData diseaseSummaryData = new DiseaseSummaryData();
         List<Concept> concepts = conceptHelper.getConceptsForNames(queryParams.getObsConcepts());
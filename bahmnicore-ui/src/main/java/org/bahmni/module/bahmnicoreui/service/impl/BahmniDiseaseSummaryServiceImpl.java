@@ -2,42 +2,73 @@ package org.bahmni.module.bahmnicoreui.service.impl;
 
 import org.apache.commons.lang3.time.DateFormatUtils;
 import org.apache.commons.lang3.time.DateUtils;
+import org.apache.log4j.Logger;
 import org.bahmni.module.bahmnicoreui.contract.DiseaseDataParams;
 import org.bahmni.module.bahmnicoreui.contract.DiseaseSummaryData;
 import org.bahmni.module.bahmnicoreui.contract.DiseaseSummaryMap;
+import org.bahmni.module.bahmnicoreui.helper.DiseaseSummaryAggregator;
 import org.bahmni.module.bahmnicoreui.helper.DrugOrderDiseaseSummaryAggregator;
 import org.bahmni.module.bahmnicoreui.helper.LabDiseaseSummaryAggregator;
 import org.bahmni.module.bahmnicoreui.helper.ObsDiseaseSummaryAggregator;
 import org.bahmni.module.bahmnicoreui.service.BahmniDiseaseSummaryService;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 import org.openmrs.Patient;
+import org.openmrs.Privilege;
+import org.openmrs.User;
 import org.openmrs.api.PatientService;
+import org.openmrs.api.context.Context;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 @Service
-public class BahmniDiseaseSummaryServiceImpl implements BahmniDiseaseSummaryService {
+public class BahmniDiseaseSummaryServiceImpl implements BahmniDiseaseSummaryService, DisposableBean {
+
+    public static final String PARALLEL_AGGREGATION_GLOBAL_PROPERTY = "bahmni.diseaseSummary.parallelAggregation";
+    private static final int AGGREGATION_THREADS = 6;
+    private static final int AGGREGATION_QUEUE_SIZE = 60;
+    private static final Logger log = Logger.getLogger(BahmniDiseaseSummaryServiceImpl.class);
+
+    private final ExecutorService aggregationExecutor = new ThreadPoolExecutor(AGGREGATION_THREADS, AGGREGATION_THREADS,
+            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(AGGREGATION_QUEUE_SIZE), new AggregationThreadFactory());
 
     private PatientService patientService;
-    private LabDiseaseSummaryAggregator labDiseaseSummaryAggregator;
-    private DrugOrderDiseaseSummaryAggregator drugOrderDiseaseSummaryAggregator;
-    private ObsDiseaseSummaryAggregator obsDiseaseSummaryAggregator;
+    private List<DiseaseSummaryAggregator> aggregators;
+
+    @Autowired
+    private SessionFactory sessionFactory;
 
     @Autowired
     public BahmniDiseaseSummaryServiceImpl(PatientService patientService, LabDiseaseSummaryAggregator labDiseaseSummaryAggregator, DrugOrderDiseaseSummaryAggregator drugOrderDiseaseSummaryAggregator, ObsDiseaseSummaryAggregator obsDiseaseSummaryAggregator){
         this.patientService = patientService;
-        this.labDiseaseSummaryAggregator = labDiseaseSummaryAggregator;
-        this.drugOrderDiseaseSummaryAggregator = drugOrderDiseaseSummaryAggregator;
-        this.obsDiseaseSummaryAggregator = obsDiseaseSummaryAggregator;
+        this.aggregators = Arrays.asList(obsDiseaseSummaryAggregator, labDiseaseSummaryAggregator, drugOrderDiseaseSummaryAggregator);
     }
 
     @Override
@@ -47,42 +78,158 @@ public class BahmniDiseaseSummaryServiceImpl implements BahmniDiseaseSummaryServ
 
         Patient patient = patientService.getPatientByUuid(patientUuid);
 
-
-        diseaseSummaryData.concat(obsDiseaseSummaryAggregator.aggregate(patient, queryParams));
-        diseaseSummaryData.concat(labDiseaseSummaryAggregator.aggregate(patient, queryParams));
-        diseaseSummaryData.concat(drugOrderDiseaseSummaryAggregator.aggregate(patient, queryParams));
+        for (DiseaseSummaryData aggregatedData : aggregate(patient, queryParams)) {
+            diseaseSummaryData.concat(aggregatedData);
+        }
         diseaseSummaryData.setTabularData(filterDataByCount(diseaseSummaryData.getTabularData(), queryParams.getInitialCount(), queryParams.getLatestCount()));
         return diseaseSummaryData;
     }
 
+    private List<DiseaseSummaryData> aggregate(Patient patient, DiseaseDataParams queryParams) {
+        if (isParallelAggregationEnabled()) {
+            return aggregateInParallel(patient, queryParams);
+        }
+        List<DiseaseSummaryData> aggregatedData = new ArrayList<>();
+        for (DiseaseSummaryAggregator aggregator : aggregators) {
+            aggregatedData.add(aggregator.aggregate(patient, queryParams));
+        }
+        return aggregatedData;
+    }
+
+    /**
+     * Each aggregator runs on its own thread with its own read only session, so the patient is looked up again
+     * there instead of sharing the entity loaded in the caller's session. When the executor is saturated the
+     * aggregator runs on the calling thread instead.
+     * <p/>
+     * A user context is not safe to share between threads, so each thread gets the session's own user context and
+     * is given the privileges and locale of the caller as proxy privileges.
+     */
+    private List<DiseaseSummaryData> aggregateInParallel(final Patient patient, final DiseaseDataParams queryParams) {
+        final Set<String> privileges = privilegesOf(Context.getAuthenticatedUser());
+        final Locale locale = Context.getLocale();
+        final String patientUuid = patient.getUuid();
+        List<Future<DiseaseSummaryData>> futures = new ArrayList<>();
+        for (final DiseaseSummaryAggregator aggregator : aggregators) {
+            try {
+                futures.add(aggregationExecutor.submit(new Callable<DiseaseSummaryData>() {
+                    @Override
+                    public DiseaseSummaryData call() throws Exception {
+                        return aggregateInOwnSession(aggregator, privileges, locale, patientUuid, queryParams);
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                log.warn("Disease summary aggregation executor is saturated, running " + aggregator.getClass().getSimpleName() + " on the calling thread");
+                FutureTask<DiseaseSummaryData> inlineAggregation = new FutureTask<>(new Callable<DiseaseSummaryData>() {
+                    @Override
+                    public DiseaseSummaryData call() throws Exception {
+                        return aggregator.aggregate(patient, queryParams);
+                    }
+                });
+                inlineAggregation.run();
+                futures.add(inlineAggregation);
+            }
+        }
+
+        List<DiseaseSummaryData> aggregatedData = new ArrayList<>();
+        for (Future<DiseaseSummaryData> future : futures) {
+            aggregatedData.add(getResult(future));
+        }
+        return aggregatedData;
+    }
+
+    private DiseaseSummaryData aggregateInOwnSession(DiseaseSummaryAggregator aggregator, Set<String> privileges, Locale locale, String patientUuid, DiseaseDataParams queryParams) {
+        Context.openSession();
+        try {
+            Context.setLocale(locale);
+            for (String privilege : privileges) {
+                Context.addProxyPrivilege(privilege);
+            }
+            Session session = sessionFactory.getCurrentSession();
+            session.setFlushMode(FlushMode.MANUAL);
+            session.setDefaultReadOnly(true);
+            return aggregator.aggregate(Context.getPatientService().getPatientByUuid(patientUuid), queryParams);
+        } finally {
+            for (String privilege : privileges) {
+                Context.removeProxyPrivilege(privilege);
+            }
+            Context.closeSession();
+        }
+    }
+
+    private Set<String> privilegesOf(User user) {
+        Set<String> privileges = new HashSet<>();
+        if (user == null) {
+            return privileges;
+        }
+        Collection<Privilege> userPrivileges = user.isSuperUser() ? Context.getUserService().getAllPrivileges() : user.getPrivileges();
+        for (Privilege privilege : userPrivileges) {
+            privileges.add(privilege.getPrivilege());
+        }
+        return privileges;
+    }
+
+    @Override
+    public void destroy() {
+        aggregationExecutor.shutdownNow();
+    }
+
+    private DiseaseSummaryData getResult(Future<DiseaseSummaryData> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while aggregating disease summary", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private boolean isParallelAggregationEnabled() {
+        return Boolean.valueOf(Context.getAdministrationService().getGlobalProperty(PARALLEL_AGGREGATION_GLOBAL_PROPERTY));
+    }
+
     private DiseaseSummaryMap filterDataByCount(DiseaseSummaryMap diseaseSummaryMap, Integer initialCount, Integer latestCount) {
         if(initialCount == null && latestCount == null) return diseaseSummaryMap;
+        List<String> summaryMapKeys = sortByDate(diseaseSummaryMap.keySet());
         DiseaseSummaryMap summaryMap = new DiseaseSummaryMap();
-        summaryMap.putAll(filter(diseaseSummaryMap, 0, getIntegerValue(latestCount)));
-        summaryMap.putAll(filter(diseaseSummaryMap, diseaseSummaryMap.size() - getIntegerValue(initialCount), diseaseSummaryMap.size()));
+        summaryMap.putAll(filter(diseaseSummaryMap, summaryMapKeys, 0, getIntegerValue(latestCount)));
+        summaryMap.putAll(filter(diseaseSummaryMap, summaryMapKeys, diseaseSummaryMap.size() - getIntegerValue(initialCount), diseaseSummaryMap.size()));
 
         return summaryMap;
     }
 
-    private DiseaseSummaryMap filter(DiseaseSummaryMap diseaseSummaryMap, int fromIndex, int toIndex) {
+    private DiseaseSummaryMap filter(DiseaseSummaryMap diseaseSummaryMap, List<String> summaryMapKeys, int fromIndex, int toIndex) {
         DiseaseSummaryMap summaryMap = new DiseaseSummaryMap();
         fromIndex = (fromIndex > diseaseSummaryMap.size() || fromIndex < 0) ? 0 : fromIndex;
         toIndex = (toIndex > diseaseSummaryMap.size()) ? diseaseSummaryMap.size() : toIndex;
 
-        List<String> summaryMapKeys = sortByDate(diseaseSummaryMap.keySet());
         for(int index=fromIndex; index<toIndex; index++) {
             summaryMap.put(summaryMapKeys.get(index), diseaseSummaryMap.get(summaryMapKeys.get(index)));
         }
         return summaryMap;
     }
 
+    /**
+     * Latest first. Each key is parsed once into a date-keyed sorted map instead of on every comparison.
+     */
     private List<String> sortByDate(Set<String> dataSet) {
-        List<String> sortedList = new ArrayList<>(dataSet);
-        Collections.sort(sortedList, new Comparator<String>() {
-            public int compare(String o1, String o2) {
-                return convertToDate(o2).compareTo(convertToDate(o1));
+        TreeMap<Date, List<String>> keysByDate = new TreeMap<>(Collections.reverseOrder());
+        for (String key : dataSet) {
+            Date date = convertToDate(key);
+            List<String> keys = keysByDate.get(date);
+            if (keys == null) {
+                keys = new ArrayList<>();
+                keysByDate.put(date, keys);
             }
-        });
+            keys.add(key);
+        }
+        List<String> sortedList = new ArrayList<>(dataSet.size());
+        for (List<String> keys : keysByDate.values()) {
+            sortedList.addAll(keys);
+        }
         return sortedList;
     }
 
@@ -100,4 +247,15 @@ public class BahmniDiseaseSummaryServiceImpl implements BahmniDiseaseSummaryServ
         if(value == null) return 0;
         return value;
     }
+
+    private static class AggregationThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "disease-summary-aggregator-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -0,0 +1,147 @@
+package org.bahmni.module.bahmnicoreui.service.impl;
+
+import org.bahmni.module.bahmnicoreui.contract.ConceptValue;
+import org.bahmni.module.bahmnicoreui.contract.DiseaseDataParams;
+import org.bahmni.module.bahmnicoreui.contract.DiseaseSummaryData;
+import org.bahmni.module.bahmnicoreui.helper.DiseaseSummaryAggregator;
+import org.bahmni.module.bahmnicoreui.helper.DrugOrderDiseaseSummaryAggregator;
+import org.bahmni.module.bahmnicoreui.helper.LabDiseaseSummaryAggregator;
+import org.bahmni.module.bahmnicoreui.helper.ObsDiseaseSummaryAggregator;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.Patient;
+import org.openmrs.Privilege;
+import org.openmrs.User;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.PatientService;
+import org.openmrs.api.context.Context;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Context.class)
+public class BahmniDiseaseSummaryServiceImplTest {
+    private static final String PATIENT_UUID = "patientUuid";
+
+    @Mock
+    private PatientService patientService;
+    @Mock
+    private AdministrationService administrationService;
+    @Mock
+    private ObsDiseaseSummaryAggregator obsDiseaseSummaryAggregator;
+    @Mock
+    private LabDiseaseSummaryAggregator labDiseaseSummaryAggregator;
+    @Mock
+    private DrugOrderDiseaseSummaryAggregator drugOrderDiseaseSummaryAggregator;
+    @Mock
+    private SessionFactory sessionFactory;
+    @Mock
+    private User user;
+
+    private BahmniDiseaseSummaryServiceImpl bahmniDiseaseSummaryService;
+    private Map<String, String> aggregatorThreads = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        PowerMockito.mockStatic(Context.class);
+        Patient patient = new Patient(1);
+        patient.setUuid(PATIENT_UUID);
+        when(patientService.getPatientByUuid(PATIENT_UUID)).thenReturn(patient);
+        when(sessionFactory.getCurrentSession()).thenReturn(mock(Session.class));
+        when(user.isSuperUser()).thenReturn(false);
+        when(user.getPrivileges()).thenReturn(Collections.singletonList(new Privilege("Get Observations")));
+        when(administrationService.getGlobalProperty(BahmniDiseaseSummaryServiceImpl.PARALLEL_AGGREGATION_GLOBAL_PROPERTY)).thenReturn("true");
+        when(Context.getAdministrationService()).thenReturn(administrationService);
+        when(Context.getPatientService()).thenReturn(patientService);
+        when(Context.getAuthenticatedUser()).thenReturn(user);
+        when(Context.getLocale()).thenReturn(Locale.FRENCH);
+        aggregates(obsDiseaseSummaryAggregator, "obs", "2015-01-01T10:00:00+0530");
+        aggregates(labDiseaseSummaryAggregator, "lab", "2015-02-01T10:00:00+0530");
+        aggregates(drugOrderDiseaseSummaryAggregator, "drug", "2015-03-01T10:00:00+0530");
+
+        bahmniDiseaseSummaryService = new BahmniDiseaseSummaryServiceImpl(patientService, labDiseaseSummaryAggregator, drugOrderDiseaseSummaryAggregator, obsDiseaseSummaryAggregator);
+        Whitebox.setInternalState(bahmniDiseaseSummaryService, "sessionFactory", sessionFactory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        bahmniDiseaseSummaryService.destroy();
+    }
+
+    @Test
+    public void shouldRunEachAggregatorOnItsOwnThreadWithTheCallersPrivilegesAndLocale() throws Exception {
+        DiseaseSummaryData diseaseSummary = bahmniDiseaseSummaryService.getDiseaseSummary(PATIENT_UUID, new DiseaseDataParams());
+
+        assertEquals(new HashSet<>(Arrays.asList("2015-01-01T10:00:00+0530", "2015-02-01T10:00:00+0530", "2015-03-01T10:00:00+0530")),
+                diseaseSummary.getTabularData().keySet());
+        assertEquals(3, aggregatorThreads.size());
+        for (String threadName : aggregatorThreads.values()) {
+            assertTrue(threadName.startsWith("disease-summary-aggregator-"));
+        }
+        PowerMockito.verifyStatic(times(3));
+        Context.openSession();
+        PowerMockito.verifyStatic(times(3));
+        Context.setLocale(Locale.FRENCH);
+        PowerMockito.verifyStatic(times(3));
+        Context.addProxyPrivilege("Get Observations");
+        PowerMockito.verifyStatic(times(3));
+        Context.removeProxyPrivilege("Get Observations");
+        PowerMockito.verifyStatic(times(3));
+        Context.closeSession();
+    }
+
+    @Test
+    public void shouldRunAggregatorsOnTheCallingThreadOnceTheExecutorIsShutDown() throws Exception {
+        bahmniDiseaseSummaryService.destroy();
+
+        DiseaseSummaryData diseaseSummary = bahmniDiseaseSummaryService.getDiseaseSummary(PATIENT_UUID, new DiseaseDataParams());
+
+        assertEquals(3, diseaseSummary.getTabularData().size());
+        for (String threadName : aggregatorThreads.values()) {
+            assertEquals(Thread.currentThread().getName(), threadName);
+        }
+        PowerMockito.verifyStatic(times(0));
+        Context.addProxyPrivilege(anyString());
+    }
+
+    private void aggregates(DiseaseSummaryAggregator aggregator, final String name, final String visitDate) {
+        when(aggregator.aggregate(any(Patient.class), any(DiseaseDataParams.class))).thenAnswer(new Answer<DiseaseSummaryData>() {
+            @Override
+            public DiseaseSummaryData answer(InvocationOnMock invocation) throws Throwable {
+                aggregatorThreads.put(name, Thread.currentThread().getName());
+                Map<String, Map<String, ConceptValue>> table = new LinkedHashMap<>();
+                table.put(visitDate, new LinkedHashMap<String, ConceptValue>());
+                DiseaseSummaryData diseaseSummaryData = new DiseaseSummaryData();
+                diseaseSummaryData.addTabularData(table);
+                return diseaseSummaryData;
+            }
+        });
+    }
+}
@@ -1,5 +1,6 @@
 package org.bahmni.module.elisatomfeedclient.api;
 
+import org.apache.commons.lang3.StringUtils;
 import org.bahmni.module.bahmnicore.properties.BahmniCoreProperties;
 import org.ict4h.atomfeed.client.AtomFeedProperties;
 import org.springframework.stereotype.Component;
@@ -12,6 +13,9 @@ public class ElisAtomFeedProperties extends AtomFeedProperties {
     private static final String MAX_FAILED_EVENTS = "feed.maxFailedEvents";
     private static final String READ_TIMEOUT = "feed.replyTimeoutInMilliseconds";
     public static final String PATIENT_FEED_URI = "patient.feed.uri";
+    private static final String ACCESSION_PREFETCH_SIZE = "openelis.accession.prefetchSize";
+    private static final String ACCESSION_PREFETCH_THREADS = "openelis.accession.prefetchThreads";
+    private static final int DEFAULT_ACCESSION_PREFETCH_THREADS = 4;
 
     public String getPatientFeedUri() {
         return BahmniCoreProperties.getProperty(PATIENT_FEED_URI);
@@ -21,6 +25,17 @@ public class ElisAtomFeedProperties extends AtomFeedProperties {
         return BahmniCoreProperties.getProperty(OPEN_ELIS_URI);
     }
 
+    /**
+     * Number of upcoming accessions fetched ahead of the one being processed; 0 (the default) disables prefetching.
+     */
+    public int getAccessionPrefetchSize() {
+        return getIntProperty(ACCESSION_PREFETCH_SIZE, 0);
+    }
+
+    public int getAccessionPrefetchThreads() {
+        return getIntProperty(ACCESSION_PREFETCH_THREADS, DEFAULT_ACCESSION_PREFETCH_THREADS);
+    }
+
     @Override
     public int getMaxFailedEvents() {
         return Integer.parseInt(BahmniCoreProperties.getProperty(MAX_FAILED_EVENTS));
@@ -36,4 +51,8 @@ public class ElisAtomFeedProperties extends AtomFeedProperties {
         return Integer.parseInt(BahmniCoreProperties.getProperty(CONNECT_TIMEOUT));
     }
 
+    private int getIntProperty(String key, int defaultValue) {
+        String value = BahmniCoreProperties.getProperty(key);
+        return StringUtils.isBlank(value) ? defaultValue : Integer.parseInt(value.trim());
+    }
 }
@@ -69,7 +69,7 @@ public abstract class OpenElisFeedClient {
 
     protected abstract String getFeedUri(ElisAtomFeedProperties properties);
 
-    private ConnectionDetails createConnectionDetails(ElisAtomFeedProperties properties) {
+    protected ConnectionDetails createConnectionDetails(ElisAtomFeedProperties properties) {
         return new ConnectionDetails(properties.getOpenElisUri(),null,null,properties.getConnectTimeout(),properties.getReadTimeout());
     }
 
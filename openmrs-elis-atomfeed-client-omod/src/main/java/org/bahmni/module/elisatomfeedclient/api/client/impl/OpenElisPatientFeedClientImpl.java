@@ -6,9 +6,11 @@ import org.bahmni.module.elisatomfeedclient.api.ElisAtomFeedProperties;
 import org.bahmni.module.elisatomfeedclient.api.client.OpenElisFeedClient;
 import org.bahmni.module.elisatomfeedclient.api.client.OpenElisPatientFeedClient;
 import org.bahmni.module.elisatomfeedclient.api.mapper.AccessionHelper;
+import org.bahmni.module.elisatomfeedclient.api.worker.AccessionPrefetcher;
 import org.bahmni.module.elisatomfeedclient.api.worker.OpenElisAccessionEventWorker;
 import org.bahmni.module.elisatomfeedclient.api.worker.OpenElisPatientFeedWorker;
 import org.bahmni.webclients.HttpClient;
+import org.ict4h.atomfeed.client.repository.AllFeeds;
 import org.ict4h.atomfeed.client.service.EventWorker;
 import org.joda.time.DateTime;
 import org.openmrs.api.ConceptService;
@@ -20,9 +22,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 
+import java.net.URI;
+
 @Component("openElisPatientFeedClient")
 public class OpenElisPatientFeedClientImpl extends OpenElisFeedClient implements OpenElisPatientFeedClient {
     private BahmniVisitAttributeSaveCommandImpl bahmniVisitAttributeSaveCommand;
+    private OpenElisAccessionEventWorker accessionEventWorker;
     private Logger logger = Logger.getLogger(OpenElisPatientFeedClientImpl.class);
 
 
@@ -44,17 +49,29 @@ public class OpenElisPatientFeedClientImpl extends OpenElisFeedClient implements
         ConceptService conceptService = Context.getService(ConceptService.class);
         ProviderService providerService = Context.getProviderService();
 
-        OpenElisAccessionEventWorker accessionEventWorker = new OpenElisAccessionEventWorker(properties,
+        accessionEventWorker = new OpenElisAccessionEventWorker(properties,
                 authenticatedWebClient, encounterService, conceptService, new AccessionHelper(properties),
-                providerService, bahmniVisitAttributeSaveCommand);
+                providerService, bahmniVisitAttributeSaveCommand, createAccessionPrefetcher(authenticatedWebClient, properties));
         return new OpenElisPatientFeedWorker(accessionEventWorker);
     }
 
+    private AccessionPrefetcher createAccessionPrefetcher(HttpClient authenticatedWebClient, ElisAtomFeedProperties properties) {
+        if (properties.getAccessionPrefetchSize() <= 0) {
+            return null;
+        }
+        AllFeeds allFeeds = new AllFeeds(properties, authenticatedWebClient.getCookies(URI.create(getFeedUri(properties))));
+        return new AccessionPrefetcher(authenticatedWebClient, createConnectionDetails(properties), allFeeds,
+                properties.getOpenElisUri(), properties.getAccessionPrefetchSize(), properties.getAccessionPrefetchThreads());
+    }
+
     @Override
     public void processFeed() {
         try {
             logger.info("openelisatomfeedclient:processing feed " + DateTime.now());
             getAtomFeedClient().processEvents();
+            if (accessionEventWorker != null) {
+                logger.info("openelisatomfeedclient:accession feed metrics " + accessionEventWorker.getMetrics());
+            }
         } catch (Exception e) {
             try {
                 if (e != null && isUnauthorised(e)) {
@@ -0,0 +1,75 @@
+package org.bahmni.module.elisatomfeedclient.api.worker;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AccessionFeedMetrics {
+    private final long startedAt = System.currentTimeMillis();
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong processingNanos = new AtomicLong();
+    private final AtomicLong prefetchHits = new AtomicLong();
+    private final AtomicLong prefetchMisses = new AtomicLong();
+    private volatile long lagMillis;
+
+    public void recordProcessed(long elapsedNanos) {
+        processedCount.incrementAndGet();
+        processingNanos.addAndGet(elapsedNanos);
+    }
+
+    public void recordFailure() {
+        failedCount.incrementAndGet();
+    }
+
+    public void recordPrefetchHit() {
+        prefetchHits.incrementAndGet();
+    }
+
+    public void recordPrefetchMiss() {
+        prefetchMisses.incrementAndGet();
+    }
+
+    public void recordLag(Date eventUpdatedAt) {
+        if (eventUpdatedAt != null) {
+            lagMillis = Math.max(0, System.currentTimeMillis() - eventUpdatedAt.getTime());
+        }
+    }
+
+    public long getProcessedCount() {
+        return processedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getPrefetchHits() {
+        return prefetchHits.get();
+    }
+
+    public long getPrefetchMisses() {
+        return prefetchMisses.get();
+    }
+
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    public double getAverageProcessingMillis() {
+        long processed = processedCount.get();
+        return processed == 0 ? 0 : (double) TimeUnit.NANOSECONDS.toMillis(processingNanos.get()) / processed;
+    }
+
+    public double getEventsPerMinute() {
+        long elapsedMillis = Math.max(1, System.currentTimeMillis() - startedAt);
+        return processedCount.get() * 60000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("processed=%d failed=%d eventsPerMinute=%.1f averageProcessingMillis=%.1f prefetchHits=%d prefetchMisses=%d lagMillis=%d",
+                getProcessedCount(), getFailedCount(), getEventsPerMinute(), getAverageProcessingMillis(),
+                getPrefetchHits(), getPrefetchMisses(), getLagMillis());
+    }
+}
@@ -0,0 +1,179 @@
+package org.bahmni.module.elisatomfeedclient.api.worker;
+
+import com.sun.syndication.feed.atom.Entry;
+import org.apache.log4j.Logger;
+import org.bahmni.module.elisatomfeedclient.api.domain.OpenElisAccession;
+import org.bahmni.webclients.AnonymousAuthenticator;
+import org.bahmni.webclients.ConnectionDetails;
+import org.bahmni.webclients.HttpClient;
+import org.ict4h.atomfeed.client.domain.Event;
+import org.ict4h.atomfeed.client.repository.AllFeeds;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches the accessions of the events following the one being processed on the same feed page, so that the
+ * http round trips overlap with persisting earlier accessions. Persistence itself stays on the feed thread,
+ * inside the atom feed client's transaction, so accessions (and hence each patient's results) are still applied in
+ * feed order. Not thread safe; it is meant to be used from the single thread that processes the feed.
+ */
+public class AccessionPrefetcher {
+    private static final Logger logger = Logger.getLogger(AccessionPrefetcher.class);
+    private static final String ACCESSION_EVENT_TITLE = "accession";
+
+    private final HttpClient httpClient;
+    private final ConnectionDetails connectionDetails;
+    private final AllFeeds allFeeds;
+    private final String openElisUri;
+    private final int prefetchSize;
+    private final ExecutorService executorService;
+    private final ThreadLocal<HttpClient> prefetchHttpClients = new ThreadLocal<HttpClient>() {
+        @Override
+        protected HttpClient initialValue() {
+            return newHttpClient();
+        }
+    };
+
+    private Map<String, Future<OpenElisAccession>> prefetched = new HashMap<>();
+    private String pageUri;
+    private List<Entry> pageEntries = Collections.emptyList();
+    private int lastIndex = -1;
+    private boolean reversed;
+
+    public AccessionPrefetcher(HttpClient httpClient, ConnectionDetails connectionDetails, AllFeeds allFeeds,
+                               String openElisUri, int prefetchSize, int prefetchThreads) {
+        this.httpClient = httpClient;
+        this.connectionDetails = connectionDetails;
+        this.allFeeds = allFeeds;
+        this.openElisUri = openElisUri;
+        this.prefetchSize = prefetchSize;
+        this.executorService = Executors.newFixedThreadPool(prefetchThreads, new PrefetchThreadFactory());
+    }
+
+    public OpenElisAccession fetch(Event event, AccessionFeedMetrics metrics) throws IOException {
+        Future<OpenElisAccession> future = prefetched.remove(event.getId());
+        prefetchFollowing(event, metrics);
+        if (future != null) {
+            try {
+                OpenElisAccession openElisAccession = future.get();
+                metrics.recordPrefetchHit();
+                return openElisAccession;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logger.warn("openelisatomfeedclient:prefetch failed for " + accessionUrl(event) + ", fetching again", e.getCause());
+            }
+        }
+        metrics.recordPrefetchMiss();
+        return httpClient.get(accessionUrl(event), OpenElisAccession.class);
+    }
+
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    protected HttpClient newHttpClient() {
+        return new HttpClient(connectionDetails, new AnonymousAuthenticator(connectionDetails));
+    }
+
+    private void prefetchFollowing(Event event, AccessionFeedMetrics metrics) {
+        Map<String, Future<OpenElisAccession>> window = new HashMap<>();
+        for (Event following : followingAccessionEvents(event, metrics)) {
+            Future<OpenElisAccession> future = prefetched.remove(following.getId());
+            window.put(following.getId(), future != null ? future : executorService.submit(fetchTask(following)));
+        }
+        for (Future<OpenElisAccession> stale : prefetched.values()) {
+            stale.cancel(true);
+        }
+        prefetched = window;
+    }
+
+    private List<Event> followingAccessionEvents(Event event, AccessionFeedMetrics metrics) {
+        int index = indexOnPage(event);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        metrics.recordLag(pageEntries.get(index).getUpdated());
+        if (lastIndex >= 0 && lastIndex != index) {
+            reversed = index < lastIndex;
+        }
+        lastIndex = index;
+
+        List<Event> following = new ArrayList<>();
+        int step = reversed ? -1 : 1;
+        for (int i = index + step; i >= 0 && i < pageEntries.size() && following.size() < prefetchSize; i += step) {
+            Event next = new Event(pageEntries.get(i), pageUri);
+            if (ACCESSION_EVENT_TITLE.equals(next.getTitle())) {
+                following.add(next);
+            }
+        }
+        return following;
+    }
+
+    private int indexOnPage(Event event) {
+        String feedUri = event.getFeedUri();
+        if (feedUri == null) {
+            return -1;
+        }
+        int index = feedUri.equals(pageUri) ? indexOf(event.getId()) : -1;
+        if (index < 0) {
+            try {
+                pageEntries = allFeeds.getFor(new URI(feedUri)).getEntries();
+                pageUri = feedUri;
+                lastIndex = -1;
+                index = indexOf(event.getId());
+            } catch (Exception e) {
+                logger.warn("openelisatomfeedclient:could not read feed page " + feedUri + " for prefetching", e);
+                pageUri = null;
+                pageEntries = Collections.emptyList();
+            }
+        }
+        return index;
+    }
+
+    private int indexOf(String entryId) {
+        for (int i = 0; i < pageEntries.size(); i++) {
+            if (pageEntries.get(i).getId().equals(entryId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Callable<OpenElisAccession> fetchTask(final Event event) {
+        return new Callable<OpenElisAccession>() {
+            @Override
+            public OpenElisAccession call() throws Exception {
+                return prefetchHttpClients.get().get(accessionUrl(event), OpenElisAccession.class);
+            }
+        };
+    }
+
+    private String accessionUrl(Event event) {
+        return openElisUri + event.getContent();
+    }
+
+    private static class PrefetchThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "openelis-accession-prefetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
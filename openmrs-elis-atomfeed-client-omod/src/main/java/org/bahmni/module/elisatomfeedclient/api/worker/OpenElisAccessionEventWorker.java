@@ -1,6 +1,5 @@
 package org.bahmni.module.elisatomfeedclient.api.worker;
 
-import groovy.lang.GroovyClassLoader;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.bahmni.module.elisatomfeedclient.api.Constants;
@@ -27,6 +26,7 @@ import org.openmrs.api.EncounterService;
 import org.openmrs.api.ProviderService;
 import org.openmrs.module.bahmniemrapi.elisFeedInterceptor.ElisFeedInterceptor;
 import org.openmrs.module.bahmniemrapi.encountertransaction.command.impl.BahmniVisitAttributeSaveCommandImpl;
+import org.openmrs.module.bahmniemrapi.groovy.GroovyScriptCache;
 import org.openmrs.util.OpenmrsUtil;
 
 import java.io.File;
@@ -55,6 +55,8 @@ public class OpenElisAccessionEventWorker implements EventWorker {
     private AccessionHelper accessionMapper;
     private ProviderService providerService;
     private BahmniVisitAttributeSaveCommandImpl bahmniVisitAttributeSaveCommand;
+    private AccessionPrefetcher accessionPrefetcher;
+    private final AccessionFeedMetrics metrics = new AccessionFeedMetrics();
 
     //TODO : add the new service classes to bean initialization
     public OpenElisAccessionEventWorker(ElisAtomFeedProperties atomFeedProperties,
@@ -75,12 +77,28 @@ public class OpenElisAccessionEventWorker implements EventWorker {
         this.providerHelper = new ProviderHelper(providerService);
     }
 
+    public OpenElisAccessionEventWorker(ElisAtomFeedProperties atomFeedProperties,
+                                        HttpClient httpClient,
+                                        EncounterService encounterService,
+                                        ConceptService conceptService,
+                                        AccessionHelper accessionMapper,
+                                        ProviderService providerService, BahmniVisitAttributeSaveCommandImpl bahmniVisitAttributeSaveCommand,
+                                        AccessionPrefetcher accessionPrefetcher) {
+        this(atomFeedProperties, httpClient, encounterService, conceptService, accessionMapper, providerService, bahmniVisitAttributeSaveCommand);
+        this.accessionPrefetcher = accessionPrefetcher;
+    }
+
+    public AccessionFeedMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public void process(Event event) {
         String accessionUrl = atomFeedProperties.getOpenElisUri() + event.getContent();
         logger.info("Processing event : " + accessionUrl);
+        long startedAt = System.nanoTime();
         try {
-            OpenElisAccession openElisAccession = httpClient.get(accessionUrl, OpenElisAccession.class);
+            OpenElisAccession openElisAccession = fetchAccession(event, accessionUrl);
 
             Encounter orderEncounter = encounterService.getEncounterByUuid(openElisAccession.getAccessionUuid());
 
@@ -111,13 +129,26 @@ public class OpenElisAccessionEventWorker implements EventWorker {
             runInterceptors(updatedEncounters);
 
             saveUpdatedEncounters(updatedEncounters);
+            metrics.recordProcessed(System.nanoTime() - startedAt);
         } catch (IOException e) {
+            metrics.recordFailure();
             logger.error("openelisatomfeedclient:error processing event : " + accessionUrl + e.getMessage(), e);
             throw new OpenElisFeedException("could not read accession data", e);
         } catch (ParseException pe) {
+            metrics.recordFailure();
             logger.error("openelisatomfeedclient:error processing lab results. Invalid result data type : " + accessionUrl + pe.getMessage(), pe);
             throw new OpenElisFeedException("could not read accession data. Invalid result data type.", pe);
+        } catch (RuntimeException e) {
+            metrics.recordFailure();
+            throw e;
+        }
+    }
+
+    private OpenElisAccession fetchAccession(Event event, String accessionUrl) throws IOException {
+        if (accessionPrefetcher != null) {
+            return accessionPrefetcher.fetch(event, metrics);
         }
+        return httpClient.get(accessionUrl, OpenElisAccession.class);
     }
 
     private void saveUpdatedEncounters(Set<Encounter> updatedEncounters) {
@@ -127,16 +158,14 @@ public class OpenElisAccessionEventWorker implements EventWorker {
     }
 
     private void runInterceptors(Set<Encounter> encounters) {
-        GroovyClassLoader gcl = new GroovyClassLoader();
         File directory = new File(OpenmrsUtil.getApplicationDataDirectory() + "elisFeedInterceptor");
         File[] files = directory.listFiles();
         if (files != null) {
             for (File file : files) {
-                Class clazz;
                 try {
-                    clazz = gcl.parseClass(file);
-                    logger.info("BahmniEncounterTransactionUpdateAdvice : Using rules in " + clazz.getName());
-                    ElisFeedInterceptor elisFeedInterceptor = (ElisFeedInterceptor) clazz.newInstance();
+                    //Interceptors may keep state, so each event gets its own instance of the cached class
+                    ElisFeedInterceptor elisFeedInterceptor = GroovyScriptCache.getInstance().newInstance(file, ElisFeedInterceptor.class);
+                    logger.info("BahmniEncounterTransactionUpdateAdvice : Using rules in " + elisFeedInterceptor.getClass().getName());
                     elisFeedInterceptor.run(encounters);
                     logger.info("BahmniEncounterTransactionUpdateAdvice : Done");
                 } catch (IOException | IllegalAccessException | InstantiationException e) {
@@ -0,0 +1,104 @@
+package org.bahmni.module.elisatomfeedclient.api.worker;
+
+import com.sun.syndication.feed.atom.Content;
+import com.sun.syndication.feed.atom.Entry;
+import com.sun.syndication.feed.atom.Feed;
+import org.bahmni.module.elisatomfeedclient.api.domain.OpenElisAccession;
+import org.bahmni.webclients.HttpClient;
+import org.ict4h.atomfeed.client.domain.Event;
+import org.ict4h.atomfeed.client.repository.AllFeeds;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class AccessionPrefetcherTest {
+    private static final String OPEN_ELIS_URI = "http://localhost:8080";
+    private static final String PAGE_URI = "http://localhost:8080/openelis/ws/feed/patient/1";
+
+    @Mock
+    private HttpClient feedHttpClient;
+    @Mock
+    private HttpClient prefetchHttpClient;
+    @Mock
+    private AllFeeds allFeeds;
+
+    private AccessionPrefetcher accessionPrefetcher;
+    private AccessionFeedMetrics metrics;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        Feed feed = new Feed();
+        feed.setEntries(Arrays.asList(entry("1"), entry("2"), entry("3")));
+        when(allFeeds.getFor(URI.create(PAGE_URI))).thenReturn(feed);
+        metrics = new AccessionFeedMetrics();
+        accessionPrefetcher = new AccessionPrefetcher(feedHttpClient, null, allFeeds, OPEN_ELIS_URI, 2, 1) {
+            @Override
+            protected HttpClient newHttpClient() {
+                return prefetchHttpClient;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        accessionPrefetcher.shutdown();
+    }
+
+    @Test
+    public void shouldServeFollowingAccessionsFromThePrefetch() throws Exception {
+        OpenElisAccession first = new OpenElisAccession();
+        OpenElisAccession second = new OpenElisAccession();
+        when(feedHttpClient.get(OPEN_ELIS_URI + "/openelis/accession/1", OpenElisAccession.class)).thenReturn(first);
+        when(prefetchHttpClient.get(OPEN_ELIS_URI + "/openelis/accession/2", OpenElisAccession.class)).thenReturn(second);
+
+        assertSame(first, accessionPrefetcher.fetch(event("1"), metrics));
+        assertSame(second, accessionPrefetcher.fetch(event("2"), metrics));
+
+        verify(feedHttpClient, never()).get(OPEN_ELIS_URI + "/openelis/accession/2", OpenElisAccession.class);
+        assertEquals(1, metrics.getPrefetchHits());
+        assertEquals(1, metrics.getPrefetchMisses());
+    }
+
+    @Test
+    public void shouldFetchAgainOnTheFeedThreadWhenThePrefetchFails() throws Exception {
+        OpenElisAccession second = new OpenElisAccession();
+        when(prefetchHttpClient.get(any(String.class), any(Class.class))).thenThrow(new IOException("connection reset"));
+        when(feedHttpClient.get(OPEN_ELIS_URI + "/openelis/accession/2", OpenElisAccession.class)).thenReturn(second);
+
+        accessionPrefetcher.fetch(event("1"), metrics);
+
+        assertSame(second, accessionPrefetcher.fetch(event("2"), metrics));
+        assertEquals(0, metrics.getPrefetchHits());
+        assertEquals(2, metrics.getPrefetchMisses());
+    }
+
+    private Event event(String id) {
+        return new Event(id, "/openelis/accession/" + id, "accession", PAGE_URI, new Date());
+    }
+
+    private Entry entry(String id) {
+        Content content = new Content();
+        content.setValue("/openelis/accession/" + id);
+        Entry entry = new Entry();
+        entry.setId(id);
+        entry.setTitle("accession");
+        entry.setUpdated(new Date());
+        entry.setContents(Arrays.asList(content));
+        return entry;
+    }
+}
@@ -0,0 +1,11 @@
+package org.bahmni.module.referencedata.helper;
+
+import java.util.List;
+
+/**
+ * Spring components implementing this are told the uuids of address hierarchy entries saved through the address
+ * hierarchy service, so that they can refresh whatever they hold of them.
+ */
+public interface AddressHierarchyChangeListener {
+    void addressHierarchyEntriesChanged(List<String> uuids);
+}
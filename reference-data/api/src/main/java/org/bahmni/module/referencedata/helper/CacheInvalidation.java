@@ -0,0 +1,28 @@
+package org.bahmni.module.referencedata.helper;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Invalidation of a cache of data changed in the current transaction. It runs straight away, so reads later in the
+ * transaction see the change, and again once the transaction completes, as a read on another thread may have cached
+ * the committed values from before the change in the meantime.
+ */
+public class CacheInvalidation {
+
+    private CacheInvalidation() {
+    }
+
+    public static void nowAndOnCompletion(final Runnable invalidation) {
+        invalidation.run();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                invalidation.run();
+            }
+        });
+    }
+}
@@ -34,15 +34,27 @@ public class ConceptHelper {
         List<Concept> concepts = new ArrayList<>();
         if (conceptNames != null) {
             for (String conceptName : conceptNames) {
-                List<Concept> conceptsByName = conceptService.getConceptsByName(conceptName.replaceAll("%20", " "));
-                if (CollectionUtils.isNotEmpty(conceptsByName)) {
-                    for (Concept concept : conceptsByName) {
-                        for (ConceptName conceptNameObj : concept.getNames()) {
-                            if (conceptNameObj.getName().equalsIgnoreCase(conceptName) && conceptNameObj.isFullySpecifiedName()) {
-                                concepts.add(concept);
-                                break;
+                concepts.addAll(ConceptMetadataCache.getInstance().getConceptsByName("fullySpecifiedNameInAnyLocale",
+                        conceptName.replaceAll("%20", " "), conceptService, new ConceptMetadataCache.NameLookup() {
+                            @Override
+                            public List<Concept> find(String conceptName) {
+                                return getConceptsByFullySpecifiedName(conceptName);
                             }
-                        }
+                        }));
+            }
+        }
+        return concepts;
+    }
+
+    private List<Concept> getConceptsByFullySpecifiedName(String conceptName) {
+        List<Concept> concepts = new ArrayList<>();
+        List<Concept> conceptsByName = conceptService.getConceptsByName(conceptName);
+        if (CollectionUtils.isNotEmpty(conceptsByName)) {
+            for (Concept concept : conceptsByName) {
+                for (ConceptName conceptNameObj : concept.getNames()) {
+                    if (conceptNameObj.getName().equalsIgnoreCase(conceptName) && conceptNameObj.isFullySpecifiedName()) {
+                        concepts.add(concept);
+                        break;
                     }
                 }
             }
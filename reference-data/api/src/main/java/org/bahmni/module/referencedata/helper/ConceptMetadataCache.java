@@ -0,0 +1,323 @@
+package org.bahmni.module.referencedata.helper;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptNumeric;
+import org.openmrs.ConceptSet;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.context.Context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of concept metadata that is looked up by name again and again: name to concept, set to
+ * members, concept to the sets containing it and concept to its numeric range and units. Only concept ids and
+ * plain values are kept, so nothing here is tied to a hibernate session; concepts are loaded back by id, which
+ * hibernate answers from its own caches. Name lookups are keyed by the locale of the user.
+ * <p/>
+ * Entries of a concept are dropped by {@link #invalidate(Concept)} whenever the concept is saved, retired or
+ * purged. Lookups made without an open session are not cached.
+ */
+public class ConceptMetadataCache {
+    public static final int DEFAULT_MAX_ENTRIES = 5000;
+    private static final ConceptMetadataCache INSTANCE = new ConceptMetadataCache(DEFAULT_MAX_ENTRIES);
+
+    private final Region<String, List<Integer>> conceptIdsByName;
+    private final Region<Integer, List<Integer>> setMemberIds;
+    private final Region<Integer, List<Integer>> containingSetIds;
+    private final Region<Integer, NumericRange> numericRanges;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public static ConceptMetadataCache getInstance() {
+        return INSTANCE;
+    }
+
+    public ConceptMetadataCache(int maxEntries) {
+        conceptIdsByName = new Region<>(maxEntries);
+        setMemberIds = new Region<>(maxEntries);
+        containingSetIds = new Region<>(maxEntries);
+        numericRanges = new Region<>(maxEntries);
+    }
+
+    public Concept getConceptByName(String conceptName, ConceptService conceptService) {
+        if (conceptName == null || !Context.isSessionOpen()) {
+            return conceptService.getConceptByName(conceptName);
+        }
+        String key = nameKey("name", conceptName);
+        List<Concept> concepts = loadAll(conceptIdsByName.get(key), conceptService, conceptName);
+        if (concepts != null) {
+            return concepts.isEmpty() ? null : concepts.get(0);
+        }
+        Concept concept = conceptService.getConceptByName(conceptName);
+        if (concept != null) {
+            conceptIdsByName.put(key, idsOf(Collections.singletonList(concept)));
+        }
+        return concept;
+    }
+
+    /**
+     * Concepts found for the name by a caller specific lookup, which runs only on a miss. Results of different
+     * lookups are kept apart by the lookup type.
+     */
+    public List<Concept> getConceptsByName(String lookupType, String conceptName, ConceptService conceptService, NameLookup lookup) {
+        if (conceptName == null || !Context.isSessionOpen()) {
+            return lookup.find(conceptName);
+        }
+        String key = nameKey(lookupType, conceptName);
+        List<Concept> concepts = loadAll(conceptIdsByName.get(key), conceptService, conceptName);
+        if (concepts != null) {
+            return concepts;
+        }
+        concepts = lookup.find(conceptName);
+        if (!concepts.isEmpty()) {
+            conceptIdsByName.put(key, idsOf(concepts));
+        }
+        return concepts;
+    }
+
+    public List<Concept> getConceptsByConceptSet(Concept conceptSet, ConceptService conceptService) {
+        if (conceptSet == null || conceptSet.getId() == null || !Context.isSessionOpen()) {
+            return conceptService.getConceptsByConceptSet(conceptSet);
+        }
+        List<Concept> members = loadAll(setMemberIds.get(conceptSet.getId()), conceptService, null);
+        if (members != null) {
+            return members;
+        }
+        members = conceptService.getConceptsByConceptSet(conceptSet);
+        setMemberIds.put(conceptSet.getId(), idsOf(members));
+        return members;
+    }
+
+    public List<Concept> getSetsContainingConcept(Concept concept, ConceptService conceptService) {
+        if (concept == null || concept.getId() == null || !Context.isSessionOpen()) {
+            return setsOf(conceptService.getSetsContainingConcept(concept));
+        }
+        List<Concept> sets = loadAll(containingSetIds.get(concept.getId()), conceptService, null);
+        if (sets != null) {
+            return sets;
+        }
+        sets = setsOf(conceptService.getSetsContainingConcept(concept));
+        containingSetIds.put(concept.getId(), idsOf(sets));
+        return sets;
+    }
+
+    /**
+     * Range and units of a numeric concept, or null when the concept is not numeric.
+     */
+    public NumericRange getNumericRange(Concept concept, ConceptService conceptService) {
+        if (concept == null) {
+            return null;
+        }
+        boolean cacheable = concept.getId() != null && Context.isSessionOpen();
+        NumericRange numericRange = cacheable ? numericRanges.get(concept.getId()) : null;
+        if (numericRange != null) {
+            hitCount.incrementAndGet();
+            return numericRange.isNumeric() ? numericRange : null;
+        }
+        missCount.incrementAndGet();
+        numericRange = new NumericRange(conceptService.getConceptNumeric(concept.getId()));
+        if (cacheable) {
+            numericRanges.put(concept.getId(), numericRange);
+        }
+        return numericRange.isNumeric() ? numericRange : null;
+    }
+
+    /**
+     * Drops everything cached about the concept. Set memberships are dropped as a whole, as a change to one concept
+     * can change the flattened members of every set above it.
+     */
+    public void invalidate(Concept concept) {
+        if (concept == null || concept.getId() == null) {
+            return;
+        }
+        conceptIdsByName.removeValuesContaining(concept.getId());
+        numericRanges.remove(concept.getId());
+        setMemberIds.clear();
+        containingSetIds.clear();
+    }
+
+    public void clear() {
+        conceptIdsByName.clear();
+        setMemberIds.clear();
+        containingSetIds.clear();
+        numericRanges.clear();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public double getHitRate() {
+        long lookups = hitCount.get() + missCount.get();
+        return lookups == 0 ? 0 : (double) hitCount.get() / lookups;
+    }
+
+    public int size() {
+        return conceptIdsByName.size() + setMemberIds.size() + containingSetIds.size() + numericRanges.size();
+    }
+
+    /**
+     * Loads the cached ids back, or returns null for a miss. When the ids were cached for a name, a concept that no
+     * longer carries the name (changed or purged without going through the concept service) also counts as a miss.
+     */
+    private List<Concept> loadAll(List<Integer> conceptIds, ConceptService conceptService, String conceptName) {
+        if (conceptIds == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        List<Concept> concepts = new ArrayList<>(conceptIds.size());
+        for (Integer conceptId : conceptIds) {
+            Concept concept = conceptService.getConcept(conceptId);
+            if (concept == null || (conceptName != null && !hasName(concept, conceptName))) {
+                missCount.incrementAndGet();
+                return null;
+            }
+            concepts.add(concept);
+        }
+        hitCount.incrementAndGet();
+        return concepts;
+    }
+
+    private boolean hasName(Concept concept, String conceptName) {
+        String name = conceptName.trim();
+        for (ConceptName conceptNameObj : concept.getNames()) {
+            if (conceptNameObj.getName().equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Integer> idsOf(List<Concept> concepts) {
+        List<Integer> conceptIds = new ArrayList<>(concepts.size());
+        for (Concept concept : concepts) {
+            conceptIds.add(concept.getId());
+        }
+        return Collections.unmodifiableList(conceptIds);
+    }
+
+    private List<Concept> setsOf(List<ConceptSet> conceptSets) {
+        List<Concept> sets = new ArrayList<>();
+        if (conceptSets != null) {
+            for (ConceptSet conceptSet : conceptSets) {
+                sets.add(conceptSet.getConceptSet());
+            }
+        }
+        return sets;
+    }
+
+    private String nameKey(String type, String conceptName) {
+        Locale locale = Context.getLocale();
+        return type + "|" + locale + "|" + conceptName.trim().toLowerCase(locale);
+    }
+
+    public interface NameLookup {
+        List<Concept> find(String conceptName);
+    }
+
+    public static class NumericRange {
+        private final boolean numeric;
+        private final Double hiNormal;
+        private final Double lowNormal;
+        private final Double hiAbsolute;
+        private final Double lowAbsolute;
+        private final String units;
+
+        NumericRange(ConceptNumeric conceptNumeric) {
+            this.numeric = conceptNumeric != null;
+            this.hiNormal = numeric ? conceptNumeric.getHiNormal() : null;
+            this.lowNormal = numeric ? conceptNumeric.getLowNormal() : null;
+            this.hiAbsolute = numeric ? conceptNumeric.getHiAbsolute() : null;
+            this.lowAbsolute = numeric ? conceptNumeric.getLowAbsolute() : null;
+            this.units = numeric ? conceptNumeric.getUnits() : null;
+        }
+
+        boolean isNumeric() {
+            return numeric;
+        }
+
+        public Double getHiNormal() {
+            return hiNormal;
+        }
+
+        public Double getLowNormal() {
+            return lowNormal;
+        }
+
+        public Double getHiAbsolute() {
+            return hiAbsolute;
+        }
+
+        public Double getLowAbsolute() {
+            return lowAbsolute;
+        }
+
+        public String getUnits() {
+            return units;
+        }
+    }
+
+    private class Region<K, V> {
+        private final Map<K, V> entries;
+
+        private Region(final int maxEntries) {
+            entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    if (size() > maxEntries) {
+                        evictionCount.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private synchronized V get(K key) {
+            return entries.get(key);
+        }
+
+        private synchronized void put(K key, V value) {
+            entries.put(key, value);
+        }
+
+        private synchronized void remove(K key) {
+            entries.remove(key);
+        }
+
+        private synchronized void removeValuesContaining(Integer conceptId) {
+            Iterator<V> values = entries.values().iterator();
+            while (values.hasNext()) {
+                V value = values.next();
+                if (value instanceof List && ((List) value).contains(conceptId)) {
+                    values.remove();
+                }
+            }
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.bahmni.module.referencedata.helper;
+
+import org.openmrs.Concept;
+import org.openmrs.Drug;
+
+/**
+ * Spring components implementing this are told about concepts and drugs changed through the concept service, so
+ * that they can drop whatever they derived from them.
+ */
+public interface ConceptServiceChangeListener {
+    void conceptChanged(Concept concept);
+
+    void drugChanged(Drug drug);
+}
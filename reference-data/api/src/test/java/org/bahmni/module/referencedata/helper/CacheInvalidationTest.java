@@ -0,0 +1,51 @@
+package org.bahmni.module.referencedata.helper;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class CacheInvalidationTest {
+
+    @After
+    public void tearDown() throws Exception {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void shouldInvalidateOnceWithoutATransaction() throws Exception {
+        AtomicInteger invalidations = invalidations();
+
+        assertEquals(1, invalidations.get());
+    }
+
+    @Test
+    public void shouldInvalidateAgainOnceTheTransactionCompletes() throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+        AtomicInteger invalidations = invalidations();
+        assertEquals(1, invalidations.get());
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+
+        assertEquals(2, invalidations.get());
+    }
+
+    private AtomicInteger invalidations() {
+        final AtomicInteger invalidations = new AtomicInteger();
+        CacheInvalidation.nowAndOnCompletion(new Runnable() {
+            @Override
+            public void run() {
+                invalidations.incrementAndGet();
+            }
+        });
+        return invalidations;
+    }
+}
@@ -0,0 +1,11 @@
+package org.bahmni.module.referencedata;
+
+import feed.FeedActivator;
+import org.bahmni.module.referencedata.labconcepts.advice.AtomFeedEventOutbox;
+
+public class ReferenceDataActivator extends FeedActivator {
+    @Override
+    public void willStop() {
+        AtomFeedEventOutbox.shutdownAll();
+    }
+}
@@ -1,5 +1,7 @@
 package org.bahmni.module.referencedata.addresshierarchy;
 
+import org.apache.log4j.Logger;
+import org.bahmni.module.referencedata.helper.AddressHierarchyChangeListener;
 import org.ict4h.atomfeed.server.repository.AllEventRecordsQueue;
 import org.ict4h.atomfeed.server.repository.jdbc.AllEventRecordsQueueJdbcImpl;
 import org.ict4h.atomfeed.server.service.Event;
@@ -12,15 +14,19 @@ import org.openmrs.module.addresshierarchy.AddressHierarchyEntry;
 import org.openmrs.module.atomfeed.transaction.support.AtomFeedSpringTransactionManager;
 import org.springframework.aop.AfterReturningAdvice;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.lang.reflect.Method;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
 import static java.util.Arrays.asList;
 
 public class AddressHierarchyEntryEventInterceptor implements AfterReturningAdvice {
+    private static final Logger log = Logger.getLogger(AddressHierarchyEntryEventInterceptor.class);
 
     private final AtomFeedSpringTransactionManager atomFeedSpringTransactionManager;
     private final EventService eventService;
@@ -40,6 +46,7 @@ public class AddressHierarchyEntryEventInterceptor implements AfterReturningAdvi
     public void afterReturning(Object returnValue, Method method, Object[] arguments, Object target) throws Exception {
         if (SAVE_ADDRESS_HIERARCY_ENTRY_METHODS.contains(method.getName())) {
             createEvents(arguments);
+            notifyChangeListeners(arguments);
         }
     }
 
@@ -79,6 +86,47 @@ public class AddressHierarchyEntryEventInterceptor implements AfterReturningAdvi
         );
     }
 
+    private void notifyChangeListeners(Object[] arguments) {
+        if (arguments == null) {
+            return;
+        }
+        List<String> uuids = new ArrayList<>();
+        if (arguments[0] instanceof List) {
+            for (AddressHierarchyEntry entry : (List<AddressHierarchyEntry>) arguments[0]) {
+                if (entry != null) {
+                    uuids.add(entry.getUuid());
+                }
+            }
+        } else if (arguments[0] != null) {
+            uuids.add(((AddressHierarchyEntry) arguments[0]).getUuid());
+        }
+        if (uuids.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            notifyChangeListeners(uuids);
+            return;
+        }
+        // listeners read the saved entries again, so they are told only once the entries are committed
+        final List<String> savedUuids = uuids;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                notifyChangeListeners(savedUuids);
+            }
+        });
+    }
+
+    private void notifyChangeListeners(List<String> uuids) {
+        for (AddressHierarchyChangeListener listener : Context.getRegisteredComponents(AddressHierarchyChangeListener.class)) {
+            try {
+                listener.addressHierarchyEntriesChanged(uuids);
+            } catch (Exception e) {
+                log.error("Could not notify " + listener.getClass().getName() + " of " + uuids.size() + " saved address hierarchy entries", e);
+            }
+        }
+    }
+
     private PlatformTransactionManager getSpringPlatformTransactionManager() {
         List<PlatformTransactionManager> platformTransactionManagers = Context.getRegisteredComponents(PlatformTransactionManager.class);
         return platformTransactionManagers.get(0);
@@ -0,0 +1,295 @@
+package org.bahmni.module.referencedata.labconcepts.advice;
+
+import org.apache.log4j.Logger;
+import org.ict4h.atomfeed.server.service.Event;
+import org.ict4h.atomfeed.transaction.AFTransactionWorkWithoutResult;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.atomfeed.transaction.support.AtomFeedSpringTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transactional outbox for the atom feed events of concept service operations. Events raised inside a transaction
+ * are held until the transaction is about to commit, collapsed to one event per resource, and written to the event
+ * records queue with one jdbc batch in that same transaction. Events raised outside a transaction are written
+ * straight away.
+ * <p/>
+ * When a coalescing window is set, events are instead queued once their transaction has committed. A background
+ * thread writes them when the window ends, one event per resource for the whole window. Events still waiting in the
+ * window are written when the module stops, and lost only if the server goes down without stopping the module. A
+ * window that fails to be written is retried, waiting twice as long after each failure up to
+ * {@link #MAX_RETRY_DELAY_SECONDS}.
+ */
+public class AtomFeedEventOutbox {
+    public static final String OUTBOX_GLOBAL_PROPERTY = "bahmni.referenceData.eventOutbox";
+    public static final String COALESCE_WINDOW_GLOBAL_PROPERTY = "bahmni.referenceData.eventOutbox.coalesceWindowSeconds";
+    private static final Logger log = Logger.getLogger(AtomFeedEventOutbox.class);
+    static final int MAX_RETRY_DELAY_SECONDS = 300;
+    private static final Set<AtomFeedEventOutbox> outboxesWithWindows = Collections.newSetFromMap(new WeakHashMap<AtomFeedEventOutbox, Boolean>());
+    private static final String INSERT_EVENT_SQL = "INSERT INTO event_records_queue (uuid, title, timestamp, uri, object, category) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final AtomFeedSpringTransactionManager atomFeedSpringTransactionManager;
+    private final Map<String, Event> windowEvents = new LinkedHashMap<>();
+    private ScheduledExecutorService windowWriter;
+    private boolean windowScheduled;
+    private int windowSeconds;
+    private int failedWindowWrites;
+    private boolean stopped;
+
+    public AtomFeedEventOutbox(AtomFeedSpringTransactionManager atomFeedSpringTransactionManager) {
+        this.atomFeedSpringTransactionManager = atomFeedSpringTransactionManager;
+    }
+
+    public boolean isEnabled() {
+        return Boolean.valueOf(Context.getAdministrationService().getGlobalProperty(OUTBOX_GLOBAL_PROPERTY));
+    }
+
+    public void add(List<Event> events) {
+        int coalesceWindowSeconds = getCoalesceWindowSeconds();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            if (coalesceWindowSeconds > 0) {
+                addToWindow(events, coalesceWindowSeconds);
+            } else {
+                write(coalesce(events).values());
+            }
+            return;
+        }
+        TransactionEvents transactionEvents = (TransactionEvents) TransactionSynchronizationManager.getResource(this);
+        if (transactionEvents == null) {
+            transactionEvents = new TransactionEvents(coalesceWindowSeconds);
+            TransactionSynchronizationManager.bindResource(this, transactionEvents);
+            TransactionSynchronizationManager.registerSynchronization(transactionEvents);
+        }
+        putLatest(transactionEvents.events, events);
+    }
+
+    private int getCoalesceWindowSeconds() {
+        String coalesceWindowSeconds = Context.getAdministrationService().getGlobalProperty(COALESCE_WINDOW_GLOBAL_PROPERTY);
+        try {
+            return coalesceWindowSeconds == null ? 0 : Integer.parseInt(coalesceWindowSeconds.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring invalid value " + coalesceWindowSeconds + " of " + COALESCE_WINDOW_GLOBAL_PROPERTY);
+            return 0;
+        }
+    }
+
+    /**
+     * Shuts the window writers of all outboxes down, writing the events still waiting in their windows first.
+     */
+    public static void shutdownAll() {
+        List<AtomFeedEventOutbox> outboxes;
+        synchronized (outboxesWithWindows) {
+            outboxes = new ArrayList<>(outboxesWithWindows);
+            outboxesWithWindows.clear();
+        }
+        for (AtomFeedEventOutbox outbox : outboxes) {
+            outbox.shutdown();
+        }
+    }
+
+    /**
+     * Stops the window writer and writes the events still waiting in the window. Events added afterwards are written
+     * straight away.
+     */
+    public void shutdown() {
+        ScheduledExecutorService writer;
+        Map<String, Event> events;
+        synchronized (this) {
+            stopped = true;
+            writer = windowWriter;
+            windowWriter = null;
+            windowScheduled = false;
+            events = new LinkedHashMap<>(windowEvents);
+            windowEvents.clear();
+        }
+        if (writer != null) {
+            writer.shutdownNow();
+        }
+        try {
+            write(events.values());
+        } catch (Exception e) {
+            log.error("Could not write " + events.size() + " reference data events on shutdown, they are lost", e);
+        }
+    }
+
+    private void addToWindow(List<Event> events, int coalesceWindowSeconds) {
+        synchronized (this) {
+            if (!stopped) {
+                windowSeconds = coalesceWindowSeconds;
+                putLatest(windowEvents, events);
+                if (!windowScheduled) {
+                    scheduleWindow(coalesceWindowSeconds);
+                }
+                return;
+            }
+        }
+        write(coalesce(events).values());
+    }
+
+    private void scheduleWindow(int delaySeconds) {
+        if (windowWriter == null) {
+            windowWriter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "reference-data-event-outbox");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            synchronized (outboxesWithWindows) {
+                outboxesWithWindows.add(this);
+            }
+        }
+        windowScheduled = true;
+        windowWriter.schedule(new Runnable() {
+            @Override
+            public void run() {
+                writeWindow();
+            }
+        }, delaySeconds, TimeUnit.SECONDS);
+    }
+
+    private void writeWindow() {
+        Map<String, Event> events;
+        synchronized (this) {
+            events = new LinkedHashMap<>(windowEvents);
+            windowEvents.clear();
+            windowScheduled = false;
+        }
+        try {
+            write(events.values());
+            synchronized (this) {
+                failedWindowWrites = 0;
+            }
+        } catch (Exception e) {
+            synchronized (this) {
+                if (stopped) {
+                    log.error("Could not write " + events.size() + " reference data events while stopping, they are lost", e);
+                    return;
+                }
+                for (Map.Entry<String, Event> event : events.entrySet()) {
+                    if (!windowEvents.containsKey(event.getKey())) {
+                        windowEvents.put(event.getKey(), event.getValue());
+                    }
+                }
+                failedWindowWrites++;
+                int retryDelaySeconds = retryDelaySeconds(windowSeconds, failedWindowWrites);
+                log.error("Could not write " + events.size() + " reference data events, retrying in " + retryDelaySeconds + " seconds", e);
+                if (!windowScheduled) {
+                    scheduleWindow(retryDelaySeconds);
+                }
+            }
+        }
+    }
+
+    static int retryDelaySeconds(int windowSeconds, int failedWrites) {
+        long delaySeconds = Math.max(windowSeconds, 1);
+        for (int i = 0; i < failedWrites && delaySeconds < MAX_RETRY_DELAY_SECONDS; i++) {
+            delaySeconds *= 2;
+        }
+        return (int) Math.min(delaySeconds, MAX_RETRY_DELAY_SECONDS);
+    }
+
+    private void write(final Collection<Event> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        atomFeedSpringTransactionManager.executeWithTransaction(
+                new AFTransactionWorkWithoutResult() {
+                    @Override
+                    protected void doInTransaction() {
+                        try {
+                            insert(atomFeedSpringTransactionManager.getConnection(), events);
+                        } catch (SQLException e) {
+                            throw new RuntimeException("Could not write " + events.size() + " reference data events", e);
+                        }
+                    }
+
+                    @Override
+                    public PropagationDefinition getTxPropagationDefinition() {
+                        return PropagationDefinition.PROPAGATION_REQUIRED;
+                    }
+                }
+        );
+    }
+
+    private void insert(Connection connection, Collection<Event> events) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(INSERT_EVENT_SQL);
+        try {
+            for (Event event : events) {
+                statement.setString(1, event.getUuid());
+                statement.setString(2, event.getTitle());
+                statement.setTimestamp(3, new Timestamp(event.getTimeStamp().getMillis()));
+                statement.setString(4, event.getUri() == null ? null : event.getUri().toString());
+                statement.setString(5, event.getContents() == null ? null : event.getContents().toString());
+                statement.setString(6, event.getCategory());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * The events keyed by resource, keeping the last event of each.
+     */
+    private static Map<String, Event> coalesce(List<Event> events) {
+        Map<String, Event> eventsByResource = new LinkedHashMap<>();
+        putLatest(eventsByResource, events);
+        return eventsByResource;
+    }
+
+    private static void putLatest(Map<String, Event> eventsByResource, List<Event> events) {
+        for (Event event : events) {
+            String key = event.getCategory() + "|" + event.getTitle() + "|" + event.getContents();
+            eventsByResource.remove(key);
+            eventsByResource.put(key, event);
+        }
+    }
+
+    private class TransactionEvents extends TransactionSynchronizationAdapter {
+        private final int coalesceWindowSeconds;
+        private final Map<String, Event> events = new LinkedHashMap<>();
+
+        private TransactionEvents(int coalesceWindowSeconds) {
+            this.coalesceWindowSeconds = coalesceWindowSeconds;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (coalesceWindowSeconds <= 0) {
+                write(new ArrayList<>(events.values()));
+            }
+        }
+
+        @Override
+        public void afterCommit() {
+            if (coalesceWindowSeconds > 0) {
+                addToWindow(new ArrayList<>(events.values()), coalesceWindowSeconds);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(AtomFeedEventOutbox.this);
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package org.bahmni.module.referencedata.labconcepts.advice;
 
+import org.apache.log4j.Logger;
+import org.bahmni.module.referencedata.helper.CacheInvalidation;
+import org.bahmni.module.referencedata.helper.ConceptMetadataCache;
+import org.bahmni.module.referencedata.helper.ConceptServiceChangeListener;
 import org.bahmni.module.referencedata.labconcepts.model.Operation;
 import org.ict4h.atomfeed.server.repository.AllEventRecordsQueue;
 import org.ict4h.atomfeed.server.repository.jdbc.AllEventRecordsQueueJdbcImpl;
@@ -7,6 +11,8 @@ import org.ict4h.atomfeed.server.service.Event;
 import org.ict4h.atomfeed.server.service.EventService;
 import org.ict4h.atomfeed.server.service.EventServiceImpl;
 import org.ict4h.atomfeed.transaction.AFTransactionWorkWithoutResult;
+import org.openmrs.Concept;
+import org.openmrs.Drug;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.atomfeed.transaction.support.AtomFeedSpringTransactionManager;
 import org.springframework.aop.AfterReturningAdvice;
@@ -15,15 +21,21 @@ import org.springframework.transaction.PlatformTransactionManager;
 import java.lang.reflect.Method;
 import java.util.List;
 
+import static java.util.Arrays.asList;
 import static org.apache.commons.collections.CollectionUtils.isNotEmpty;
 
 public class ConceptServiceEventInterceptor implements AfterReturningAdvice {
+    private static final Logger log = Logger.getLogger(ConceptServiceEventInterceptor.class);
+    private static final List<String> CONCEPT_MODIFYING_OPERATIONS = asList("saveConcept", "updateConcept", "retireConcept", "unretireConcept", "purgeConcept");
+    private static final List<String> DRUG_MODIFYING_OPERATIONS = asList("saveDrug", "retireDrug", "unretireDrug", "purgeDrug");
     private AtomFeedSpringTransactionManager atomFeedSpringTransactionManager;
     private EventService eventService;
+    private AtomFeedEventOutbox eventOutbox;
 
     public ConceptServiceEventInterceptor() {
         atomFeedSpringTransactionManager = createTransactionManager();
         this.eventService = createService(atomFeedSpringTransactionManager);
+        this.eventOutbox = new AtomFeedEventOutbox(atomFeedSpringTransactionManager);
     }
 
     public ConceptServiceEventInterceptor(AtomFeedSpringTransactionManager atomFeedSpringTransactionManager, EventService eventService) {
@@ -31,6 +43,11 @@ public class ConceptServiceEventInterceptor implements AfterReturningAdvice {
         this.eventService = eventService;
     }
 
+    public ConceptServiceEventInterceptor(AtomFeedSpringTransactionManager atomFeedSpringTransactionManager, EventService eventService, AtomFeedEventOutbox eventOutbox) {
+        this(atomFeedSpringTransactionManager, eventService);
+        this.eventOutbox = eventOutbox;
+    }
+
     private AtomFeedSpringTransactionManager createTransactionManager() {
         PlatformTransactionManager platformTransactionManager = getSpringPlatformTransactionManager();
         return new AtomFeedSpringTransactionManager(platformTransactionManager);
@@ -43,9 +60,13 @@ public class ConceptServiceEventInterceptor implements AfterReturningAdvice {
 
     @Override
     public void afterReturning(Object returnValue, Method method, Object[] arguments, Object conceptService) throws Throwable {
+        invalidateConceptMetadata(method, arguments);
+        notifyChangeListeners(method, arguments);
         Operation operation = new Operation(method);
         final List<Event> events = operation.apply(arguments);
-        if (isNotEmpty(events)) {
+        if (isNotEmpty(events) && eventOutbox != null && eventOutbox.isEnabled()) {
+            eventOutbox.add(events);
+        } else if (isNotEmpty(events)) {
             atomFeedSpringTransactionManager.executeWithTransaction(
                     new AFTransactionWorkWithoutResult() {
                         @Override
@@ -64,6 +85,41 @@ public class ConceptServiceEventInterceptor implements AfterReturningAdvice {
         }
     }
 
+    private void invalidateConceptMetadata(Method method, Object[] arguments) {
+        if (CONCEPT_MODIFYING_OPERATIONS.contains(method.getName()) && arguments != null && arguments.length > 0
+                && arguments[0] instanceof Concept) {
+            final Concept concept = (Concept) arguments[0];
+            CacheInvalidation.nowAndOnCompletion(new Runnable() {
+                @Override
+                public void run() {
+                    ConceptMetadataCache.getInstance().invalidate(concept);
+                }
+            });
+        }
+    }
+
+    private void notifyChangeListeners(Method method, Object[] arguments) {
+        if (arguments == null || arguments.length == 0) {
+            return;
+        }
+        boolean conceptChanged = CONCEPT_MODIFYING_OPERATIONS.contains(method.getName()) && arguments[0] instanceof Concept;
+        boolean drugChanged = DRUG_MODIFYING_OPERATIONS.contains(method.getName()) && arguments[0] instanceof Drug;
+        if (!conceptChanged && !drugChanged) {
+            return;
+        }
+        for (ConceptServiceChangeListener listener : Context.getRegisteredComponents(ConceptServiceChangeListener.class)) {
+            try {
+                if (conceptChanged) {
+                    listener.conceptChanged((Concept) arguments[0]);
+                } else {
+                    listener.drugChanged((Drug) arguments[0]);
+                }
+            } catch (Exception e) {
+                log.error("Could not notify " + listener.getClass().getName() + " of " + method.getName(), e);
+            }
+        }
+    }
+
     private PlatformTransactionManager getSpringPlatformTransactionManager() {
         List<PlatformTransactionManager> platformTransactionManagers = Context.getRegisteredComponents(PlatformTransactionManager.class);
         return platformTransactionManagers.get(0);
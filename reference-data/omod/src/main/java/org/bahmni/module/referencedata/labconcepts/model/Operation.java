@@ -1,5 +1,6 @@
 package org.bahmni.module.referencedata.labconcepts.model;
 
+import org.bahmni.module.referencedata.labconcepts.model.event.ConceptParentLookup;
 import org.bahmni.module.referencedata.labconcepts.model.event.ConceptServiceOperationEvent;
 import org.ict4h.atomfeed.server.service.Event;
 
@@ -38,9 +39,16 @@ public class Operation {
 
     public List<Event> apply(Object[] arguments) throws Exception {
         List<Event> atomFeedEvents = new ArrayList<>();
-        for (ConceptServiceOperationEvent event : events) {
-            if (event.isApplicable(name, arguments)) {
-                addIgnoreNull(atomFeedEvents, event.asAtomFeedEvent(arguments));
+        boolean lookupStarted = ConceptParentLookup.begin();
+        try {
+            for (ConceptServiceOperationEvent event : events) {
+                if (event.isApplicable(name, arguments)) {
+                    addIgnoreNull(atomFeedEvents, event.asAtomFeedEvent(arguments));
+                }
+            }
+        } finally {
+            if (lookupStarted) {
+                ConceptParentLookup.end();
             }
         }
         return atomFeedEvents;
@@ -1,9 +1,9 @@
 package org.bahmni.module.referencedata.labconcepts.model.event;
 
+import org.bahmni.module.referencedata.helper.ConceptMetadataCache;
 import org.ict4h.atomfeed.server.service.Event;
 import org.joda.time.DateTime;
 import org.openmrs.Concept;
-import org.openmrs.ConceptSet;
 import org.openmrs.api.context.Context;
 
 import java.net.URISyntaxException;
@@ -46,10 +46,9 @@ public abstract class ConceptOperationEvent implements ConceptServiceOperationEv
     }
 
     public static boolean isChildOf(Concept concept, String parentConceptName) {
-        List<ConceptSet> conceptSets = Context.getConceptService().getSetsContainingConcept(concept);
-        if (conceptSets == null) return false;
-        for (ConceptSet conceptSet : conceptSets) {
-            if (conceptSet.getConceptSet().getName(Context.getLocale()).getName().equals(parentConceptName)) {
+        List<Concept> parentConcepts = ConceptMetadataCache.getInstance().getSetsContainingConcept(concept, Context.getConceptService());
+        for (Concept parentConcept : parentConcepts) {
+            if (parentConcept.getName(Context.getLocale()).getName().equals(parentConceptName)) {
                 return true;
             }
         }
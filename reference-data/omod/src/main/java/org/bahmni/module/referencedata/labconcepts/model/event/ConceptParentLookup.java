@@ -0,0 +1,44 @@
+package org.bahmni.module.referencedata.labconcepts.model.event;
+
+import org.bahmni.module.referencedata.helper.ConceptHelper;
+import org.openmrs.Concept;
+import org.openmrs.api.context.Context;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parents of concepts, the concepts having them as an answer. While the events of one concept service operation are
+ * worked out, between {@link #begin()} and {@link #end()}, the parents of a concept are looked up only once however
+ * many events ask for them.
+ */
+public class ConceptParentLookup {
+    private static final ThreadLocal<Map<Integer, List<Concept>>> parentsOfOperation = new ThreadLocal<>();
+
+    /**
+     * Starts remembering parents on this thread, and returns false when an enclosing operation already did.
+     */
+    public static boolean begin() {
+        if (parentsOfOperation.get() != null) {
+            return false;
+        }
+        parentsOfOperation.set(new HashMap<Integer, List<Concept>>());
+        return true;
+    }
+
+    public static void end() {
+        parentsOfOperation.remove();
+    }
+
+    public static List<Concept> getParentConcepts(Concept concept) {
+        Map<Integer, List<Concept>> parents = parentsOfOperation.get();
+        if (parents == null || concept.getId() == null) {
+            return new ConceptHelper(Context.getConceptService()).getParentConcepts(concept);
+        }
+        if (!parents.containsKey(concept.getId())) {
+            parents.put(concept.getId(), new ConceptHelper(Context.getConceptService()).getParentConcepts(concept));
+        }
+        return parents.get(concept.getId());
+    }
+}
@@ -1,10 +1,8 @@
 package org.bahmni.module.referencedata.labconcepts.model.event;
 
-import org.bahmni.module.referencedata.helper.ConceptHelper;
 import org.ict4h.atomfeed.server.service.Event;
 import org.joda.time.DateTime;
 import org.openmrs.Concept;
-import org.openmrs.api.context.Context;
 
 import java.net.URISyntaxException;
 import java.util.List;
@@ -24,8 +22,7 @@ public class LabTestEvent extends ConceptOperationEvent {
     }
 
     private Concept getParentOfTypeLabTest(Concept concept) {
-        ConceptHelper conceptHelper = new ConceptHelper(Context.getConceptService());
-        List<Concept> parentConcepts = conceptHelper.getParentConcepts(concept);
+        List<Concept> parentConcepts = ConceptParentLookup.getParentConcepts(concept);
         for (Concept parentConcept : parentConcepts) {
             if (isOfConceptClass(parentConcept, LAB_TEST_CONCEPT_CLASS)) {
                 return parentConcept;
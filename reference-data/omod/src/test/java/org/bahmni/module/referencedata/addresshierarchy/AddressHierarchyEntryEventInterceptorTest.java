@@ -1,5 +1,6 @@
 package org.bahmni.module.referencedata.addresshierarchy;
 
+import org.bahmni.module.referencedata.helper.AddressHierarchyChangeListener;
 import org.ict4h.atomfeed.server.service.EventService;
 import org.ict4h.atomfeed.transaction.AFTransactionWorkWithoutResult;
 import org.junit.Before;
@@ -15,9 +16,12 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 import org.springframework.orm.hibernate3.HibernateTransactionManager;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.mockito.Matchers.any;
@@ -95,4 +99,37 @@ public class AddressHierarchyEntryEventInterceptorTest {
 
         verify(atomFeedSpringTransactionManager, never()).executeWithTransaction(any(AFTransactionWorkWithoutResult.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldTellChangeListenersTheUuidsOfTheSavedEntries() throws Throwable {
+        AddressHierarchyChangeListener listener = PowerMockito.mock(AddressHierarchyChangeListener.class);
+        when(Context.getRegisteredComponents(AddressHierarchyChangeListener.class)).thenReturn(Arrays.asList(listener));
+        Method method = AddressHierarchyService.class.getMethod("saveAddressHierarchyEntries", List.class);
+        ArrayList<Object> entries = new ArrayList<>();
+        entries.add(addressHierarchyEntry);
+        entries.add(null);
+
+        publishedFeed.afterReturning(null, method, new Object[]{entries}, null);
+
+        verify(listener).addressHierarchyEntriesChanged(Arrays.asList("uuid"));
+    }
+
+    @Test
+    public void shouldTellChangeListenersOnlyOnceTheTransactionCommits() throws Throwable {
+        AddressHierarchyChangeListener listener = PowerMockito.mock(AddressHierarchyChangeListener.class);
+        when(Context.getRegisteredComponents(AddressHierarchyChangeListener.class)).thenReturn(Arrays.asList(listener));
+        Method method = AddressHierarchyService.class.getMethod("saveAddressHierarchyEntry", AddressHierarchyEntry.class);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            publishedFeed.afterReturning(null, method, new Object[]{addressHierarchyEntry}, null);
+
+            verify(listener, never()).addressHierarchyEntriesChanged(any(List.class));
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+            verify(listener).addressHierarchyEntriesChanged(Arrays.asList("uuid"));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.bahmni.module.referencedata.helper;
+
+import org.bahmni.test.builder.ConceptBuilder;
+import org.bahmni.test.builder.ConceptNumericBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.openmrs.Concept;
+import org.openmrs.ConceptNumeric;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.context.Context;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Context.class)
+public class ConceptMetadataCacheTest {
+    @Mock
+    private ConceptService conceptService;
+
+    private ConceptMetadataCache conceptMetadataCache;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        PowerMockito.mockStatic(Context.class);
+        PowerMockito.when(Context.isSessionOpen()).thenReturn(true);
+        PowerMockito.when(Context.getLocale()).thenReturn(Locale.ENGLISH);
+        conceptMetadataCache = new ConceptMetadataCache(2);
+    }
+
+    @Test
+    public void shouldLookUpAConceptByNameOnlyOnce() {
+        Concept weight = concept(1, "Weight");
+        when(conceptService.getConceptByName("Weight")).thenReturn(weight);
+
+        assertSame(weight, conceptMetadataCache.getConceptByName("Weight", conceptService));
+        assertSame(weight, conceptMetadataCache.getConceptByName("weight ", conceptService));
+
+        verify(conceptService, times(1)).getConceptByName("Weight");
+        assertEquals(1, conceptMetadataCache.getHitCount());
+        assertEquals(1, conceptMetadataCache.getMissCount());
+    }
+
+    @Test
+    public void shouldLookUpTheNameAgainOnceTheConceptIsInvalidated() {
+        Concept weight = concept(1, "Weight");
+        when(conceptService.getConceptByName("Weight")).thenReturn(weight);
+
+        conceptMetadataCache.getConceptByName("Weight", conceptService);
+        conceptMetadataCache.invalidate(weight);
+        conceptMetadataCache.getConceptByName("Weight", conceptService);
+
+        verify(conceptService, times(2)).getConceptByName("Weight");
+    }
+
+    @Test
+    public void shouldEvictTheLeastRecentlyUsedEntryWhenFull() {
+        when(conceptService.getConceptByName("Weight")).thenReturn(concept(1, "Weight"));
+        when(conceptService.getConceptByName("Height")).thenReturn(concept(2, "Height"));
+        when(conceptService.getConceptByName("Pulse")).thenReturn(concept(3, "Pulse"));
+
+        conceptMetadataCache.getConceptByName("Weight", conceptService);
+        conceptMetadataCache.getConceptByName("Height", conceptService);
+        conceptMetadataCache.getConceptByName("Pulse", conceptService);
+        conceptMetadataCache.getConceptByName("Weight", conceptService);
+
+        verify(conceptService, times(2)).getConceptByName("Weight");
+        assertEquals(2, conceptMetadataCache.getEvictionCount());
+    }
+
+    @Test
+    public void shouldCacheNumericRangesAndUnits() {
+        ConceptNumeric weight = (ConceptNumeric) new ConceptNumericBuilder().withId(1).withName("Weight").withLowNormal(40.0).withHiNormal(90.0).withUnit("Kg").build();
+        Concept notes = concept(2, "Notes");
+        when(conceptService.getConceptNumeric(1)).thenReturn(weight);
+
+        conceptMetadataCache.getNumericRange(weight, conceptService);
+        ConceptMetadataCache.NumericRange numericRange = conceptMetadataCache.getNumericRange(weight, conceptService);
+
+        assertEquals(Double.valueOf(40.0), numericRange.getLowNormal());
+        assertEquals(Double.valueOf(90.0), numericRange.getHiNormal());
+        assertEquals("Kg", numericRange.getUnits());
+        assertNull(conceptMetadataCache.getNumericRange(notes, conceptService));
+        verify(conceptService, times(1)).getConceptNumeric(1);
+    }
+
+    private Concept concept(int id, String name) {
+        Concept concept = new ConceptBuilder().withName(name).build();
+        concept.setId(id);
+        when(conceptService.getConcept(id)).thenReturn(concept);
+        return concept;
+    }
+}
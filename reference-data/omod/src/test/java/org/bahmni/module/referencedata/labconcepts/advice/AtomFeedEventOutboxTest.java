@@ -0,0 +1,123 @@
+package org.bahmni.module.referencedata.labconcepts.advice;
+
+import org.ict4h.atomfeed.server.service.Event;
+import org.ict4h.atomfeed.transaction.AFTransactionWorkWithoutResult;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.atomfeed.transaction.support.AtomFeedSpringTransactionManager;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Context.class)
+public class AtomFeedEventOutboxTest {
+    @Mock
+    private AtomFeedSpringTransactionManager atomFeedSpringTransactionManager;
+    @Mock
+    private AdministrationService administrationService;
+    @Mock
+    private Connection connection;
+    @Mock
+    private PreparedStatement statement;
+
+    private ArgumentCaptor<AFTransactionWorkWithoutResult> captor = ArgumentCaptor.forClass(AFTransactionWorkWithoutResult.class);
+    private AtomFeedEventOutbox eventOutbox;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        PowerMockito.mockStatic(Context.class);
+        when(Context.getAdministrationService()).thenReturn(administrationService);
+        when(atomFeedSpringTransactionManager.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        eventOutbox = new AtomFeedEventOutbox(atomFeedSpringTransactionManager);
+    }
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.unbindResourceIfPossible(eventOutbox);
+    }
+
+    @Test
+    public void shouldWriteTheEventsOfATransactionInOneBatchBeforeItCommits() throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+
+        eventOutbox.add(Arrays.asList(event("test", "uuid1")));
+        eventOutbox.add(Arrays.asList(event("test", "uuid1"), event("panel", "uuid2")));
+        verify(atomFeedSpringTransactionManager, never()).executeWithTransaction(captor.capture());
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.beforeCommit(false);
+        }
+        verify(atomFeedSpringTransactionManager).executeWithTransaction(captor.capture());
+        captor.getValue().execute();
+
+        verify(statement, times(2)).addBatch();
+        verify(statement).executeBatch();
+    }
+
+    @Test
+    public void shouldWriteEventsStraightAwayOutsideATransaction() throws Exception {
+        eventOutbox.add(Arrays.asList(event("test", "uuid1"), event("test", "uuid1")));
+
+        verify(atomFeedSpringTransactionManager).executeWithTransaction(captor.capture());
+        captor.getValue().execute();
+        verify(statement, times(1)).addBatch();
+        verify(statement).executeBatch();
+    }
+
+    @Test
+    public void shouldWriteTheEventsWaitingInTheWindowOnShutdown() throws Exception {
+        when(administrationService.getGlobalProperty(AtomFeedEventOutbox.COALESCE_WINDOW_GLOBAL_PROPERTY)).thenReturn("600");
+
+        eventOutbox.add(Arrays.asList(event("test", "uuid1"), event("panel", "uuid2")));
+        verify(atomFeedSpringTransactionManager, never()).executeWithTransaction(captor.capture());
+
+        AtomFeedEventOutbox.shutdownAll();
+        verify(atomFeedSpringTransactionManager).executeWithTransaction(captor.capture());
+        captor.getValue().execute();
+        verify(statement, times(2)).addBatch();
+
+        eventOutbox.add(Arrays.asList(event("test", "uuid3")));
+        verify(atomFeedSpringTransactionManager, times(2)).executeWithTransaction(captor.capture());
+    }
+
+    @Test
+    public void shouldWaitTwiceAsLongAfterEachFailedWindowUpToTheMaximum() {
+        assertEquals(20, AtomFeedEventOutbox.retryDelaySeconds(10, 1));
+        assertEquals(40, AtomFeedEventOutbox.retryDelaySeconds(10, 2));
+        assertEquals(2, AtomFeedEventOutbox.retryDelaySeconds(0, 1));
+        assertEquals(AtomFeedEventOutbox.MAX_RETRY_DELAY_SECONDS, AtomFeedEventOutbox.retryDelaySeconds(10, 40));
+    }
+
+    private Event event(String title, String conceptUuid) throws Exception {
+        String url = "/openmrs/ws/rest/v1/reference-data/" + title + "/" + conceptUuid;
+        return new Event(UUID.randomUUID().toString(), title, DateTime.now(), url, url, "lab");
+    }
+}